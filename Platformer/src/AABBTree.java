@@ -0,0 +1,372 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// A bounding volume hierarchy over moving rectangles for finding which ones overlap a region.
+// Each item is stored with fattened bounds, so an item that moves a little stays where it is
+// and only one that leaves its fattened bounds is removed and reinserted. Reinsertion refits and
+// rebalances just the ancestors of the moved leaf, and nothing is ever rebuilt wholesale.
+// Nodes live in parallel arrays that grow as needed and are reused through a free list.
+class AABBTree<T> {
+	// Every item's bounds are grown by this much on every side, in pixels
+	static final double FAT_MARGIN = IConstant.BLOCK_SIZE;
+	// Bounds are also stretched this many ticks ahead along an item's displacement
+	static final double PREDICT_TICKS = 4;
+	static final int NONE = -1;
+
+	private double[] minX;
+	private double[] minY;
+	private double[] maxX;
+	private double[] maxY;
+	private int[] parent;
+	private int[] left;
+	private int[] right;
+	// Height of the subtree at each node, leaves being 0 and free nodes -1
+	private int[] height;
+	private Object[] items;
+	private int root;
+	private int freeList;
+	private int capacity;
+	// Number of items in this tree
+	int size;
+	// Number of times an item left its fattened bounds and was reinserted
+	long reinserts;
+	// Scratch stack for queries, kept between them so querying allocates nothing
+	private int[] stack;
+
+	AABBTree() {
+		this.root = NONE;
+		this.size = 0;
+		this.reinserts = 0;
+		this.capacity = 0;
+		this.freeList = NONE;
+		this.stack = new int[64];
+		this.grow(16);
+	}
+
+	// ITEMS
+
+	// Adds the given item with the given bounds, returning the handle it is moved and removed by
+	// EFFECT: Modifies this' nodes
+	int insert(T item, Rectangle bounds) {
+		if (item == null) {
+			throw new IllegalArgumentException("Cannot index a missing item.");
+		}
+		int leaf = this.allocate();
+		this.items[leaf] = item;
+		this.setFat(leaf, bounds, 0, 0);
+		this.insertLeaf(leaf);
+		this.size += 1;
+		return leaf;
+	}
+
+	// Removes the item with the given handle
+	// EFFECT: Modifies this' nodes
+	void remove(int leaf) {
+		this.checkLeaf(leaf);
+		this.removeLeaf(leaf);
+		this.release(leaf);
+		this.size -= 1;
+	}
+
+	// Updates the bounds of the item with the given handle after it moved by the given displacement.
+	// Returns whether it left its fattened bounds and so had to be reinserted.
+	// EFFECT: Possibly modifies this' nodes
+	boolean move(int leaf, Rectangle bounds, Vector2D displacement) {
+		return this.move(leaf, bounds, displacement.x, displacement.y);
+	}
+
+	// Updates the bounds of the item with the given handle after it moved by the given amounts,
+	// without allocating. Returns whether it had to be reinserted.
+	// EFFECT: Possibly modifies this' nodes
+	boolean move(int leaf, Rectangle bounds, double dx, double dy) {
+		this.checkLeaf(leaf);
+		if (this.minX[leaf] <= bounds.left() && this.minY[leaf] <= bounds.top() && bounds.right() <= this.maxX[leaf]
+				&& bounds.bottom() <= this.maxY[leaf]) {
+			return false;
+		}
+		this.removeLeaf(leaf);
+		this.setFat(leaf, bounds, dx, dy);
+		this.insertLeaf(leaf);
+		this.reinserts += 1;
+		return true;
+	}
+
+	// The item with the given handle
+	@SuppressWarnings("unchecked")
+	T get(int leaf) {
+		this.checkLeaf(leaf);
+		return (T) this.items[leaf];
+	}
+
+	// Removes every item
+	// EFFECT: Modifies this' nodes
+	void clear() {
+		this.root = NONE;
+		this.size = 0;
+		this.freeList = NONE;
+		for (int n = this.capacity - 1; n >= 0; n -= 1) {
+			this.release(n);
+		}
+	}
+
+	// QUERIES
+
+	// Adds to out every item whose fattened bounds overlap or touch the given region, without
+	// otherwise allocating. Callers check the items' true bounds themselves.
+	// EFFECT: Modifies the given list
+	void query(double x0, double y0, double x1, double y1, ArrayList<T> out) {
+		if (this.root == NONE) {
+			return;
+		}
+		int top = 0;
+		this.stack[top++] = this.root;
+		while (top > 0) {
+			int n = this.stack[--top];
+			if (this.maxX[n] < x0 || this.minX[n] > x1 || this.maxY[n] < y0 || this.minY[n] > y1) {
+				continue;
+			}
+			if (this.left[n] == NONE) {
+				out.add(this.get(n));
+			} else {
+				if (top + 2 > this.stack.length) {
+					this.stack = Arrays.copyOf(this.stack, this.stack.length * 2);
+				}
+				this.stack[top++] = this.left[n];
+				this.stack[top++] = this.right[n];
+			}
+		}
+	}
+
+	// Adds to out every item whose fattened bounds overlap or touch the box bounding the given body
+	// EFFECT: Modifies the given list
+	void query(ICollisionBody region, ArrayList<T> out) {
+		this.query(region.left(), region.top(), region.right(), region.bottom(), out);
+	}
+
+	// Height of the tree, 0 for a single item, for checking it stays balanced
+	int height() {
+		return this.root == NONE ? 0 : this.height[this.root];
+	}
+
+	// LEAVES
+
+	// Sets the bounds of the given leaf to the given rectangle grown by the margin and stretched
+	// along the given displacement
+	// EFFECT: Modifies the leaf's bounds
+	private void setFat(int leaf, Rectangle bounds, double dx, double dy) {
+		double ahead = PREDICT_TICKS;
+		this.minX[leaf] = bounds.left() - FAT_MARGIN + Math.min(0, dx * ahead);
+		this.minY[leaf] = bounds.top() - FAT_MARGIN + Math.min(0, dy * ahead);
+		this.maxX[leaf] = bounds.right() + FAT_MARGIN + Math.max(0, dx * ahead);
+		this.maxY[leaf] = bounds.bottom() + FAT_MARGIN + Math.max(0, dy * ahead);
+	}
+
+	// Places the given leaf as the sibling of whichever node grows the total perimeter of the tree
+	// least, then refits its ancestors
+	// EFFECT: Modifies this' nodes
+	private void insertLeaf(int leaf) {
+		if (this.root == NONE) {
+			this.root = leaf;
+			this.parent[leaf] = NONE;
+			return;
+		}
+		int sibling = this.root;
+		while (this.left[sibling] != NONE) {
+			int l = this.left[sibling];
+			int r = this.right[sibling];
+			double combined = this.unionPerimeter(sibling, leaf);
+			// Cost of making a new parent for the leaf and this node here
+			double here = 2 * combined;
+			// Cost every level below pays for this node's bounds growing
+			double inherited = 2 * (combined - this.perimeter(sibling));
+			double costLeft = this.descendCost(l, leaf) + inherited;
+			double costRight = this.descendCost(r, leaf) + inherited;
+			if (here < costLeft && here < costRight) {
+				break;
+			}
+			sibling = costLeft < costRight ? l : r;
+		}
+
+		int oldParent = this.parent[sibling];
+		int newParent = this.allocate();
+		this.parent[newParent] = oldParent;
+		this.left[newParent] = sibling;
+		this.right[newParent] = leaf;
+		this.parent[sibling] = newParent;
+		this.parent[leaf] = newParent;
+		if (oldParent == NONE) {
+			this.root = newParent;
+		} else if (this.left[oldParent] == sibling) {
+			this.left[oldParent] = newParent;
+		} else {
+			this.right[oldParent] = newParent;
+		}
+		this.refitFrom(newParent);
+	}
+
+	// Cost of descending into the given child to place the given leaf beneath it
+	private double descendCost(int child, int leaf) {
+		double combined = this.unionPerimeter(child, leaf);
+		return this.left[child] == NONE ? combined : combined - this.perimeter(child);
+	}
+
+	// Detaches the given leaf, putting its sibling in its parent's place, then refits
+	// EFFECT: Modifies this' nodes
+	private void removeLeaf(int leaf) {
+		if (leaf == this.root) {
+			this.root = NONE;
+			return;
+		}
+		int par = this.parent[leaf];
+		int grand = this.parent[par];
+		int sibling = this.left[par] == leaf ? this.right[par] : this.left[par];
+		if (grand == NONE) {
+			this.root = sibling;
+			this.parent[sibling] = NONE;
+		} else {
+			if (this.left[grand] == par) {
+				this.left[grand] = sibling;
+			} else {
+				this.right[grand] = sibling;
+			}
+			this.parent[sibling] = grand;
+			this.refitFrom(grand);
+		}
+		this.release(par);
+	}
+
+	// Rebalances and recomputes the bounds and height of the given node and each of its ancestors
+	// EFFECT: Modifies this' nodes
+	private void refitFrom(int n) {
+		while (n != NONE) {
+			n = this.balance(n);
+			this.fitChildren(n);
+			n = this.parent[n];
+		}
+	}
+
+	// If one child of the given node is more than one level taller than the other, rotates the
+	// taller child up into its place. Returns the node now at the given node's position.
+	// EFFECT: Modifies this' nodes
+	private int balance(int a) {
+		if (this.left[a] == NONE || this.height[a] < 2) {
+			return a;
+		}
+		int b = this.left[a];
+		int c = this.right[a];
+		int skew = this.height[c] - this.height[b];
+		if (skew > 1) {
+			return this.rotateUp(a, c, b);
+		} else if (skew < -1) {
+			return this.rotateUp(a, b, c);
+		}
+		return a;
+	}
+
+	// Rotates the given tall child of a above it, giving a the shorter of the child's two children
+	// in exchange. Returns the tall child, which now stands where a stood.
+	// EFFECT: Modifies this' nodes
+	private int rotateUp(int a, int tall, int other) {
+		int f = this.left[tall];
+		int g = this.right[tall];
+		int grand = this.parent[a];
+		this.parent[tall] = grand;
+		this.parent[a] = tall;
+		if (grand == NONE) {
+			this.root = tall;
+		} else if (this.left[grand] == a) {
+			this.left[grand] = tall;
+		} else {
+			this.right[grand] = tall;
+		}
+		// The taller grandchild stays under tall; the shorter one moves under a beside other
+		int keep = this.height[f] > this.height[g] ? f : g;
+		int give = keep == f ? g : f;
+		this.left[tall] = a;
+		this.right[tall] = keep;
+		this.left[a] = other;
+		this.right[a] = give;
+		this.parent[give] = a;
+		this.fitChildren(a);
+		this.fitChildren(tall);
+		return tall;
+	}
+
+	// Recomputes the bounds and height of the given internal node from its children
+	// EFFECT: Modifies the node
+	private void fitChildren(int n) {
+		int l = this.left[n];
+		int r = this.right[n];
+		this.height[n] = 1 + Math.max(this.height[l], this.height[r]);
+		this.minX[n] = Math.min(this.minX[l], this.minX[r]);
+		this.minY[n] = Math.min(this.minY[l], this.minY[r]);
+		this.maxX[n] = Math.max(this.maxX[l], this.maxX[r]);
+		this.maxY[n] = Math.max(this.maxY[l], this.maxY[r]);
+	}
+
+	// Perimeter of the given node's bounds
+	private double perimeter(int n) {
+		return 2 * (this.maxX[n] - this.minX[n] + this.maxY[n] - this.minY[n]);
+	}
+
+	// Perimeter of the bounds covering both given nodes
+	private double unionPerimeter(int a, int b) {
+		double w = Math.max(this.maxX[a], this.maxX[b]) - Math.min(this.minX[a], this.minX[b]);
+		double h = Math.max(this.maxY[a], this.maxY[b]) - Math.min(this.minY[a], this.minY[b]);
+		return 2 * (w + h);
+	}
+
+	// STORAGE
+
+	// Takes a node from the free list, growing the arrays if none is free
+	// EFFECT: Modifies this' free list and possibly its arrays
+	private int allocate() {
+		if (this.freeList == NONE) {
+			this.grow(this.capacity * 2);
+		}
+		int n = this.freeList;
+		this.freeList = this.parent[n];
+		this.parent[n] = NONE;
+		this.left[n] = NONE;
+		this.right[n] = NONE;
+		this.height[n] = 0;
+		return n;
+	}
+
+	// Returns the given node to the free list
+	// EFFECT: Modifies this' free list
+	private void release(int n) {
+		this.items[n] = null;
+		this.height[n] = -1;
+		this.left[n] = NONE;
+		this.right[n] = NONE;
+		this.parent[n] = this.freeList;
+		this.freeList = n;
+	}
+
+	// Grows every array to the given capacity, adding the new nodes to the free list
+	// EFFECT: Modifies this' arrays and free list
+	private void grow(int next) {
+		this.minX = Arrays.copyOf(this.minX == null ? new double[0] : this.minX, next);
+		this.minY = Arrays.copyOf(this.minY == null ? new double[0] : this.minY, next);
+		this.maxX = Arrays.copyOf(this.maxX == null ? new double[0] : this.maxX, next);
+		this.maxY = Arrays.copyOf(this.maxY == null ? new double[0] : this.maxY, next);
+		this.parent = Arrays.copyOf(this.parent == null ? new int[0] : this.parent, next);
+		this.left = Arrays.copyOf(this.left == null ? new int[0] : this.left, next);
+		this.right = Arrays.copyOf(this.right == null ? new int[0] : this.right, next);
+		this.height = Arrays.copyOf(this.height == null ? new int[0] : this.height, next);
+		this.items = Arrays.copyOf(this.items == null ? new Object[0] : this.items, next);
+		int old = this.capacity;
+		this.capacity = next;
+		for (int n = next - 1; n >= old; n -= 1) {
+			this.release(n);
+		}
+	}
+
+	// Throws if the given handle is not an item in this tree
+	private void checkLeaf(int leaf) {
+		if (leaf < 0 || leaf >= this.capacity || this.height[leaf] != 0 || this.items[leaf] == null) {
+			throw new IllegalArgumentException("No item with the given handle.");
+		}
+	}
+}
@@ -0,0 +1,339 @@
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+// Where an enemy put to sleep far from every player is indexed, and the tick it fell asleep
+class Dormant {
+	final int proxy;
+	final int since;
+
+	Dormant(int proxy, int since) {
+		this.proxy = proxy;
+		this.since = since;
+	}
+}
+
+// Decides which enemies are close enough to a player to be played, so a tick costs about as much
+// as the action near the players rather than the size of the whole level. An enemy whose center
+// strays beyond the region around every player, by more than a small margin, falls asleep: it is
+// set aside in an index by where it stopped and is not ticked, does not fire, and does not
+// interact. When a player's region reaches it again it wakes and is first caught up on every
+// physics step it slept through, so its timers and patrol are where they would have been had it
+// never slept. Patrols and timers jump there in closed form and chasers node by node along their
+// path, so waking costs about the same however long the enemy slept. Enemies tick independently
+// of everything else, and nothing far away could have touched them, so this is the same as having
+// ticked them all along. A blast or shot reaching a sleeping enemy wakes it first. Sleeping
+// enemies are not drawn or sent to clients, since their positions are stale. Projectiles that
+// leave the region around every player are dropped, as there is nothing awake out there to hit.
+class ActivityManager {
+	// Half the width and height of the region around each player kept in play by default, large
+	// enough that a level the size of the window is always played in full
+	static final double HALF_WIDTH = IConstant.WINDX;
+	static final double HALF_HEIGHT = IConstant.WINDY;
+	// How much further than the region an enemy must be before it falls asleep, so one patrolling
+	// back and forth across the region's edge is not put to sleep and woken every few ticks
+	static final double MARGIN = 4 * IConstant.BLOCK_SIZE;
+
+	final double halfWidth;
+	final double halfHeight;
+	// The enemies in play that are awake, in the order of the game's list of enemies
+	ArrayList<IEnemy> awake;
+	// The awake enemies that think with a behavior tree, in the same order, listed again whenever
+	// the awake enemies change so the game's thinking never looks at any other enemy
+	final ArrayList<AIEnemy> thinkers;
+	// The sleeping enemies, found by where they sleep and by which enemy they are
+	private final AABBTree<IEnemy> dormant;
+	private final IdentityHashMap<IEnemy, Dormant> sleeping;
+	// The game's list of enemies and its size when last looked at, so changes to it are noticed
+	private ArrayList<IEnemy> seen;
+	private int seenSize;
+	// Scratch list for the results of index queries
+	private final ArrayList<IEnemy> found;
+	// Enemies put to sleep and woken, and physics steps caught up on waking, for measuring
+	long slept;
+	long woken;
+	long caughtUp;
+
+	// Keeps enemies within the given distances in pixels of a player awake, horizontally and
+	// vertically
+	ActivityManager(double halfWidth, double halfHeight) {
+		if (halfWidth <= 0 || halfHeight <= 0) {
+			throw new IllegalArgumentException("Activity region must have positive size.");
+		}
+		this.halfWidth = halfWidth;
+		this.halfHeight = halfHeight;
+		this.awake = new ArrayList<>();
+		this.thinkers = new ArrayList<>();
+		this.dormant = new AABBTree<>();
+		this.sleeping = new IdentityHashMap<>();
+		this.seen = null;
+		this.seenSize = 0;
+		this.found = new ArrayList<>();
+		this.slept = 0;
+		this.woken = 0;
+		this.caughtUp = 0;
+	}
+
+	// Convenience constructor keeps the default region in play
+	ActivityManager() {
+		this(ActivityManager.HALF_WIDTH, ActivityManager.HALF_HEIGHT);
+	}
+
+	// Number of enemies asleep
+	int sleepingCount() {
+		return this.sleeping.size();
+	}
+
+	// Is the given enemy asleep?
+	boolean asleep(IEnemy ie) {
+		return this.sleeping.containsKey(ie);
+	}
+
+	// The given enemies that are not asleep, in the same order, or the given list itself if none is
+	ArrayList<IEnemy> shown(ArrayList<IEnemy> enemies) {
+		if (this.sleeping.isEmpty()) {
+			return enemies;
+		}
+		ArrayList<IEnemy> out = new ArrayList<>();
+		for (IEnemy ie : enemies) {
+			if (!this.sleeping.containsKey(ie)) {
+				out.add(ie);
+			}
+		}
+		return out;
+	}
+
+	// Puts enemies that have left every player's region to sleep, wakes those a region has reached,
+	// and drops projectiles out of reach of every player. Called at the start of each tick.
+	// EFFECT: Modifies this, the woken enemies, and the game's weapon effects
+	void update(PlatformGame game) {
+		if (game.enemies != this.seen || game.enemies.size() != this.seenSize) {
+			this.resync(game);
+		}
+		this.sleepFar(game);
+		this.wakeNear(game);
+		this.dropFarEffects(game);
+	}
+
+	// Lines up this' enemies with the game's list after enemies were added, removed, or restored,
+	// forgetting sleeping enemies that are no longer in play
+	// EFFECT: Modifies this' awake and sleeping enemies
+	void resync(PlatformGame game) {
+		IdentityHashMap<IEnemy, Dormant> kept = new IdentityHashMap<>();
+		this.awake.clear();
+		for (IEnemy ie : game.enemies) {
+			Dormant d = this.sleeping.remove(ie);
+			if (d != null) {
+				kept.put(ie, d);
+			} else {
+				this.awake.add(ie);
+			}
+		}
+		for (Dormant d : this.sleeping.values()) {
+			this.dormant.remove(d.proxy);
+		}
+		this.sleeping.clear();
+		this.sleeping.putAll(kept);
+		this.seen = game.enemies;
+		this.seenSize = game.enemies.size();
+		this.listThinkers();
+	}
+
+	// Puts every awake enemy beyond every player's region, and its margin, to sleep
+	// EFFECT: Modifies this' awake and sleeping enemies
+	void sleepFar(PlatformGame game) {
+		boolean any = false;
+		for (int i = 0; i < this.awake.size(); i += 1) {
+			IEnemy ie = this.awake.get(i);
+			if (!this.inRegion(game, ie.getCollisionBody(), ActivityManager.MARGIN)) {
+				this.sleeping.put(ie, new Dormant(this.dormant.insert(ie, this.bounds(ie)), game.tickCount));
+				this.slept += 1;
+				any = true;
+			}
+		}
+		if (any) {
+			this.awake = new Util().filterOut(this.awake, (ie) -> this.sleeping.containsKey(ie));
+			this.listThinkers();
+		}
+	}
+
+	// Wakes every sleeping enemy within a player's region, catching it up on the steps it missed
+	// EFFECT: Modifies this' awake and sleeping enemies and the woken enemies
+	void wakeNear(PlatformGame game) {
+		if (this.sleeping.isEmpty()) {
+			return;
+		}
+		boolean any = false;
+		for (int p = 0; p < game.players.size(); p += 1) {
+			Rectangle pb = game.players.get(p).body;
+			this.found.clear();
+			this.dormant.query(pb.centerX() - this.halfWidth, pb.centerY() - this.halfHeight,
+					pb.centerX() + this.halfWidth, pb.centerY() + this.halfHeight, this.found);
+			for (int i = 0; i < this.found.size(); i += 1) {
+				IEnemy ie = this.found.get(i);
+				if (this.sleeping.containsKey(ie) && this.inRegion(game, ie.getCollisionBody(), 0)) {
+					this.wake(game, ie);
+					any = true;
+				}
+			}
+		}
+		if (any) {
+			this.relist(game);
+		}
+	}
+
+	// Wakes every sleeping enemy indexed within the given region, such as the reach of a blast or a
+	// shot, catching it up first so it is struck where it would be
+	// EFFECT: Modifies this' awake and sleeping enemies and the woken enemies
+	void wakeWithin(PlatformGame game, double x0, double y0, double x1, double y1) {
+		if (this.sleeping.isEmpty()) {
+			return;
+		}
+		this.found.clear();
+		this.dormant.query(x0, y0, x1, y1, this.found);
+		boolean any = false;
+		for (int i = 0; i < this.found.size(); i += 1) {
+			IEnemy ie = this.found.get(i);
+			if (this.sleeping.containsKey(ie)) {
+				this.wake(game, ie);
+				any = true;
+			}
+		}
+		if (any) {
+			this.relist(game);
+		}
+	}
+
+	// Lists the awake enemies again in the order of the game's list of enemies
+	// EFFECT: Modifies this' awake enemies
+	void relist(PlatformGame game) {
+		this.awake.clear();
+		for (IEnemy ie : game.enemies) {
+			if (!this.sleeping.containsKey(ie)) {
+				this.awake.add(ie);
+			}
+		}
+		this.listThinkers();
+	}
+
+	// Lists the awake enemies that think with a behavior tree again
+	// EFFECT: Modifies this' thinkers
+	void listThinkers() {
+		this.thinkers.clear();
+		for (int i = 0; i < this.awake.size(); i += 1) {
+			if (this.awake.get(i) instanceof AIEnemy) {
+				this.thinkers.add((AIEnemy) this.awake.get(i));
+			}
+		}
+	}
+
+	// Wakes the given sleeping enemy, catching it up on every physics step of every tick it slept
+	// through
+	// EFFECT: Modifies this' sleeping enemies and the given enemy
+	void wake(PlatformGame game, IEnemy ie) {
+		Dormant d = this.sleeping.remove(ie);
+		this.dormant.remove(d.proxy);
+		int steps = (game.tickCount - d.since) * game.timestep.substeps;
+		ie.catchUp(steps, game.timestep.step);
+		this.woken += 1;
+		this.caughtUp += steps;
+	}
+
+	// Drops every weapon effect beyond every player's region and its margin
+	// EFFECT: Modifies the game's weapon effects
+	void dropFarEffects(PlatformGame game) {
+		for (int i = 0; i < game.weaponEffects.size(); i += 1) {
+			if (!this.inRegion(game, game.weaponEffects.get(i).getCollisionBody(), ActivityManager.MARGIN)) {
+				game.weaponEffects = new Util().filterOut(game.weaponEffects,
+						(we) -> !this.inRegion(game, we.getCollisionBody(), ActivityManager.MARGIN));
+				return;
+			}
+		}
+	}
+
+	// The bounds the given enemy is indexed by while it sleeps
+	Rectangle bounds(IEnemy ie) {
+		return new Rectangle(ie.getCollisionBody().getPosition(), ie.getCollisionBody().getDimensions());
+	}
+
+	// Is the center of the given body within the region around some player, grown by the given margin?
+	boolean inRegion(PlatformGame game, ICollisionBody body, double margin) {
+		return this.inRegion(game, (body.left() + body.right()) / 2, (body.top() + body.bottom()) / 2, margin);
+	}
+	
+	// Are the given coordinates within the region around some player, grown by the given margin?
+	boolean inRegion(PlatformGame game, double x, double y, double margin) {
+		for (int p = 0; p < game.players.size(); p += 1) {
+			Rectangle pb = game.players.get(p).body;
+			if (Math.abs(x - pb.centerX()) <= this.halfWidth + margin
+					&& Math.abs(y - pb.centerY()) <= this.halfHeight + margin) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Records which enemies are asleep and since when, in the order of the game's enemies
+	// EFFECT: Appends to the given history
+	void saveState(PlatformGame game, RewindBuffer rb) {
+		rb.put(this.sleeping.size());
+		for (int i = 0; i < game.enemies.size(); i += 1) {
+			IEnemy ie = game.enemies.get(i);
+			Dormant d = this.sleeping.get(ie);
+			if (d != null) {
+				rb.putRef(ie);
+				rb.put(d.since);
+			}
+		}
+	}
+
+	// Puts back to sleep the enemies recorded asleep, once the game's enemies have been restored
+	// EFFECT: Modifies this and advances the history's read cursor
+	void restoreState(PlatformGame game, RewindBuffer rb) {
+		for (Dormant d : this.sleeping.values()) {
+			this.dormant.remove(d.proxy);
+		}
+		this.sleeping.clear();
+		int n = rb.getInt();
+		for (int i = 0; i < n; i += 1) {
+			IEnemy ie = (IEnemy) rb.getRef();
+			this.sleeping.put(ie, new Dormant(this.dormant.insert(ie, this.bounds(ie)), rb.getInt()));
+		}
+		this.seen = null;
+		this.resync(game);
+	}
+}
+
+// Measures how the average tick scales with the size of a synthetic world when every enemy is
+// played and when only those near the player are, printing one row per size
+class ActivityBench {
+	static final int[] SCALES = { 10, 100, 1000 };
+	static final int[] TICKS = { 1000, 300, 20 };
+	static final long SEED = 42;
+
+	public static void main(String[] args) {
+		System.out.println("scale\tenemies\tall awake us\tnear player us\tasleep");
+		for (int i = 0; i < SCALES.length; i += 1) {
+			Scenario scenario = Scenario.stockTimes(SCALES[i], SEED);
+			PlatformGame all = new ScenarioGenerator(scenario).generate(0, 0);
+			all.activity = new ActivityManager(Double.MAX_VALUE, Double.MAX_VALUE);
+			PlatformGame near = new ScenarioGenerator(scenario).generate(0, 0);
+			near.activity = new ActivityManager(IConstant.WINDX / 2, IConstant.WINDY / 2);
+			double allUs = new ActivityBench().time(all, TICKS[i]);
+			double nearUs = new ActivityBench().time(near, TICKS[i]);
+			System.out.printf("%d\t%d\t%.1f\t%.1f\t%d%n", SCALES[i], scenario.turrets + scenario.melee, allUs, nearUs,
+					near.activity.sleepingCount());
+		}
+	}
+
+	// Warms up, then returns the average microseconds per tick over the given number of ticks
+	double time(PlatformGame game, int ticks) {
+		for (int t = 0; t < ticks / 4; t += 1) {
+			game.tick();
+		}
+		long start = System.nanoTime();
+		for (int t = 0; t < ticks; t += 1) {
+			game.tick();
+		}
+		return (System.nanoTime() - start) / 1e3 / ticks;
+	}
+}
@@ -0,0 +1,241 @@
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Every image file the game draws and the sizes it draws each one at, so they can all be loaded
+// before the first frame rather than on first use
+class AssetManifest {
+	// Image file names, as components ask for them, with one entry per size drawn
+	final ArrayList<String> files;
+	final ArrayList<Integer> widths;
+	final ArrayList<Integer> heights;
+
+	AssetManifest() {
+		this.files = new ArrayList<>();
+		this.widths = new ArrayList<>();
+		this.heights = new ArrayList<>();
+	}
+
+	// The images of the standard game at the sizes its components draw them
+	static AssetManifest standard() {
+		AssetManifest m = new AssetManifest();
+		m.add("brash.jpg", Player.DIM);
+		m.add("brash-l.jpg", Player.DIM);
+		m.add("enemy.png", Player.DIM);
+		m.add("enemy-l.png", Player.DIM);
+		m.add("turret.png", IConstant.BLOCK_DIM.scaleVector(2.0));
+		m.add("p-ammo.png", IConstant.BLOCK_DIM);
+		return m;
+	}
+
+	// Adds the given file drawn at the given size in pixels
+	// EFFECT: Appends to this' entries
+	AssetManifest add(String fname, Vector2D size) {
+		this.files.add(fname);
+		this.widths.add((int) size.x);
+		this.heights.add((int) size.y);
+		return this;
+	}
+
+	// Number of entries
+	int size() {
+		return this.files.size();
+	}
+
+	// The distinct file names, in the order first listed
+	ArrayList<String> distinctFiles() {
+		ArrayList<String> result = new ArrayList<>();
+		for (String f : this.files) {
+			if (!result.contains(f)) {
+				result.add(f);
+			}
+		}
+		return result;
+	}
+}
+
+// Decodes and scales every image in a manifest on a small pool of threads, one file to a task, then
+// adds them all to a SpriteCache at once. Start it, do other startup work such as building the
+// game, then wait for it before painting the first frame.
+class AssetPreloader {
+	// Most threads decoding at once; decoding is brief and mostly bound by the processor
+	static final int MAX_THREADS = 4;
+
+	final SpriteCache sprites;
+	final AssetManifest manifest;
+	private ExecutorService pool;
+	private final ArrayList<Future<BufferedImage[]>> loads;
+	// When loading started and finished, in nanoseconds, for measuring
+	long startNanos;
+	long doneNanos;
+
+	AssetPreloader(SpriteCache sprites, AssetManifest manifest) {
+		this.sprites = sprites;
+		this.manifest = manifest;
+		this.pool = null;
+		this.loads = new ArrayList<>();
+		this.startNanos = 0;
+		this.doneNanos = 0;
+	}
+
+	// Starts loading every file in the manifest in the background, returning this
+	// EFFECT: Starts this' threads
+	AssetPreloader start() {
+		if (this.pool != null) {
+			throw new IllegalStateException("Preloading has already started.");
+		}
+		ArrayList<String> files = this.manifest.distinctFiles();
+		int threads = Math.max(1, Math.min(files.size(),
+				Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors())));
+		this.startNanos = System.nanoTime();
+		this.pool = Executors.newFixedThreadPool(threads, (r) -> {
+			Thread t = new Thread(r, "asset-preloader");
+			t.setDaemon(true);
+			return t;
+		});
+		for (String fname : files) {
+			this.loads.add(this.pool.submit(() -> this.load(fname)));
+		}
+		this.pool.shutdown();
+		return this;
+	}
+
+	// Decodes the given file and scales it to each size the manifest lists it at. The first image
+	// returned is the original, followed by the scaled copies in manifest order.
+	BufferedImage[] load(String fname) {
+		BufferedImage original = this.sprites.decode(fname);
+		BufferedImage[] result = new BufferedImage[1];
+		result[0] = original;
+		for (int i = 0; i < this.manifest.size(); i += 1) {
+			if (this.manifest.files.get(i).equals(fname)) {
+				result = Arrays.copyOf(result, result.length + 1);
+				result[result.length - 1] = this.sprites.scale(original, this.manifest.widths.get(i),
+						this.manifest.heights.get(i));
+			}
+		}
+		return result;
+	}
+
+	// Waits for every file to load and adds them to the cache, along with their javalib copies so
+	// no frame has to make one, returning how many nanoseconds loading took. Must be called on the
+	// thread that paints with the cache.
+	// EFFECT: Modifies this' cache
+	long await() {
+		if (this.pool == null) {
+			throw new IllegalStateException("Preloading has not started.");
+		}
+		ArrayList<String> files = this.manifest.distinctFiles();
+		for (int f = 0; f < files.size(); f += 1) {
+			BufferedImage[] images;
+			try {
+				images = this.loads.get(f).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while preloading images", e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException("Could not preload " + files.get(f), e.getCause());
+			}
+			for (int i = 1; i < images.length; i += 1) {
+				this.sprites.adopt(files.get(f), images[0], images[i]);
+				this.sprites.adoptImage(files.get(f), this.sprites.pixels(images[i]));
+			}
+		}
+		if (this.doneNanos == 0) {
+			this.doneNanos = System.nanoTime();
+		}
+		return this.doneNanos - this.startNanos;
+	}
+}
+
+// Measures time to the first painted frame of the standard level, headlessly, both loading images
+// the first time they are drawn and preloading them while the game is built. Cold starts pay for
+// loading classes and setting up image decoding, so each is measured in a fresh virtual machine,
+// alternating between the two ways. Warm starts are then measured within this one, after a run of
+// each way is thrown away.
+class StartupBench {
+	static final int ROUNDS = 9;
+	static final String LAZY = "lazy";
+	static final String PRELOAD = "preload";
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length > 0) {
+			StartupBench bench = new StartupBench();
+			System.out.println(args[0].equals(LAZY) ? bench.lazyFirstFrame() : bench.preloadedFirstFrame());
+			return;
+		}
+		long[] coldLazy = new long[ROUNDS];
+		long[] coldPreloaded = new long[ROUNDS];
+		for (int r = 0; r < ROUNDS; r += 1) {
+			if (r % 2 == 0) {
+				coldLazy[r] = new StartupBench().fresh(LAZY);
+				coldPreloaded[r] = new StartupBench().fresh(PRELOAD);
+			} else {
+				coldPreloaded[r] = new StartupBench().fresh(PRELOAD);
+				coldLazy[r] = new StartupBench().fresh(LAZY);
+			}
+		}
+		new StartupBench().lazyFirstFrame();
+		new StartupBench().preloadedFirstFrame();
+		long[] warmLazy = new long[ROUNDS];
+		long[] warmPreloaded = new long[ROUNDS];
+		for (int r = 0; r < ROUNDS; r += 1) {
+			if (r % 2 == 0) {
+				warmLazy[r] = new StartupBench().lazyFirstFrame();
+				warmPreloaded[r] = new StartupBench().preloadedFirstFrame();
+			} else {
+				warmPreloaded[r] = new StartupBench().preloadedFirstFrame();
+				warmLazy[r] = new StartupBench().lazyFirstFrame();
+			}
+		}
+		System.out.println("path\tcold median ms\twarm median ms");
+		System.out.printf("load on first draw\t%.1f\t%.1f%n", new StartupBench().median(coldLazy) / 1e6,
+				new StartupBench().median(warmLazy) / 1e6);
+		System.out.printf("preload\t%.1f\t%.1f%n", new StartupBench().median(coldPreloaded) / 1e6,
+				new StartupBench().median(warmPreloaded) / 1e6);
+	}
+
+	// Nanoseconds to the first frame painted the given way, measured in a fresh virtual machine
+	// running this bench with the same class path and working directory
+	long fresh(String way) throws IOException, InterruptedException {
+		String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+		Process run = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "StartupBench", way)
+				.redirectErrorStream(true).start();
+		String out = new String(run.getInputStream().readAllBytes()).trim();
+		if (run.waitFor() != 0) {
+			throw new RuntimeException("Startup run failed: " + out);
+		}
+		return Long.parseLong(out);
+	}
+
+	// Nanoseconds to build the game and paint its first frame, loading images as they are drawn
+	long lazyFirstFrame() {
+		long start = System.nanoTime();
+		PlatformGame game = new PlatformGame();
+		new Java2DRenderer(new SpriteCache()).renderToImage(game);
+		return System.nanoTime() - start;
+	}
+
+	// Nanoseconds to build the game while preloading its images, then paint its first frame
+	long preloadedFirstFrame() {
+		long start = System.nanoTime();
+		SpriteCache sprites = new SpriteCache();
+		AssetPreloader preloader = new AssetPreloader(sprites, AssetManifest.standard()).start();
+		PlatformGame game = new PlatformGame();
+		preloader.await();
+		new Java2DRenderer(sprites).renderToImage(game);
+		return System.nanoTime() - start;
+	}
+
+	// The median of the given times
+	long median(long[] times) {
+		long[] sorted = Arrays.copyOf(times, times.length);
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+}
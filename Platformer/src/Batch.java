@@ -0,0 +1,294 @@
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Something that decides a player's input each tick, such as a scripted bot
+interface IInputPolicy {
+	// Sends the input for the coming tick of the given game to the given sink
+	// EFFECT: Possibly modifies this' own state
+	void act(PlatformGame game, IInputSink input);
+}
+
+// A scripted bot that mostly runs right, jumps now and then, and shoots at an awake enemy, with
+// its choices drawn from its own seeded generator
+class RandomPolicy implements IInputPolicy {
+	final Random rand;
+
+	RandomPolicy(long seed) {
+		this.rand = new Random(seed);
+	}
+
+	// Sends a move, and sometimes a jump or a shot, for the coming tick
+	// EFFECT: Advances this' generator
+	public void act(PlatformGame game, IInputSink input) {
+		if (this.rand.nextInt(30) == 0) {
+			input.onInput(InputQueue.MOVE, this.rand.nextInt(4) == 0 ? 0 : 1, 0, 0);
+		}
+		if (this.rand.nextInt(40) == 0) {
+			input.onInput(InputQueue.JUMP, 0, 0, 0);
+		}
+		ArrayList<IEnemy> awake = game.activity.awake;
+		if (this.rand.nextInt(25) == 0 && awake.size() > 0) {
+			Vector2D target = awake.get(this.rand.nextInt(awake.size())).getCollisionBody().center();
+			input.onInput(InputQueue.SWITCH, Pistol.INV, 0, 0);
+			input.onInput(InputQueue.FIRE, 0, (int) target.x - game.cameraX(), (int) target.y);
+		}
+	}
+}
+
+// Runs many independent games side by side without rendering, each driven by its own policy, and
+// reports what each player observes and the reward it earns. Games are split into contiguous
+// shards, one per thread, and each game is only ever touched by its shard's thread. Games keep no
+// particles and no rewind history, and nothing is shared between them, so every game plays out
+// exactly as it would alone. A game whose player dies, or whose episode runs out of ticks, is
+// replaced by a fresh one with the next seed.
+class BatchSimulator {
+	// Numbers observed per game: the player's center as a fraction of the window, its velocity in
+	// blocks per second, its health, whether it is grounded, the offset to the nearest awake enemy
+	// in blocks, and the number of enemies left
+	static final int OBS_SIZE = 9;
+	// Reward for each block moved right, each enemy killed, each point of health lost, and dying
+	static final float PROGRESS_REWARD = .1f;
+	static final float KILL_REWARD = 5;
+	static final float HIT_PENALTY = 2;
+	static final float DEATH_PENALTY = 10;
+
+	final int worlds;
+	final int episodeTicks;
+	final long seed;
+	// Make the game and the policy for an episode from its seed, so every episode is laid out and
+	// played differently yet can be played again exactly from its seed
+	final IFunc<Long, PlatformGame> makeWorld;
+	final IFunc<Long, IInputPolicy> makePolicy;
+	private final PlatformGame[] games;
+	private final IInputPolicy[] policies;
+	// Episodes begun and ticks played in the current one, per game
+	final int[] episodes;
+	final int[] ticks;
+	// Results of the last tick per game: observations in rows of OBS_SIZE, the reward, and whether
+	// the episode ended, in which case the observation is of the episode's last tick
+	final float[] observations;
+	final float[] rewards;
+	final boolean[] done;
+	// Reward earned so far in the current episode, per game
+	final float[] returns;
+	// What rewards are measured against, per game
+	private final float[] lastX;
+	private final int[] lastHealth;
+	private final int[] lastEnemies;
+	private final ExecutorService pool;
+	// One task per shard for stepping in lockstep, and the number of ticks each runs when independent
+	private final ArrayList<Callable<Object>> shards;
+	private int shardTicks;
+	// Total ticks played by every game, for measuring
+	long totalTicks;
+
+	BatchSimulator(int worlds, int threads, int episodeTicks, long seed, IFunc<Long, PlatformGame> makeWorld,
+			IFunc<Long, IInputPolicy> makePolicy) {
+		if (worlds <= 0 || threads <= 0 || episodeTicks <= 0) {
+			throw new IllegalArgumentException("Worlds, threads, and episode length must be positive.");
+		}
+		this.worlds = worlds;
+		this.episodeTicks = episodeTicks;
+		this.seed = seed;
+		this.makeWorld = makeWorld;
+		this.makePolicy = makePolicy;
+		this.games = new PlatformGame[worlds];
+		this.policies = new IInputPolicy[worlds];
+		this.episodes = new int[worlds];
+		this.ticks = new int[worlds];
+		this.observations = new float[worlds * OBS_SIZE];
+		this.rewards = new float[worlds];
+		this.done = new boolean[worlds];
+		this.returns = new float[worlds];
+		this.lastX = new float[worlds];
+		this.lastHealth = new int[worlds];
+		this.lastEnemies = new int[worlds];
+		this.shardTicks = 1;
+		this.totalTicks = 0;
+
+		int shardCount = Math.min(threads, worlds);
+		this.pool = Executors.newFixedThreadPool(shardCount, (r) -> {
+			Thread t = new Thread(r, "batch-simulator");
+			t.setDaemon(true);
+			return t;
+		});
+		this.shards = new ArrayList<>();
+		for (int s = 0; s < shardCount; s += 1) {
+			int from = (int) ((long) worlds * s / shardCount);
+			int to = (int) ((long) worlds * (s + 1) / shardCount);
+			this.shards.add(() -> {
+				for (int w = from; w < to; w += 1) {
+					// Games are first made by the shard that plays them, in parallel
+					if (this.games[w] == null) {
+						this.reset(w);
+					}
+					for (int t = 0; t < this.shardTicks; t += 1) {
+						this.stepWorld(w);
+					}
+				}
+				return null;
+			});
+		}
+		this.run(0);
+	}
+
+	// Convenience constructor runs endless levels played by scripted bots, one thread per processor,
+	// each level laid out and each bot's choices drawn from its episode's seed
+	BatchSimulator(int worlds, int episodeTicks, long seed) {
+		this(worlds, Runtime.getRuntime().availableProcessors(), episodeTicks, seed,
+				(s) -> new EndlessGenerator(s).start(0, 0), (s) -> new RandomPolicy(s));
+	}
+
+	// Advances every game one tick, all finishing before any starts the next
+	// EFFECT: Modifies every game, policy, and result
+	void step() {
+		this.run(1);
+	}
+
+	// Advances every game the given number of ticks, each shard running each of its games through
+	// all of them without waiting on the others. Results are of each game's last tick.
+	// EFFECT: Modifies every game, policy, and result
+	void run(int ticks) {
+		this.shardTicks = ticks;
+		try {
+			for (Future<Object> f : this.pool.invokeAll(this.shards)) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while simulating", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("A simulated game failed", e.getCause());
+		}
+		this.totalTicks += (long) ticks * this.worlds;
+	}
+
+	// Stops the threads
+	// EFFECT: Shuts down this' pool
+	void close() {
+		this.pool.shutdownNow();
+	}
+
+	// The game being played in the given slot
+	PlatformGame game(int w) {
+		return this.games[w];
+	}
+
+	// The seed of the given game's given episode
+	long episodeSeed(int w, int episode) {
+		long h = this.seed + 0x9E3779B97F4A7C15L * (w + 1) + 0xBF58476D1CE4E5B9L * episode;
+		h = (h ^ (h >>> 31)) * 0x94D049BB133111EBL;
+		return h ^ (h >>> 29);
+	}
+
+	// Starts a fresh episode in the given slot
+	// EFFECT: Modifies the slot's game, policy, and what rewards are measured against
+	void reset(int w) {
+		long s = this.episodeSeed(w, this.episodes[w]);
+		this.games[w] = this.makeWorld.apply(s);
+		this.policies[w] = this.makePolicy.apply(s);
+		this.episodes[w] += 1;
+		this.ticks[w] = 0;
+		this.returns[w] = 0;
+		Player pl = this.games[w].player;
+		this.lastX[w] = (float) pl.getCollisionBody().center().x;
+		this.lastHealth[w] = pl.health.current;
+		this.lastEnemies[w] = this.games[w].enemies.size();
+		this.observe(w);
+	}
+
+	// Plays one tick of the given game, records its reward and observation, and starts the next
+	// episode first if the last one ended
+	// EFFECT: Modifies the slot's game, policy, and results
+	void stepWorld(int w) {
+		if (this.done[w]) {
+			this.reset(w);
+		}
+		PlatformGame game = this.games[w];
+		this.policies[w].act(game, game);
+		game.tick();
+		this.ticks[w] += 1;
+
+		Player pl = game.player;
+		float x = (float) pl.getCollisionBody().center().x;
+		float reward = PROGRESS_REWARD * (x - this.lastX[w]) / IConstant.BLOCK_SIZE
+				+ KILL_REWARD * Math.max(0, this.lastEnemies[w] - game.enemies.size())
+				- HIT_PENALTY * Math.max(0, this.lastHealth[w] - pl.health.current);
+		boolean dead = pl.health.dead();
+		if (dead) {
+			reward -= DEATH_PENALTY;
+		}
+		this.lastX[w] = x;
+		this.lastHealth[w] = pl.health.current;
+		this.lastEnemies[w] = game.enemies.size();
+		this.rewards[w] = reward;
+		this.returns[w] += reward;
+		this.done[w] = dead || this.ticks[w] >= this.episodeTicks;
+		this.observe(w);
+	}
+
+	// Writes what the given game's player observes into its row of observations
+	// EFFECT: Modifies this' observations
+	void observe(int w) {
+		PlatformGame game = this.games[w];
+		Player pl = game.player;
+		Vector2D c = pl.getCollisionBody().center();
+		int row = w * OBS_SIZE;
+		this.observations[row] = (float) (c.x / IConstant.WINDX);
+		this.observations[row + 1] = (float) (c.y / IConstant.WINDY);
+		this.observations[row + 2] = (float) (pl.velocity.x / IConstant.BLOCK_SIZE);
+		this.observations[row + 3] = (float) (pl.velocity.y / IConstant.BLOCK_SIZE);
+		this.observations[row + 4] = pl.health.current;
+		this.observations[row + 5] = pl.grounded ? 1 : 0;
+		double bestDist = Double.POSITIVE_INFINITY;
+		double dx = 0;
+		double dy = 0;
+		for (int e = 0; e < game.enemies.size(); e += 1) {
+			if (game.activity.asleep(game.enemies.get(e))) {
+				continue;
+			}
+			Vector2D ec = game.enemies.get(e).getCollisionBody().center();
+			double d = (ec.x - c.x) * (ec.x - c.x) + (ec.y - c.y) * (ec.y - c.y);
+			if (d < bestDist) {
+				bestDist = d;
+				dx = ec.x - c.x;
+				dy = ec.y - c.y;
+			}
+		}
+		this.observations[row + 6] = (float) (dx / IConstant.BLOCK_SIZE);
+		this.observations[row + 7] = (float) (dy / IConstant.BLOCK_SIZE);
+		this.observations[row + 8] = game.enemies.size();
+	}
+}
+
+// Measures aggregate ticks per second of many endless levels played by scripted bots, stepping in
+// lockstep and independently, printing one row per way. Each level and its bot are seeded from
+// their episode's seed.
+class BatchBench {
+	static final int WORLDS = 1000;
+	static final int TICKS = 200;
+	static final int EPISODE_TICKS = 3000;
+	static final long SEED = 42;
+
+	public static void main(String[] args) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		System.out.println("mode\tworlds\tthreads\tticks/sec");
+		BatchSimulator sim = new BatchSimulator(WORLDS, EPISODE_TICKS, SEED);
+		sim.run(TICKS / 4);
+		long start = System.nanoTime();
+		for (int t = 0; t < TICKS; t += 1) {
+			sim.step();
+		}
+		System.out.printf("lockstep\t%d\t%d\t%.0f%n", WORLDS, threads, WORLDS * TICKS / ((System.nanoTime() - start) / 1e9));
+		start = System.nanoTime();
+		sim.run(TICKS);
+		System.out.printf("independent\t%d\t%d\t%.0f%n", WORLDS, threads,
+				WORLDS * TICKS / ((System.nanoTime() - start) / 1e9));
+		sim.close();
+	}
+}
@@ -0,0 +1,512 @@
+import java.awt.Graphics2D;
+import java.util.ArrayList;
+
+import javalib.worldimages.Posn;
+import javalib.worldimages.WorldImage;
+
+// What an enemy thinking with a behavior tree knows about the world while it thinks, reused from
+// one enemy to the next
+class AIContext {
+	// The player the thinking enemy acts against
+	Player target;
+	// Number of behavior nodes run since this was last reset, which is what thinking is budgeted by
+	int nodes;
+
+	AIContext() {
+		this.target = null;
+		this.nodes = 0;
+	}
+}
+
+// A node of a behavior tree. Nodes are immutable once built, so one tree is shared by every enemy
+// that thinks with it, and everything an enemy remembers between thoughts is on its blackboard.
+abstract class ABehavior {
+	static final int SUCCESS = 0;
+	static final int FAILURE = 1;
+	static final int RUNNING = 2;
+
+	// Runs this node for the given enemy, counting it against the context's budget, and returns
+	// whether it succeeded, failed, or is still under way
+	// EFFECT: Modifies the enemy's blackboard and the context's count of nodes run
+	int run(AIEnemy self, AIContext ctx) {
+		ctx.nodes += 1;
+		return this.evaluate(self, ctx);
+	}
+
+	// Does this node's work, returning SUCCESS, FAILURE, or RUNNING
+	// EFFECT: Possibly modifies the enemy's blackboard and the context's count of nodes run
+	abstract int evaluate(AIEnemy self, AIContext ctx);
+}
+
+// Runs its children in order until one does not succeed, succeeding only if all of them do
+class BehaviorSequence extends ABehavior {
+	final ABehavior[] children;
+
+	BehaviorSequence(ABehavior... children) {
+		if (children.length == 0) {
+			throw new IllegalArgumentException("A sequence needs at least one child.");
+		}
+		this.children = children;
+	}
+
+	// Stops at the first child that fails or is still running, with its result
+	int evaluate(AIEnemy self, AIContext ctx) {
+		for (int i = 0; i < this.children.length; i += 1) {
+			int status = this.children[i].run(self, ctx);
+			if (status != SUCCESS) {
+				return status;
+			}
+		}
+		return SUCCESS;
+	}
+}
+
+// Runs its children in order until one does not fail, failing only if all of them do
+class BehaviorSelector extends ABehavior {
+	final ABehavior[] children;
+
+	BehaviorSelector(ABehavior... children) {
+		if (children.length == 0) {
+			throw new IllegalArgumentException("A selector needs at least one child.");
+		}
+		this.children = children;
+	}
+
+	// Stops at the first child that succeeds or is still running, with its result
+	int evaluate(AIEnemy self, AIContext ctx) {
+		for (int i = 0; i < this.children.length; i += 1) {
+			int status = this.children[i].run(self, ctx);
+			if (status != FAILURE) {
+				return status;
+			}
+		}
+		return FAILURE;
+	}
+}
+
+// Succeeds if the target's center is within the given distance of the enemy's center
+class TargetWithin extends ABehavior {
+	final double range; // In pixels
+
+	TargetWithin(double range) {
+		this.range = range;
+	}
+
+	int evaluate(AIEnemy self, AIContext ctx) {
+		double dx = ctx.target.body.centerX() - self.body.centerX();
+		double dy = ctx.target.body.centerY() - self.body.centerY();
+		return dx * dx + dy * dy <= this.range * this.range ? SUCCESS : FAILURE;
+	}
+}
+
+// Succeeds if nothing solid lies between the enemy's center and the target's
+class TargetInSight extends ABehavior {
+	int evaluate(AIEnemy self, AIContext ctx) {
+		Rectangle aim = ctx.target.body;
+		return self.sight.canSee(self.sightLine, self.body.centerX(), self.body.centerY(), aim.centerX(),
+				aim.centerY()) ? SUCCESS : FAILURE;
+	}
+}
+
+// Stops the enemy where it is
+class Halt extends ABehavior {
+	int evaluate(AIEnemy self, AIContext ctx) {
+		self.board[AIEnemy.VX] = 0;
+		return SUCCESS;
+	}
+}
+
+// Walks the enemy back and forth along its patrol at the given speed, which never finishes
+class Patrol extends ABehavior {
+	final double speed; // In pixels per second
+
+	Patrol(double speed) {
+		this.speed = speed;
+	}
+
+	int evaluate(AIEnemy self, AIContext ctx) {
+		self.board[AIEnemy.VX] = self.board[AIEnemy.HEADING] * this.speed;
+		return RUNNING;
+	}
+}
+
+// Turns the enemy's aim toward the target, succeeding once it points close enough to fire
+class AimAtTarget extends ABehavior {
+	static final double TOLERANCE = 5; // In degrees
+
+	int evaluate(AIEnemy self, AIContext ctx) {
+		double goal = Angle.toDegrees(Math.atan2(ctx.target.body.centerY() - self.body.centerY(),
+				ctx.target.body.centerX() - self.body.centerX()));
+		self.board[AIEnemy.AIM_GOAL] = goal;
+		return Math.abs(AIEnemy.turnBetween(self.board[AIEnemy.AIM], goal)) <= TOLERANCE ? SUCCESS : RUNNING;
+	}
+}
+
+// Has the enemy fire along its aim whenever it is reloaded, until it next thinks
+class Fire extends ABehavior {
+	int evaluate(AIEnemy self, AIContext ctx) {
+		self.board[AIEnemy.FIRE] = 1;
+		return SUCCESS;
+	}
+}
+
+// The behavior trees of the stock enemies that think with one, each built once and shared
+class Behaviors {
+	static final double GUNNER_RANGE = 30 * IConstant.BLOCK_SIZE;
+	static final double GUNNER_SPEED = Player.HORIZ_SPEED / 2;
+	static final double TURRET_RANGE = 40 * IConstant.BLOCK_SIZE;
+
+	// Stands and shoots at a player in range and in sight, and otherwise patrols
+	static final ABehavior GUNNER = new BehaviorSelector(
+			new BehaviorSequence(new TargetWithin(GUNNER_RANGE), new TargetInSight(), new Halt(), new AimAtTarget(),
+					new Fire()),
+			new Patrol(GUNNER_SPEED));
+
+	// Swings round toward a player in range and in sight, and shoots once it points at them
+	static final ABehavior ROTATING_TURRET = new BehaviorSequence(new TargetWithin(TURRET_RANGE), new TargetInSight(),
+			new AimAtTarget(), new Fire());
+}
+
+// An enemy whose decisions are made by a shared behavior tree. Thinking only sets what it intends
+// on its blackboard: how fast to walk, where to aim, and whether to fire. Each physics step carries
+// those intentions out, walking within its patrol, turning its aim at its turn rate, and firing
+// when reloaded, so it acts every step however seldom it gets to think.
+class AIEnemy extends AGameComponent implements IEnemy {
+	static final double RELOAD = 1.5; // In seconds
+	// Slots of the blackboard: intended horizontal speed in pixels per second, direction of patrol
+	// as 1 or -1, aim and intended aim in degrees clockwise from the right, whether to fire as 1 or
+	// 0, the left and right limits of the patrol in pixels, and turn rate in degrees per second
+	static final int VX = 0;
+	static final int HEADING = 1;
+	static final int AIM = 2;
+	static final int AIM_GOAL = 3;
+	static final int FIRE = 4;
+	static final int PATROL_LEFT = 5;
+	static final int PATROL_RIGHT = 6;
+	static final int TURN_RATE = 7;
+	static final int SLOTS = 8;
+
+	final ABehavior tree;
+	final double[] board;
+	Health health;
+	TimeTemporary reload;
+	LineOfSight sight;
+	// This enemy's remembered view of its target
+	SightLine sightLine;
+	ParticleSystem particles;
+	// Sprites facing right and left
+	final String sprite;
+	final String spriteLeft;
+
+	// Initializes this with the given top-left block and size, thinking with the given tree,
+	// patrolling between the given columns in pixels and turning its aim at the given rate in
+	// degrees per second, looking through the geometry with the given line of sight service and
+	// emitting hit effects into the given particle system
+	AIEnemy(Posn topLeft, Vector2D dim, ABehavior tree, double patrolLeft, double patrolRight, double turnRate,
+			int health, String sprite, String spriteLeft, LineOfSight sight, ParticleSystem particles) {
+		super(new Util().topLFromBlock(topLeft), dim, CollisionLayers.ENEMY);
+		if (patrolLeft > this.body.left() || patrolRight < this.body.left() || turnRate <= 0) {
+			throw new IllegalArgumentException("Patrol must include the start and turn rate must be positive.");
+		}
+		this.tree = tree;
+		this.board = new double[SLOTS];
+		this.board[HEADING] = 1;
+		this.board[PATROL_LEFT] = patrolLeft;
+		this.board[PATROL_RIGHT] = patrolRight;
+		this.board[TURN_RATE] = turnRate;
+		this.health = new Health(health);
+		this.reload = new TimeTemporary(RELOAD);
+		this.sight = sight;
+		this.sightLine = new SightLine();
+		this.particles = particles;
+		this.sprite = sprite;
+		this.spriteLeft = spriteLeft;
+	}
+
+	// A player-sized enemy that patrols between the given blocks and shoots at players it sees
+	static AIEnemy gunner(Posn start, Posn finish, LineOfSight sight, ParticleSystem particles) {
+		return new AIEnemy(start, Player.DIM, Behaviors.GUNNER, new Util().topLFromBlock(start).x,
+				new Util().topLFromBlock(finish).x, Double.POSITIVE_INFINITY, 2, "enemy.png", "enemy-l.png", sight,
+				particles);
+	}
+
+	// A turret fixed at the given block that swings round to follow players it sees
+	static AIEnemy rotatingTurret(Posn topLeft, LineOfSight sight, ParticleSystem particles) {
+		double x = new Util().topLFromBlock(topLeft).x;
+		return new AIEnemy(topLeft, IConstant.BLOCK_DIM.scaleVector(2.0), Behaviors.ROTATING_TURRET, x, x, 90, 3,
+				"turret.png", "turret.png", sight, particles);
+	}
+
+	// The clockwise turn in degrees, between -180 and 180, that takes the first angle to the second
+	static double turnBetween(double from, double to) {
+		return ((to - from) % 360 + 540) % 360 - 180;
+	}
+
+	// Faces the way it walks, or the way it aims while standing
+	boolean facingRight() {
+		if (this.board[VX] != 0) {
+			return this.board[VX] > 0;
+		}
+		return Math.abs(this.board[AIM]) <= 90;
+	}
+
+	// Renders this with its sprite facing the way it faces
+	WorldImage render() {
+		return this.body.render(this.facingRight() ? this.sprite : this.spriteLeft);
+	}
+
+	// Paints the same sprite straight onto the given graphics
+	public void paintOnto(Graphics2D g, SpriteCache sprites) {
+		this.body.paint(g, sprites, this.facingRight() ? this.sprite : this.spriteLeft);
+	}
+
+	// This looks one way facing right and another facing left
+	public int look() {
+		return this.facingRight() ? 1 : 0;
+	}
+
+	// Decides what to do next by running this' tree against the context's target
+	// EFFECT: Modifies this' blackboard and the context's count of nodes run
+	void think(AIContext ctx) {
+		this.board[FIRE] = 0;
+		this.tree.run(this, ctx);
+	}
+
+	// Carries out this' intentions: walks, turning back at the ends of its patrol, turns its aim
+	// toward where it means to aim, and counts down its reload
+	// EFFECT: Modifies this' position, blackboard, and reload
+	public void tick(double dt) {
+		double x = this.body.left() + this.board[VX] * dt;
+		if (x < this.board[PATROL_LEFT] || x > this.board[PATROL_RIGHT]) {
+			x = Math.max(this.board[PATROL_LEFT], Math.min(this.board[PATROL_RIGHT], x));
+			this.board[HEADING] = -this.board[HEADING];
+			this.board[VX] = -this.board[VX];
+		}
+		this.body.moveTo(x, this.body.top());
+		double turn = AIEnemy.turnBetween(this.board[AIM], this.board[AIM_GOAL]);
+		double most = this.board[TURN_RATE] * dt;
+		this.board[AIM] += Math.max(-most, Math.min(most, turn));
+		if (!this.reload.finished()) {
+			this.reload.countDown(dt);
+		}
+	}
+
+	// Moves straight to about where the missed steps would have left it, without playing them: a
+	// patrol at constant speed bouncing between its ends is a triangle wave of the distance walked,
+	// the aim turns toward its goal by at most the rate for the time slept, and the reload counts
+	// down by that time. Stepping stops short at each end, so the two differ by up to a step's walk
+	// per turn. Waking costs the same however long this slept.
+	// EFFECT: Modifies this' position, blackboard, and reload
+	public void catchUp(int steps, double step) {
+		if (steps <= 0) {
+			return;
+		}
+		double seconds = steps * step;
+		double width = this.board[PATROL_RIGHT] - this.board[PATROL_LEFT];
+		double speed = Math.abs(this.board[VX]);
+		if (speed > 0 && width > 0) {
+			// Distance along the unfolded patrol, where the first half of each lap heads right
+			double along = this.body.left() - this.board[PATROL_LEFT];
+			if (this.board[VX] < 0) {
+				along = 2 * width - along;
+			}
+			along = (along + speed * seconds) % (2 * width);
+			boolean right = along <= width;
+			this.body.moveTo(this.board[PATROL_LEFT] + (right ? along : 2 * width - along), this.body.top());
+			this.board[VX] = right ? speed : -speed;
+			this.board[HEADING] = right ? 1 : -1;
+		}
+		double turn = AIEnemy.turnBetween(this.board[AIM], this.board[AIM_GOAL]);
+		double most = this.board[TURN_RATE] * seconds;
+		this.board[AIM] += Math.max(-most, Math.min(most, turn));
+		if (!this.reload.finished()) {
+			this.reload.countDown(seconds);
+		}
+	}
+
+	// Should remove this enemy if it is dead
+	public boolean shouldRemove() {
+		return this.health.dead();
+	}
+
+	// Lowers health of this by amount, throwing off sparks
+	// EFFECT: Modifies this' health and particle system
+	public void reduceHealth(int amt) {
+		if (amt < 0) {
+			throw new IllegalArgumentException("Cannot take negative damage.");
+		}
+		this.health.adjust(-amt);
+		this.particles.burst(ParticleSystem.SPARK, this.body.center(), 10 * amt, 200, .3);
+	}
+
+	// Reduces player health by 1 if collision
+	// EFFECT: modifies player health
+	void interactPlayerOnCollision(Player pl) {
+		pl.onHit(1);
+	}
+
+	// Adds 1 shot fired along this' aim if it last decided to fire and is reloaded. Whom to shoot
+	// was settled when it last thought, but a target that has since gone out of sight is given up
+	// on until this next thinks, so it never fires blind between thoughts.
+	// EFFECT: Modifies the given list and this' blackboard, and resets this' reload if shot is fired
+	public void fireAt(Player target, ArrayList<IWeaponEffect> out) {
+		if (this.board[FIRE] != 0 && !this.sight.canSee(this.sightLine, this.body.centerX(), this.body.centerY(),
+				target.body.centerX(), target.body.centerY())) {
+			this.board[FIRE] = 0;
+		}
+		if (this.board[FIRE] != 0 && this.reload.finished()) {
+			out.add(new EnemyBullet(this.body.center(), Vector2D.polarToRectangular(1, this.board[AIM])));
+			this.reload.restart(RELOAD);
+		}
+	}
+
+	// Records position, blackboard, reload, and health
+	// EFFECT: Appends to the given history
+	public void saveState(RewindBuffer rb) {
+		super.saveState(rb);
+		for (int i = 0; i < SLOTS; i += 1) {
+			rb.put(this.board[i]);
+		}
+		rb.put(this.reload.secondsLeft());
+		rb.put(this.health.current);
+	}
+
+	// Restores position, blackboard, reload, and health
+	// EFFECT: Modifies this and advances the history's read cursor
+	public void restoreState(RewindBuffer rb) {
+		super.restoreState(rb);
+		for (int i = 0; i < SLOTS; i += 1) {
+			this.board[i] = rb.get();
+		}
+		this.reload = new TimeTemporary(rb.get());
+		this.health = new Health(rb.getInt(), this.health.max);
+	}
+}
+
+// Spreads the thinking of awake behavior tree enemies across ticks. Each tick it picks up where it
+// left off in the activity manager's list of them and has each think in turn, until the nodes run reach its
+// budget or every awake enemy has thought. However many such enemies are in play, a tick spends
+// about the same on thinking; with more of them, each just thinks less often, and in between keeps
+// carrying out what it last decided. The enemy that reaches the budget finishes its thought, so a
+// tick may run over by at most one tree.
+class BehaviorScheduler {
+	// Behavior nodes run per tick unless chosen otherwise
+	static final int BUDGET = 256;
+
+	final int budget;
+	private final AIContext ctx;
+	// Position in the awake behavior tree enemies to resume thinking from
+	int cursor;
+	// Thoughts had and behavior nodes run, for measuring
+	long thoughts;
+	long nodesRun;
+
+	BehaviorScheduler(int budget) {
+		if (budget <= 0) {
+			throw new IllegalArgumentException("Thinking budget must be positive.");
+		}
+		this.budget = budget;
+		this.ctx = new AIContext();
+		this.cursor = 0;
+		this.thoughts = 0;
+		this.nodesRun = 0;
+	}
+
+	// Convenience constructor runs the standard budget
+	BehaviorScheduler() {
+		this(BehaviorScheduler.BUDGET);
+	}
+
+	// Has the next awake behavior tree enemies think, each against the player nearest it, until
+	// this tick's budget is spent or all have thought. Called at the start of each tick.
+	// EFFECT: Modifies this and the enemies that think
+	void update(PlatformGame game) {
+		ArrayList<AIEnemy> thinkers = game.activity.thinkers;
+		int n = thinkers.size();
+		this.ctx.nodes = 0;
+		for (int seen = 0; seen < n && this.ctx.nodes < this.budget; seen += 1) {
+			if (this.cursor >= n) {
+				this.cursor = 0;
+			}
+			AIEnemy ai = thinkers.get(this.cursor);
+			this.cursor += 1;
+			this.ctx.target = game.nearestPlayer(ai.body.centerX(), ai.body.centerY());
+			ai.think(this.ctx);
+			this.thoughts += 1;
+		}
+		this.nodesRun += this.ctx.nodes;
+	}
+
+	// Records where thinking resumes
+	// EFFECT: Appends to the given history
+	void saveState(RewindBuffer rb) {
+		rb.put(this.cursor);
+	}
+
+	// Restores where thinking resumes
+	// EFFECT: Modifies this and advances the history's read cursor
+	void restoreState(RewindBuffer rb) {
+		this.cursor = rb.getInt();
+	}
+}
+
+// Measures how long thinking takes per tick, on average and at worst, in a level crowded with
+// gunners, under the standard budget and with every gunner thinking every tick, printing one row
+// per crowd size
+class BehaviorBench {
+	static final int[] CROWDS = { 100, 500, 2000 };
+	static final int TICKS = 300;
+
+	public static void main(String[] args) {
+		System.out.println("gunners\tbudget\tthink mean us\tthink worst us\ttick mean us\tthoughts/tick");
+		for (int i = 0; i < CROWDS.length; i += 1) {
+			for (int budget : new int[] { BehaviorScheduler.BUDGET, Integer.MAX_VALUE }) {
+				new BehaviorBench().report(CROWDS[i], budget);
+			}
+		}
+	}
+
+	// Plays a crowd of the given size thinking under the given budget, and prints its row
+	void report(int gunners, int budget) {
+		PlatformGame game = this.crowd(gunners);
+		// Total and slowest nanoseconds spent thinking in a tick
+		long[] thinking = new long[2];
+		game.ai = new BehaviorScheduler(budget) {
+			void update(PlatformGame g) {
+				long start = System.nanoTime();
+				super.update(g);
+				long spent = System.nanoTime() - start;
+				thinking[0] += spent;
+				thinking[1] = Math.max(thinking[1], spent);
+			}
+		};
+		for (int t = 0; t < TICKS / 4; t += 1) {
+			game.tick();
+		}
+		thinking[0] = 0;
+		thinking[1] = 0;
+		long thoughts = game.ai.thoughts;
+		long start = System.nanoTime();
+		for (int t = 0; t < TICKS; t += 1) {
+			game.tick();
+		}
+		double tickUs = (System.nanoTime() - start) / 1e3 / TICKS;
+		System.out.printf("%d\t%s\t%.1f\t%.1f\t%.1f\t%.1f%n", gunners,
+				budget == Integer.MAX_VALUE ? "unlimited" : Integer.toString(budget), thinking[0] / 1e3 / TICKS,
+				thinking[1] / 1e3, tickUs, (game.ai.thoughts - thoughts) / (double) TICKS);
+	}
+
+	// A long floor with the given number of gunners patrolling above it, all within reach of the player
+	PlatformGame crowd(int gunners) {
+		PlatformGame game = new PlatformGame(new Util().topLFromBlock(new Posn(5, 10)), 0, 0);
+		game.activity = new ActivityManager(Double.MAX_VALUE, Double.MAX_VALUE);
+		game.ground.add(new EnvironmentGenerator().line(new Posn(0, 13), true, 200));
+		for (int g = 0; g < gunners; g += 1) {
+			int col = 10 + g % 180;
+			game.enemies.add(AIEnemy.gunner(new Posn(col, 10 - 3 * (g / 180 % 3)), new Posn(col + 8, 10), game.sight,
+					game.particles));
+		}
+		game.startLevel();
+		return game;
+	}
+}
@@ -0,0 +1,179 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import javalib.worldimages.Posn;
+
+// How many of each kind of component a synthetic world holds
+class Scenario {
+	// Counts in the standard level, the baseline every scale is a multiple of
+	static final int STOCK_TURRETS = 2;
+	static final int STOCK_MELEE = 3;
+	static final int STOCK_BULLETS = 2;
+	static final int STOCK_BLOCKS = 14;
+
+	final int turrets;
+	final int melee;
+	final int bullets;
+	final int blocks;
+	final long seed;
+
+	Scenario(int turrets, int melee, int bullets, int blocks, long seed) {
+		if (turrets < 0 || melee < 0 || bullets < 0 || blocks < 0) {
+			throw new IllegalArgumentException("Component counts cannot be negative.");
+		}
+		this.turrets = turrets;
+		this.melee = melee;
+		this.bullets = bullets;
+		this.blocks = blocks;
+		this.seed = seed;
+	}
+
+	// A scenario with the given multiple of the standard level's components
+	static Scenario stockTimes(int scale, long seed) {
+		return new Scenario(STOCK_TURRETS * scale, STOCK_MELEE * scale, STOCK_BULLETS * scale,
+				STOCK_BLOCKS * scale, seed);
+	}
+
+	// Total number of components the scenario lays out, not counting the player
+	int components() {
+		return this.turrets + this.melee + this.bullets + this.blocks;
+	}
+}
+
+// Lays out synthetic worlds for a scenario as a grid of rooms, each with a floor, a left wall and
+// two platforms. Enemies are dealt to rooms in turn and bullets are scattered through them, so a
+// larger scenario is a larger world rather than a more crowded one. The same scenario and seed
+// always produce the same world.
+class ScenarioGenerator {
+	// Size of one room in blocks
+	static final int ROOM_WIDTH = 40;
+	static final int ROOM_HEIGHT = 20;
+	static final int BLOCKS_PER_ROOM = 4;
+
+	final Scenario scenario;
+	final Random rand;
+	final int rooms;
+	final int roomCols;
+
+	ScenarioGenerator(Scenario scenario) {
+		this.scenario = scenario;
+		this.rand = new Random(scenario.seed);
+		this.rooms = Math.max(1, (scenario.blocks + BLOCKS_PER_ROOM - 1) / BLOCKS_PER_ROOM);
+		this.roomCols = (int) Math.ceil(Math.sqrt(this.rooms));
+	}
+
+	// Returns a started game laid out for this' scenario, with the player in the first room
+	PlatformGame generate() {
+		return this.generate(PlatformGame.MAX_PARTICLES, PlatformGame.REWIND_SECONDS);
+	}
+
+	// Returns a started game laid out for this' scenario, showing at most the given number of
+	// particles and keeping the given number of seconds for rewinding, or none if 0
+	PlatformGame generate(int maxParticles, double rewindSeconds) {
+		PlatformGame game = new PlatformGame(this.blockTopLeft(0, 5, 16), maxParticles, rewindSeconds);
+		EnvironmentGenerator gb = new EnvironmentGenerator();
+		for (int b = 0; b < this.scenario.blocks; b += 1) {
+			int room = b / BLOCKS_PER_ROOM;
+			switch (b % BLOCKS_PER_ROOM) {
+			case 0:
+				game.ground.add(gb.line(this.block(room, 0, ROOM_HEIGHT - 1), true, ROOM_WIDTH));
+				break;
+			case 1:
+				game.ground.add(gb.line(this.block(room, 0, 0), false, ROOM_HEIGHT - 1));
+				break;
+			case 2:
+				game.ground.add(gb.line(this.block(room, 8 + this.rand.nextInt(4), 13), true, 10));
+				break;
+			default:
+				game.ground.add(gb.line(this.block(room, 22 + this.rand.nextInt(4), 8), true, 10));
+				break;
+			}
+		}
+		for (int m = 0; m < this.scenario.melee; m += 1) {
+			int room = m % this.rooms;
+			int from = 2 + this.rand.nextInt(ROOM_WIDTH - 16);
+			game.enemies.add(new MeleeEnemy(this.block(room, from, ROOM_HEIGHT - 4),
+					this.block(room, from + 6 + this.rand.nextInt(8), ROOM_HEIGHT - 4), game.particles));
+		}
+		for (int t = 0; t < this.scenario.turrets; t += 1) {
+			int room = t % this.rooms;
+			game.enemies.add(new SentryTurret(this.block(room, 4 + this.rand.nextInt(ROOM_WIDTH - 8), 2),
+					game.sight, game.particles));
+		}
+		this.topUpBullets(game);
+		game.startLevel();
+		return game;
+	}
+
+	// Scatters enemy bullets in random rooms and directions until the game holds this' scenario's count
+	// EFFECT: Modifies the given game's weapon effects
+	void topUpBullets(PlatformGame game) {
+		for (int i = game.weaponEffects.size(); i < this.scenario.bullets; i += 1) {
+			int room = this.rand.nextInt(this.rooms);
+			Vector2D start = this.blockTopLeft(room, 2 + this.rand.nextInt(ROOM_WIDTH - 4),
+					1 + this.rand.nextInt(ROOM_HEIGHT - 3));
+			Vector2D dir = new Vector2D(this.rand.nextDouble() - .5, this.rand.nextDouble() - .5);
+			game.weaponEffects.add(new EnemyBullet(start, dir));
+		}
+	}
+
+	// The block at the given offset within the given room
+	Posn block(int room, int col, int row) {
+		return new Posn(room % this.roomCols * ROOM_WIDTH + col, room / this.roomCols * ROOM_HEIGHT + row);
+	}
+
+	// Top-left in pixels of the block at the given offset within the given room
+	Vector2D blockTopLeft(int room, int col, int row) {
+		return new Util().topLFromBlock(this.block(room, col, row));
+	}
+}
+
+// Runs synthetic worlds at multiples of the standard level headlessly and prints how tick rate,
+// tail latency and allocation scale, one row per multiple
+class ScalingBench {
+	static final int[] SCALES = { 1, 10, 100, 1000 };
+	// Fewer ticks at larger scales keep each row to a similar running time
+	static final int[] TICKS = { 2000, 500, 100, 20 };
+	static final long SEED = 42;
+
+	public static void main(String[] args) {
+		System.out.println("scale\tcomponents\tticks/sec\tavg tick us\tp99 tick us\tbytes/tick");
+		for (int i = 0; i < SCALES.length; i += 1) {
+			new ScalingBench().run(Scenario.stockTimes(SCALES[i], SEED), SCALES[i], TICKS[i]);
+		}
+	}
+
+	// Warms up, then times the given number of ticks of a world generated for the given scenario and
+	// prints a row of results. Bullets that hit something are replaced between ticks, outside the
+	// measurement, so the scenario's bullet count holds throughout.
+	void run(Scenario scenario, int scale, int ticks) {
+		ScenarioGenerator gen = new ScenarioGenerator(scenario);
+		PlatformGame game = gen.generate();
+		for (int t = 0; t < ticks / 4; t += 1) {
+			game.tick();
+			gen.topUpBullets(game);
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long[] times = new long[ticks];
+		long allocated = 0;
+		for (int t = 0; t < ticks; t += 1) {
+			long bytesBefore = threads.getThreadAllocatedBytes(thread);
+			long start = System.nanoTime();
+			game.tick();
+			times[t] = System.nanoTime() - start;
+			allocated += threads.getThreadAllocatedBytes(thread) - bytesBefore;
+			gen.topUpBullets(game);
+		}
+
+		Arrays.sort(times);
+		long total = 0;
+		for (long time : times) {
+			total += time;
+		}
+		System.out.printf("%d\t%d\t%.0f\t%.1f\t%.1f\t%d%n", scale, scenario.components(), ticks / (total / 1e9),
+				total / 1e3 / ticks, times[(int) (ticks * .99)] / 1e3, allocated / ticks);
+	}
+}
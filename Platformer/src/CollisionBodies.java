@@ -1,8 +1,8 @@
 import java.awt.Color;
+import java.awt.Graphics2D;
 import java.util.ArrayList;
 
 import javalib.worldimages.CircleImage;
-import javalib.worldimages.FromFileImage;
 import javalib.worldimages.OutlineMode;
 import javalib.worldimages.RectangleImage;
 import javalib.worldimages.WorldImage;
@@ -12,6 +12,9 @@ import javalib.worldimages.WorldImage;
 interface ICollisionBody {
 	// A visual depiction with the given color
 	WorldImage render(Color c);
+	
+	// Paints this straight onto the given graphics in the given color
+	void paint(Graphics2D g, Color c);
 		
 	// The position of the geometric center of this collision body in image coordinates
 	Vector2D getPosition();
@@ -39,6 +42,16 @@ interface ICollisionBody {
 	
 	// Returns the geometric center of this collision body
 	Vector2D center();
+	
+	// Returns the width and height of the box that bounds this collision body
+	Vector2D getDimensions();
+	
+	// The following methods give the edges of the box that bounds this collision body in pixels,
+	// without allocating
+	double left();
+	double top();
+	double right();
+	double bottom();
 }
 
 // To represent a collision body with a definite position
@@ -64,6 +77,12 @@ class Point extends ACollisionBody {
 	public WorldImage render(Color c) {
 		return new CircleImage(5, OutlineMode.SOLID, c);
 	}
+	
+	// Paints this point as a circle of the same radius, with its bounding box at this' position
+	public void paint(Graphics2D g, Color c) {
+		g.setColor(c);
+		g.fillOval((int) this.topLeft.x, (int) this.topLeft.y, 10, 10);
+	}
 
 	// Returns a new point having moved by the given amount (velocity assumes 1 tick has passed)
 	public ICollisionBody onMove(Vector2D velocity) {
@@ -104,33 +123,78 @@ class Point extends ACollisionBody {
 	public Vector2D center() {
 		return this.topLeft;
 	}
+	
+	// A point has no extent
+	public Vector2D getDimensions() {
+		return Vector2D.ZERO;
+	}
+	
+	// Every edge of a point is the point itself
+	public double left() {return this.topLeft.x;}
+	public double top() {return this.topLeft.y;}
+	public double right() {return this.topLeft.x;}
+	public double bottom() {return this.topLeft.y;}
 }
-// To represent a rectangle on the plane with dimensions, a position, and an orientation
-class Rectangle extends ACollisionBody {
+// To represent a rectangle on the plane with dimensions and a position. Its position is kept as
+// plain numbers and can be moved in place, so a component moving every tick allocates nothing,
+// while onMove and setPosition still give moved copies for code that wants them.
+class Rectangle implements ICollisionBody {
+	// Top-left corner in pixels
+	private double x;
+	private double y;
 	// Overall dimensions in pixels
 	final Vector2D dimensions;
 	
 	Rectangle(Vector2D topLeft, Vector2D dimensions) {
-		super(topLeft);
 		if(dimensions.x <= 0 || dimensions.y <= 0) {
 			throw new IllegalArgumentException("Dimensions must be positive.");
 		}
+		this.x = topLeft.x;
+		this.y = topLeft.y;
 		this.dimensions = dimensions;
 	}
 	
 	// The following methods give the four corners of this rectangle in pixels
-	Vector2D topLeft() {return this.topLeft;}
-	Vector2D topRight() {return this.topLeft.addToX(this.dimensions.x);}
-	Vector2D botLeft() {return this.topLeft.addToY(this.dimensions.y);}
-	Vector2D botRight() {return this.topLeft.addVectors(this.dimensions);}
-	public Vector2D center() {return this.topLeft.addVectors(this.dimensions.scaleVector(.5));}
+	Vector2D topLeft() {return new Vector2D(this.x, this.y);}
+	Vector2D topRight() {return new Vector2D(this.right(), this.y);}
+	Vector2D botLeft() {return new Vector2D(this.x, this.bottom());}
+	Vector2D botRight() {return new Vector2D(this.right(), this.bottom());}
+	public Vector2D center() {return new Vector2D(this.centerX(), this.centerY());}
+	
+	// The following methods give the edges and center of this rectangle in pixels without allocating
+	public double left() {return this.x;}
+	public double top() {return this.y;}
+	public double right() {return this.x + this.dimensions.x;}
+	public double bottom() {return this.y + this.dimensions.y;}
+	double centerX() {return this.x + this.dimensions.x * .5;}
+	double centerY() {return this.y + this.dimensions.y * .5;}
+	
+	// The top-left corner of this rectangle
+	public Vector2D getPosition() {
+		return this.topLeft();
+	}
 	
 	// Returns the dimensions of this rectangle as width * height
-	Vector2D getDimensions() {return this.dimensions;}
+	public Vector2D getDimensions() {return this.dimensions;}
 	
 	Rectangle setPosition(Vector2D next) {
 		return new Rectangle(next, this.dimensions);
 	}
+	
+	// Puts this rectangle's top-left corner at the given position
+	// EFFECT: Modifies this' position
+	void moveTo(double x, double y) {
+		this.x = x;
+		this.y = y;
+	}
+	
+	// Moves this rectangle by the given amounts
+	// EFFECT: Modifies this' position
+	void moveBy(double dx, double dy) {
+		this.x += dx;
+		this.y += dy;
+	}
+	
 	// Returns the points corresponding to the four corners of this rectangle
 	ArrayList<Point> cornerPoints() {
 		return new Util().map(this.cornerPositions(), (pt) -> new Point(pt));
@@ -139,7 +203,7 @@ class Rectangle extends ACollisionBody {
 	// Returns the points in image (x,y) coordinates that correspond to the corners of this rectangle
 	ArrayList<Vector2D> cornerPositions() {
 		ArrayList<Vector2D> pts = new ArrayList<>();
-		pts.add(this.topLeft);
+		pts.add(this.topLeft());
 		pts.add(this.topRight());
 		pts.add(this.botLeft());
 		pts.add(this.botRight());
@@ -152,15 +216,28 @@ class Rectangle extends ACollisionBody {
 		return new RectangleImage((int) this.dimensions.x, (int) this.dimensions.y, OutlineMode.SOLID, c);
 	}
 	
+	// Draws the image in the given file scaled to this' dimensions, from the shared sprite cache so
+	// a file is decoded once rather than on every frame
 	WorldImage render(String fname) {
-		return new ImgUtil().scaleImgTo(new FromFileImage(fname), (int) this.dimensions.x,
-				(int) this.dimensions.y);
+		return SpriteCache.SHARED.image(fname, (int) this.dimensions.x, (int) this.dimensions.y);
+	}
+	
+	// Paints this as a solid rectangle of the given color
+	public void paint(Graphics2D g, Color c) {
+		g.setColor(c);
+		g.fillRect((int) this.x, (int) this.y, (int) this.dimensions.x, (int) this.dimensions.y);
+	}
+	
+	// Paints the image in the given file, scaled to this' dimensions, over this
+	void paint(Graphics2D g, SpriteCache sprites, String fname) {
+		g.drawImage(sprites.sprite(fname, (int) this.dimensions.x, (int) this.dimensions.y), 
+				(int) this.x, (int) this.y, null);
 	}
 
 	
 	// Returns a new rectangle having moved by the given amount (velocity assumes 1 tick has passed)
 	public Rectangle onMove(Vector2D velocity) {
-		return new Rectangle(this.topLeft.addVectors(velocity), this.dimensions);
+		return new Rectangle(new Vector2D(this.x + velocity.x, this.y + velocity.y), this.dimensions);
 	}
 
 	// Is this rectangle in contact with the given body?
@@ -170,21 +247,14 @@ class Rectangle extends ACollisionBody {
 	// Is the point at the given position contained within this rectangle?
 	public boolean collidingWithPoint(Vector2D pointPos) {
 		Util u = new Util();
-		return u.inclusiveBetween(this.topLeft.x, pointPos.x, this.topRight().x)
-				&& u.inclusiveBetween(this.topLeft.y, pointPos.y, this.botLeft().y);
+		return u.inclusiveBetween(this.x, pointPos.x, this.right())
+				&& u.inclusiveBetween(this.y, pointPos.y, this.bottom());
 	}
 
-	// Is this rectangle in contact with the given rectangle?
+	// Is this rectangle in contact with the given rectangle? Touching edges count as contact.
 	public boolean collidingWithRectangle(Rectangle other) {
-		Util u = new Util();
-		// Are any of this' 4 corners within the other rectangle?
-		boolean otherContainsThis = u.ormap(this.cornerPoints(), 
-				(pt) -> pt.collidingWithRectangle(other));
-		// Are any of the other's 4 corners within this?
-		boolean thisContainsOther = u.ormap(other.cornerPoints(), 
-				(pt) -> pt.collidingWithRectangle(this));
-		// Are any of either rectangle's corners contained within the other?
-		return otherContainsThis || thisContainsOther;
+		return !(this.right() < other.x || other.right() < this.x 
+				|| this.bottom() < other.y || other.bottom() < this.y);
 	}
 
 	// Vector that other would have to move to resolve collision with this
@@ -197,7 +267,7 @@ class Rectangle extends ACollisionBody {
 		if(! this.collidingWithPoint(pointPos)) {
 			throw new IllegalArgumentException("Rectangle not colliding with point.");
 		}
-		Vector2D disp = this.topLeft.displacementTo(pointPos);
+		Vector2D disp = this.topLeft().displacementTo(pointPos);
 		
 		Vector2D left = new Vector2D(disp.x - this.dimensions.x, 0);
 		Vector2D right = new Vector2D(disp.x, 0);
@@ -208,11 +278,33 @@ class Rectangle extends ACollisionBody {
 
 	// Vector that this rectangle would have to move to resolve collision with other rectangle
 	public Vector2D resolveCollisionRect(Rectangle other) {
-		Vector2D left = new Vector2D(other.topLeft().x - this.botRight().x, 0);
-		Vector2D right = new Vector2D(other.botRight().x - this.topLeft.x, 0);
-		Vector2D up = new Vector2D(0, other.topLeft().y - this.botRight().y);
-		Vector2D down = new Vector2D(0, other.botRight().y - this.topLeft.y);
-		return this.smallestVector(left, right, up, down);
+		MutableVector2D out = new MutableVector2D();
+		this.resolveCollisionRect(other, out);
+		return out.toVector2D();
+	}
+	
+	// Writes into out the vector that this rectangle would have to move to resolve collision with
+	// the other rectangle: the shortest of the moves out past each of its four sides, the earlier
+	// of left, right, up, and down on a tie
+	// EFFECT: Modifies the given vector
+	void resolveCollisionRect(Rectangle other, MutableVector2D out) {
+		double left = other.x - this.right();
+		double right = other.right() - this.x;
+		double up = other.y - this.bottom();
+		double down = other.bottom() - this.y;
+		out.set(left, 0);
+		double best = Math.abs(left);
+		if(Math.abs(right) < best) {
+			out.set(right, 0);
+			best = Math.abs(right);
+		}
+		if(Math.abs(up) < best) {
+			out.set(0, up);
+			best = Math.abs(up);
+		}
+		if(Math.abs(down) < best) {
+			out.set(0, down);
+		}
 	}
 	
 	// Returns the smallest magnitude vector of the four given
@@ -228,16 +320,16 @@ class Rectangle extends ACollisionBody {
 	// Is this rectangle on top of the other rectangle (within the collision tolerance)
 	boolean onTopOf(Rectangle other) {
 		return (this.linearCollision(other, true)) 
-				&& Math.abs(this.botRight().y - other.topLeft().y) < IConstant.COL_TOL;
+				&& Math.abs(this.bottom() - other.y) < IConstant.COL_TOL;
 	}
 	
 	// Is this rectangle within the other rectangle on the given axis 
 	// (does not necessarily correspond to collision)
 	boolean linearCollision(Rectangle other, boolean checkingColumn) {
 		if(checkingColumn) {
-			return !(this.topRight().x < other.topLeft().x || this.topLeft.x > other.topRight().x);
+			return !(this.right() < other.x || this.x > other.right());
 		} else {
-			return !(this.topRight().y < other.topLeft().y || this.topLeft.y > other.topRight().y);
+			return !(this.bottom() < other.y || this.y > other.bottom());
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,179 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// Something told when it starts touching, keeps touching, and stops touching another component
+interface IContactListener {
+	// The given component has just come into contact with this
+	void onContactEnter(IGameComponent other);
+
+	// The given component is still in contact with this, as it was last tick
+	void onContactStay(IGameComponent other);
+
+	// The given component was in contact with this last tick but no longer is
+	void onContactExit(IGameComponent other);
+}
+
+// Two components found touching, in the order they were reported, and the ticks of contact.
+// Pairs are compared by the identity of their components.
+class Contact {
+	IGameComponent first;
+	IGameComponent second;
+	// The tick contact began and the last tick it was reported
+	int since;
+	int lastSeen;
+
+	Contact(IGameComponent first, IGameComponent second, int since) {
+		this.first = first;
+		this.second = second;
+		this.since = since;
+		this.lastSeen = since;
+	}
+
+	// Is the given object a contact between the same two components?
+	public boolean equals(Object other) {
+		if (!(other instanceof Contact)) {
+			return false;
+		}
+		Contact that = (Contact) other;
+		return this.first == that.first && this.second == that.second;
+	}
+
+	public int hashCode() {
+		return System.identityHashCode(this.first) * 31 + System.identityHashCode(this.second);
+	}
+}
+
+// The pairs of components in contact, kept from tick to tick so each pair's contact is reported
+// to its listeners as it begins, continues, and ends, rather than as an isolated overlap every tick.
+// Pairs are looked up in a map and walked in a list, in the order they began, so a tick in which
+// no contact begins allocates nothing.
+class ContactSet {
+	private final HashMap<Contact, Contact> pairs;
+	private final ArrayList<Contact> live;
+	// Reused key for looking pairs up without allocating
+	private final Contact probe;
+	// Tick contacts are currently being reported for
+	int tick;
+	// Total contacts that have begun and ended, for measuring
+	long entered;
+	long exited;
+
+	ContactSet() {
+		this.pairs = new HashMap<>();
+		this.live = new ArrayList<>();
+		this.probe = new Contact(null, null, 0);
+		this.tick = 0;
+		this.entered = 0;
+		this.exited = 0;
+	}
+
+	// Number of pairs currently in contact
+	int size() {
+		return this.pairs.size();
+	}
+
+	// Are the given components in contact, in the order reported?
+	boolean touching(IGameComponent first, IGameComponent second) {
+		this.probe.first = first;
+		this.probe.second = second;
+		return this.pairs.containsKey(this.probe);
+	}
+
+	// Reports that the given components are in contact this tick, telling them whether it has just
+	// begun. Reporting the same pair again in the same tick has no further effect.
+	// EFFECT: Modifies this' pairs and possibly the components
+	void touch(IGameComponent first, IGameComponent second) {
+		this.probe.first = first;
+		this.probe.second = second;
+		Contact c = this.pairs.get(this.probe);
+		if (c == null) {
+			c = new Contact(first, second, this.tick);
+			this.pairs.put(c, c);
+			this.live.add(c);
+			this.entered += 1;
+			this.notifyEnter(first, second);
+			this.notifyEnter(second, first);
+		} else if (c.lastSeen != this.tick) {
+			c.lastSeen = this.tick;
+			this.notifyStay(first, second);
+			this.notifyStay(second, first);
+		}
+	}
+
+	// Ends the current tick, telling the components of every pair not reported during it that
+	// their contact has ended
+	// EFFECT: Modifies this' pairs and tick and possibly the components
+	void endTick() {
+		int kept = 0;
+		for (int i = 0; i < this.live.size(); i += 1) {
+			Contact c = this.live.get(i);
+			if (c.lastSeen == this.tick) {
+				this.live.set(kept, c);
+				kept += 1;
+			} else {
+				this.pairs.remove(c);
+				this.exited += 1;
+				this.notifyExit(c.first, c.second);
+				this.notifyExit(c.second, c.first);
+			}
+		}
+		while (this.live.size() > kept) {
+			this.live.remove(this.live.size() - 1);
+		}
+		this.tick += 1;
+	}
+
+	// Records every pair in contact and the tick, as components are recorded
+	// EFFECT: Appends to the given history
+	void saveState(RewindBuffer rb) {
+		rb.put(this.tick);
+		rb.put(this.live.size());
+		for (int i = 0; i < this.live.size(); i += 1) {
+			Contact c = this.live.get(i);
+			rb.putRef(c.first);
+			rb.putRef(c.second);
+			rb.put(c.since);
+			rb.put(c.lastSeen);
+		}
+	}
+
+	// Replaces this' pairs with those recorded, without telling any component
+	// EFFECT: Modifies this and advances the history's read cursor
+	void restoreState(RewindBuffer rb) {
+		this.tick = rb.getInt();
+		int size = rb.getInt();
+		ArrayList<Contact> restored = new ArrayList<>(size);
+		for (int i = 0; i < size; i += 1) {
+			Contact c = new Contact((IGameComponent) rb.getRef(), (IGameComponent) rb.getRef(), rb.getInt());
+			c.lastSeen = rb.getInt();
+			restored.add(c);
+		}
+		this.pairs.clear();
+		this.live.clear();
+		for (Contact c : restored) {
+			this.pairs.put(c, c);
+			this.live.add(c);
+		}
+	}
+
+	// Tells the first component, if it listens, that contact with the second has begun
+	private void notifyEnter(IGameComponent to, IGameComponent other) {
+		if (to instanceof IContactListener) {
+			((IContactListener) to).onContactEnter(other);
+		}
+	}
+
+	// Tells the first component, if it listens, that contact with the second continues
+	private void notifyStay(IGameComponent to, IGameComponent other) {
+		if (to instanceof IContactListener) {
+			((IContactListener) to).onContactStay(other);
+		}
+	}
+
+	// Tells the first component, if it listens, that contact with the second has ended
+	private void notifyExit(IGameComponent to, IGameComponent other) {
+		if (to instanceof IContactListener) {
+			((IContactListener) to).onContactExit(other);
+		}
+	}
+}
@@ -0,0 +1,424 @@
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// The parts of the window that need repainting, kept as a grid of square tiles that are each
+// either dirty or clean. Marking a region dirties every tile it touches, and the dirty tiles are
+// gathered into a few rectangles for painting.
+class DirtyRegions {
+	// Width and height of a tile in pixels
+	static final int TILE = IConstant.BLOCK_SIZE * 4;
+	// Most rectangles gathered before painting them separately stops paying off
+	static final int MAX_RECTS = 24;
+
+	final int cols;
+	final int rows;
+	private final boolean[] dirty;
+	// Number of dirty tiles
+	int count;
+	// Rectangles of dirty tiles, in tiles, from the last call to gather
+	private final int[] rectCol;
+	private final int[] rectRow;
+	private final int[] rectCols;
+	private final int[] rectRows;
+	int rects;
+
+	DirtyRegions() {
+		this.cols = (IConstant.WINDX + TILE - 1) / TILE;
+		this.rows = (IConstant.WINDY + TILE - 1) / TILE;
+		this.dirty = new boolean[this.cols * this.rows];
+		this.count = 0;
+		this.rectCol = new int[MAX_RECTS];
+		this.rectRow = new int[MAX_RECTS];
+		this.rectCols = new int[MAX_RECTS];
+		this.rectRows = new int[MAX_RECTS];
+		this.rects = 0;
+	}
+
+	// Marks every tile clean
+	// EFFECT: Modifies this' tiles
+	void clear() {
+		Arrays.fill(this.dirty, false);
+		this.count = 0;
+		this.rects = 0;
+	}
+
+	// Marks the tiles touched by the given region in pixels dirty, ignoring any part off the window
+	// EFFECT: Modifies this' tiles
+	void mark(double x, double y, double width, double height) {
+		int c0 = Math.max(0, (int) Math.floor(x / TILE));
+		int r0 = Math.max(0, (int) Math.floor(y / TILE));
+		int c1 = Math.min(this.cols - 1, (int) Math.floor((x + width) / TILE));
+		int r1 = Math.min(this.rows - 1, (int) Math.floor((y + height) / TILE));
+		for (int r = r0; r <= r1; r += 1) {
+			for (int c = c0; c <= c1; c += 1) {
+				int t = r * this.cols + c;
+				if (!this.dirty[t]) {
+					this.dirty[t] = true;
+					this.count += 1;
+				}
+			}
+		}
+	}
+
+	// Marks the box bounding the given body dirty, where it is in a window whose left edge is at the
+	// given coordinate of the level
+	// EFFECT: Modifies this' tiles
+	void mark(ICollisionBody body, int camera) {
+		this.mark(body.left() - camera, body.top(), body.right() - body.left(), body.bottom() - body.top());
+	}
+
+	// Marks every tile dirty in the other regions dirty in this too
+	// EFFECT: Modifies this' tiles
+	void add(DirtyRegions other) {
+		for (int t = 0; t < this.dirty.length; t += 1) {
+			if (other.dirty[t] && !this.dirty[t]) {
+				this.dirty[t] = true;
+				this.count += 1;
+			}
+		}
+	}
+
+	// Fraction of the window that is dirty
+	double fraction() {
+		return this.count / (double) this.dirty.length;
+	}
+
+	// Gathers the dirty tiles into rectangles: runs of dirty tiles along each row, joined with the
+	// identical run on the row above where there is one. Returns false if more rectangles are needed
+	// than are worth painting separately.
+	// EFFECT: Modifies this' rectangles
+	boolean gather() {
+		this.rects = 0;
+		// Rectangles before this index ended on an earlier row and cannot be extended
+		int open = 0;
+		for (int r = 0; r < this.rows; r += 1) {
+			int firstThisRow = this.rects;
+			int c = 0;
+			while (c < this.cols) {
+				if (!this.dirty[r * this.cols + c]) {
+					c += 1;
+					continue;
+				}
+				int start = c;
+				while (c < this.cols && this.dirty[r * this.cols + c]) {
+					c += 1;
+				}
+				if (!this.extend(open, firstThisRow, r, start, c - start)) {
+					if (this.rects == MAX_RECTS) {
+						return false;
+					}
+					this.rectCol[this.rects] = start;
+					this.rectRow[this.rects] = r;
+					this.rectCols[this.rects] = c - start;
+					this.rectRows[this.rects] = 1;
+					this.rects += 1;
+				}
+			}
+			// Only rectangles reaching this row can be extended onto the next
+			int kept = open;
+			for (int i = open; i < this.rects; i += 1) {
+				if (this.rectRow[i] + this.rectRows[i] - 1 < r) {
+					this.swapRects(i, kept);
+					kept += 1;
+				}
+			}
+			open = kept;
+		}
+		return true;
+	}
+
+	// Extends a rectangle among those from open up to, not including, end that spans exactly the
+	// given run and reaches the row above, returning whether there was one
+	// EFFECT: Possibly modifies one of this' rectangles
+	private boolean extend(int open, int end, int row, int col, int cols) {
+		for (int i = open; i < end; i += 1) {
+			if (this.rectCol[i] == col && this.rectCols[i] == cols && this.rectRow[i] + this.rectRows[i] == row) {
+				this.rectRows[i] += 1;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Swaps two of this' rectangles
+	// EFFECT: Modifies this' rectangles
+	private void swapRects(int i, int j) {
+		int col = this.rectCol[i];
+		int row = this.rectRow[i];
+		int cols = this.rectCols[i];
+		int rows = this.rectRows[i];
+		this.rectCol[i] = this.rectCol[j];
+		this.rectRow[i] = this.rectRow[j];
+		this.rectCols[i] = this.rectCols[j];
+		this.rectRows[i] = this.rectRows[j];
+		this.rectCol[j] = col;
+		this.rectRow[j] = row;
+		this.rectCols[j] = cols;
+		this.rectRows[j] = rows;
+	}
+
+	// Position and size in pixels of the given gathered rectangle, clipped to the window
+	int rectX(int i) {
+		return this.rectCol[i] * TILE;
+	}
+
+	int rectY(int i) {
+		return this.rectRow[i] * TILE;
+	}
+
+	int rectWidth(int i) {
+		return Math.min(this.rectCols[i] * TILE, IConstant.WINDX - this.rectX(i));
+	}
+
+	int rectHeight(int i) {
+		return Math.min(this.rectRows[i] * TILE, IConstant.WINDY - this.rectY(i));
+	}
+}
+
+// Keeps the last frame painted and repaints only what changed since: wherever a moving part of
+// the game that moved or changed its look was last frame and is now, every particle, and the HUD
+// if what it shows changed. When too much of the window changed, or the ground itself did, the
+// whole frame is repainted instead.
+class IncrementalRenderer {
+	// Above this fraction of the window dirty, one full repaint is cheaper than many partial ones
+	static final double FULL_REPAINT_FRACTION = .4;
+	// Height of the band along the top of the window the inventory and health are painted in
+	static final int HUD_HEIGHT = IConstant.BLOCK_SIZE * 5;
+
+	final Java2DRenderer renderer;
+	// Where particles were painted last frame and are now, as every one fades while it moves, and
+	// everything to repaint
+	private DirtyRegions previous;
+	private DirtyRegions current;
+	private final DirtyRegions dirty;
+	// Each moving part of the game painted last frame, in the order occupy visits them, with the
+	// box it was painted in within the window and its look, and how many there were
+	private IGameComponent[] shown;
+	private double[] shownLeft;
+	private double[] shownTop;
+	private double[] shownRight;
+	private double[] shownBottom;
+	private int[] shownLook;
+	private int shownCount;
+	// How many moving parts occupy has visited so far this frame
+	private int visited;
+	// Whether the screen presented to may no longer show the last frame, so all of it is copied
+	private boolean screenStale;
+	// The retained frame, repainted in place
+	private BufferedImage back;
+	// What the ground, camera, and HUD were when last painted
+	private ArrayList<IEnvironment> lastGround;
+	private int lastGroundSize;
+	private int lastCamera;
+	private int[] lastHud;
+	// What the HUD shows this frame, swapped with the last once painted
+	private int[] hud;
+	// Counts of frames, how many were repainted in full, and pixels repainted, for measuring
+	long frames;
+	long fullRepaints;
+	long pixelsPainted;
+
+	IncrementalRenderer(Java2DRenderer renderer) {
+		this.renderer = renderer;
+		this.previous = new DirtyRegions();
+		this.current = new DirtyRegions();
+		this.dirty = new DirtyRegions();
+		this.shown = new IGameComponent[64];
+		this.shownLeft = new double[64];
+		this.shownTop = new double[64];
+		this.shownRight = new double[64];
+		this.shownBottom = new double[64];
+		this.shownLook = new int[64];
+		this.shownCount = 0;
+		this.visited = 0;
+		this.screenStale = true;
+		this.back = null;
+		this.lastGround = null;
+		this.lastGroundSize = -1;
+		this.lastCamera = 0;
+		this.lastHud = new int[Player.HUD_SIZE];
+		this.hud = new int[Player.HUD_SIZE];
+		this.frames = 0;
+		this.fullRepaints = 0;
+		this.pixelsPainted = 0;
+	}
+
+	// Brings the retained frame up to date with the given game, repainting only what changed, and
+	// returns it. The dirty regions of this frame stay available until the next.
+	// EFFECT: Modifies this' retained frame and dirty regions
+	BufferedImage renderToImage(PlatformGame game) {
+		this.dirty.clear();
+		this.occupy(game);
+		game.player.hudState(this.hud);
+		if (!Arrays.equals(this.hud, this.lastHud)) {
+			this.dirty.mark(0, 0, IConstant.WINDX, HUD_HEIGHT);
+		}
+		int camera = game.cameraX();
+		boolean full = this.back == null || game.ground != this.lastGround || game.ground.size() != this.lastGroundSize
+				|| camera != this.lastCamera || this.dirty.fraction() > FULL_REPAINT_FRACTION || !this.dirty.gather();
+
+		if (this.back == null) {
+			this.back = new BufferedImage(IConstant.WINDX, IConstant.WINDY, BufferedImage.TYPE_INT_RGB);
+		}
+		Graphics2D g = this.back.createGraphics();
+		try {
+			if (full) {
+				this.dirty.clear();
+				this.dirty.mark(0, 0, IConstant.WINDX - 1, IConstant.WINDY - 1);
+				this.dirty.gather();
+				this.renderer.render(game, g);
+				this.fullRepaints += 1;
+				this.pixelsPainted += IConstant.WINDX * IConstant.WINDY;
+			} else {
+				for (int i = 0; i < this.dirty.rects; i += 1) {
+					int w = this.dirty.rectWidth(i);
+					int h = this.dirty.rectHeight(i);
+					this.renderer.paintRegion(game, g, this.dirty.rectX(i), this.dirty.rectY(i), w, h);
+					this.pixelsPainted += w * h;
+				}
+			}
+		} finally {
+			g.dispose();
+		}
+
+		DirtyRegions swap = this.previous;
+		this.previous = this.current;
+		this.current = swap;
+		this.lastGround = game.ground;
+		this.lastGroundSize = game.ground.size();
+		this.lastCamera = camera;
+		int[] shown = this.lastHud;
+		this.lastHud = this.hud;
+		this.hud = shown;
+		this.frames += 1;
+		return this.back;
+	}
+
+	// Brings the retained frame up to date and shows it through the given strategy. A strategy
+	// that copies its back buffer to the screen keeps the last frame there, so only the repainted
+	// regions are copied into it; one that flips pages, or whose buffers were lost, is given the
+	// whole frame.
+	// EFFECT: Modifies the strategy's buffers and this' retained frame
+	void present(PlatformGame game, BufferStrategy strategy) {
+		BufferedImage img = this.renderToImage(game);
+		boolean whole = this.screenStale || strategy.getCapabilities().isPageFlipping();
+		do {
+			do {
+				Graphics g = strategy.getDrawGraphics();
+				try {
+					if (whole) {
+						g.drawImage(img, 0, 0, null);
+					} else {
+						this.copyDirty(img, g);
+					}
+				} finally {
+					g.dispose();
+				}
+				whole = true;
+			} while (strategy.contentsRestored());
+			strategy.show();
+		} while (strategy.contentsLost());
+		this.screenStale = false;
+	}
+
+	// Copies just the regions repainted this frame from the given frame onto the given graphics
+	// EFFECT: Modifies the given graphics
+	void copyDirty(BufferedImage img, Graphics screen) {
+		for (int i = 0; i < this.dirty.rects; i += 1) {
+			int x = this.dirty.rectX(i);
+			int y = this.dirty.rectY(i);
+			int w = this.dirty.rectWidth(i);
+			int h = this.dirty.rectHeight(i);
+			screen.drawImage(img, x, y, x + w, y + h, x, y, x + w, y + h, null);
+		}
+	}
+
+	// Marks dirty where in the window each moving part of the given game that moved or changed its
+	// look was painted last frame and is now, along with where any that left was, and where every
+	// particle was and is
+	// EFFECT: Modifies this' regions and what it last painted
+	void occupy(PlatformGame game) {
+		int camera = game.cameraX();
+		this.visited = 0;
+		this.occupyAll(game.players, camera);
+		this.occupyAll(game.weaponEffects, camera);
+		this.occupyAll(game.activity.shown(game.enemies), camera);
+		this.occupyAll(game.items, camera);
+		this.occupyAll(game.platforms, camera);
+		for (int i = this.visited; i < this.shownCount; i += 1) {
+			this.markShown(i);
+			this.shown[i] = null;
+		}
+		this.shownCount = this.visited;
+		this.current.clear();
+		ParticleSystem ps = game.particles;
+		for (int p = 0; p < ps.count; p += 1) {
+			int size = ps.sizeOf(p);
+			this.current.mark(ps.xOf(p) - size / 2 - camera, ps.yOf(p) - size / 2, size, size);
+		}
+		this.dirty.add(this.previous);
+		this.dirty.add(this.current);
+	}
+
+	// Visits every component in the given list, seen from a camera at the given left edge
+	// EFFECT: Modifies this' regions and what it last painted
+	void occupyAll(ArrayList<? extends IGameComponent> list, int camera) {
+		for (int i = 0; i < list.size(); i += 1) {
+			this.occupy(list.get(i), camera);
+		}
+	}
+
+	// Marks the given component dirty where it is now, and whatever was painted in its place in the
+	// order last frame where that was, unless it is the same component painted the same way in the
+	// same place
+	// EFFECT: Modifies this' regions and what it last painted
+	void occupy(IGameComponent igc, int camera) {
+		ICollisionBody body = igc.getCollisionBody();
+		double left = body.left() - camera;
+		double top = body.top();
+		double right = body.right() - camera;
+		double bottom = body.bottom();
+		int look = igc.look();
+		int i = this.visited;
+		this.visited += 1;
+		if (i < this.shownCount && this.shown[i] == igc && this.shownLeft[i] == left && this.shownTop[i] == top
+				&& this.shownRight[i] == right && this.shownBottom[i] == bottom && this.shownLook[i] == look) {
+			return;
+		}
+		if (i < this.shownCount) {
+			this.markShown(i);
+		} else if (i == this.shown.length) {
+			this.growShown();
+		}
+		this.dirty.mark(left, top, right - left, bottom - top);
+		this.shown[i] = igc;
+		this.shownLeft[i] = left;
+		this.shownTop[i] = top;
+		this.shownRight[i] = right;
+		this.shownBottom[i] = bottom;
+		this.shownLook[i] = look;
+	}
+
+	// Marks dirty where the given component painted last frame was
+	// EFFECT: Modifies this' regions
+	private void markShown(int i) {
+		this.dirty.mark(this.shownLeft[i], this.shownTop[i], this.shownRight[i] - this.shownLeft[i],
+				this.shownBottom[i] - this.shownTop[i]);
+	}
+
+	// Doubles the room for components painted last frame
+	// EFFECT: Modifies this' arrays of what it last painted
+	private void growShown() {
+		int size = this.shown.length * 2;
+		this.shown = Arrays.copyOf(this.shown, size);
+		this.shownLeft = Arrays.copyOf(this.shownLeft, size);
+		this.shownTop = Arrays.copyOf(this.shownTop, size);
+		this.shownRight = Arrays.copyOf(this.shownRight, size);
+		this.shownBottom = Arrays.copyOf(this.shownBottom, size);
+		this.shownLook = Arrays.copyOf(this.shownLook, size);
+	}
+}
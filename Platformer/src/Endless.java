@@ -0,0 +1,325 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import javalib.worldimages.Posn;
+
+// Lays out an endless level to the right of the player, one chunk of blocks at a time, and
+// retires chunks left far behind. Each chunk is built a piece per tick and only joins the game,
+// all at once, when complete, so the grid is patched once per chunk, only in the columns added and
+// retired, and no tick does a chunk's worth of work. Every chunk's content comes from its own
+// generator seeded from the level's seed and the chunk's index, so the same seed always lays out
+// the same level, however the player moves and whenever each chunk happens to be built.
+class EndlessGenerator {
+	// Width of a chunk in blocks
+	static final int CHUNK_COLS = 30;
+	// Chunks kept laid out ahead of the chunk the player is in, and behind the chunk the left edge of
+	// the view is in, so the window never shows chunks coming or going
+	static final int AHEAD_CHUNKS = 2;
+	static final int BEHIND_CHUNKS = 1;
+	// Row of the floor, and the rows platforms and turrets are placed between
+	static final int FLOOR_ROW = 79;
+	static final int PLATFORM_ROW = 71;
+	static final int TURRET_ROW = 40;
+	// Number of pieces a chunk is built from, each a single component or none
+	static final int PIECES = 6;
+
+	final long seed;
+	PlatformGame game;
+	// Index of the next chunk to build, and of the first one still laid out
+	int nextChunk;
+	int firstChunk;
+	// The chunk being built: its generator, the next piece to make, and the pieces made so far
+	private Random rand;
+	private int piece;
+	private final ArrayList<IEnvironment> pendingGround;
+	private final ArrayList<IEnemy> pendingEnemies;
+	private final ArrayList<AItem> pendingItems;
+	// Where the chunk being built put its platform, for items to rest on, in blocks
+	private int platformCol;
+	private int platformLength;
+	private int platformRow;
+	// The wall closing off the left edge of the level, moved along as chunks are retired
+	private GroundBlock backWall;
+	// The ground list this last left the game with, to notice the game being rewound
+	private ArrayList<IEnvironment> lastGround;
+	// The ground added and removed by the chunk just finished, to patch the grid with
+	private final ArrayList<IEnvironment> addedGround;
+	private final ArrayList<IEnvironment> removedGround;
+	// Number of chunks built and retired, for measuring
+	int built;
+	int retired;
+
+	EndlessGenerator(long seed) {
+		this.seed = seed;
+		this.game = null;
+		this.nextChunk = 0;
+		this.firstChunk = 0;
+		this.rand = null;
+		this.piece = 0;
+		this.pendingGround = new ArrayList<>();
+		this.pendingEnemies = new ArrayList<>();
+		this.pendingItems = new ArrayList<>();
+		this.backWall = null;
+		this.lastGround = null;
+		this.addedGround = new ArrayList<>();
+		this.removedGround = new ArrayList<>();
+		this.built = 0;
+		this.retired = 0;
+	}
+
+	// Returns a started game whose level this lays out as it is played
+	PlatformGame start() {
+		return this.start(PlatformGame.MAX_PARTICLES, PlatformGame.REWIND_SECONDS);
+	}
+
+	// Returns a started game whose level this lays out as it is played, showing at most the given
+	// number of particles and keeping the given number of seconds for rewinding, or none if 0. The
+	// chunks in view to start with are built straight away.
+	PlatformGame start(int maxParticles, double rewindSeconds) {
+		if (this.game != null) {
+			throw new IllegalStateException("This generator has already started a game.");
+		}
+		this.game = new PlatformGame(PlatformGame.SPAWN, maxParticles, rewindSeconds);
+		this.game.endless = this;
+		this.backWall = new EnvironmentGenerator().line(new Posn(0, 0), false, FLOOR_ROW);
+		this.game.ground.add(this.backWall);
+		while (this.nextChunk <= AHEAD_CHUNKS) {
+			this.beginChunk();
+			while (this.piece < PIECES) {
+				this.makePiece();
+			}
+			this.commitChunk();
+		}
+		this.game.startLevel();
+		this.lastGround = this.game.ground;
+		return this.game;
+	}
+
+	// Does this tick's share of laying out the level: makes one piece of the chunk being built,
+	// adding the chunk to the game and retiring those left behind once it is complete, or starts
+	// building the next chunk if the player has come close enough to it
+	// EFFECT: Modifies this and possibly the game's ground, enemies, items, and grid
+	void step() {
+		if (this.game.ground != this.lastGround) {
+			this.resync();
+		}
+		if (this.rand != null) {
+			this.makePiece();
+			if (this.piece == PIECES) {
+				this.addedGround.clear();
+				this.removedGround.clear();
+				this.commitChunk();
+				this.retireBehind();
+				this.game.grid.patch(this.game.ground, this.removedGround, this.addedGround);
+				this.lastGround = this.game.ground;
+			}
+		} else if (this.nextChunk <= this.playerChunk() + AHEAD_CHUNKS) {
+			this.beginChunk();
+		}
+	}
+
+	// Left edge in pixels of a window-wide view centered on the player, never showing the retired
+	// level behind the wall at the left edge
+	int cameraX() {
+		return (int) Math.max(this.firstChunk * CHUNK_COLS * IConstant.BLOCK_SIZE, this.viewLeft());
+	}
+
+	// Left edge in pixels of a window-wide view centered on the player, wherever that is
+	double viewLeft() {
+		ICollisionBody body = this.game.player.getCollisionBody();
+		return (body.left() + body.right()) / 2 - IConstant.WINDX / 2;
+	}
+
+	// The index of the chunk the player's center is in
+	int playerChunk() {
+		return (int) Math.floor(this.game.player.getCollisionBody().center().x
+				/ (CHUNK_COLS * IConstant.BLOCK_SIZE));
+	}
+
+	// The seed of the given chunk's generator
+	long chunkSeed(int chunk) {
+		long h = this.seed + 0x9E3779B97F4A7C15L * (chunk + 1);
+		h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+		h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+		return h ^ (h >>> 31);
+	}
+
+	// Starts building the next chunk
+	// EFFECT: Modifies this' chunk in progress
+	void beginChunk() {
+		this.rand = new Random(this.chunkSeed(this.nextChunk));
+		this.piece = 0;
+	}
+
+	// Makes the next piece of the chunk being built: its floor, a platform, spikes, a melee enemy,
+	// a turret, and an item on the platform, in that order, the last four each only sometimes. The
+	// first chunk is only floor and platform, so the player starts somewhere safe.
+	// EFFECT: Modifies this' chunk in progress
+	void makePiece() {
+		int left = this.nextChunk * CHUNK_COLS;
+		boolean safe = this.nextChunk == 0;
+		EnvironmentGenerator gb = new EnvironmentGenerator();
+		switch (this.piece) {
+		case 0:
+			this.pendingGround.add(gb.line(new Posn(left, FLOOR_ROW), true, CHUNK_COLS));
+			break;
+		case 1:
+			this.platformLength = 4 + this.rand.nextInt(5);
+			this.platformCol = left + 3 + this.rand.nextInt(CHUNK_COLS - this.platformLength - 6);
+			this.platformRow = PLATFORM_ROW + this.rand.nextInt(4);
+			this.pendingGround.add(gb.line(new Posn(this.platformCol, this.platformRow), true, this.platformLength));
+			break;
+		case 2:
+			int spikeCol = left + 2 + this.rand.nextInt(CHUNK_COLS - 6);
+			int spikes = 1 + this.rand.nextInt(3);
+			if (!safe && this.rand.nextBoolean()) {
+				this.pendingGround.add(new Spikes(new Posn(spikeCol, FLOOR_ROW - 1), Direction.UP, spikes));
+			}
+			break;
+		case 3:
+			int from = left + 2 + this.rand.nextInt(CHUNK_COLS / 2);
+			int to = Math.min(left + CHUNK_COLS - Player.WIDTH, from + 6 + this.rand.nextInt(8));
+			if (!safe && this.rand.nextBoolean()) {
+				this.pendingEnemies.add(new MeleeEnemy(new Posn(from, FLOOR_ROW - Player.HEIGHT),
+						new Posn(to, FLOOR_ROW - Player.HEIGHT), this.game.particles));
+			}
+			break;
+		case 4:
+			int turretCol = left + this.rand.nextInt(CHUNK_COLS - 2);
+			int turretRow = TURRET_ROW + this.rand.nextInt(20);
+			if (!safe && this.rand.nextInt(3) == 0) {
+				this.pendingEnemies.add(new SentryTurret(new Posn(turretCol, turretRow), this.game.sight,
+						this.game.particles));
+			}
+			break;
+		default:
+			int itemCol = this.platformCol + this.rand.nextInt(this.platformLength);
+			int kind = this.rand.nextInt(3);
+			if (kind == 0) {
+				this.pendingItems.add(new PistolAmmo(new Posn(itemCol, this.platformRow - 1), 3));
+			} else if (kind == 1 && !safe) {
+				this.pendingItems.add(new InstantHealth(new Posn(itemCol, this.platformRow - 1)));
+			}
+			break;
+		}
+		this.piece += 1;
+	}
+
+	// Adds the finished chunk to the game
+	// EFFECT: Modifies the game's ground, enemies, and items, and this' chunk in progress and ground
+	// added
+	void commitChunk() {
+		this.game.ground.addAll(this.pendingGround);
+		this.addedGround.addAll(this.pendingGround);
+		this.game.enemies.addAll(this.pendingEnemies);
+		this.game.items.addAll(this.pendingItems);
+		this.pendingGround.clear();
+		this.pendingEnemies.clear();
+		this.pendingItems.clear();
+		this.rand = null;
+		this.nextChunk += 1;
+		this.built += 1;
+	}
+
+	// Removes everything in chunks too far behind the view, and moves the wall at the left edge of
+	// the level up to what remains
+	// EFFECT: Modifies the game's ground, enemies, and items, and this' ground added and removed
+	void retireBehind() {
+		int keepFrom = (int) Math.floor(this.viewLeft() / (CHUNK_COLS * IConstant.BLOCK_SIZE)) - BEHIND_CHUNKS;
+		if (keepFrom <= this.firstChunk) {
+			return;
+		}
+		double edge = keepFrom * CHUNK_COLS * IConstant.BLOCK_SIZE;
+		this.retired += keepFrom - this.firstChunk;
+		this.firstChunk = keepFrom;
+		for (IEnvironment ie : this.game.ground) {
+			if (this.behind(ie, edge)) {
+				this.removedGround.add(ie);
+			}
+		}
+		this.backWall = new EnvironmentGenerator().line(new Posn(keepFrom * CHUNK_COLS, 0), false, FLOOR_ROW);
+		this.addedGround.add(this.backWall);
+		ArrayList<IEnvironment> ground = new Util().filterOut(this.game.ground, (ie) -> this.behind(ie, edge));
+		ground.add(this.backWall);
+		this.game.ground = ground;
+		this.game.enemies = new Util().filterOut(this.game.enemies, (ie) -> this.behind(ie, edge));
+		this.game.items = new Util().filterOut(this.game.items, (ai) -> this.behind(ai, edge));
+	}
+
+	// Does the given component start left of the given edge? Enemies are judged by where they are
+	// now, so one patrolling across a chunk's border goes with the chunk it is in.
+	boolean behind(IGameComponent igc, double edge) {
+		return igc.getCollisionBody().getPosition().x < edge;
+	}
+
+	// Is the given block a wall this placed at the left edge of the level?
+	boolean isWall(GroundBlock gb) {
+		Vector2D dim = gb.getCollisionBody().getDimensions();
+		return gb.getCollisionBody().getPosition().y == 0 && dim.x == IConstant.BLOCK_SIZE
+				&& dim.y == FLOOR_ROW * IConstant.BLOCK_SIZE;
+	}
+
+	// Picks up from the ground the game has after being rewound, which may hold more or fewer
+	// chunks than this last left it with. Chunks are rebuilt exactly, so building again from the
+	// rightmost one present continues the same level.
+	// EFFECT: Modifies this' chunk indices and chunk in progress
+	void resync() {
+		double minX = Double.POSITIVE_INFINITY;
+		double maxX = 0;
+		for (IEnvironment ie : this.game.ground) {
+			ICollisionBody body = ie.getCollisionBody();
+			minX = Math.min(minX, body.getPosition().x);
+			maxX = Math.max(maxX, body.getPosition().x + body.getDimensions().x);
+			if (ie instanceof GroundBlock && this.isWall((GroundBlock) ie)) {
+				this.backWall = (GroundBlock) ie;
+			}
+		}
+		double chunkWidth = CHUNK_COLS * IConstant.BLOCK_SIZE;
+		this.firstChunk = (int) Math.floor(minX / chunkWidth);
+		this.nextChunk = (int) Math.ceil(maxX / chunkWidth);
+		this.pendingGround.clear();
+		this.pendingEnemies.clear();
+		this.pendingItems.clear();
+		this.rand = null;
+		this.lastGround = this.game.ground;
+	}
+}
+
+// Measures how long each tick of an endless level takes while a player runs through it, keeping
+// its navigation graph up to date as a level with chasers would, and how many arcs the graph
+// simulates again per chunk laid out
+class EndlessBench {
+	static final int TICKS = 20000;
+	static final long SEED = 42;
+
+	public static void main(String[] args) {
+		EndlessGenerator gen = new EndlessGenerator(SEED);
+		PlatformGame game = gen.start(0, 0);
+		long[] times = new long[TICKS];
+		for (int t = 0; t < TICKS; t += 1) {
+			// Run right, hopping over whatever is in the way, and stay alive to keep running
+			game.playerMoveX(true);
+			if (t % 60 == 0) {
+				game.playerJump();
+			}
+			game.player.health.current = game.player.health.max;
+			long start = System.nanoTime();
+			game.tick();
+			game.nav.nodeCount();
+			times[t] = System.nanoTime() - start;
+		}
+		long total = 0;
+		long worst = 0;
+		for (long time : times) {
+			total += time;
+			worst = Math.max(worst, time);
+		}
+		Arrays.sort(times);
+		System.out.println(
+				"ticks\tchunks built\tchunks retired\tavg tick us\tp99 tick us\tmax tick us\tground\tarcs/chunk");
+		System.out.printf("%d\t%d\t%d\t%.1f\t%.1f\t%.1f\t%d\t%.0f%n", TICKS, gen.built, gen.retired,
+				total / 1e3 / TICKS, times[(int) (TICKS * .99)] / 1e3, worst / 1e3, game.ground.size(),
+				(double) game.nav.arcs / gen.built);
+	}
+}
@@ -1,4 +1,5 @@
 import java.awt.Color;
+import java.awt.Graphics2D;
 import java.util.ArrayList;
 
 import javalib.worldimages.FromFileImage;
@@ -10,34 +11,59 @@ interface IEnemy extends IGameComponent {
 	// Reduce this' health by the given amount
 	void reduceHealth(int amt);
 	
-	// The group of weapon effects fired at the player
-	ArrayList<IWeaponEffect> fireAt(Vector2D plCenter);
+	// Adds to out the weapon effects fired at the given player, allocating nothing unless firing
+	// EFFECT: Modifies the given list and possibly this' reload
+	void fireAt(Player target, ArrayList<IWeaponEffect> out);
+	
+	// Brings this up to date after sleeping through the given number of physics steps of the given
+	// length, ending where it would be had it been ticked through every one
+	// EFFECT: Modifies this' motion and timers
+	void catchUp(int steps, double step);
 }
 
 // To represent a basic enemy that hurts player if touched and moves between two points
 class MeleeEnemy extends AGameComponent implements IEnemy {
 	BlockOscillation bo;
 	Health health;
+	ParticleSystem particles;
 	
 	// Given starting block and finish block, initializes this with collision body at initial position
-	MeleeEnemy(Posn start, Posn finish) {
-		super(new Util().topLFromBlock(start), Player.DIM);
+	// that emits hit effects into the given particle system
+	MeleeEnemy(Posn start, Posn finish, ParticleSystem particles) {
+		super(new Util().topLFromBlock(start), Player.DIM, CollisionLayers.ENEMY);
 		this.bo = new BlockOscillation(new Util().topLFromBlock(start), 
-				new Util().topLFromBlock(finish), Player.HORIZ_SPEED / 11);
+				new Util().topLFromBlock(finish), Player.HORIZ_SPEED / 1.1);
 		this.health = new Health(2);
+		this.particles = particles;
 	}
 
 	// Renders this as a red rectangle
 	WorldImage render() {
-		String fname = this.bo.direction().x > 0 ? "enemy.png" : "enemy-l.png";
+		String fname = this.bo.headingRight() ? "enemy.png" : "enemy-l.png";
 		return this.body.render(fname);
 	}
 	
+	// Paints the same sprite straight onto the given graphics
+	public void paintOnto(Graphics2D g, SpriteCache sprites) {
+		this.body.paint(g, sprites, this.bo.headingRight() ? "enemy.png" : "enemy-l.png");
+	}
+	
+	// This looks one way heading right and another heading left
+	public int look() {
+		return this.bo.headingRight() ? 1 : 0;
+	}
+	
 	// Ticks this enemy by moving and then updating collision body
 	// EFFECT: Modifies this' BlockOscillation and CollisionBody
-	public void tick() {
-		this.bo = this.bo.onMove();
-		this.body = this.body.setPosition(this.bo.getCurrPosn());
+	public void tick(double dt) {
+		this.bo.onMove(dt);
+		this.body.moveTo(this.bo.x(), this.bo.y());
+	}
+	
+	// A patrol is worked out from elapsed time alone, so the missed steps are skipped in one move
+	// EFFECT: Modifies this' BlockOscillation and CollisionBody
+	public void catchUp(int steps, double step) {
+		this.tick(steps * step);
 	}
 	
 	// Should remove this enemy if it is dead
@@ -45,9 +71,11 @@ class MeleeEnemy extends AGameComponent implements IEnemy {
 		return this.health.dead();
 	}
 	
-	// Kills player
+	// Lowers health of this by amount, throwing off sparks
+	// EFFECT: Modifies this' health and particle system
 	public void reduceHealth(int amt) {
-		this.health = this.health.changeCurrent(- amt);
+		this.health.adjust(- amt);
+		this.particles.burst(ParticleSystem.SPARK, this.body.center(), 10 * amt, 200, .3);
 	}
 	
 	// Reduces player health by 1 if collision
@@ -57,22 +85,46 @@ class MeleeEnemy extends AGameComponent implements IEnemy {
 	}
 
 	// Melee enemy does not fire weapons
-	public ArrayList<IWeaponEffect> fireAt(Vector2D plCenter) {
-		return new ArrayList<>();
+	public void fireAt(Player target, ArrayList<IWeaponEffect> out) {}
+	
+	// Records position, patrol progress, and health
+	// EFFECT: Appends to the given history
+	public void saveState(RewindBuffer rb) {
+		super.saveState(rb);
+		rb.put(this.bo.elapsed);
+		rb.put(this.health.current);
+	}
+	
+	// Restores position, patrol progress, and health
+	// EFFECT: Modifies this and advances the history's read cursor
+	public void restoreState(RewindBuffer rb) {
+		super.restoreState(rb);
+		this.bo.seek(rb.get());
+		this.health = new Health(rb.getInt(), this.health.max);
 	}
 }
 
 // To represent a stationary turret that fires bullets at player at constant time intervals
+// whenever it has a clear line of sight
 class SentryTurret extends AGameComponent implements IEnemy {
 	static final double RELOAD = 2.0; //In seconds
 	Health health;
 	TimeTemporary reload;
+	LineOfSight sight;
+	// This turret's remembered view of its target
+	SightLine sightLine;
+	ParticleSystem particles;
 	
-	// Given starting block and finish block, initializes this with collision body at initial position
-	SentryTurret(Posn topLeft) {
-		super(new Util().topLFromBlock(topLeft), IConstant.BLOCK_DIM.scaleVector(2.0));
+	// Given its top-left block, initializes this with collision body at that position
+	// that looks through the geometry with the given line of sight service
+	// and emits hit effects into the given particle system
+	SentryTurret(Posn topLeft, LineOfSight sight, ParticleSystem particles) {
+		super(new Util().topLFromBlock(topLeft), IConstant.BLOCK_DIM.scaleVector(2.0), CollisionLayers.ENEMY);
 		this.health = new Health(3);
-		this.reload = new TimeTemporary((int) (RELOAD / IConstant.TICK_RATE));
+		this.reload = new TimeTemporary(RELOAD);
+		this.sight = sight;
+		this.sightLine = new SightLine();
+		this.particles = particles;
 	}
 
 	// Renders this as a red rectangle
@@ -80,11 +132,24 @@ class SentryTurret extends AGameComponent implements IEnemy {
 		return this.body.render("turret.png");
 	}
 	
+	// Paints the same sprite straight onto the given graphics
+	public void paintOnto(Graphics2D g, SpriteCache sprites) {
+		this.body.paint(g, sprites, "turret.png");
+	}
+	
 	// Ticks this' reload if bullet is not ready
 	// EFFECT: Modifies this' reload
-	public void tick() {
+	public void tick(double dt) {
 		if(! this.reload.finished()) {
-			this.reload = this.reload.onTick();
+			this.reload.countDown(dt);
+		}
+	}
+	
+	// A reload only counts down, so the missed steps are counted off in one tick
+	// EFFECT: Modifies this' reload
+	public void catchUp(int steps, double step) {
+		if(steps > 0) {
+			this.tick(steps * step);
 		}
 	}
 	
@@ -93,29 +158,45 @@ class SentryTurret extends AGameComponent implements IEnemy {
 		return this.health.dead();
 	}
 	
-	// Lowers health of sentry by amount
+	// Lowers health of sentry by amount, throwing off sparks
+	// EFFECT: Modifies this' health and particle system
 	public void reduceHealth(int amt) {
 		if(amt < 0) {
 			throw new IllegalArgumentException("Cannot take negative damage.");
 		}
-		this.health = this.health.changeCurrent(- amt);
+		this.health.adjust(- amt);
+		this.particles.burst(ParticleSystem.SPARK, this.body.center(), 10 * amt, 200, .3);
 	}
 	
 	// Ensures player cannot pass through this turret
 	// EFFECT: Modifies player motion
 	void interactPlayerOnCollision(Player pl) {
-		pl.resolveCollision(this.body);
+		pl.blockedBy(this);
 	}
 
-	// Returns 1 shot fired at player position if shot is ready
-	// EFFECT: Resets this' reload if shot is fired
-	public ArrayList<IWeaponEffect> fireAt(Vector2D plCenter) {
-		ArrayList<IWeaponEffect> toReturn = new ArrayList<>();
-		if(this.reload.finished()) {
-			toReturn.add(new EnemyBullet(this.body.center(), 
-					this.body.center().displacementTo(plCenter).getUnitVector()));
-			this.reload = new TimeTemporary((int) (RELOAD / IConstant.TICK_RATE));
+	// Adds 1 shot fired at the player's center if shot is ready and nothing solid is in the way
+	// EFFECT: Modifies the given list, and resets this' reload if shot is fired
+	public void fireAt(Player target, ArrayList<IWeaponEffect> out) {
+		Rectangle aim = target.body;
+		if(this.reload.finished() && this.sight.canSee(this.sightLine, this.body.centerX(), this.body.centerY(),
+				aim.centerX(), aim.centerY())) {
+			out.add(new EnemyBullet(this.body.center(), 
+					this.body.center().displacementTo(aim.center()).getUnitVector()));
+			this.reload.restart(RELOAD);
 		}
-		return toReturn;
+	}
+	
+	// Records health and reload, a turret never moves
+	// EFFECT: Appends to the given history
+	public void saveState(RewindBuffer rb) {
+		rb.put(this.health.current);
+		rb.put(this.reload.secondsLeft());
+	}
+	
+	// Restores health and reload
+	// EFFECT: Modifies this and advances the history's read cursor
+	public void restoreState(RewindBuffer rb) {
+		this.health = new Health(rb.getInt(), this.health.max);
+		this.reload = new TimeTemporary(rb.get());
 	}
 }
\ No newline at end of file
@@ -1,4 +1,7 @@
 import java.awt.Color;
+import java.awt.Graphics2D;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 import javalib.worldimages.AboveImage;
 import javalib.worldimages.BesideImage;
@@ -20,22 +23,27 @@ class GroundBlock extends AGameComponent implements IEnvironment {
 	// Intializes this as a block at the given block position with standard block
 	// dimensions
 	GroundBlock(Posn blockPosition) {
-		super(new Util().topLFromBlock(blockPosition), IConstant.BLOCK_DIM);
+		super(new Util().topLFromBlock(blockPosition), IConstant.BLOCK_DIM, CollisionLayers.TERRAIN);
 	}
 
 	GroundBlock(Rectangle rect) {
-		super(rect);
+		super(rect, CollisionLayers.TERRAIN);
 	}
 
 	// Draws this as a black square
 	WorldImage render() {
 		return this.body.render(Color.BLACK);// new ImgUtil().drawBlock(Color.BLACK);
 	}
+	
+	// Paints this as a black rectangle straight onto the given graphics
+	public void paintOnto(Graphics2D g, SpriteCache sprites) {
+		this.body.paint(g, Color.BLACK);
+	}
 
 	// Prevents player from moving through this block
 	// EFFECT: Modifies player position and velocity
 	public void interactPlayerOnCollision(Player pl) {
-		pl.resolveCollision(this.body);
+		pl.blockedBy(this);
 	}
 
 	// Is the given player on top of this
@@ -43,27 +51,37 @@ class GroundBlock extends AGameComponent implements IEnvironment {
 		return pl.standingOnBlock(this.body);
 	}
 
-	public void tick() {
+	public void tick(double dt) {
 	}
 
 	public boolean shouldRemove() {
 		return false;
 	}
+	
+	// Static geometry has no state to record
+	public void saveState(RewindBuffer rb) {
+	}
+	
+	public void restoreState(RewindBuffer rb) {
+	}
 }
 
 // To represent a connected line of spikes in the same direction that deals damage to player if touched
 class Spikes extends AGameComponent implements IEnvironment {
 	Direction dir;
+	// Corners of the triangle being painted, reused for every spike
+	private final int[] xs = new int[3];
+	private final int[] ys = new int[3];
 	
 	Spikes(Posn topLeft, Direction dir, int numBlocks) {
 		super(new Util().topLFromBlock(topLeft), new Util().vertical(dir) 
 				? IConstant.BLOCK_DIM.setX(numBlocks * IConstant.BLOCK_SIZE) 
-						: IConstant.BLOCK_DIM.setY(numBlocks * IConstant.BLOCK_SIZE));
+						: IConstant.BLOCK_DIM.setY(numBlocks * IConstant.BLOCK_SIZE), CollisionLayers.HAZARD);
 		this.dir = dir;
 	}
 	
 	Spikes(Posn blockPosition, Direction dir) {
-		super(new Util().topLFromBlock(blockPosition), IConstant.BLOCK_DIM);
+		super(new Util().topLFromBlock(blockPosition), IConstant.BLOCK_DIM, CollisionLayers.HAZARD);
 		this.dir = dir;
 	}
 	
@@ -90,6 +108,39 @@ class Spikes extends AGameComponent implements IEnvironment {
 		return result;
 	}
 
+	// Paints the same spikes straight onto the given graphics as one triangle per block
+	public void paintOnto(Graphics2D g, SpriteCache sprites) {
+		Vector2D tl = this.body.getPosition();
+		Vector2D dim = this.body.getDimensions();
+		int size = IConstant.BLOCK_SIZE;
+		g.setColor(Color.BLACK);
+		if (new Util().vertical(this.dir)) {
+			for (int x = (int) tl.x; x < tl.x + dim.x; x += size) {
+				int tip = this.dir == Direction.UP ? (int) tl.y : (int) tl.y + size;
+				int base = this.dir == Direction.UP ? (int) tl.y + size : (int) tl.y;
+				this.xs[0] = x;
+				this.ys[0] = base;
+				this.xs[1] = x + size;
+				this.ys[1] = base;
+				this.xs[2] = x + size / 2;
+				this.ys[2] = tip;
+				g.fillPolygon(this.xs, this.ys, 3);
+			}
+		} else {
+			for (int y = (int) tl.y; y < tl.y + dim.y; y += size) {
+				int tip = this.dir == Direction.LEFT ? (int) tl.x : (int) tl.x + size;
+				int base = this.dir == Direction.LEFT ? (int) tl.x + size : (int) tl.x;
+				this.xs[0] = base;
+				this.ys[0] = y;
+				this.xs[1] = base;
+				this.ys[1] = y + size;
+				this.xs[2] = tip;
+				this.ys[2] = y + size / 2;
+				g.fillPolygon(this.xs, this.ys, 3);
+			}
+		}
+	}
+
 	// Draws this as a black triangle pointed in this' direction
 	WorldImage renderOne() {
 		WorldImage spike = new TriangleImage(new Posn(0, IConstant.BLOCK_SIZE), 
@@ -114,7 +165,7 @@ class Spikes extends AGameComponent implements IEnvironment {
 	// Prevents player from moving through this block
 	// EFFECT: Modifies player position and velocity
 	public void interactPlayerOnCollision(Player pl) {
-			pl.resolveCollision(this.body);
+			pl.blockedBy(this);
 			pl.onHit(1);
 	}
 
@@ -123,12 +174,92 @@ class Spikes extends AGameComponent implements IEnvironment {
 		return pl.standingOnBlock(this.body);
 	}
 
-	public void tick() {
+	public void tick(double dt) {
 	}
 
 	public boolean shouldRemove() {
 		return false;
 	}
+	
+	// Static geometry has no state to record
+	public void saveState(RewindBuffer rb) {
+	}
+	
+	public void restoreState(RewindBuffer rb) {
+	}
+}
+
+// A block that moves back and forth between two positions at a constant speed, carrying whatever
+// stands on it. Unlike the rest of the ground it is not part of the static geometry, so it is
+// found through PlatformGame's index of moving platforms rather than the block grid.
+class MovingPlatform extends AGameComponent implements IEnvironment {
+	BlockOscillation bo;
+	// Displacement of the last tick's move, in pixels
+	final MutableVector2D lastMove;
+	// This' handle in the index of moving platforms
+	int proxy;
+
+	// Given the blocks the left end starts and finishes at, initializes this as a horizontal line of
+	// the given number of blocks that moves between them at the given speed in blocks per second
+	MovingPlatform(Posn start, Posn finish, int length, double blocksPerSecond) {
+		super(new Util().topLFromBlock(start), IConstant.BLOCK_DIM.setX(length * IConstant.BLOCK_SIZE),
+				CollisionLayers.TERRAIN);
+		if (blocksPerSecond <= 0) {
+			throw new IllegalArgumentException("Platform speed must be positive.");
+		}
+		this.bo = new BlockOscillation(new Util().topLFromBlock(start), new Util().topLFromBlock(finish),
+				blocksPerSecond * IConstant.BLOCK_SIZE);
+		this.lastMove = new MutableVector2D();
+		this.proxy = AABBTree.NONE;
+	}
+
+	// Draws this as a dark gray line
+	WorldImage render() {
+		return this.body.render(Color.DARK_GRAY);
+	}
+	
+	// Paints this as a dark gray line straight onto the given graphics
+	public void paintOnto(Graphics2D g, SpriteCache sprites) {
+		this.body.paint(g, Color.DARK_GRAY);
+	}
+
+	// Prevents player from moving through this platform
+	// EFFECT: Modifies player position and velocity
+	public void interactPlayerOnCollision(Player pl) {
+		pl.blockedBy(this);
+	}
+
+	// Is the given player on top of this
+	public boolean playerOnTop(Player pl) {
+		return pl.standingOnBlock(this.body);
+	}
+
+	// Moves this along its path for the given number of seconds
+	// EFFECT: Modifies this' oscillation, body, and last move
+	public void tick(double dt) {
+		double beforeX = this.body.left();
+		double beforeY = this.body.top();
+		this.bo.onMove(dt);
+		this.body.moveTo(this.bo.x(), this.bo.y());
+		this.lastMove.set(this.body.left() - beforeX, this.body.top() - beforeY);
+	}
+
+	public boolean shouldRemove() {
+		return false;
+	}
+
+	// Records position and how long this has been travelling
+	// EFFECT: Appends to the given history
+	public void saveState(RewindBuffer rb) {
+		super.saveState(rb);
+		rb.put(this.bo.elapsed);
+	}
+
+	public void restoreState(RewindBuffer rb) {
+		super.restoreState(rb);
+		this.bo.seek(rb.get());
+		this.lastMove.set(0, 0);
+	}
 }
 
 enum Direction {
@@ -149,4 +280,215 @@ class EnvironmentGenerator {
 				new Vector2D(dims).scaleVector(IConstant.BLOCK_SIZE));
 		return new GroundBlock(rect);
 	}
-}
\ No newline at end of file
+}
+
+// The static geometry rasterized into a grid of block-sized cells, each either solid or open. It is
+// rebuilt whole when the ground changes arbitrarily, or patched where pieces of ground were added
+// or removed, in which case it keeps the range of columns each patch changed so what is derived
+// from it can be patched there too.
+class BlockGrid {
+	// Patches remembered before anything older than them must be rebuilt whole
+	static final int MAX_PATCHES = 64;
+
+	// Incremented each time the grid is rebuilt or patched, so anything derived from it can tell it
+	// is stale
+	int version;
+	int cols;
+	int rows;
+	// Solid cells, by column then row. Columns before the first share one open column, so ground
+	// far from the origin costs little more than ground near it.
+	boolean[][] solid;
+	int firstCol;
+	private boolean[] open;
+	private ArrayList<IEnvironment> builtFrom;
+	// The version last rebuilt whole, and the version, first column, and last column of each run of
+	// columns patched since, oldest first
+	private int rebuiltAt;
+	private final ArrayList<int[]> patches;
+
+	// Initializes this as an empty grid, to be filled by refresh once the ground is laid out
+	BlockGrid() {
+		this.version = 0;
+		this.cols = 0;
+		this.rows = 0;
+		this.solid = new boolean[0][0];
+		this.firstCol = 0;
+		this.open = new boolean[0];
+		this.builtFrom = new ArrayList<>();
+		this.rebuiltAt = 0;
+		this.patches = new ArrayList<>();
+	}
+
+	// Rebuilds this grid if the given ground differs from what it was built from
+	// EFFECT: Possibly modifies this' cells and version
+	void refresh(ArrayList<IEnvironment> ground) {
+		if (this.builtFrom.size() != ground.size()) {
+			this.build(ground);
+			return;
+		}
+		for (int i = 0; i < ground.size(); i += 1) {
+			if (ground.get(i) != this.builtFrom.get(i)) {
+				this.build(ground);
+				return;
+			}
+		}
+	}
+
+	// Marks every cell covered by the given ground as solid
+	// EFFECT: Modifies this' cells and version
+	void build(ArrayList<IEnvironment> ground) {
+		this.builtFrom = new ArrayList<>(ground);
+		this.version += 1;
+		this.rebuiltAt = this.version;
+		this.patches.clear();
+		double minX = Double.POSITIVE_INFINITY;
+		double maxX = 0;
+		double maxY = 0;
+		for (IEnvironment ie : ground) {
+			ICollisionBody body = ie.getCollisionBody();
+			minX = Math.min(minX, body.getPosition().x);
+			maxX = Math.max(maxX, body.getPosition().x + body.getDimensions().x);
+			maxY = Math.max(maxY, body.getPosition().y + body.getDimensions().y);
+		}
+		this.cols = (int) Math.ceil(maxX / IConstant.BLOCK_SIZE);
+		this.rows = (int) Math.ceil(maxY / IConstant.BLOCK_SIZE);
+		this.firstCol = Math.max(0, Math.min(this.cols, this.cellOf(minX)));
+		this.solid = new boolean[this.cols][];
+		this.open = new boolean[this.rows];
+		for (int c = 0; c < this.cols; c += 1) {
+			this.solid[c] = c < this.firstCol ? this.open : new boolean[this.rows];
+		}
+		for (IEnvironment ie : ground) {
+			this.fill(ie, true);
+		}
+	}
+
+	// Brings this up to date with the given ground, which is what this was built from less the
+	// pieces removed and plus the pieces added, touching only the columns they cover. Columns left
+	// empty at the start of the grid join the shared open column. Rebuilds whole instead if the
+	// ground does not add up or the added pieces reach past the bottom or left of the grid.
+	// EFFECT: Modifies this' cells and version
+	void patch(ArrayList<IEnvironment> ground, ArrayList<IEnvironment> removed, ArrayList<IEnvironment> added) {
+		if (this.builtFrom.size() - removed.size() + added.size() != ground.size()) {
+			this.build(ground);
+			return;
+		}
+		ArrayList<int[]> changed = new ArrayList<>();
+		int maxCol = this.cols;
+		for (IEnvironment ie : added) {
+			ICollisionBody body = ie.getCollisionBody();
+			if (body.getPosition().x < this.firstCol * IConstant.BLOCK_SIZE
+					|| body.getPosition().y + body.getDimensions().y > this.rows * IConstant.BLOCK_SIZE) {
+				this.build(ground);
+				return;
+			}
+			maxCol = Math.max(maxCol,
+					(int) Math.ceil((body.getPosition().x + body.getDimensions().x) / IConstant.BLOCK_SIZE));
+		}
+		// New columns start out open, reached by growing the column array by doubling
+		if (maxCol > this.solid.length) {
+			this.solid = Arrays.copyOf(this.solid, Math.max(maxCol, this.solid.length * 2));
+		}
+		for (int c = this.cols; c < maxCol; c += 1) {
+			this.solid[c] = new boolean[this.rows];
+		}
+		if (maxCol > this.cols) {
+			changed.add(new int[] { this.cols, maxCol - 1 });
+			this.cols = maxCol;
+		}
+		for (IEnvironment ie : removed) {
+			this.fill(ie, false);
+			changed.add(new int[] { this.colOf(ie, true), this.colOf(ie, false) });
+		}
+		// What remains may overlap what was cleared
+		for (IEnvironment ie : ground) {
+			for (int i = 0; i < changed.size(); i += 1) {
+				if (this.colOf(ie, false) >= changed.get(i)[0] && this.colOf(ie, true) <= changed.get(i)[1]) {
+					this.fill(ie, true);
+					break;
+				}
+			}
+		}
+		for (IEnvironment ie : added) {
+			this.fill(ie, true);
+			changed.add(new int[] { this.colOf(ie, true), this.colOf(ie, false) });
+		}
+		while (this.firstCol < this.cols && this.empty(this.firstCol)) {
+			this.solid[this.firstCol] = this.open;
+			this.firstCol += 1;
+		}
+		this.builtFrom = new ArrayList<>(ground);
+		this.version += 1;
+		// Runs of columns that overlap or touch are remembered as one
+		changed.sort((a, b) -> Integer.compare(a[0], b[0]));
+		int[] run = null;
+		for (int[] cols : changed) {
+			if (run != null && cols[0] <= run[2] + 1) {
+				run[2] = Math.max(run[2], cols[1]);
+			} else {
+				run = new int[] { this.version, cols[0], cols[1] };
+				this.patches.add(run);
+			}
+		}
+		while (this.patches.size() > MAX_PATCHES) {
+			this.rebuiltAt = this.patches.remove(0)[0];
+		}
+	}
+
+	// The runs of columns changed since the given version, each as its first and last column, or
+	// null if this has been rebuilt whole since or was patched too often since to say
+	ArrayList<int[]> changedSince(int version) {
+		if (version < this.rebuiltAt) {
+			return null;
+		}
+		ArrayList<int[]> changed = new ArrayList<>();
+		for (int[] p : this.patches) {
+			if (p[0] > version) {
+				changed.add(new int[] { p[1], p[2] });
+			}
+		}
+		return changed;
+	}
+
+	// Marks every cell the given ground covers as solid or open
+	// EFFECT: Modifies this' cells
+	void fill(IEnvironment ie, boolean isSolid) {
+		ICollisionBody body = ie.getCollisionBody();
+		int r0 = this.cellOf(body.getPosition().y + IConstant.COL_TOL);
+		int r1 = this.cellOf(body.getPosition().y + body.getDimensions().y - IConstant.COL_TOL);
+		int c0 = Math.max(this.firstCol, this.colOf(ie, true));
+		int c1 = Math.min(this.cols - 1, this.colOf(ie, false));
+		for (int c = c0; c <= c1; c += 1) {
+			for (int r = Math.max(0, r0); r <= Math.min(this.rows - 1, r1); r += 1) {
+				this.solid[c][r] = isSolid;
+			}
+		}
+	}
+
+	// The first or last column the given ground covers
+	int colOf(IEnvironment ie, boolean first) {
+		ICollisionBody body = ie.getCollisionBody();
+		return first ? this.cellOf(body.getPosition().x + IConstant.COL_TOL)
+				: this.cellOf(body.getPosition().x + body.getDimensions().x - IConstant.COL_TOL);
+	}
+
+	// Is every cell of the given column open?
+	boolean empty(int col) {
+		for (int r = 0; r < this.rows; r += 1) {
+			if (this.solid[col][r]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Is the given cell solid? Cells outside the grid are open
+	boolean solidAt(int col, int row) {
+		return col >= 0 && row >= 0 && col < this.cols && row < this.rows && this.solid[col][row];
+	}
+
+	// The grid cell containing the given coordinate in pixels
+	int cellOf(double pixels) {
+		return (int) Math.floor(pixels / IConstant.BLOCK_SIZE);
+	}
+}
@@ -1,3 +1,16 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import javalib.worldimages.Posn;
+import javalib.worldimages.WorldImage;
+
 import tester.Tester;
 
 class ExamplesPlatform {
@@ -5,4 +18,1057 @@ class ExamplesPlatform {
 		PlatformWorld pw = new PlatformWorld();
 		pw.run();
 	}
+	
+	// Two clients joined over localhost each control their own player and are sent the level around it
+	void testServerLoopback(Tester t) throws IOException {
+		GameServer server = new GameServer(0, 2);
+		GameClient runner = new GameClient(server.address());
+		GameClient idler = new GameClient(server.address());
+		for (int i = 0; i < 50; i += 1) {
+			runner.send(new InputFrame(InputFrame.RIGHT, -1, new Vector2D(IConstant.WINDX, 0)));
+			idler.send(new InputFrame(0, -1, Vector2D.ZERO));
+			server.tick();
+			runner.poll();
+			idler.poll();
+		}
+		t.checkExpect(server.game.players.size(), 2);
+		t.checkExpect(server.game.players.contains(server.game.player), false);
+		t.checkExpect(runner.playerId != idler.playerId, true);
+		t.checkExpect(runner.ownPlayer().x > idler.ownPlayer().x, true);
+		t.checkExpect(runner.world.size() > 1, true);
+		runner.disconnect();
+		idler.disconnect();
+		server.tick();
+		t.checkExpect(server.game.players.size(), 0);
+		server.close();
+	}
+	
+	// Every loopback spectator receives each tick, which was encoded only once, with each component
+	// under the same id for as long as it is in play
+	void testSpectatorFanOut(Tester t) throws IOException {
+		PlatformGame game = new PlatformGame();
+		SpectatorServer server = new SpectatorServer(0);
+		ArrayList<SpectatorClient> viewers = new ArrayList<>();
+		for (int i = 0; i < 40; i += 1) {
+			viewers.add(new SpectatorClient(server.address()));
+		}
+		for (int tick = 1; tick <= 20; tick += 1) {
+			game.tick();
+			server.publish(tick, game);
+			for (SpectatorClient sc : viewers) {
+				sc.poll();
+			}
+		}
+		t.checkExpect(server.viewers(), 40);
+		t.checkExpect(server.framesEncoded, 20L);
+		// A component keeps its id when one listed before it leaves play
+		SpectatorClient first = viewers.get(0);
+		int lastId = first.world.get(first.world.size() - 1).id;
+		game.enemies.remove(0);
+		server.publish(21, game);
+		for (SpectatorClient sc : viewers) {
+			sc.poll();
+		}
+		t.checkExpect(first.world.get(first.world.size() - 1).id, lastId);
+		for (SpectatorClient sc : viewers) {
+			t.checkExpect(sc.latestTick, 21);
+			t.checkExpect(sc.world.size(), game.gameComponents().size());
+			sc.close();
+		}
+		server.close();
+	}
+	
+	// A spectator that never reads is disconnected instead of having frames buffered for it forever
+	void testSpectatorDropsSlowConsumer(Tester t) throws IOException {
+		PlatformGame game = new PlatformGame();
+		SpectatorServer server = new SpectatorServer(new InetSocketAddress("127.0.0.1", 0), 4, 4096);
+		SpectatorClient stalled = new SpectatorClient(server.address(), 4096);
+		for (int tick = 1; tick <= 2000 && server.dropped == 0; tick += 1) {
+			server.publish(tick, game);
+		}
+		t.checkExpect(server.dropped, 1L);
+		t.checkExpect(server.viewers(), 0);
+		stalled.close();
+		server.close();
+	}
+	
+	// Rewinding restores the player to where it was and brings back enemies killed since
+	void testRewind(Tester t) {
+		PlatformGame game = new PlatformGame();
+		game.playerMoveX(true);
+		for (int i = 0; i < 50; i += 1) {
+			game.tick();
+		}
+		Vector2D then = game.player.getCollisionBody().getPosition();
+		int enemies = game.enemies.size();
+		for (int i = 0; i < 100; i += 1) {
+			game.tick();
+		}
+		game.enemies.get(0).reduceHealth(5);
+		game.tick();
+		t.checkExpect(game.enemies.size(), enemies - 1);
+		t.checkExpect(game.rewindTo(50), true);
+		t.checkExpect(game.tickCount, 50);
+		t.checkExpect(game.player.getCollisionBody().getPosition(), then);
+		t.checkExpect(game.enemies.size(), enemies);
+		t.checkExpect(game.rewindTo(100), false);
+	}
+	
+	// A large level keeps its full rewind history, and rewinding between keyframes restores it
+	void testRewindLargeLevel(Tester t) {
+		PlatformGame game = new ScenarioGenerator(Scenario.stockTimes(100, 7)).generate(0, 1);
+		int held = game.timestep.ticks(1);
+		int middle = held + RewindBuffer.KEYFRAME_INTERVAL / 2;
+		Vector2D then = null;
+		for (int i = 0; i < held * 2; i += 1) {
+			game.tick();
+			if (game.tickCount == middle) {
+				then = game.enemies.get(7).getCollisionBody().getPosition();
+			}
+		}
+		t.checkExpect(game.history.size() >= held, true);
+		t.checkExpect(game.history.evicted, 0L);
+		t.checkExpect(game.historySeconds() >= held * game.timestep.dt, true);
+		t.checkExpect(game.rewindTo(middle), true);
+		t.checkExpect(game.enemies.get(7).getCollisionBody().getPosition(), then);
+	}
+	
+	// Paths toward one target are computed once and shared by every node heading there
+	void testNavGraphSharedPaths(Tester t) {
+		PlatformGame game = new PlatformGame();
+		NavGraph nav = game.nav;
+		int goal = nav.nearestNode(PlatformGame.SPAWN);
+		int start = nav.nearestNode(new Util().topLFromBlock(new Posn(100, 50)));
+		int node = start;
+		for (int steps = 0; node != goal && steps < nav.nodeCount(); steps += 1) {
+			node = nav.edgeTarget(nav.nextEdge(node, goal));
+		}
+		t.checkExpect(node, goal);
+		t.checkExpect(nav.cachedTargets(), 1);
+		game.grid.refresh(game.ground);
+		nav.refresh();
+		t.checkExpect(nav.cachedTargets(), 1);
+		game.ground.add(new GroundBlock(new Posn(50, 50)));
+		game.grid.refresh(game.ground);
+		nav.refresh();
+		t.checkExpect(nav.cachedTargets(), 0);
+		
+		// Hunters are left out of the standard level and shown off in the demo
+		PlatformGame demo = PlatformGame.demo();
+		t.checkExpect(demo.enemies.size(), new PlatformGame().enemies.size() + 1);
+		t.checkExpect(demo.enemies.get(demo.enemies.size() - 1) instanceof HunterEnemy, true);
+	}
+	
+	// Turrets see through open space but not walls, and only march again when the target changes cell
+	void testLineOfSight(Tester t) {
+		PlatformGame game = new PlatformGame();
+		LineOfSight sight = game.sight;
+		Vector2D lower = new Util().topLFromBlock(new Posn(10, 75));
+		t.checkExpect(sight.clear(lower, new Util().topLFromBlock(new Posn(50, 72))), true);
+		t.checkExpect(sight.clear(lower, new Util().topLFromBlock(new Posn(50, 60))), false);
+		SightLine line = new SightLine();
+		long before = sight.marches;
+		sight.canSee(line, lower, new Vector2D(501, 721));
+		sight.canSee(line, lower, new Vector2D(505, 725));
+		t.checkExpect(sight.marches, before + 1);
+		sight.canSee(line, lower, new Vector2D(515, 725));
+		t.checkExpect(sight.marches, before + 2);
+		
+		// A line through the corner between two cells is blocked by either of them
+		PlatformGame corner = new PlatformGame(new Vector2D(0, 0));
+		corner.ground.add(new GroundBlock(new Posn(5, 4)));
+		corner.startLevel();
+		int size = IConstant.BLOCK_SIZE;
+		Vector2D from = new Vector2D(4.5 * size, 4.5 * size);
+		t.checkExpect(corner.sight.clear(from, new Vector2D(5.5 * size, 5.5 * size)), false);
+		t.checkExpect(corner.sight.clear(from, new Vector2D(3.5 * size, 5.5 * size)), true);
+	}
+	
+	// Bursts thin out as the system fills, never exceed its capacity, and expire on schedule
+	void testParticleCap(Tester t) {
+		ParticleSystem ps = new ParticleSystem(100);
+		ps.burst(ParticleSystem.SPARK, Vector2D.ZERO, 40, 100, 1);
+		t.checkExpect(ps.count, 40);
+		ps.burst(ParticleSystem.SPARK, Vector2D.ZERO, 40, 100, 1);
+		t.checkExpect(ps.count, 80);
+		ps.burst(ParticleSystem.SPARK, Vector2D.ZERO, 40, 100, 1);
+		t.checkExpect(ps.count, 96);
+		for (int i = 0; i < 10; i += 1) {
+			ps.burst(ParticleSystem.SPARK, Vector2D.ZERO, 40, 100, 1);
+		}
+		t.checkExpect(ps.count, 100);
+		t.checkExpect(ps.shed, 520L - 100L);
+		for (int i = 0; i <= 1 / IConstant.TICK_RATE; i += 1) {
+			ps.tick(IConstant.TICK_RATE);
+		}
+		t.checkExpect(ps.count, 0);
+	}
+	
+	// Generated worlds hold exactly the scenario's components and are the same for the same seed
+	void testScenarioGenerator(Tester t) {
+		Scenario ten = Scenario.stockTimes(10, 7);
+		PlatformGame game = new ScenarioGenerator(ten).generate();
+		t.checkExpect(game.ground.size(), ten.blocks);
+		t.checkExpect(game.enemies.size(), ten.turrets + ten.melee);
+		t.checkExpect(game.weaponEffects.size(), ten.bullets);
+		t.checkExpect(game.history.size(), 1);
+		PlatformGame again = new ScenarioGenerator(ten).generate();
+		t.checkExpect(again.enemies.get(7).getCollisionBody().getPosition(),
+				game.enemies.get(7).getCollisionBody().getPosition());
+		game.tick();
+		t.checkExpect(game.tickCount, 1);
+	}
+	
+	// Riders are carried along by a moving platform, which stays indexed as it travels
+	void testMovingPlatform(Tester t) {
+		PlatformGame game = new PlatformGame(new Util().topLFromBlock(new Posn(11, 17)));
+		MovingPlatform mp = new MovingPlatform(new Posn(10, 20), new Posn(30, 20), 6, 5);
+		game.addPlatform(mp);
+		game.startLevel();
+		for (int i = 0; i < 100; i += 1) {
+			game.tick();
+		}
+		Vector2D travelled = new Util().topLFromBlock(new Posn(10, 20)).displacementTo(mp.body.getPosition());
+		t.checkInexact(travelled.x, 5.0 * IConstant.BLOCK_SIZE, .01);
+		t.checkInexact(game.player.getCollisionBody().getPosition().x,
+				new Util().topLFromBlock(new Posn(11, 17)).x + travelled.x, .01);
+		t.checkExpect(game.platformUnder(game.player), mp);
+		game.rewindTo(0);
+		t.checkExpect(game.platformUnder(game.player), mp);
+		
+		// Moving platforms are left out of the standard level and shown off in the demo
+		t.checkExpect(new PlatformGame().platforms.size(), 0);
+		t.checkExpect(PlatformGame.demo().platforms.size(), 1);
+	}
+	
+	// The tree finds exactly the items a brute-force scan would, stays shallow, and only reinserts
+	// items that leave their fattened bounds
+	void testAABBTree(Tester t) {
+		Random rand = new Random(3);
+		AABBTree<Rectangle> tree = new AABBTree<>();
+		ArrayList<Rectangle> boxes = new ArrayList<>();
+		int[] handles = new int[300];
+		for (int i = 0; i < handles.length; i += 1) {
+			Rectangle r = new Rectangle(new Vector2D(rand.nextInt(2000), rand.nextInt(2000)), new Vector2D(30, 10));
+			boxes.add(r);
+			handles[i] = tree.insert(r, r);
+		}
+		t.checkExpect(tree.size, 300);
+		t.checkExpect(tree.height() <= 20, true);
+		t.checkExpect(tree.move(handles[0], boxes.get(0).onMove(new Vector2D(1, 0)), new Vector2D(1, 0)), false);
+		t.checkExpect(tree.move(handles[0], boxes.get(0).onMove(new Vector2D(500, 0)), new Vector2D(500, 0)), true);
+		tree.remove(handles[0]);
+		ArrayList<Rectangle> found = new ArrayList<>();
+		tree.query(500, 500, 900, 900, found);
+		for (Rectangle r : boxes.subList(1, boxes.size())) {
+			boolean inside = r.topLeft().x <= 900 && r.botRight().x >= 500 && r.topLeft().y <= 900
+					&& r.botRight().y >= 500;
+			if (inside) {
+				t.checkExpect(found.contains(r), true);
+			}
+		}
+		t.checkExpect(found.contains(boxes.get(0)), false);
+	}
+	
+	// Resolution leaves the player grounded on its support, and contacts are reported as they begin
+	// and end, so a knife swing cuts the first enemy it reaches exactly once and no other
+	void testContacts(Tester t) {
+		PlatformGame game = new PlatformGame();
+		IEnvironment floor = game.ground.get(0);
+		for (int i = 0; i < 30; i += 1) {
+			game.tick();
+		}
+		t.checkExpect(game.player.grounded, true);
+		t.checkExpect(game.player.support, floor);
+		t.checkExpect(game.contacts.touching(game.player, floor), true);
+		game.playerJump();
+		game.tick();
+		game.tick();
+		t.checkExpect(game.player.grounded, false);
+		t.checkExpect(game.contacts.touching(game.player, floor), false);
+		
+		PlatformGame empty = new PlatformGame(new Vector2D(0, 0));
+		MeleeEnemy a = new MeleeEnemy(new Posn(50, 50), new Posn(60, 50), empty.particles);
+		MeleeEnemy b = new MeleeEnemy(new Posn(50, 50), new Posn(60, 50), empty.particles);
+		empty.enemies.add(a);
+		empty.enemies.add(b);
+		empty.startLevel();
+		empty.weaponEffects.add(new KnifeEffect(new Util().topLFromBlock(new Posn(49, 51)), true));
+		for (int i = 0; i < 4; i += 1) {
+			empty.tick();
+		}
+		t.checkExpect(a.health.current, 1);
+		t.checkExpect(b.health.current, 2);
+	}
+	
+	// The direct renderer paints without a display, reads each sprite once whatever its case, and
+	// paints a level the same again into its reused buffer as a fresh renderer paints it
+	void testDirectRenderer(Tester t) {
+		Java2DRenderer renderer = new Java2DRenderer(new SpriteCache());
+		BufferedImage img = renderer.renderToImage(new PlatformGame());
+		t.checkExpect(img.getRGB(5, 795) & 0xFFFFFF, 0x000000);
+		t.checkExpect(img.getRGB(300, 300) & 0xFFFFFF, 0xFFFFFF);
+		t.checkExpect(renderer.sprites.sprite("turret.png", 10, 10), renderer.sprites.sprite("turret.png", 10, 10));
+		t.checkExpect(renderer.sprites.resolve("enemy.png").getName(), "enemy.PNG");
+		int[] first = img.getRGB(0, 0, IConstant.WINDX, IConstant.WINDY, null, 0, IConstant.WINDX);
+		int[] again = renderer.renderToImage(new PlatformGame()).getRGB(0, 0, IConstant.WINDX, IConstant.WINDY, null, 0,
+				IConstant.WINDX);
+		int[] fresh = new Java2DRenderer(new SpriteCache()).renderToImage(new PlatformGame()).getRGB(0, 0,
+				IConstant.WINDX, IConstant.WINDY, null, 0, IConstant.WINDX);
+		t.checkExpect(Arrays.equals(again, fresh), true);
+		t.checkExpect(Arrays.equals(first, fresh), true);
+		t.checkExpect(renderer.frames, 2L);
+	}
+
+	void testDirtyRegions(Tester t) {
+		DirtyRegions dr = new DirtyRegions();
+		dr.mark(0, 0, DirtyRegions.TILE - 1, DirtyRegions.TILE * 2 - 1);
+		dr.mark(DirtyRegions.TILE, 0, 1, DirtyRegions.TILE * 2 - 1);
+		dr.mark(-50, IConstant.WINDY - 1, 60, 100);
+		dr.mark(-50, 0, 10, 10);
+		t.checkExpect(dr.count, 5);
+		t.checkExpect(dr.gather(), true);
+		t.checkExpect(dr.rects, 2);
+		t.checkExpect(dr.rectWidth(0), DirtyRegions.TILE * 2);
+		t.checkExpect(dr.rectHeight(0), DirtyRegions.TILE * 2);
+
+		PlatformGame game = new PlatformGame();
+		Java2DRenderer full = new Java2DRenderer(new SpriteCache());
+		IncrementalRenderer incremental = new IncrementalRenderer(new Java2DRenderer(full.sprites));
+		incremental.renderToImage(game);
+		game.playerMoveX(true);
+		for (int i = 0; i < 20; i += 1) {
+			game.tick();
+			incremental.renderToImage(game);
+		}
+		BufferedImage expected = full.renderToImage(game);
+		BufferedImage actual = incremental.renderToImage(game);
+		boolean same = true;
+		for (int y = 0; y < IConstant.WINDY; y += 1) {
+			for (int x = 0; x < IConstant.WINDX; x += 1) {
+				same = same && expected.getRGB(x, y) == actual.getRGB(x, y);
+			}
+		}
+		t.checkExpect(same, true);
+		t.checkExpect(incremental.fullRepaints, 1L);
+		t.checkExpect(incremental.pixelsPainted < 5L * IConstant.WINDX * IConstant.WINDY, true);
+		
+		// Any change to what the HUD shows repaints it
+		int[] before = new int[Player.HUD_SIZE];
+		game.player.hudState(before);
+		game.player.health.adjust(-1);
+		game.playerSwitchWeapon(Rifle.INV);
+		game.player.weapons.currentWeapon().addAmmo(1);
+		int[] after = new int[Player.HUD_SIZE];
+		game.player.hudState(after);
+		t.checkExpect(Arrays.equals(before, after), false);
+		expected = full.renderToImage(game);
+		actual = incremental.renderToImage(game);
+		for (int y = 0; y < IncrementalRenderer.HUD_HEIGHT; y += 1) {
+			for (int x = 0; x < IConstant.WINDX; x += 1) {
+				same = same && expected.getRGB(x, y) == actual.getRGB(x, y);
+			}
+		}
+		t.checkExpect(same, true);
+		t.checkExpect(incremental.fullRepaints, 1L);
+
+		// Nothing is repainted for parts that neither moved nor changed, but turning around is
+		game.particles.count = 0;
+		incremental.renderToImage(game);
+		long painted = incremental.pixelsPainted;
+		incremental.renderToImage(game);
+		t.checkExpect(incremental.pixelsPainted, painted);
+		game.player.facingRight = !game.player.facingRight;
+		expected = full.renderToImage(game);
+		actual = incremental.renderToImage(game);
+		t.checkExpect(incremental.pixelsPainted > painted, true);
+		for (int y = 0; y < IConstant.WINDY; y += 1) {
+			for (int x = 0; x < IConstant.WINDX; x += 1) {
+				same = same && expected.getRGB(x, y) == actual.getRGB(x, y);
+			}
+		}
+		t.checkExpect(same, true);
+	}
+
+	void testInputQueue(Tester t) {
+		PlatformWorld world = new PlatformWorld();
+		InputLog log = new InputLog();
+		world.tap = log;
+		Vector2D start = world.game.player.getCollisionBody().getPosition();
+		world.onKeyEvent("d");
+		world.onKeyEvent("x");
+		world.onKeyEvent(String.valueOf(Pistol.INV));
+		t.checkExpect(world.input.size(), 2);
+		t.checkExpect(world.game.player.getCollisionBody().getPosition(), start);
+		for (int i = 0; i < 40; i += 1) {
+			if (i == 10) {
+				world.onMousePressed(new Posn(IConstant.WINDX, 0), "LeftButton");
+				world.onKeyEvent(" ");
+			}
+			if (i == 25) {
+				world.onKeyReleased("d");
+			}
+			world.onTick();
+		}
+		t.checkExpect(world.input.size(), 0);
+		t.checkExpect(log.size(), 5);
+
+		PlatformGame replayed = new PlatformGame();
+		for (int i = 0; i < 40; i += 1) {
+			log.replay(i, replayed);
+			replayed.tick();
+		}
+		t.checkExpect(replayed.player.getCollisionBody().getPosition(),
+				world.game.player.getCollisionBody().getPosition());
+		t.checkExpect(replayed.player.getCollisionBody().getPosition().x > start.x, true);
+
+		InputQueue q = new InputQueue();
+		for (int i = 0; i < InputQueue.CAPACITY; i += 1) {
+			q.offer(InputQueue.JUMP);
+		}
+		t.checkExpect(q.offer(InputQueue.JUMP), false);
+		t.checkExpect(q.dropped, 1L);
+		t.checkExpect(q.drain(new InputLog()), InputQueue.CAPACITY);
+		t.checkExpect(q.offer(InputQueue.JUMP), true);
+	}
+
+	void testAssetPreloader(Tester t) {
+		SpriteCache sprites = new SpriteCache();
+		AssetManifest manifest = AssetManifest.standard();
+		t.checkExpect(manifest.distinctFiles().size(), 6);
+		AssetPreloader preloader = new AssetPreloader(sprites, manifest).start();
+		t.checkExpect(preloader.await() > 0, true);
+		for (int i = 0; i < manifest.size(); i += 1) {
+			t.checkExpect(sprites.has(manifest.files.get(i), manifest.widths.get(i), manifest.heights.get(i)), true);
+		}
+		BufferedImage turret = sprites.sprite("turret.png", IConstant.BLOCK_SIZE * 2, IConstant.BLOCK_SIZE * 2);
+		WorldImage copy = sprites.image("turret.png", IConstant.BLOCK_SIZE * 2, IConstant.BLOCK_SIZE * 2);
+		t.checkExpect(copy.getWidth(), IConstant.BLOCK_SIZE * 2.0);
+		t.checkExpect(sprites.image("turret.png", IConstant.BLOCK_SIZE * 2, IConstant.BLOCK_SIZE * 2) == copy, true);
+		t.checkExpect(new SpriteCache().sprite("turret.png", IConstant.BLOCK_SIZE * 2, IConstant.BLOCK_SIZE * 2)
+				.getRGB(10, 10), turret.getRGB(10, 10));
+		t.checkException(new IllegalStateException("Preloading has already started."), preloader, "start");
+	}
+
+	void testBatchSimulator(Tester t) {
+		BatchSimulator one = new BatchSimulator(6, 1, 50, 7, (s) -> new PlatformGame(0, 0), (s) -> new RandomPolicy(s));
+		BatchSimulator three = new BatchSimulator(6, 3, 50, 7, (s) -> new PlatformGame(0, 0), (s) -> new RandomPolicy(s));
+		t.checkExpect(one.game(5).history, null);
+		for (int i = 0; i < 60; i += 1) {
+			one.step();
+		}
+		three.run(60);
+		t.checkExpect(Arrays.equals(three.observations, one.observations), true);
+		t.checkExpect(Arrays.equals(three.returns, one.returns), true);
+		t.checkExpect(one.episodes[0], 2);
+		t.checkExpect(one.ticks[0], 10);
+		t.checkExpect(one.totalTicks, 360L);
+		t.checkExpect(one.game(0) != one.game(1), true);
+		one.close();
+		three.close();
+		BatchSimulator seeded = new BatchSimulator(2, 50, 7);
+		t.checkExpect(seeded.game(0).endless.seed, seeded.episodeSeed(0, 0));
+		t.checkExpect(seeded.game(1).endless.seed, seeded.episodeSeed(1, 0));
+		seeded.close();
+		t.checkConstructorException(new IllegalArgumentException("Worlds, threads, and episode length must be positive."),
+				"BatchSimulator", 0, 10, 7L);
+	}
+
+	void testEndlessGenerator(Tester t) {
+		EndlessGenerator fast = new EndlessGenerator(11);
+		EndlessGenerator slow = new EndlessGenerator(11);
+		PlatformGame a = fast.start(0, 0);
+		PlatformGame b = slow.start(0, 0);
+		t.checkExpect(fast.built, EndlessGenerator.AHEAD_CHUNKS + 1);
+		double chunkWidth = EndlessGenerator.CHUNK_COLS * IConstant.BLOCK_SIZE;
+		int gridVersion = a.grid.version;
+		int built = fast.built;
+		boolean amortized = true;
+		for (int i = 0; i < 400; i += 1) {
+			a.player.body = a.player.body.setPosition(new Vector2D(50 + i * 3, PlatformGame.SPAWN.y));
+			a.tick();
+			amortized = amortized && a.grid.version - gridVersion <= 1 && fast.built - built <= 1;
+			gridVersion = a.grid.version;
+			built = fast.built;
+		}
+		for (int i = 0; i < 1200; i += 1) {
+			b.player.body = b.player.body.setPosition(new Vector2D(50 + i, PlatformGame.SPAWN.y));
+			b.tick();
+		}
+		t.checkExpect(amortized, true);
+		t.checkExpect(fast.firstChunk, 1);
+		t.checkExpect(slow.firstChunk, 1);
+		t.checkExpect(fast.nextChunk, 7);
+		t.checkExpect(slow.nextChunk, 7);
+		t.checkExpect(fast.retired > 0, true);
+		ArrayList<String> groundA = new ArrayList<>();
+		ArrayList<String> groundB = new ArrayList<>();
+		for (IEnvironment ie : a.ground) {
+			groundA.add(ie.getCollisionBody().getPosition() + " " + ie.getCollisionBody().getDimensions());
+		}
+		for (IEnvironment ie : b.ground) {
+			groundB.add(ie.getCollisionBody().getPosition() + " " + ie.getCollisionBody().getDimensions());
+		}
+		t.checkExpect(groundA, groundB);
+		for (IEnvironment ie : a.ground) {
+			t.checkExpect(ie.getCollisionBody().getPosition().x >= fast.firstChunk * chunkWidth, true);
+		}
+	}
+	
+	// An endless level patches its grid and navigation only where chunks are added and retired,
+	// simulating less than half the arcs building afresh would each time, and ends up with the same
+	// cells and paths as a grid and graph built afresh from its ground
+	void testEndlessPatches(Tester t) {
+		EndlessGenerator gen = new EndlessGenerator(5);
+		PlatformGame game = gen.start(0, 0);
+		game.nav.nodeCount();
+		long buildArcs = game.nav.arcs;
+		int built = gen.built;
+		for (int i = 0; i < 1200; i += 1) {
+			game.player.body = game.player.body.setPosition(new Vector2D(50 + i, PlatformGame.SPAWN.y));
+			game.tick();
+			game.nav.nodeCount();
+		}
+		BlockGrid grid = new BlockGrid();
+		grid.build(game.ground);
+		NavGraph nav = new NavGraph(grid, game.timestep.step);
+		t.checkExpect(game.grid.firstCol, grid.firstCol);
+		t.checkExpect(game.grid.cols, grid.cols);
+		boolean sameCells = true;
+		for (int c = 0; c < grid.cols; c += 1) {
+			for (int r = 0; r < grid.rows; r += 1) {
+				sameCells = sameCells && game.grid.solidAt(c, r) == grid.solidAt(c, r);
+			}
+		}
+		t.checkExpect(sameCells, true);
+		t.checkExpect(game.nav.nodeCount(), nav.nodeCount());
+		t.checkExpect(game.nav.edgeCount(), nav.edgeCount());
+		int target = nav.nearestNode(game.player.body.getPosition());
+		boolean samePaths = true;
+		for (int n = 0; n < nav.nodeCount(); n += 1) {
+			int e = nav.nextEdge(n, target);
+			int f = game.nav.nextEdge(n, target);
+			samePaths = samePaths && nav.nodePosition(n).x == game.nav.nodePosition(n).x
+					&& nav.nodePosition(n).y == game.nav.nodePosition(n).y && (e < 0) == (f < 0)
+					&& (e < 0 || nav.edgeTarget(e) == game.nav.edgeTarget(f) && nav.edgeTicks(e) == game.nav.edgeTicks(f));
+		}
+		t.checkExpect(samePaths, true);
+		t.checkExpect(game.nav.arcs - buildArcs < (gen.built - built) * nav.arcs / 2, true);
+	}
+	
+	// An endless level is played in a window that follows the player, held at the wall at the left
+	// edge, and painted the same whether in full or only where it changed; clicks are queued where
+	// they were in the window and aimed in the level when applied
+	void testEndlessCamera(Tester t) {
+		t.checkExpect(new PlatformGame().cameraX(), 0);
+		PlatformWorld world = new PlatformWorld(3);
+		PlatformGame game = world.game;
+		t.checkExpect(game.cameraX(), 0);
+		for (int i = 0; i < 900; i += 1) {
+			game.player.body = game.player.body.setPosition(new Vector2D(50 + i * 2, PlatformGame.SPAWN.y));
+			game.tick();
+		}
+		Rectangle pb = game.player.body;
+		t.checkExpect(game.cameraX(), (int) (pb.centerX() - IConstant.WINDX / 2));
+		int[] aimed = { -1 };
+		world.tap = (kind, arg, x, y) -> {
+			if (kind == InputQueue.FIRE) {
+				aimed[0] = x;
+			}
+		};
+		world.onMousePressed(new Posn(IConstant.WINDX / 2, 10), "LeftButton");
+		world.onMouseMoved(new Posn(IConstant.WINDX / 2 + 100, 10));
+		world.onTick();
+		t.checkExpect(aimed[0], IConstant.WINDX / 2);
+		t.checkExpect(game.player.facingRight, true);
+		world.onMouseMoved(new Posn(IConstant.WINDX / 2 - 100, 10));
+		world.onTick();
+		t.checkExpect(game.player.facingRight, false);
+		pb = game.player.body;
+		Java2DRenderer full = new Java2DRenderer(new SpriteCache());
+		IncrementalRenderer incremental = new IncrementalRenderer(new Java2DRenderer(full.sprites));
+		incremental.renderToImage(game);
+		for (int i = 0; i < 20; i += 1) {
+			game.tick();
+			incremental.renderToImage(game);
+		}
+		BufferedImage expected = full.renderToImage(game);
+		BufferedImage actual = incremental.renderToImage(game);
+		boolean same = true;
+		for (int y = 0; y < IConstant.WINDY; y += 1) {
+			for (int x = 0; x < IConstant.WINDX; x += 1) {
+				same = same && expected.getRGB(x, y) == actual.getRGB(x, y);
+			}
+		}
+		t.checkExpect(same, true);
+		int playerX = (int) pb.centerX() - game.cameraX();
+		t.checkExpect(expected.getRGB(playerX, (int) pb.centerY()) != Color.WHITE.getRGB(), true);
+	}
+	
+	// Jumps peak at the same height and the pistol fires as often at any tick rate and number of
+	// substeps, and low rates can opt into enough substeps to land on a thin floor
+	void testTimestep(Tester t) {
+		int[] rates = { 30, 60, 120 };
+		t.checkExpect(new Timestep(30).substeps, 1);
+		t.checkExpect(Timestep.safe(30).substeps, 4);
+		t.checkExpect(Timestep.safe(120).substeps, 1);
+		t.checkExpect(Timestep.configured().substeps, 1);
+		for (int hz : rates) {
+			int safe = Timestep.safe(hz).substeps;
+			for (int substeps = safe; substeps <= safe + 1; substeps += 1) {
+				Timestep ts = new Timestep(hz, substeps);
+				PlatformGame game = new PlatformGame(new Util().topLFromBlock(new Posn(5, 10)), 0, 0, ts);
+				game.ground.add(new EnvironmentGenerator().line(new Posn(0, 13), true, 40));
+				game.startLevel();
+				for (int i = 0; i < ts.ticks(.5); i += 1) {
+					game.tick();
+				}
+				double floor = game.player.body.getPosition().y;
+				game.playerJump();
+				double apex = floor;
+				for (int i = 0; i < ts.ticks(1); i += 1) {
+					game.tick();
+					apex = Math.min(apex, game.player.body.getPosition().y);
+				}
+				t.checkInexact(floor - apex, 8.0 * IConstant.BLOCK_SIZE, .001);
+				t.checkInexact(game.player.body.getPosition().y, floor, .001);
+
+				game.playerSwitchWeapon(Pistol.INV);
+				for (int i = 0; i < ts.ticks(3); i += 1) {
+					game.playerFireAt(new Vector2D(IConstant.WINDX, floor));
+					game.tick();
+				}
+				t.checkExpect(game.player.weapons.currentWeapon().ammoShown(), 7);
+			}
+		}
+	}
+	
+	// Enemies far from the player sleep, and wake with their patrols and timers where they would
+	// have been had they been played all along, and rewinding puts them back to sleep
+	void testActivityRegions(Tester t) {
+		PlatformGame[] games = new PlatformGame[2];
+		for (int g = 0; g < 2; g += 1) {
+			PlatformGame game = new PlatformGame(new Util().topLFromBlock(new Posn(5, 10)));
+			game.ground.add(new EnvironmentGenerator().line(new Posn(0, 13), true, 400));
+			game.ground.add(new EnvironmentGenerator().line(new Posn(290, 0), false, 13));
+			game.enemies.add(new MeleeEnemy(new Posn(300, 10), new Posn(317, 10), game.particles));
+			game.enemies.add(new SentryTurret(new Posn(330, 11), game.sight, game.particles));
+			game.activity = g == 0 ? new ActivityManager(Double.MAX_VALUE, Double.MAX_VALUE)
+					: new ActivityManager(IConstant.WINDX / 2, IConstant.WINDY / 2);
+			game.startLevel();
+			for (int i = 0; i < 100; i += 1) {
+				game.tick();
+			}
+			games[g] = game;
+		}
+		PlatformGame always = games[0];
+		PlatformGame nearby = games[1];
+		t.checkExpect(always.activity.sleepingCount(), 0);
+		t.checkExpect(nearby.activity.sleepingCount(), 2);
+		t.checkExpect(nearby.activity.awake.size(), 0);
+		for (PlatformGame game : games) {
+			game.player.body = game.player.body.setPosition(new Util().topLFromBlock(new Posn(320, 10)));
+			game.tick();
+		}
+		t.checkExpect(nearby.activity.sleepingCount(), 0);
+		t.checkExpect(nearby.activity.caughtUp, 100L * 2);
+		t.checkInexact(nearby.enemies.get(0).getCollisionBody().getPosition().x,
+				always.enemies.get(0).getCollisionBody().getPosition().x, 1e-9);
+		t.checkInexact(((SentryTurret) nearby.enemies.get(1)).reload.secondsLeft(),
+				((SentryTurret) always.enemies.get(1)).reload.secondsLeft(), 1e-9);
+		nearby.rewindTo(50);
+		t.checkExpect(nearby.activity.sleepingCount(), 2);
+	}
+	
+	// Waking costs the same however long an enemy slept: a chaser jumps along its path and a
+	// patrol folds its walk, landing where stepping would, or within a step's walk of it per turn
+	void testBoundedCatchUp(Tester t) {
+		PlatformGame game = new PlatformGame();
+		double step = game.timestep.step;
+		HunterEnemy stepped = new HunterEnemy(new Posn(100, 50), game.nav, game.particles);
+		HunterEnemy jumped = new HunterEnemy(new Posn(100, 50), game.nav, game.particles);
+		stepped.target.set(PlatformGame.SPAWN.x, PlatformGame.SPAWN.y);
+		jumped.target.set(PlatformGame.SPAWN.x, PlatformGame.SPAWN.y);
+		for (int s = 0; s < 100000; s += 1) {
+			stepped.tick(step);
+		}
+		jumped.catchUp(Integer.MAX_VALUE, step);
+		t.checkExpect(jumped.node, stepped.node);
+		t.checkExpect(jumped.edge, -1);
+		t.checkInexact(jumped.getCollisionBody().left(), stepped.getCollisionBody().left(), 1e-9);
+		t.checkInexact(jumped.getCollisionBody().top(), stepped.getCollisionBody().top(), 1e-9);
+		AIEnemy walker = AIEnemy.gunner(new Posn(10, 10), new Posn(20, 10), game.sight, game.particles);
+		AIEnemy folded = AIEnemy.gunner(new Posn(10, 10), new Posn(20, 10), game.sight, game.particles);
+		walker.board[AIEnemy.VX] = 100;
+		folded.board[AIEnemy.VX] = 100;
+		// Three quarters of a lap, so it turns back once, and stepping loses at most a step's walk there
+		int steps = (int) (.75 * 2 * 10 * IConstant.BLOCK_SIZE / (100 * step));
+		for (int s = 0; s < steps; s += 1) {
+			walker.tick(step);
+		}
+		folded.catchUp(steps, step);
+		t.checkExpect(Math.abs(folded.getCollisionBody().left() - walker.getCollisionBody().left())
+				<= 3 * 100 * step, true);
+		t.checkExpect(folded.board[AIEnemy.VX], walker.board[AIEnemy.VX]);
+		folded.catchUp(Integer.MAX_VALUE, step);
+		t.checkExpect(folded.getCollisionBody().left() >= folded.board[AIEnemy.PATROL_LEFT]
+				&& folded.getCollisionBody().left() <= folded.board[AIEnemy.PATROL_RIGHT], true);
+	}
+	
+	// Sleeping enemies are not drawn, but a blast or shot reaching one wakes it and strikes it where
+	// it is
+	void testSleepersHiddenUntilShot(Tester t) {
+		PlatformGame game = new PlatformGame(new Util().topLFromBlock(new Posn(5, 10)));
+		game.ground.add(new EnvironmentGenerator().line(new Posn(0, 13), true, 400));
+		AIEnemy far = AIEnemy.gunner(new Posn(300, 10), new Posn(301, 10), game.sight, game.particles);
+		AIEnemy bombed = AIEnemy.gunner(new Posn(200, 10), new Posn(201, 10), game.sight, game.particles);
+		game.enemies.add(far);
+		game.enemies.add(bombed);
+		game.activity = new ActivityManager(IConstant.WINDX / 2, IConstant.WINDY / 2);
+		game.startLevel();
+		game.tick();
+		t.checkExpect(game.activity.asleep(far), true);
+		t.checkExpect(game.activity.asleep(bombed), true);
+		t.checkExpect(game.gameComponents().contains(far), false);
+		game.player.weapons.blasts.add(bombed.body.centerX(), bombed.body.centerY(), Grenade.RADIUS, Grenade.DAMAGE);
+		game.tick();
+		t.checkExpect(game.activity.asleep(bombed), false);
+		t.checkExpect(game.activity.asleep(far), true);
+		t.checkExpect(bombed.health.dead(), true);
+		Rectangle pb = game.player.body;
+		game.player.weapons.rays.add(pb.centerX(), pb.centerY(), 0, 400 * IConstant.BLOCK_SIZE, 1);
+		game.tick();
+		t.checkExpect(game.activity.asleep(far), false);
+		t.checkExpect(far.health.current, 1);
+		t.checkExpect(game.gameComponents().contains(far), true);
+	}
+	
+	// A patrol can be found at any moment without stepping, lands where stepping would, and turns
+	// back at each end-point
+	void testBlockOscillation(Tester t) {
+		BlockOscillation stepped = new BlockOscillation(new Vector2D(100, 50), new Vector2D(200, 50), 40);
+		for (int i = 0; i < 1000; i += 1) {
+			stepped.onMove(IConstant.TICK_RATE);
+		}
+		BlockOscillation jumped = new BlockOscillation(new Vector2D(100, 50), new Vector2D(200, 50), 40);
+		jumped.seek(10);
+		t.checkInexact(stepped.x(), jumped.x(), 1e-9);
+		t.checkExpect(jumped.x(), 100.0);
+		t.checkExpect(jumped.towardFinal(), true);
+		t.checkExpect(jumped.xAt(2.5), 200.0);
+		t.checkExpect(jumped.towardFinalAt(2.5), false);
+		t.checkExpect(jumped.xAt(3), 180.0);
+		t.checkExpect(jumped.yAt(3), 50.0);
+		t.checkExpect(jumped.direction(), Vector2D.RIGHT);
+		jumped.seek(3);
+		t.checkExpect(jumped.direction(), Vector2D.LEFT);
+		t.checkExpect(jumped.headingRight(), false);
+		t.checkExpect(jumped.xAt(1e6 + 1), 140.0);
+		t.checkExpect(new BlockOscillation(new Vector2D(100, 50), new Vector2D(100, 50), 40).xAt(7), 100.0);
+		t.checkConstructorException(new IllegalArgumentException("Oscillation speed must be positive."),
+				"BlockOscillation", Vector2D.ZERO, Vector2D.RIGHT, 0.0);
+	}
+	
+	// Once a level settles into patrols, a riding platform, and a turret waiting for a clear shot,
+	// a tick allocates nothing, history and all. It is played until the compiler stops working on
+	// it, and then held to under a few bytes a tick: a stray object from a late recompile stays
+	// under that, where one vector a tick would not.
+	void testZeroAllocationTick(Tester t) {
+		PlatformGame game = new PlatformGame(new Util().topLFromBlock(new Posn(5, 10)));
+		game.ground.add(new EnvironmentGenerator().line(new Posn(0, 13), true, 60));
+		game.ground.add(new EnvironmentGenerator().line(new Posn(40, 0), false, 13));
+		game.enemies.add(new MeleeEnemy(new Posn(20, 10), new Posn(30, 10), game.particles));
+		game.enemies.add(new SentryTurret(new Posn(45, 11), game.sight, game.particles));
+		game.addPlatform(new MovingPlatform(new Posn(10, 8), new Posn(20, 8), 4, 3));
+		game.startLevel();
+		CompilationMXBean jit = ManagementFactory.getCompilationMXBean();
+		boolean timed = jit != null && jit.isCompilationTimeMonitoringSupported();
+		long compiling = -1;
+		for (int w = 0; w < 10 || (timed && w < 100 && jit.getTotalCompilationTime() != compiling); w += 1) {
+			compiling = timed ? jit.getTotalCompilationTime() : 0;
+			for (int i = 0; i < 200; i += 1) {
+				game.tick();
+			}
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < 500; i += 1) {
+			game.tick();
+		}
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+		t.checkExpect(allocated < 500 * 8, true);
+		t.checkExpect(game.player.grounded, true);
+		t.checkExpect(game.history.size() > 0, true);
+	}
+	
+	// Vectors measure and normalize as expected, and a mutable vector accumulates in place the same
+	// sums an immutable one would
+	void testMutableVector2D(Tester t) {
+		Vector2D v = new Vector2D(3, 4);
+		t.checkExpect(v.magnitude(), 5.0);
+		t.checkExpect(new Vector2D(0, -2).getUnitVector(), Vector2D.UP);
+		t.checkExpect(new MutableVector2D(3, 4).addScaled(v, 2).scale(.5).toVector2D(), new Vector2D(4.5, 6));
+		t.checkExpect(new MutableVector2D().normalize().toVector2D(), Vector2D.UP);
+	}
+	
+	// A player running over a floor of separate blocks into a wall is pushed out of them all at
+	// once: it never catches on the seams, stops flush against the wall, and ends up in the same
+	// place whichever order the blocks are listed in
+	void testContactSolver(Tester t) {
+		PlatformGame forward = new PlatformGame(new Util().topLFromBlock(new Posn(2, 8)));
+		PlatformGame backward = new PlatformGame(new Util().topLFromBlock(new Posn(2, 8)));
+		ArrayList<IEnvironment> blocks = new ArrayList<>();
+		for (int c = 0; c < 30; c += 1) {
+			blocks.add(new GroundBlock(new Posn(c, 12)));
+		}
+		for (int r = 9; r < 12; r += 1) {
+			blocks.add(new GroundBlock(new Posn(25, r)));
+		}
+		for (int i = 0; i < blocks.size(); i += 1) {
+			forward.ground.add(blocks.get(i));
+			backward.ground.add(0, blocks.get(i));
+		}
+		forward.startLevel();
+		backward.startLevel();
+		for (int i = 0; i < forward.timestep.ticks(.5); i += 1) {
+			forward.playerMoveX(true);
+			forward.tick();
+			backward.playerMoveX(true);
+			backward.tick();
+		}
+		t.checkExpect(forward.player.grounded, true);
+		t.checkExpect(forward.player.velocity.x, Player.HORIZ_SPEED);
+		for (int i = 0; i < forward.timestep.ticks(3); i += 1) {
+			forward.playerMoveX(true);
+			forward.tick();
+			backward.playerMoveX(true);
+			backward.tick();
+		}
+		t.checkExpect(forward.player.body.getPosition(), backward.player.body.getPosition());
+		t.checkInexact(forward.player.body.right(), 250.0, 1e-9);
+		t.checkInexact(forward.player.body.bottom(), 120.0, 1e-9);
+		t.checkExpect(forward.player.grounded, true);
+		t.checkExpect(forward.player.velocity.x, 0.0);
+	}
+	
+	// Enemies share their behavior trees and think a few at a time within the scheduler's budget,
+	// carrying out what they last decided in between: a gunner in reach of the player stands and
+	// fires, one out of reach patrols, and a rotating turret swings round onto the player and stops
+	// firing once a wall comes between them
+	void testBehaviorTrees(Tester t) {
+		PlatformGame game = new PlatformGame(new Util().topLFromBlock(new Posn(5, 10)));
+		game.ground.add(new EnvironmentGenerator().line(new Posn(0, 13), true, 120));
+		AIEnemy near = AIEnemy.gunner(new Posn(20, 10), new Posn(30, 10), game.sight, game.particles);
+		AIEnemy far = AIEnemy.gunner(new Posn(80, 10), new Posn(90, 10), game.sight, game.particles);
+		AIEnemy turret = AIEnemy.rotatingTurret(new Posn(10, 2), game.sight, game.particles);
+		game.enemies.add(near);
+		game.enemies.add(far);
+		game.enemies.add(turret);
+		game.ai = new BehaviorScheduler(8);
+		game.startLevel();
+		game.tick();
+		t.checkExpect(near.tree == far.tree, true);
+		t.checkExpect(game.activity.thinkers.size(), 3);
+		t.checkExpect(game.ai.thoughts, 2L);
+		t.checkExpect(game.ai.cursor, 2);
+		boolean fired = false;
+		for (int i = 0; i < game.timestep.ticks(2); i += 1) {
+			game.tick();
+			fired = fired || game.weaponEffects.size() > 0;
+		}
+		t.checkExpect(game.ai.thoughts > 3, true);
+		t.checkExpect(near.board[AIEnemy.VX], 0.0);
+		t.checkExpect(near.body.left(), 200.0);
+		t.checkExpect(far.body.left() > 800, true);
+		t.checkExpect(Math.abs(AIEnemy.turnBetween(turret.board[AIEnemy.AIM], turret.board[AIEnemy.AIM_GOAL])) <= 5,
+				true);
+		t.checkExpect(fired, true);
+		t.checkExpect(turret.board[AIEnemy.FIRE], 1.0);
+		game.ground.add(new EnvironmentGenerator().line(new Posn(0, 6), true, 20));
+		game.grid.refresh(game.ground);
+		ArrayList<IWeaponEffect> shots = new ArrayList<>();
+		turret.reload.restart(0);
+		turret.fireAt(game.player, shots);
+		t.checkExpect(turret.board[AIEnemy.FIRE], 0.0);
+		t.checkExpect(shots.size(), 0);
+		t.checkExpect(AIEnemy.turnBetween(170, -170), 20.0);
+		t.checkConstructorException(
+				new IllegalArgumentException("Patrol must include the start and turn rate must be positive."),
+				"AIEnemy", new Posn(0, 0), Player.DIM, Behaviors.GUNNER, 0.0, 0.0, 0.0, 1, "enemy.png",
+				"enemy-l.png", game.sight, game.particles);
+	}
+	
+	// A player running through a trigger volume is reported entering it once and leaving it once,
+	// a spawn zone brings in its enemies on that first entry, and again after rewinding to before
+	// it, and a player standing still within one block is never looked up again
+	void testTriggers(Tester t) {
+		PlatformGame game = new PlatformGame(new Util().topLFromBlock(new Posn(5, 10)));
+		game.ground.add(new EnvironmentGenerator().line(new Posn(0, 13), true, 60));
+		ArrayList<IEnemy> spawns = new ArrayList<>();
+		spawns.add(new MeleeEnemy(new Posn(40, 10), new Posn(45, 10), game.particles));
+		SpawnZone zone = new SpawnZone(game, spawns);
+		TriggerVolume gate = new TriggerVolume(new Posn(10, 0), 2, 13, zone);
+		game.triggers.add(gate);
+		for (int c = 0; c < 1000; c += 1) {
+			game.triggers.add(new TriggerVolume(new Posn(100 + c, 0), 1, 1, zone));
+		}
+		game.startLevel();
+		game.tick();
+		t.checkExpect(game.triggers.inside(game.player, gate), false);
+		while (game.player.body.left() < 90) {
+			game.playerMoveX(true);
+			game.tick();
+		}
+		t.checkExpect(game.triggers.inside(game.player, gate), true);
+		t.checkExpect(zone.spawned, true);
+		t.checkExpect(game.enemies, spawns);
+		while (game.player.body.left() < 125) {
+			game.playerMoveX(true);
+			game.tick();
+		}
+		game.haltPlayerX();
+		game.tick();
+		t.checkExpect(game.triggers.inside(game.player, gate), false);
+		t.checkExpect(game.triggers.entered, 1L);
+		t.checkExpect(game.triggers.exited, 1L);
+		long lookups = game.triggers.lookups;
+		for (int i = 0; i < 10; i += 1) {
+			game.tick();
+		}
+		t.checkExpect(game.triggers.lookups, lookups);
+		game.rewindTo(1);
+		t.checkExpect(zone.spawned, false);
+		t.checkExpect(game.enemies.size(), 0);
+		while (game.player.body.left() < 90) {
+			game.playerMoveX(true);
+			game.tick();
+		}
+		t.checkExpect(zone.spawned, true);
+		t.checkExpect(game.enemies, spawns);
+		t.checkConstructorException(new IllegalArgumentException("Trigger volume must cover at least one block."),
+				"TriggerVolume", new Posn(0, 0), 0, 1, zone);
+	}
+	
+	// A rifle shot puts nothing in play: its fan of rounds is struck at the start of the next tick,
+	// each round hitting the nearest enemy along it unless a wall comes first
+	void testHitscanRifle(Tester t) {
+		PlatformGame open = new PlatformGame(new Util().topLFromBlock(new Posn(5, 10)));
+		PlatformGame walled = new PlatformGame(new Util().topLFromBlock(new Posn(5, 10)));
+		PlatformGame[] games = { open, walled };
+		walled.ground.add(new EnvironmentGenerator().line(new Posn(15, 9), false, 4));
+		for (int g = 0; g < games.length; g += 1) {
+			games[g].ground.add(new EnvironmentGenerator().line(new Posn(0, 13), true, 60));
+			games[g].enemies.add(new SentryTurret(new Posn(30, 10), games[g].sight, games[g].particles));
+			games[g].enemies.add(new SentryTurret(new Posn(20, 10), games[g].sight, games[g].particles));
+			games[g].startLevel();
+			games[g].playerSwitchWeapon(Rifle.INV);
+			games[g].playerFireAt(new Vector2D(300, 115));
+			games[g].playerFireAt(new Vector2D(300, 115));
+		}
+		RayBatch rays = open.player.weapons.rays;
+		SentryTurret behind = (SentryTurret) open.enemies.get(0);
+		SentryTurret ahead = (SentryTurret) open.enemies.get(1);
+		t.checkExpect(open.player.weapons.currentWeapon() instanceof Rifle, true);
+		t.checkExpect(open.player.weapons.currentWeapon().ammoShown(), 19);
+		t.checkExpect(rays.pending(), Rifle.ROUNDS);
+		t.checkExpect(open.weaponEffects.size(), 0);
+		open.tick();
+		walled.tick();
+		t.checkExpect(rays.pending(), 0);
+		t.checkExpect(rays.resolved(), Rifle.ROUNDS);
+		t.checkExpect(rays.struck(1), ahead);
+		t.checkInexact(rays.struckAt(1), 140.0, 1e-9);
+		t.checkExpect(behind.health.current, 3);
+		t.checkExpect(ahead.health.dead(), true);
+		t.checkExpect(open.enemies.contains(ahead), false);
+		t.checkExpect(walled.player.weapons.rays.struck(1), null);
+		t.checkInexact(walled.player.weapons.rays.struckAt(1), 90.0, 1e-9);
+		t.checkExpect(((SentryTurret) walled.enemies.get(1)).health.current, 3);
+		t.checkException(new IllegalArgumentException("No such ray in the last batch resolved."), rays, "struck",
+				Rifle.ROUNDS);
+		Rifle rifle = new Rifle(new RayBatch(CollisionLayers.PLAYER_PROJECTILE));
+		TimeTemporary reload = rifle.reload;
+		ArrayList<IWeaponEffect> out = new ArrayList<>();
+		rifle.fire(0, 0, 1, 0, out);
+		t.checkExpect(out.size(), 0);
+		t.checkExpect(rifle.rays.pending(), Rifle.ROUNDS);
+		t.checkExpect(rifle.reload == reload, true);
+		t.checkExpect(rifle.reload.finished(), false);
+	}
+
+	// A grenade arcs down under gravity and bursts where it lands, its blast falling off with
+	// distance and shielded by walls, and the enemies it reaches are found through the index alone
+	void testGrenade(Tester t) {
+		PlatformGame game = new PlatformGame(new Util().topLFromBlock(new Posn(5, 10)));
+		game.ground.add(new EnvironmentGenerator().line(new Posn(0, 13), true, 60));
+		game.ground.add(new EnvironmentGenerator().line(new Posn(27, 9), false, 4));
+		SentryTurret near = new SentryTurret(new Posn(20, 11), game.sight, game.particles);
+		SentryTurret nearer = new SentryTurret(new Posn(23, 11), game.sight, game.particles);
+		SentryTurret shielded = new SentryTurret(new Posn(28, 11), game.sight, game.particles);
+		game.enemies.add(near);
+		game.enemies.add(nearer);
+		game.enemies.add(shielded);
+		game.startLevel();
+		BlastBatch blasts = game.player.weapons.blasts;
+		blasts.add(255, 120, Grenade.RADIUS, Grenade.DAMAGE);
+		t.checkExpect(blasts.damageTo(0, near.body, game.sight), 1);
+		t.checkExpect(blasts.damageTo(0, nearer.body, game.sight), 3);
+		t.checkExpect(blasts.damageTo(0, shielded.body, game.sight), 0);
+		t.checkExpect(blasts.damageTo(0, game.player.body, game.sight), 0);
+		game.tick();
+		t.checkExpect(blasts.pending(), 0);
+		t.checkExpect(nearer.health.dead(), true);
+		t.checkExpect(near.health.current, 2);
+		t.checkExpect(shielded.health.current, 3);
+		t.checkExpect(game.blastTargets.queries, 1L);
+		game.playerSwitchWeapon(Grenade.INV);
+		game.playerFireAt(new Vector2D(150, 40));
+		t.checkExpect(game.weaponEffects.size(), 1);
+		GrenadeShell shell = (GrenadeShell) game.weaponEffects.get(0);
+		double thrown = shell.velocity.y;
+		game.tick();
+		t.checkExpect(shell.velocity.y > thrown, true);
+		game.tick();
+		double fallen = shell.velocity.y;
+		game.rewindTo(game.tickCount - 1);
+		game.tick();
+		t.checkExpect(shell.velocity.y, fallen);
+		for (int i = 0; i < game.timestep.ticks(2) && !shell.detonated; i += 1) {
+			game.tick();
+		}
+		t.checkExpect(shell.detonated, true);
+		t.checkExpect(game.weaponEffects.contains(shell), false);
+		t.checkExpect(blasts.blasts, 2L);
+		t.checkExpect(near.health.dead(), true);
+		t.checkExpect(game.player.weapons.currentWeapon().ammoShown(), 4);
+		t.checkException(new IllegalArgumentException("Blast must have positive radius and no negative damage."),
+				blasts, "add", 0.0, 0.0, 0.0, 1);
+	}
+
+	// The layer matrix is symmetric, and pairs that can never interact are turned away by layer
+	void testCollisionLayers(Tester t) {
+		boolean symmetric = true;
+		for (int i = 0; i < CollisionLayers.MATRIX.length; i += 1) {
+			for (int j = 0; j < CollisionLayers.MATRIX.length; j += 1) {
+				symmetric = symmetric && (CollisionLayers.MATRIX[i] >> j & 1) == (CollisionLayers.MATRIX[j] >> i & 1);
+			}
+		}
+		t.checkExpect(symmetric, true);
+		Player pl = new Player(Vector2D.ZERO);
+		MeleeEnemy melee = new MeleeEnemy(new Posn(0, 0), new Posn(5, 0), new ParticleSystem(0));
+		GroundBlock block = new GroundBlock(new Posn(0, 3));
+		t.checkExpect(CollisionLayers.interacts(new PlayerBullet(Vector2D.ZERO, Vector2D.RIGHT), pl), false);
+		t.checkExpect(CollisionLayers.interacts(new PlayerBullet(Vector2D.ZERO, Vector2D.RIGHT), melee), true);
+		t.checkExpect(CollisionLayers.interacts(new EnemyBullet(Vector2D.ZERO, Vector2D.RIGHT), pl), true);
+		t.checkExpect(CollisionLayers.interacts(new EnemyBullet(Vector2D.ZERO, Vector2D.RIGHT), melee), false);
+		t.checkExpect(CollisionLayers.interacts(new KnifeEffect(Vector2D.ZERO, true), melee), true);
+		t.checkExpect(CollisionLayers.interacts(new KnifeEffect(Vector2D.ZERO, true), block), false);
+		t.checkExpect(CollisionLayers.interacts(new PistolAmmo(new Posn(0, 0), 1), pl), true);
+		t.checkExpect(CollisionLayers.interacts(melee, block), false);
+		t.checkExpect(CollisionLayers.interacts(pl, pl), false);
+		t.checkException(new IllegalArgumentException("A component must be in exactly one collision layer."),
+				new CollisionLayers(), "maskOf", CollisionLayers.PLAYER | CollisionLayers.ENEMY);
+	}
 }
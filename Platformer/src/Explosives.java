@@ -0,0 +1,351 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import javalib.worldimages.Posn;
+
+// The enemies given, hashed by the bucket their center lies in, so finding those overlapping a
+// region costs about as much as the enemies near it rather than every enemy in play. Each enemy is
+// put in one bucket only, and queries reach out by the largest enemy's half-size to make up for
+// it. Buckets are counted out into flat arrays, so rebuilding allocates nothing once the arrays
+// have grown to the crowd, and how far apart the enemies are does not matter.
+class EnemyBuckets {
+	// Blocks along each side of a bucket
+	static final int BUCKET = 8;
+	static final double SIZE = BUCKET * IConstant.BLOCK_SIZE;
+
+	// Where each slot's enemies begin in the sorted arrays, and where the last slot's end
+	private int[] start;
+	private int slots;
+	// The enemies by slot, and the bucket each lies in
+	private IEnemy[] sorted;
+	private int[] col;
+	private int[] row;
+	// Scratch slot and bucket of each enemy, in the order given
+	private int[] slotOf;
+	private int[] givenCol;
+	private int[] givenRow;
+	private int count;
+	// Largest half-width and half-height of the enemies indexed
+	private double reachX;
+	private double reachY;
+	// Rebuilds and queries made, for measuring
+	long rebuilds;
+	long queries;
+
+	EnemyBuckets() {
+		this.start = new int[17];
+		this.slots = 16;
+		this.sorted = new IEnemy[8];
+		this.col = new int[8];
+		this.row = new int[8];
+		this.slotOf = new int[8];
+		this.givenCol = new int[8];
+		this.givenRow = new int[8];
+		this.count = 0;
+		this.reachX = 0;
+		this.reachY = 0;
+		this.rebuilds = 0;
+		this.queries = 0;
+	}
+
+	// Number of enemies indexed
+	int size() {
+		return this.count;
+	}
+
+	// Indexes exactly the given enemies where they are now, in a table of at least twice as many
+	// slots
+	// EFFECT: Modifies this' index
+	void rebuild(ArrayList<IEnemy> enemies) {
+		int n = enemies.size();
+		this.rebuilds += 1;
+		this.count = n;
+		this.slots = 16;
+		while (this.slots < 2 * n) {
+			this.slots *= 2;
+		}
+		if (this.start.length < this.slots + 1) {
+			this.start = new int[this.slots + 1];
+		}
+		if (this.sorted.length < n) {
+			int size = Math.max(n, this.sorted.length * 2);
+			this.sorted = new IEnemy[size];
+			this.col = new int[size];
+			this.row = new int[size];
+			this.slotOf = new int[size];
+			this.givenCol = new int[size];
+			this.givenRow = new int[size];
+		}
+		Arrays.fill(this.start, 0, this.slots + 1, 0);
+		this.reachX = 0;
+		this.reachY = 0;
+		for (int i = 0; i < n; i += 1) {
+			ICollisionBody body = enemies.get(i).getCollisionBody();
+			this.givenCol[i] = this.bucketOf((body.left() + body.right()) / 2);
+			this.givenRow[i] = this.bucketOf((body.top() + body.bottom()) / 2);
+			this.slotOf[i] = this.slot(this.givenCol[i], this.givenRow[i]);
+			this.start[this.slotOf[i]] += 1;
+			this.reachX = Math.max(this.reachX, (body.right() - body.left()) / 2);
+			this.reachY = Math.max(this.reachY, (body.bottom() - body.top()) / 2);
+		}
+		// Each slot's count becomes where it ends, then counts down to where it begins as it is filled
+		for (int s = 1; s < this.slots; s += 1) {
+			this.start[s] += this.start[s - 1];
+		}
+		this.start[this.slots] = n;
+		for (int i = 0; i < n; i += 1) {
+			int s = this.slotOf[i];
+			this.start[s] -= 1;
+			this.sorted[this.start[s]] = enemies.get(i);
+			this.col[this.start[s]] = this.givenCol[i];
+			this.row[this.start[s]] = this.givenRow[i];
+		}
+		for (int i = n; i < this.sorted.length && this.sorted[i] != null; i += 1) {
+			this.sorted[i] = null;
+		}
+	}
+
+	// Adds to out every enemy indexed whose body overlaps the given region, each once
+	// EFFECT: Modifies the given list
+	void query(double x0, double y0, double x1, double y1, ArrayList<IEnemy> out) {
+		this.queries += 1;
+		int c0 = this.bucketOf(x0 - this.reachX);
+		int r0 = this.bucketOf(y0 - this.reachY);
+		int c1 = this.bucketOf(x1 + this.reachX);
+		int r1 = this.bucketOf(y1 + this.reachY);
+		if ((long) (c1 - c0 + 1) * (r1 - r0 + 1) > this.slots) {
+			for (int i = 0; i < this.count; i += 1) {
+				this.collect(i, x0, y0, x1, y1, out);
+			}
+			return;
+		}
+		for (int c = c0; c <= c1; c += 1) {
+			for (int r = r0; r <= r1; r += 1) {
+				int s = this.slot(c, r);
+				for (int i = this.start[s]; i < this.start[s + 1]; i += 1) {
+					if (this.col[i] == c && this.row[i] == r) {
+						this.collect(i, x0, y0, x1, y1, out);
+					}
+				}
+			}
+		}
+	}
+
+	// Adds the enemy in the given sorted position to out if its body overlaps the given region
+	// EFFECT: Modifies the given list
+	void collect(int i, double x0, double y0, double x1, double y1, ArrayList<IEnemy> out) {
+		ICollisionBody body = this.sorted[i].getCollisionBody();
+		if (body.right() >= x0 && body.left() <= x1 && body.bottom() >= y0 && body.top() <= y1) {
+			out.add(this.sorted[i]);
+		}
+	}
+
+	// The bucket containing the given coordinate in pixels
+	int bucketOf(double pixels) {
+		return (int) Math.floor(pixels / EnemyBuckets.SIZE);
+	}
+
+	// The slot of the table the given bucket is hashed to
+	int slot(int c, int r) {
+		return ((c * 73856093) ^ (r * 19349663)) & (this.slots - 1);
+	}
+}
+
+// Explosions set off during a physics step, gathered in flat arrays until the game resolves them
+// all at once. The enemies each blast might reach are found with a range query on an index of the
+// awake enemies built once for the whole batch, so dozens of blasts together cost about as much
+// as the enemies caught in them. Damage falls off from the full amount at the center to none at
+// the edge, measured to the nearest point of each target, and a wall between the center of a
+// blast and the center of a target shields it completely. Players are caught in blasts too.
+class BlastBatch {
+	// Center and radius of each blast in pixels, and the damage it deals at its center
+	private double[] x;
+	private double[] y;
+	private double[] radius;
+	private int[] damage;
+	private int pending;
+	// Bounds of everything the pending blasts reach
+	double reachLeft;
+	double reachTop;
+	double reachRight;
+	double reachBottom;
+	// Scratch list of the enemies a blast might reach
+	private final ArrayList<IEnemy> found;
+	// Blasts resolved and targets damaged by them, for measuring
+	long blasts;
+	long hits;
+
+	BlastBatch() {
+		this.x = new double[4];
+		this.y = new double[4];
+		this.radius = new double[4];
+		this.damage = new int[4];
+		this.pending = 0;
+		this.found = new ArrayList<>();
+		this.blasts = 0;
+		this.hits = 0;
+	}
+
+	// Number of blasts set off and not yet resolved
+	int pending() {
+		return this.pending;
+	}
+
+	// Sets off a blast at the given coordinates reaching the given number of pixels and dealing the
+	// given damage at its center
+	// EFFECT: Modifies this' blasts
+	void add(double x, double y, double radius, int damage) {
+		if (radius <= 0 || damage < 0) {
+			throw new IllegalArgumentException("Blast must have positive radius and no negative damage.");
+		}
+		if (this.pending == this.x.length) {
+			int size = this.pending * 2;
+			this.x = Arrays.copyOf(this.x, size);
+			this.y = Arrays.copyOf(this.y, size);
+			this.radius = Arrays.copyOf(this.radius, size);
+			this.damage = Arrays.copyOf(this.damage, size);
+		}
+		if (this.pending == 0) {
+			this.reachLeft = Double.POSITIVE_INFINITY;
+			this.reachTop = Double.POSITIVE_INFINITY;
+			this.reachRight = Double.NEGATIVE_INFINITY;
+			this.reachBottom = Double.NEGATIVE_INFINITY;
+		}
+		this.x[this.pending] = x;
+		this.y[this.pending] = y;
+		this.radius[this.pending] = radius;
+		this.damage[this.pending] = damage;
+		this.reachLeft = Math.min(this.reachLeft, x - radius);
+		this.reachTop = Math.min(this.reachTop, y - radius);
+		this.reachRight = Math.max(this.reachRight, x + radius);
+		this.reachBottom = Math.max(this.reachBottom, y + radius);
+		this.pending += 1;
+	}
+
+	// Resolves every pending blast against the enemies in the given index and the given players,
+	// seeing through the geometry with the given line of sight service
+	// EFFECT: Modifies this, the enemies and players caught, and the given particle system
+	void resolve(LineOfSight sight, EnemyBuckets enemies, ArrayList<Player> players, ParticleSystem particles) {
+		for (int b = 0; b < this.pending; b += 1) {
+			double r = this.radius[b];
+			Vector2D center = new Vector2D(this.x[b], this.y[b]);
+			particles.burst(ParticleSystem.SPARK, center, 24, 300, .3);
+			particles.burst(ParticleSystem.DEBRIS, center, 16, 200, .6);
+			this.found.clear();
+			enemies.query(this.x[b] - r, this.y[b] - r, this.x[b] + r, this.y[b] + r, this.found);
+			for (int i = 0; i < this.found.size(); i += 1) {
+				IEnemy ie = this.found.get(i);
+				int amt = this.damageTo(b, ie.getCollisionBody(), sight);
+				if (amt > 0) {
+					ie.reduceHealth(amt);
+					this.hits += 1;
+				}
+			}
+			for (int p = 0; p < players.size(); p += 1) {
+				Player pl = players.get(p);
+				int amt = this.damageTo(b, pl.body, sight);
+				if (amt > 0) {
+					pl.onHit(amt);
+					this.hits += 1;
+				}
+			}
+		}
+		this.blasts += this.pending;
+		this.pending = 0;
+	}
+
+	// The damage the given blast deals to a target with the given body: none if the body is out of
+	// reach or shielded by a wall, otherwise the blast's damage falling off linearly with distance,
+	// rounded up so anything in reach is hurt
+	int damageTo(int b, ICollisionBody body, LineOfSight sight) {
+		double dx = Math.max(body.left(), Math.min(this.x[b], body.right())) - this.x[b];
+		double dy = Math.max(body.top(), Math.min(this.y[b], body.bottom())) - this.y[b];
+		double dist = Math.sqrt(dx * dx + dy * dy);
+		if (dist >= this.radius[b] || !sight.clear(this.x[b], this.y[b], (body.left() + body.right()) / 2,
+				(body.top() + body.bottom()) / 2)) {
+			return 0;
+		}
+		return (int) Math.ceil(this.damage[b] * (1 - dist / this.radius[b]));
+	}
+}
+
+// Measures the time to resolve ever more simultaneous grenade blasts among a dense crowd of awake
+// enemies, finding those each blast reaches with the bucket index and by scanning every enemy,
+// printing one row per number of blasts
+class ExplosionBench {
+	static final int[] BLASTS = { 1, 10, 50 };
+	static final int ENEMIES = 2000;
+	static final int ROUNDS = 500;
+	static final long SEED = 42;
+
+	public static void main(String[] args) {
+		PlatformGame game = new ExplosionBench().arena();
+		EnemyBuckets indexed = new EnemyBuckets();
+		// Scans every enemy for every blast, as if there were no index
+		EnemyBuckets scanned = new EnemyBuckets() {
+			ArrayList<IEnemy> all;
+
+			void rebuild(ArrayList<IEnemy> enemies) {
+				this.all = enemies;
+			}
+
+			void query(double x0, double y0, double x1, double y1, ArrayList<IEnemy> out) {
+				for (int i = 0; i < this.all.size(); i += 1) {
+					ICollisionBody body = this.all.get(i).getCollisionBody();
+					if (body.right() >= x0 && body.left() <= x1 && body.bottom() >= y0 && body.top() <= y1) {
+						out.add(this.all.get(i));
+					}
+				}
+			}
+		};
+		System.out.println("blasts/tick\tawake\tindexed us\tscanned us\ttargets hit");
+		for (int i = 0; i < BLASTS.length; i += 1) {
+			new ExplosionBench().time(game, scanned, BLASTS[i]);
+			new ExplosionBench().time(game, indexed, BLASTS[i]);
+			BlastBatch batch = new BlastBatch();
+			double scannedUs = new ExplosionBench().time(game, scanned, BLASTS[i]);
+			double indexedUs = new ExplosionBench().time(game, indexed, BLASTS[i], batch);
+			System.out.printf("%d\t%d\t%.1f\t%.1f\t%.1f%n", BLASTS[i], game.activity.awake.size(), indexedUs,
+					scannedUs, (double) batch.hits / ROUNDS);
+		}
+	}
+
+	// A window-sized arena crowded with turrets that never die, all awake, with open floors between
+	PlatformGame arena() {
+		PlatformGame game = new PlatformGame(new Util().topLFromBlock(new Posn(60, 40)), 0, 0);
+		Random rand = new Random(SEED);
+		for (int i = 0; i < ENEMIES; i += 1) {
+			game.enemies.add(new SentryTurret(new Posn(rand.nextInt(118), rand.nextInt(78)), game.sight,
+					new ParticleSystem(0)) {
+				public void reduceHealth(int amt) {}
+			});
+		}
+		game.startLevel();
+		game.activity.update(game);
+		return game;
+	}
+
+	// Sets off the given number of blasts at random spots each round and resolves them with the
+	// given index, returning the average microseconds per round
+	double time(PlatformGame game, EnemyBuckets index, int blasts) {
+		return this.time(game, index, blasts, new BlastBatch());
+	}
+
+	// Sets off the given number of blasts at random spots each round into the given batch and
+	// resolves them with the given index, returning the average microseconds per round
+	double time(PlatformGame game, EnemyBuckets index, int blasts, BlastBatch batch) {
+		Random rand = new Random(SEED);
+		ParticleSystem particles = new ParticleSystem(0);
+		long start = System.nanoTime();
+		for (int round = 0; round < ROUNDS; round += 1) {
+			for (int b = 0; b < blasts; b += 1) {
+				batch.add(rand.nextDouble() * IConstant.WINDX, rand.nextDouble() * IConstant.WINDY, Grenade.RADIUS,
+						Grenade.DAMAGE);
+			}
+			index.rebuild(game.activity.awake);
+			batch.resolve(game.sight, index, new ArrayList<Player>(), particles);
+		}
+		return (System.nanoTime() - start) / 1e3 / ROUNDS;
+	}
+}
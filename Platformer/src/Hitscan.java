@@ -0,0 +1,277 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import javalib.worldimages.Posn;
+
+// Shots that strike the instant they are fired, gathered as rays in flat arrays until the game
+// resolves them all at once. Each ray is marched through the static geometry to where it first
+// strikes a wall, then every awake enemy is tested once against every ray that could reach it, so
+// a tick of many pellets or rapid shots costs one pass over the enemies and adds nothing to play.
+// The results of the last rays resolved are kept until more are fired.
+class RayBatch {
+	// The collision layer the shots are in, and the layers of enemies they can strike
+	final int layer;
+	final int mask;
+	// Origin and unit direction of each ray, how far it reaches in pixels, and the damage it deals
+	private double[] originX;
+	private double[] originY;
+	private double[] dirX;
+	private double[] dirY;
+	private double[] reach;
+	private int[] damage;
+	// For each ray resolved, how far along it struck and the enemy it struck, or null if a wall or
+	// nothing
+	private double[] struckAt;
+	private IEnemy[] struck;
+	// Rays fired and not yet resolved, and rays in the last batch resolved
+	private int pending;
+	private int resolved;
+	// Bounds of everything the pending rays could reach, ignoring walls
+	double reachLeft;
+	double reachTop;
+	double reachRight;
+	double reachBottom;
+	// Batches resolved and rays in them, for measuring
+	long batches;
+	long rays;
+
+	// Initializes this with room for a few rays fired by components in the given collision layer
+	RayBatch(int layer) {
+		this.layer = layer;
+		this.mask = CollisionLayers.maskOf(layer);
+		this.originX = new double[8];
+		this.originY = new double[8];
+		this.dirX = new double[8];
+		this.dirY = new double[8];
+		this.reach = new double[8];
+		this.damage = new int[8];
+		this.struckAt = new double[8];
+		this.struck = new IEnemy[8];
+		this.pending = 0;
+		this.resolved = 0;
+		this.batches = 0;
+		this.rays = 0;
+	}
+
+	// Number of rays fired and not yet resolved
+	int pending() {
+		return this.pending;
+	}
+
+	// Number of rays in the last batch resolved, whose results can be read
+	int resolved() {
+		return this.resolved;
+	}
+
+	// How far along the given ray of the last batch it struck something, or infinity if nothing
+	double struckAt(int ray) {
+		this.checkResolved(ray);
+		return this.struckAt[ray];
+	}
+
+	// The enemy the given ray of the last batch struck, or null if it struck a wall or nothing
+	IEnemy struck(int ray) {
+		this.checkResolved(ray);
+		return this.struck[ray];
+	}
+
+	// Fires a ray from the given coordinates at the given angle in degrees clockwise from the right,
+	// reaching the given number of pixels and dealing the given damage to the enemy it strikes.
+	// Starts a new batch if the last one has been resolved.
+	// EFFECT: Modifies this' rays
+	void add(double x, double y, double angle, double range, int damage) {
+		if (range <= 0 || damage < 0) {
+			throw new IllegalArgumentException("Ray must reach forward and deal no negative damage.");
+		}
+		if (this.pending == 0) {
+			this.resolved = 0;
+			this.reachLeft = Double.POSITIVE_INFINITY;
+			this.reachTop = Double.POSITIVE_INFINITY;
+			this.reachRight = Double.NEGATIVE_INFINITY;
+			this.reachBottom = Double.NEGATIVE_INFINITY;
+		}
+		if (this.pending == this.originX.length) {
+			int size = this.pending * 2;
+			this.originX = Arrays.copyOf(this.originX, size);
+			this.originY = Arrays.copyOf(this.originY, size);
+			this.dirX = Arrays.copyOf(this.dirX, size);
+			this.dirY = Arrays.copyOf(this.dirY, size);
+			this.reach = Arrays.copyOf(this.reach, size);
+			this.damage = Arrays.copyOf(this.damage, size);
+			this.struckAt = Arrays.copyOf(this.struckAt, size);
+			this.struck = Arrays.copyOf(this.struck, size);
+		}
+		double radians = Angle.toRadians(angle);
+		this.originX[this.pending] = x;
+		this.originY[this.pending] = y;
+		this.dirX[this.pending] = Math.cos(radians);
+		this.dirY[this.pending] = Math.sin(radians);
+		this.reach[this.pending] = range;
+		this.damage[this.pending] = damage;
+		double endX = x + this.dirX[this.pending] * range;
+		double endY = y + this.dirY[this.pending] * range;
+		this.reachLeft = Math.min(this.reachLeft, Math.min(x, endX));
+		this.reachTop = Math.min(this.reachTop, Math.min(y, endY));
+		this.reachRight = Math.max(this.reachRight, Math.max(x, endX));
+		this.reachBottom = Math.max(this.reachBottom, Math.max(y, endY));
+		this.pending += 1;
+	}
+
+	// Resolves every pending ray against the geometry and the given enemies, damaging the enemy
+	// nearest along each ray that reaches one before a wall, and throwing up debris where rays
+	// strike walls
+	// EFFECT: Modifies this, the enemies struck, and the given particle system
+	void resolve(LineOfSight sight, ArrayList<IEnemy> enemies, ParticleSystem particles) {
+		int n = this.pending;
+		if (n == 0) {
+			return;
+		}
+		// Cut each ray short where it strikes a wall, and bound them all
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for (int r = 0; r < n; r += 1) {
+			double endX = this.originX[r] + this.dirX[r] * this.reach[r];
+			double endY = this.originY[r] + this.dirY[r] * this.reach[r];
+			double wall = sight.firstSolid(this.originX[r], this.originY[r], endX, endY);
+			this.struckAt[r] = wall == Double.POSITIVE_INFINITY ? wall : wall * this.reach[r];
+			this.struck[r] = null;
+			double length = Math.min(this.reach[r], this.struckAt[r]);
+			endX = this.originX[r] + this.dirX[r] * length;
+			endY = this.originY[r] + this.dirY[r] * length;
+			minX = Math.min(minX, Math.min(this.originX[r], endX));
+			minY = Math.min(minY, Math.min(this.originY[r], endY));
+			maxX = Math.max(maxX, Math.max(this.originX[r], endX));
+			maxY = Math.max(maxY, Math.max(this.originY[r], endY));
+		}
+		// Test each enemy that could be reached against every ray, keeping the nearest per ray
+		for (int i = 0; i < enemies.size(); i += 1) {
+			IEnemy ie = enemies.get(i);
+			ICollisionBody box = ie.getCollisionBody();
+			if ((this.mask & ie.collisionLayer()) == 0 || box.right() < minX || box.left() > maxX
+					|| box.bottom() < minY || box.top() > maxY) {
+				continue;
+			}
+			for (int r = 0; r < n; r += 1) {
+				double at = this.entry(r, box, Math.min(this.reach[r], this.struckAt[r]));
+				if (at < this.struckAt[r] || (at == this.struckAt[r] && this.struck[r] == null && at <= this.reach[r])) {
+					this.struckAt[r] = at;
+					this.struck[r] = ie;
+				}
+			}
+		}
+		for (int r = 0; r < n; r += 1) {
+			if (this.struck[r] != null) {
+				this.struck[r].reduceHealth(this.damage[r]);
+			} else if (this.struckAt[r] != Double.POSITIVE_INFINITY) {
+				particles.burst(ParticleSystem.DEBRIS, new Vector2D(this.originX[r] + this.dirX[r] * this.struckAt[r],
+						this.originY[r] + this.dirY[r] * this.struckAt[r]), 4, 80, .3);
+			}
+		}
+		this.pending = 0;
+		this.resolved = n;
+		this.batches += 1;
+		this.rays += n;
+	}
+
+	// How far along the given ray it enters the given box, no further than the given length, or
+	// infinity if it does not
+	double entry(int r, ICollisionBody box, double length) {
+		double near = 0;
+		double far = length;
+		double ox = this.originX[r];
+		double oy = this.originY[r];
+		double dx = this.dirX[r];
+		double dy = this.dirY[r];
+		if (dx == 0) {
+			if (ox < box.left() || ox > box.right()) {
+				return Double.POSITIVE_INFINITY;
+			}
+		} else {
+			double t1 = (box.left() - ox) / dx;
+			double t2 = (box.right() - ox) / dx;
+			near = Math.max(near, Math.min(t1, t2));
+			far = Math.min(far, Math.max(t1, t2));
+		}
+		if (dy == 0) {
+			if (oy < box.top() || oy > box.bottom()) {
+				return Double.POSITIVE_INFINITY;
+			}
+		} else {
+			double t1 = (box.top() - oy) / dy;
+			double t2 = (box.bottom() - oy) / dy;
+			near = Math.max(near, Math.min(t1, t2));
+			far = Math.min(far, Math.max(t1, t2));
+		}
+		return near <= far ? near : Double.POSITIVE_INFINITY;
+	}
+
+	// Throws if the given ray is not in the last batch resolved
+	void checkResolved(int ray) {
+		if (ray < 0 || ray >= this.resolved) {
+			throw new IllegalArgumentException("No such ray in the last batch resolved.");
+		}
+	}
+}
+
+// Measures the average tick of a level of enemies when the player fires ever more shots each tick,
+// as simulated bullets and as rays, printing one row per rate of fire
+class HitscanBench {
+	static final int[] SHOTS = { 1, 10, 100 };
+	static final int TICKS = 500;
+	static final long SEED = 42;
+
+	public static void main(String[] args) {
+		System.out.println("shots/tick\tbullets us\tbullets in play\trays us\trays in play");
+		for (int i = 0; i < SHOTS.length; i += 1) {
+			PlatformGame bullets = new HitscanBench().range();
+			PlatformGame rays = new HitscanBench().range();
+			double bulletUs = new HitscanBench().time(bullets, SHOTS[i], false);
+			double rayUs = new HitscanBench().time(rays, SHOTS[i], true);
+			System.out.printf("%d\t%.1f\t%d\t%.1f\t%d%n", SHOTS[i], bulletUs, bullets.weaponEffects.size(), rayUs,
+					rays.weaponEffects.size());
+		}
+	}
+
+	// A long floor lined with turrets, walled in, with the player at the left
+	PlatformGame range() {
+		PlatformGame game = new PlatformGame(new Util().topLFromBlock(new Posn(5, 10)), 0, 0);
+		game.ground.add(new EnvironmentGenerator().line(new Posn(0, 13), true, 200));
+		game.ground.add(new EnvironmentGenerator().line(new Posn(200, 0), false, 13));
+		for (int c = 20; c < 200; c += 4) {
+			game.enemies.add(new SentryTurret(new Posn(c, 3), game.sight, game.particles));
+		}
+		game.startLevel();
+		return game;
+	}
+
+	// Fires the given number of shots each tick in spread directions, straight into play as player
+	// bullets or as rays, and returns the average microseconds per tick after warming up. Turrets
+	// are kept at full health so every tick has the same targets.
+	double time(PlatformGame game, int shots, boolean hitscan) {
+		Random rand = new Random(SEED);
+		RayBatch batch = game.player.weapons.rays;
+		long start = 0;
+		for (int t = 0; t < TICKS + TICKS / 4; t += 1) {
+			if (t == TICKS / 4) {
+				start = System.nanoTime();
+			}
+			Rectangle pb = game.player.body;
+			for (int s = 0; s < shots; s += 1) {
+				double angle = -30 * rand.nextDouble();
+				if (hitscan) {
+					batch.add(pb.centerX(), pb.centerY(), angle, Rifle.RANGE, 0);
+				} else {
+					game.weaponEffects.add(new PlayerBullet(pb.center(), Vector2D.polarToRectangular(1, angle)));
+				}
+			}
+			game.tick();
+			for (int e = 0; e < game.enemies.size(); e += 1) {
+				((SentryTurret) game.enemies.get(e)).health = new Health(3);
+			}
+		}
+		return (System.nanoTime() - start) / 1e3 / TICKS;
+	}
+}
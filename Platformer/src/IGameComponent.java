@@ -1,3 +1,5 @@
+import java.awt.Graphics2D;
+
 import javalib.impworld.WorldScene;
 import javalib.worldimages.BesideImage;
 import javalib.worldimages.EmptyImage;
@@ -8,8 +10,8 @@ interface IConstant {
 	int BLOCK_SIZE = 10; // In pixels
 	int WINDX = BLOCK_SIZE * 120; // Window width in pixels
 	int WINDY = BLOCK_SIZE * 80; // Window height in pixels
-	double TICK_RATE = .01;
-	double GRAVITY = 100 * TICK_RATE * TICK_RATE * BLOCK_SIZE; // In (blocks per second) per second
+	double TICK_RATE = .01; // Seconds per tick of the standard timestep, which a deployment may change
+	double GRAVITY = 100 * BLOCK_SIZE; // In pixels per second per second, number is blocks per second per second
 	Vector2D BLOCK_DIM = new Vector2D(BLOCK_SIZE, BLOCK_SIZE);
 	double COL_TOL = .001 * BLOCK_SIZE; // Small number in pixels used for collision tolerances
 }
@@ -19,13 +21,17 @@ interface IDrawable {
 	// Draw a visual representation of this at a particular position onto the
 	// background
 	void drawOnto(WorldScene background);
+	
+	// Paint the same depiction straight onto the given graphics, taking images from the given cache
+	// EFFECT: Modifies the given graphics
+	void paintOnto(Graphics2D g, SpriteCache sprites);
 }
 
 // A component of the game that affects the other game components, 
 // handles collisions, and is visible on screen
 interface IGameComponent extends IDrawable {
-	// Modify the given player if an interaction occurs
-	void interactPlayer(Player pl);
+	// Modify the given player if an interaction occurs, returning whether the two are in contact
+	boolean interactPlayer(Player pl);
 
 	// The structure used for detecting and handling collisions
 	ICollisionBody getCollisionBody();
@@ -33,36 +39,112 @@ interface IGameComponent extends IDrawable {
 	// Should this game component be removed from play?
 	boolean shouldRemove();
 	
-	// Adjusts this game component on a tick, independent of other components
-	void tick();
+	// Adjusts this game component over a tick lasting the given number of seconds, independent of
+	// other components
+	void tick(double dt);
+	
+	// Records this' mutable state into the rewind history
+	// EFFECT: Appends to the given history
+	void saveState(RewindBuffer rb);
+	
+	// Restores this' mutable state from the rewind history, reading in the order saveState wrote
+	// EFFECT: Modifies this and advances the history's read cursor
+	void restoreState(RewindBuffer rb);
+	
+	// The one collision layer this is in, as a bit
+	int collisionLayer();
+	
+	// The collision layers this interacts with, as bits
+	int collisionMask();
+	
+	// Which of its looks this is painted with, so a renderer can tell when it changed without moving
+	int look();
+}
+
+// The layers game components collide in, one bit each, and which layers interact with which. A
+// component carries its layer and the mask of layers it interacts with, so a pair that can never
+// interact is turned away by a single bitwise test before any geometry is checked or any
+// interaction method is called.
+class CollisionLayers {
+	static final int PLAYER = 1;
+	static final int ENEMY = 2;
+	static final int PLAYER_PROJECTILE = 4;
+	static final int ENEMY_PROJECTILE = 8;
+	static final int TERRAIN = 16;
+	static final int HAZARD = 32;
+	static final int PICKUP = 64;
+	// The layers each layer interacts with, in the order of the layers' bits. Kept symmetric, so it
+	// does not matter which of a pair is tested against the other.
+	static final int[] MATRIX = {
+			ENEMY | ENEMY_PROJECTILE | TERRAIN | HAZARD | PICKUP, // PLAYER
+			PLAYER | PLAYER_PROJECTILE, // ENEMY
+			ENEMY | TERRAIN | HAZARD, // PLAYER_PROJECTILE
+			PLAYER | TERRAIN | HAZARD, // ENEMY_PROJECTILE
+			PLAYER | PLAYER_PROJECTILE | ENEMY_PROJECTILE, // TERRAIN
+			PLAYER | PLAYER_PROJECTILE | ENEMY_PROJECTILE, // HAZARD
+			PLAYER // PICKUP
+	};
+
+	// The layers the given layer interacts with
+	static int maskOf(int layer) {
+		if (Integer.bitCount(layer) != 1 || layer >= 1 << MATRIX.length) {
+			throw new IllegalArgumentException("A component must be in exactly one collision layer.");
+		}
+		return MATRIX[Integer.numberOfTrailingZeros(layer)];
+	}
+
+	// Can the first component interact with the second?
+	static boolean interacts(IGameComponent actor, IGameComponent other) {
+		return (actor.collisionMask() & other.collisionLayer()) != 0;
+	}
 }
 
 // A rectangular game component
 abstract class AGameComponent implements IGameComponent {
 	Rectangle body;
+	// The collision layer this is in and the layers it interacts with
+	final int layer;
+	final int mask;
 
-	AGameComponent(Rectangle body) {
+	AGameComponent(Rectangle body, int layer, int mask) {
 		this.body = body;
+		this.layer = layer;
+		this.mask = mask;
+	}
+
+	// Constructor initializes this interacting with every layer its own layer does
+	AGameComponent(Rectangle body, int layer) {
+		this(body, layer, CollisionLayers.maskOf(layer));
 	}
 
 	// Constructor initializes this with a Rectangle body from the given parameters
-	AGameComponent(Vector2D topLeft, Vector2D dimensions) {
-		this(new Rectangle(topLeft, dimensions));
+	AGameComponent(Vector2D topLeft, Vector2D dimensions, int layer) {
+		this(new Rectangle(topLeft, dimensions), layer);
+	}
+	
+	public final int collisionLayer() {
+		return this.layer;
+	}
+	
+	public final int collisionMask() {
+		return this.mask;
 	}
 
 	// Draws this at the proper position onto the background
 	// EFFECT: Modifies the given scene
 	public void drawOnto(WorldScene background) {
 		background.placeImageXY(new ImgUtil().pinTopLeftFromCenter(this.render()), 
-				(int) this.body.getPosition().x,
-				(int) this.body.getPosition().y);
+				(int) this.body.left(),
+				(int) this.body.top());
 	}
 
 	// By default, no modification to player occurs
-	public void interactPlayer(Player pl) {
+	public boolean interactPlayer(Player pl) {
 		if(this.body.collidingWith(pl.getCollisionBody())) {
 			this.interactPlayerOnCollision(pl);
+			return true;
 		}
+		return false;
 	}
 	// Defaults to doing nothing on colliding with the player
 	void interactPlayerOnCollision(Player pl) {}
@@ -71,6 +153,22 @@ abstract class AGameComponent implements IGameComponent {
 	public ICollisionBody getCollisionBody() {
 		return this.body;
 	}
+	
+	// By default, the position of this' body is its only mutable state
+	public void saveState(RewindBuffer rb) {
+		rb.put(this.body.left());
+		rb.put(this.body.top());
+	}
+	
+	// Moves this' body back to its recorded position
+	public void restoreState(RewindBuffer rb) {
+		this.body.moveTo(rb.get(), rb.get());
+	}
+
+	// By default, this always looks the same
+	public int look() {
+		return 0;
+	}
 
 	// A visual depiction of this independent of position
 	abstract WorldImage render();
@@ -108,6 +206,12 @@ class Health {
 		return new Health(next, this.max);
 	}
 	
+	// Changes current health in place by the given amount, staying within bounds of [0, max]
+	// EFFECT: Modifies this' current health
+	void adjust(int change) {
+		this.current = Math.min(Math.max(0, this.current + change), this.max);
+	}
+	
 	// Returns Health with updated max >= 0. Lowers current so it doesn't exceed max if necessary
 	Health changeMax(int change) {
 		int nextMax = this.max + change;
@@ -123,91 +227,171 @@ class Health {
 		}
 		background.placeImageXY(new ImgUtil().pinTopRightFromCenter(healthBar), (int) IConstant.WINDX, 0);
 	}
+	
+	// Paints the same health bar straight onto the given graphics
+	// EFFECT: Modifies the given graphics
+	void paintOnto(Graphics2D g) {
+		int size = IConstant.BLOCK_SIZE * 2;
+		for(int hNum = 0; hNum < this.max; hNum += 1) {
+			new PaintUtil().paintHealthBox(g, IConstant.WINDX - size * (this.max - hNum), 0, hNum < this.current);
+		}
+	}
 }
 
-//A count-down clock that decrements up to a given amount
+//A count-down clock that runs down from a given number of seconds
 class TimeTemporary {
-	private final int ticksLeft;
+	// Time left within this many seconds counts as none, so rounding in the tick length cannot
+	// leave a clock one tick short of finishing
+	static final double EPSILON = 1e-9;
+	private double secondsLeft;
 
-	TimeTemporary(int ticksLeft) {
-		if (ticksLeft < 0) {
-			throw new IllegalArgumentException("Ticks given must be positive.");
+	TimeTemporary(double secondsLeft) {
+		if (secondsLeft < 0) {
+			throw new IllegalArgumentException("Time given cannot be negative.");
 		}
-		this.ticksLeft = ticksLeft;
+		this.secondsLeft = secondsLeft;
 	}
 
-	// Returns new TimeTemporary with one less tick left, assuming there are any
-	TimeTemporary onTick() {
-		if (this.ticksLeft <= 0) {
+	// Returns new TimeTemporary with the given number of seconds less left, assuming there are any
+	TimeTemporary onTick(double dt) {
+		if (this.finished()) {
+			throw new RuntimeException("Cannot tick past maximum.");
+		}
+		return new TimeTemporary(Math.max(0, this.secondsLeft - dt));
+	}
+	
+	// Counts this down by the given number of seconds in place, assuming there are any left
+	// EFFECT: Modifies this' time left
+	void countDown(double dt) {
+		if (this.finished()) {
 			throw new RuntimeException("Cannot tick past maximum.");
 		}
-		return new TimeTemporary(this.ticksLeft - 1);
+		this.secondsLeft = Math.max(0, this.secondsLeft - dt);
+	}
+	
+	// Starts this counting down again from the given number of seconds
+	// EFFECT: Modifies this' time left
+	void restart(double secondsLeft) {
+		if (secondsLeft < 0) {
+			throw new IllegalArgumentException("Time given cannot be negative.");
+		}
+		this.secondsLeft = secondsLeft;
 	}
 
-	// Are there zero ticks left?
+	// Is there no time left?
 	boolean finished() {
-		return this.ticksLeft == 0;
+		return this.secondsLeft <= TimeTemporary.EPSILON;
+	}
+	
+	// The number of seconds until this is finished
+	double secondsLeft() {
+		return this.secondsLeft;
 	}
 }
 
-// To simulate the constant-speed movement back and forth between two points
+// To simulate the constant-speed movement back and forth between two points. Where this is and
+// which way it heads are worked out from the time since it set out alone, as a triangle wave over
+// the path, so any moment can be found at once without stepping through those before it and
+// without allocating.
 class BlockOscillation {
 	private final Vector2D initPosn;
-	Vector2D currPosn;
 	private final Vector2D finalPosn;
-	private final double speed;
-	boolean towardFinal;
+	private final double speed; // In pixels per second
+	// Distance between the end-points, and the unit vectors along the path each way
+	private final double length;
+	private final Vector2D toFinal;
+	private final Vector2D toInit;
+	// Seconds since this set out from its initial position toward its final position
+	double elapsed;
 	
-	// Standard constructor initializes all fields
-	BlockOscillation(Vector2D initPosn, Vector2D finalPosn, 
-			Vector2D currPosn, double speed, boolean towardFinal) {
+	// Standard constructor begins at initial position heading toward final position
+	BlockOscillation(Vector2D initPosn, Vector2D finalPosn, double speed) {
+		if(speed <= 0) {
+			throw new IllegalArgumentException("Oscillation speed must be positive.");
+		}
 		this.initPosn = initPosn;
 		this.finalPosn = finalPosn;
-		this.currPosn = currPosn;
 		this.speed = speed;
-		this.towardFinal = towardFinal;
+		this.length = initPosn.distanceTo(finalPosn);
+		this.toFinal = this.length == 0 ? Vector2D.ZERO : initPosn.displacementTo(finalPosn).scaleVector(1 / this.length);
+		this.toInit = this.toFinal.opposite();
+		this.elapsed = 0;
 	}
 	
-	// Convenience constructor that beings at initial position heading toward final position
-	BlockOscillation(Vector2D initPosn, Vector2D finalPosn, double speed) {
-		this(initPosn, finalPosn, initPosn, speed, true);
+	// Moves this along its path for the given number of seconds, turning back at either end-point
+	// EFFECT: Modifies this' elapsed time
+	void onMove(double dt) {
+		this.elapsed += dt;
+	}
+	
+	// Puts this where it is the given number of seconds after setting out
+	// EFFECT: Modifies this' elapsed time
+	void seek(double seconds) {
+		this.elapsed = seconds;
 	}
 	
-	// Returns updated B.O. with new current position and direction
-	BlockOscillation nextMove(Vector2D currPosn, boolean towardFinal) {
-		return new BlockOscillation(this.initPosn, this.finalPosn, currPosn, this.speed, towardFinal);
+	// How far along the round trip from initial position to final position and back this is the
+	// given number of seconds after setting out, in pixels from zero up to twice the path's length
+	double phaseAt(double seconds) {
+		if(this.length == 0) {
+			return 0;
+		}
+		double trip = 2 * this.length;
+		double travelled = seconds * this.speed;
+		return travelled - trip * Math.floor(travelled / trip);
+	}
+	
+	// How far from the initial position this is the given number of seconds after setting out
+	double distanceAt(double seconds) {
+		double phase = this.phaseAt(seconds);
+		return phase <= this.length ? phase : 2 * this.length - phase;
+	}
+	
+	// Is this heading toward the final position the given number of seconds after setting out?
+	// An end-point counts as already turned back from.
+	boolean towardFinalAt(double seconds) {
+		return this.phaseAt(seconds) < this.length || this.length == 0;
+	}
+	
+	// The x coordinate of this the given number of seconds after setting out
+	double xAt(double seconds) {
+		double d = this.distanceAt(seconds);
+		return d == this.length ? this.finalPosn.x : this.initPosn.x + this.toFinal.x * d;
+	}
+	
+	// The y coordinate of this the given number of seconds after setting out
+	double yAt(double seconds) {
+		double d = this.distanceAt(seconds);
+		return d == this.length ? this.finalPosn.y : this.initPosn.y + this.toFinal.y * d;
+	}
+	
+	// The current x coordinate of this
+	double x() {
+		return this.xAt(this.elapsed);
+	}
+	
+	// The current y coordinate of this
+	double y() {
+		return this.yAt(this.elapsed);
+	}
+	
+	// Is this heading toward its final position?
+	boolean towardFinal() {
+		return this.towardFinalAt(this.elapsed);
 	}
 	
 	// The current position (and most useful result) of this
 	Vector2D getCurrPosn() {
-		return this.currPosn;
+		return new Vector2D(this.x(), this.y());
 	}
 	
+	// The unit vector this is heading along
 	Vector2D direction() {
-		return this.currPosn.displacementTo(this.onMove().getCurrPosn()).getUnitVector();
-	}
-	
-	// Returns updates B.O. moved in the current direction at speed, 
-	// and can switch directions if end-point is reached
-	BlockOscillation onMove() {
-		if(towardFinal) {
-			// Naively calculate next move
-			Vector2D next = this.initPosn.displacementTo(this.finalPosn).scaleTo(
-					this.speed / IConstant.TICK_RATE);
-			// Determine if next move eclipses end-point, go to end-point if so, use naive move if not
-			if(next.magnitude() > this.currPosn.distanceTo(this.finalPosn)) {
-				return this.nextMove(this.finalPosn, false);
-			} else {
-				return this.nextMove(this.currPosn.addVectors(next), true);
-			}
-		} else {
-			Vector2D next = this.finalPosn.displacementTo(this.initPosn).scaleTo(
-					this.speed / IConstant.TICK_RATE);
-			if(next.magnitude() > this.currPosn.distanceTo(this.initPosn)) {
-				return this.nextMove(this.initPosn, true);
-			} else {
-				return this.nextMove(this.currPosn.addVectors(next), false);
-			}
-		}
-	}	
-}
\ No newline at end of file
+		return this.towardFinal() ? this.toFinal : this.toInit;
+	}
+	
+	// Is the next move to the right? The same as a positive x direction, without making the move
+	boolean headingRight() {
+		return this.direction().x > 0;
+	}
+}
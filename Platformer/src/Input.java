@@ -0,0 +1,179 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Something input records are handed to as they are taken from a queue or replayed: the game
+// applying them, a log recording them, or controls forwarding them to a server
+interface IInputSink {
+	// Receives one input record of the given kind, with its argument and position in pixels
+	void onInput(int kind, int arg, int x, int y);
+}
+
+// A bounded queue of input records for exactly one thread putting records in and one taking them
+// out, such as a window's event thread and its game loop. Neither side ever waits on or locks the
+// other: each owns one counter and only reads the other's, and a record's fields are written
+// before the counter that publishes it. Records are kept in parallel arrays so queueing allocates
+// nothing.
+class InputQueue {
+	// Kinds of input record. MOVE's argument is 1 to move right and 0 to move left, SWITCH's the
+	// inventory position, and FIRE and FACE carry the position aimed at in the window, which the
+	// game moves into the level by its camera when applying them. TICK is never queued; it
+	// tells a sink that a tick is starting, with the tick's number as its argument.
+	static final int TICK = 0;
+	static final int MOVE = 1;
+	static final int HALT = 2;
+	static final int JUMP = 3;
+	static final int REWIND = 4;
+	static final int SWITCH = 5;
+	static final int FIRE = 6;
+	static final int FACE = 7;
+
+	// Records held at most; a power of two so a counter maps to a slot with a mask
+	static final int CAPACITY = 256;
+	private static final int MASK = CAPACITY - 1;
+
+	private final int[] kinds;
+	private final int[] args;
+	private final int[] xs;
+	private final int[] ys;
+	// Count of records ever taken, advanced only by the consumer
+	private final AtomicLong head;
+	// Count of records ever put, advanced only by the producer
+	private final AtomicLong tail;
+	// The producer's last look at head, so it reads the consumer's counter only when it seems full
+	private long headSeen;
+	// Records turned away because the queue was full, counted by the producer
+	long dropped;
+
+	InputQueue() {
+		this.kinds = new int[CAPACITY];
+		this.args = new int[CAPACITY];
+		this.xs = new int[CAPACITY];
+		this.ys = new int[CAPACITY];
+		this.head = new AtomicLong(0);
+		this.tail = new AtomicLong(0);
+		this.headSeen = 0;
+		this.dropped = 0;
+	}
+
+	// Puts a record in the queue, returning false and dropping it if the queue is full. Only ever
+	// called from the producing thread.
+	// EFFECT: Modifies this' records and tail
+	boolean offer(int kind, int arg, int x, int y) {
+		long t = this.tail.get();
+		if (t - this.headSeen >= CAPACITY) {
+			this.headSeen = this.head.get();
+			if (t - this.headSeen >= CAPACITY) {
+				this.dropped += 1;
+				return false;
+			}
+		}
+		int slot = (int) t & MASK;
+		this.kinds[slot] = kind;
+		this.args[slot] = arg;
+		this.xs[slot] = x;
+		this.ys[slot] = y;
+		this.tail.lazySet(t + 1);
+		return true;
+	}
+
+	// Puts a record with no argument or position in the queue
+	// EFFECT: Modifies this' records and tail
+	boolean offer(int kind) {
+		return this.offer(kind, 0, 0, 0);
+	}
+
+	// Hands every record put in the queue so far to the given sink, in order, and returns how many
+	// there were. Records put in while draining wait for the next call. Only ever called from the
+	// consuming thread.
+	// EFFECT: Modifies this' head and whatever the sink does
+	int drain(IInputSink sink) {
+		long h = this.head.get();
+		long t = this.tail.get();
+		for (long i = h; i < t; i += 1) {
+			int slot = (int) i & MASK;
+			sink.onInput(this.kinds[slot], this.args[slot], this.xs[slot], this.ys[slot]);
+		}
+		this.head.lazySet(t);
+		return (int) (t - h);
+	}
+
+	// Number of records waiting, as last seen from either side
+	int size() {
+		return (int) (this.tail.get() - this.head.get());
+	}
+}
+
+// Input records stamped with the tick they were applied at, so a game started the same way can be
+// given exactly the same input at exactly the same ticks again
+class InputLog implements IInputSink {
+	// Tick the next records received are stamped with
+	int tick;
+	private int[] ticks;
+	private int[] kinds;
+	private int[] args;
+	private int[] xs;
+	private int[] ys;
+	private int size;
+	// Index of the next record to replay
+	private int cursor;
+
+	InputLog() {
+		this.tick = 0;
+		this.ticks = new int[64];
+		this.kinds = new int[64];
+		this.args = new int[64];
+		this.xs = new int[64];
+		this.ys = new int[64];
+		this.size = 0;
+		this.cursor = 0;
+	}
+
+	// Number of records logged
+	int size() {
+		return this.size;
+	}
+
+	// Logs the given record at the current tick, or moves on to the given tick
+	// EFFECT: Appends to this' records or modifies this' tick
+	public void onInput(int kind, int arg, int x, int y) {
+		if (kind == InputQueue.TICK) {
+			this.tick = arg;
+			return;
+		}
+		if (this.size == this.ticks.length) {
+			int grown = this.size * 2;
+			this.ticks = Arrays.copyOf(this.ticks, grown);
+			this.kinds = Arrays.copyOf(this.kinds, grown);
+			this.args = Arrays.copyOf(this.args, grown);
+			this.xs = Arrays.copyOf(this.xs, grown);
+			this.ys = Arrays.copyOf(this.ys, grown);
+		}
+		this.ticks[this.size] = this.tick;
+		this.kinds[this.size] = kind;
+		this.args[this.size] = arg;
+		this.xs[this.size] = x;
+		this.ys[this.size] = y;
+		this.size += 1;
+	}
+
+	// Hands the given sink every record logged at the given tick that has not been replayed yet,
+	// skipping any logged at earlier ticks, and returns how many were handed over
+	// EFFECT: Advances this' replay cursor
+	int replay(int tick, IInputSink sink) {
+		while (this.cursor < this.size && this.ticks[this.cursor] < tick) {
+			this.cursor += 1;
+		}
+		int start = this.cursor;
+		while (this.cursor < this.size && this.ticks[this.cursor] == tick) {
+			sink.onInput(this.kinds[this.cursor], this.args[this.cursor], this.xs[this.cursor], this.ys[this.cursor]);
+			this.cursor += 1;
+		}
+		return this.cursor - start;
+	}
+
+	// Starts replaying again from the first record
+	// EFFECT: Modifies this' replay cursor
+	void rewind() {
+		this.cursor = 0;
+	}
+}
@@ -0,0 +1,114 @@
+// One observer's remembered answer to whether it can see a target, valid while the target
+// stays in the same grid cell and the geometry is unchanged
+class SightLine {
+	int targetCol;
+	int targetRow;
+	int gridVersion;
+	boolean clear;
+
+	// Initializes this with nothing remembered
+	SightLine() {
+		this.targetCol = -1;
+		this.targetRow = -1;
+		this.gridVersion = -1;
+		this.clear = false;
+	}
+}
+
+// Answers whether straight lines through the static geometry are unobstructed by marching
+// cell by cell along them (a grid DDA), remembering answers per observer
+class LineOfSight {
+	final BlockGrid grid;
+	// Number of lines actually marched, for measuring how often cached answers are reused
+	long marches;
+
+	LineOfSight(BlockGrid grid) {
+		this.grid = grid;
+		this.marches = 0;
+	}
+
+	// Can the given observer, at from, see the target? Reuses the observer's last answer while the
+	// target stays in the same cell, so a stationary observer marches at most once per cell entered
+	// EFFECT: Modifies the given sight line
+	boolean canSee(SightLine line, Vector2D from, Vector2D target) {
+		return this.canSee(line, from.x, from.y, target.x, target.y);
+	}
+
+	// Can the given observer, at the first coordinates, see a target at the second? Takes plain
+	// numbers, so asking every tick allocates nothing
+	// EFFECT: Modifies the given sight line
+	boolean canSee(SightLine line, double fromX, double fromY, double targetX, double targetY) {
+		int col = this.grid.cellOf(targetX);
+		int row = this.grid.cellOf(targetY);
+		if (col != line.targetCol || row != line.targetRow || this.grid.version != line.gridVersion) {
+			line.targetCol = col;
+			line.targetRow = row;
+			line.gridVersion = this.grid.version;
+			line.clear = this.clear(fromX, fromY, targetX, targetY);
+		}
+		return line.clear;
+	}
+
+	// Does the segment between the given positions pass through no solid cell?
+	// The cell containing the starting position is not checked.
+	// EFFECT: Modifies this' count of marches
+	boolean clear(Vector2D from, Vector2D to) {
+		return this.clear(from.x, from.y, to.x, to.y);
+	}
+
+	// Does the segment between the given coordinates pass through no solid cell?
+	// EFFECT: Modifies this' count of marches
+	boolean clear(double fromX, double fromY, double toX, double toY) {
+		return this.firstSolid(fromX, fromY, toX, toY) == Double.POSITIVE_INFINITY;
+	}
+
+	// The fraction of the way along the segment between the given coordinates at which it first
+	// enters a solid cell, or infinity if it enters none
+	// EFFECT: Modifies this' count of marches
+	double firstSolid(double fromX, double fromY, double toX, double toY) {
+		this.marches += 1;
+		double x0 = fromX / IConstant.BLOCK_SIZE;
+		double y0 = fromY / IConstant.BLOCK_SIZE;
+		double dx = toX / IConstant.BLOCK_SIZE - x0;
+		double dy = toY / IConstant.BLOCK_SIZE - y0;
+		int col = (int) Math.floor(x0);
+		int row = (int) Math.floor(y0);
+		int endCol = this.grid.cellOf(toX);
+		int endRow = this.grid.cellOf(toY);
+		int stepX = dx > 0 ? 1 : -1;
+		int stepY = dy > 0 ? 1 : -1;
+		// Fraction of the segment needed to cross one cell along each axis
+		double deltaX = dx == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / dx);
+		double deltaY = dy == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / dy);
+		// Fraction of the segment at which the next cell boundary along each axis is crossed
+		double nextX = dx == 0 ? Double.POSITIVE_INFINITY : (dx > 0 ? col + 1 - x0 : x0 - col) * deltaX;
+		double nextY = dy == 0 ? Double.POSITIVE_INFINITY : (dy > 0 ? row + 1 - y0 : y0 - row) * deltaY;
+		while (col != endCol || row != endRow) {
+			double entered;
+			if (nextX < nextY) {
+				if (nextX > 1) {
+					break;
+				}
+				entered = nextX;
+				col += stepX;
+				nextX += deltaX;
+			} else {
+				if (nextY > 1) {
+					break;
+				}
+				entered = nextY;
+				// Through a corner exactly, the segment touches both cells beside it, so it is
+				// blocked by the one across the column boundary as well as the one stepped into
+				if (nextX == nextY && this.grid.solidAt(col + stepX, row)) {
+					return entered;
+				}
+				row += stepY;
+				nextY += deltaY;
+			}
+			if (this.grid.solidAt(col, row)) {
+				return entered;
+			}
+		}
+		return Double.POSITIVE_INFINITY;
+	}
+}
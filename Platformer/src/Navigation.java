@@ -0,0 +1,661 @@
+import java.awt.Graphics2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import javalib.worldimages.Posn;
+import javalib.worldimages.WorldImage;
+
+// The motion of a body of player size following one jump or drop through a navigation grid, with
+// velocities in pixels per second and time counted in steps of the graph's timestep
+class ArcState {
+	double x;
+	double y;
+	double vx;
+	double vy;
+	int ticks;
+	// Row the arc started standing on, and whether it starts by running off a ledge rather than jumping
+	final int startRow;
+	final boolean runOff;
+	boolean blocked;
+
+	ArcState(double x, double y, double vx, double vy, boolean runOff) {
+		this.x = x;
+		this.y = y;
+		this.vx = vx;
+		this.vy = vy;
+		this.ticks = 0;
+		this.startRow = (int) Math.round(y / IConstant.BLOCK_SIZE);
+		this.runOff = runOff;
+		this.blocked = false;
+	}
+}
+
+// A graph of the places a player-sized body can stand in a grid of static geometry, linked by walking,
+// dropping off ledges, and jumping arcs under the player's physics. Arcs are simulated in steps of
+// the game's physics step, which followers advance by one each step. Shortest paths toward a target
+// are computed once per target and shared by every enemy heading there, until the geometry changes.
+// When the grid was only patched, the places are found again but only those whose links could
+// have crossed the changed columns simulate their arcs again; the rest keep their links.
+class NavGraph {
+	static final int WALK = 0;
+	static final int ARC = 1;
+	static final int BODY_W = Player.WIDTH; // In blocks
+	static final int BODY_H = Player.HEIGHT; // In blocks
+	static final double RUN_SPEED = Player.HORIZ_SPEED; // In pixels per second
+	static final double MAX_ARC_SECONDS = 3;
+	static final int MAX_CACHED_TARGETS = 64;
+	static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	// Seconds per step of simulating and following arcs
+	final double dt;
+	// Incremented each time the graph is rebuilt, so followers can tell their edges are stale
+	int version;
+	// The solid cells of the static geometry, and the version of them this was built from
+	final BlockGrid grid;
+	private int builtVersion;
+	// Node id of each cell where a body can stand with its top-left there, or -1, for the columns
+	// and rows searched
+	private int[] nodeAt;
+	private int baseCol;
+	private int spanCols;
+	private int spanRows;
+	private int[] nodeCol;
+	private int[] nodeRow;
+	// Outgoing edges of node n are edgeStart[n] until edgeStart[n + 1]
+	private int[] edgeStart;
+	private int[] edgeFrom;
+	private int[] edgeTo;
+	private int[] edgeKind;
+	private double[] edgeVx;
+	private double[] edgeVy;
+	private int[] edgeTicks;
+	// The first and last columns each node's links looked at, so it need only be linked again if
+	// the grid changes there
+	private int[] reach0;
+	private int[] reach1;
+	// Incoming edges, for searching backward from a target
+	private int[] inStart;
+	private int[] inEdge;
+	// For each target node, the edge to take from every node to approach it fastest
+	private final LinkedHashMap<Integer, int[]> paths;
+	// Arcs simulated and nodes linked again rather than kept while patching, for measuring
+	long arcs;
+	long relinked;
+
+	// Initializes this over the given grid with arcs stepped the given number of seconds at a time,
+	// which is not linked until the graph is first queried
+	NavGraph(BlockGrid grid, double dt) {
+		this.grid = grid;
+		this.dt = dt;
+		this.version = 0;
+		this.builtVersion = -1;
+		this.nodeAt = null;
+		this.arcs = 0;
+		this.relinked = 0;
+		this.paths = new LinkedHashMap<Integer, int[]>(16, .75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+				return this.size() > NavGraph.MAX_CACHED_TARGETS;
+			}
+		};
+	}
+
+	// Rebuilds this graph if its grid has changed since it was built, or only patches it if the grid
+	// can say which columns changed. Every query refreshes first, so levels without anything that
+	// navigates never pay for building the graph
+	// EFFECT: Possibly modifies the whole graph and empties the path cache
+	void refresh() {
+		if (this.builtVersion != this.grid.version) {
+			ArrayList<int[]> changed = this.nodeAt == null ? null : this.grid.changedSince(this.builtVersion);
+			if (changed == null || this.spanRows != this.grid.rows) {
+				this.build();
+			} else {
+				this.patch(changed);
+			}
+		}
+	}
+
+	// Number of places a body can stand
+	int nodeCount() {
+		this.refresh();
+		return this.nodeCol.length;
+	}
+
+	// Number of links between places
+	int edgeCount() {
+		this.refresh();
+		return this.edgeTo.length;
+	}
+
+	// Number of targets whose paths are currently cached
+	int cachedTargets() {
+		return this.paths.size();
+	}
+
+	// Top-left position in pixels of a body standing at the given node
+	Vector2D nodePosition(int node) {
+		return new Util().topLFromBlock(new Posn(this.nodeCol[node], this.nodeRow[node]));
+	}
+
+	// BUILDING
+
+	// Finds and links every standing place in the grid
+	// EFFECT: Modifies the whole graph and empties the path cache
+	void build() {
+		this.builtVersion = this.grid.version;
+		this.version += 1;
+		this.paths.clear();
+		this.findNodes();
+		ArrayList<double[]> edges = new ArrayList<>();
+		int n = this.nodeCol.length;
+		this.edgeStart = new int[n + 1];
+		this.reach0 = new int[n];
+		this.reach1 = new int[n];
+		for (int node = 0; node < n; node += 1) {
+			this.edgeStart[node] = edges.size();
+			this.linkNode(edges, node);
+		}
+		this.edgeStart[n] = edges.size();
+		this.indexEdges(edges);
+	}
+
+	// Finds the standing places again and links again only the nodes whose links looked at any of
+	// the given runs of columns, or that were not there before, keeping every other node's links
+	// EFFECT: Modifies the whole graph and empties the path cache
+	void patch(ArrayList<int[]> changed) {
+		int[] oldNodeAt = this.nodeAt;
+		int oldBase = this.baseCol;
+		int oldSpan = this.spanCols;
+		int[] oldCol = this.nodeCol;
+		int[] oldRow = this.nodeRow;
+		int[] oldStart = this.edgeStart;
+		int[] oldTo = this.edgeTo;
+		int[] oldKind = this.edgeKind;
+		double[] oldVx = this.edgeVx;
+		double[] oldVy = this.edgeVy;
+		int[] oldTicks = this.edgeTicks;
+		int[] oldReach0 = this.reach0;
+		int[] oldReach1 = this.reach1;
+		this.builtVersion = this.grid.version;
+		this.version += 1;
+		this.paths.clear();
+		this.findNodes();
+		ArrayList<double[]> edges = new ArrayList<>();
+		int n = this.nodeCol.length;
+		this.edgeStart = new int[n + 1];
+		this.reach0 = new int[n];
+		this.reach1 = new int[n];
+		for (int node = 0; node < n; node += 1) {
+			this.edgeStart[node] = edges.size();
+			int c = this.nodeCol[node];
+			int r = this.nodeRow[node];
+			int old = c < oldBase || c >= oldBase + oldSpan ? -1 : oldNodeAt[r * oldSpan + c - oldBase];
+			boolean kept = old >= 0;
+			for (int i = 0; kept && i < changed.size(); i += 1) {
+				kept = oldReach1[old] < changed.get(i)[0] || oldReach0[old] > changed.get(i)[1];
+			}
+			for (int e = kept ? oldStart[old] : 0; kept && e < oldStart[old + 1]; e += 1) {
+				int to = this.nodeAtCell(oldCol[oldTo[e]], oldRow[oldTo[e]]);
+				kept = to >= 0;
+				edges.add(new double[] { node, to, oldKind[e], oldVx[e], oldVy[e], oldTicks[e] });
+			}
+			if (kept) {
+				this.reach0[node] = oldReach0[old];
+				this.reach1[node] = oldReach1[old];
+			} else {
+				edges.subList(this.edgeStart[node], edges.size()).clear();
+				this.linkNode(edges, node);
+				this.relinked += 1;
+			}
+		}
+		this.edgeStart[n] = edges.size();
+		this.indexEdges(edges);
+	}
+
+	// Finds every cell where a body fits with solid ground directly beneath it, searching only
+	// from the first column of ground the grid has, less the width of a body
+	// EFFECT: Modifies this' nodes
+	void findNodes() {
+		this.baseCol = Math.max(0, Math.min(this.grid.cols, this.grid.firstCol - BODY_W + 1));
+		this.spanCols = this.grid.cols - this.baseCol;
+		this.spanRows = this.grid.rows;
+		this.nodeAt = new int[this.spanCols * this.spanRows];
+		Arrays.fill(this.nodeAt, -1);
+		ArrayList<Integer> found = new ArrayList<>();
+		for (int r = 0; r + BODY_H < this.grid.rows; r += 1) {
+			for (int c = this.baseCol; c + BODY_W <= this.grid.cols; c += 1) {
+				if (this.bodyFits(c, r) && (this.grid.solid[c][r + BODY_H] || this.grid.solid[c + BODY_W - 1][r + BODY_H])) {
+					this.nodeAt[r * this.spanCols + c - this.baseCol] = found.size();
+					found.add(r * this.spanCols + c - this.baseCol);
+				}
+			}
+		}
+		this.nodeCol = new int[found.size()];
+		this.nodeRow = new int[found.size()];
+		for (int n = 0; n < found.size(); n += 1) {
+			this.nodeCol[n] = found.get(n) % this.spanCols + this.baseCol;
+			this.nodeRow[n] = found.get(n) / this.spanCols;
+		}
+	}
+
+	// Links the given node to its walkable neighbors and to wherever its jumps and drops land,
+	// noting which columns that looked at
+	// EFFECT: Modifies the given list of edges and this' reach of the node
+	void linkNode(ArrayList<double[]> edges, int node) {
+		double[] jumpVx = { -RUN_SPEED, -RUN_SPEED / 2, RUN_SPEED / 2, RUN_SPEED };
+		int c = this.nodeCol[node];
+		int r = this.nodeRow[node];
+		this.reach0[node] = c - 1;
+		this.reach1[node] = c + BODY_W;
+		for (int dc = -1; dc <= 1; dc += 2) {
+			int walkTo = this.nodeAtCell(c + dc, r);
+			if (walkTo >= 0) {
+				edges.add(new double[] { node, walkTo, WALK, dc * RUN_SPEED, 0,
+						Math.ceil(IConstant.BLOCK_SIZE / (RUN_SPEED * this.dt)) });
+			} else {
+				this.addArc(edges, node, dc * RUN_SPEED, 0, true);
+			}
+		}
+		for (double vx : jumpVx) {
+			this.addArc(edges, node, vx, Player.JUMP_VELOC, false);
+		}
+	}
+
+	// Lays out the given edges, listed by the node they leave, for following and searching
+	// EFFECT: Modifies this' edges
+	void indexEdges(ArrayList<double[]> edges) {
+		int n = this.nodeCol.length;
+		int m = edges.size();
+		this.edgeFrom = new int[m];
+		this.edgeTo = new int[m];
+		this.edgeKind = new int[m];
+		this.edgeVx = new double[m];
+		this.edgeVy = new double[m];
+		this.edgeTicks = new int[m];
+		this.inStart = new int[n + 1];
+		for (int e = 0; e < m; e += 1) {
+			double[] edge = edges.get(e);
+			this.edgeFrom[e] = (int) edge[0];
+			this.edgeTo[e] = (int) edge[1];
+			this.edgeKind[e] = (int) edge[2];
+			this.edgeVx[e] = edge[3];
+			this.edgeVy[e] = edge[4];
+			this.edgeTicks[e] = (int) edge[5];
+			this.inStart[this.edgeTo[e] + 1] += 1;
+		}
+		for (int node = 0; node < n; node += 1) {
+			this.inStart[node + 1] += this.inStart[node];
+		}
+		this.inEdge = new int[m];
+		int[] fill = Arrays.copyOf(this.inStart, n);
+		for (int e = 0; e < m; e += 1) {
+			this.inEdge[fill[this.edgeTo[e]]] = e;
+			fill[this.edgeTo[e]] += 1;
+		}
+	}
+
+	// Simulates an arc from the given node and links it to the node it lands on, if it lands somewhere
+	// new. Arcs only ever move one way across, so they look at no columns beyond where they stop.
+	// EFFECT: Modifies the given list of edges and this' reach of the node
+	void addArc(ArrayList<double[]> edges, int node, double vx, double vy, boolean runOff) {
+		Vector2D start = this.nodePosition(node);
+		ArcState arc = new ArcState(start.x, start.y, vx, vy, runOff);
+		while (!this.advance(arc)) {
+			// Keep simulating until the arc lands or is blocked
+		}
+		this.arcs += 1;
+		int stop = this.grid.cellOf(arc.x);
+		this.reach0[node] = Math.min(this.reach0[node], stop - 1);
+		this.reach1[node] = Math.max(this.reach1[node], stop + BODY_W + 1);
+		if (arc.blocked) {
+			return;
+		}
+		int landing = this.nodeAtCell((int) Math.round(arc.x / IConstant.BLOCK_SIZE),
+				(int) Math.round(arc.y / IConstant.BLOCK_SIZE));
+		if (landing < 0 || this.nodeRow[landing] == this.nodeRow[node]
+				&& Math.abs(this.nodeCol[landing] - this.nodeCol[node]) <= 1) {
+			// Landed nowhere, or somewhere walking already reaches
+			return;
+		}
+		edges.add(new double[] { node, landing, ARC, vx, vy, arc.ticks });
+	}
+
+	// SIMULATION
+
+	// Moves the arc forward one step under gravity, falling as the player does, stopping on walls and
+	// landing on floors. Returns whether the arc is over, either landed or blocked.
+	// EFFECT: Modifies the given arc
+	boolean advance(ArcState arc) {
+		arc.ticks += 1;
+		double hx = arc.x + arc.vx * this.dt;
+		if (this.collides(hx, arc.y)) {
+			arc.blocked = true;
+			return true;
+		}
+		arc.x = hx;
+		double nextVY = Math.min(arc.vy + IConstant.GRAVITY * this.dt, Player.TERMINAL_SPEED);
+		double ny = arc.y + (arc.vy + nextVY) / 2 * this.dt;
+		arc.vy = nextVY;
+		if (!this.collides(arc.x, ny)) {
+			arc.y = ny;
+		} else if (ny > arc.y) {
+			int floorRow = this.grid.cellOf(ny + BODY_H * IConstant.BLOCK_SIZE - IConstant.COL_TOL);
+			arc.y = (floorRow - BODY_H) * IConstant.BLOCK_SIZE;
+			arc.vy = 0;
+			boolean stillWalking = arc.runOff && floorRow - BODY_H == arc.startRow;
+			if (!stillWalking) {
+				return true;
+			} else if (arc.ticks * Math.abs(arc.vx) * this.dt > BODY_W * IConstant.BLOCK_SIZE) {
+				// Walked on without finding a ledge to drop from
+				arc.blocked = true;
+				return true;
+			}
+		} else {
+			arc.y = (this.grid.cellOf(ny + IConstant.COL_TOL) + 1) * IConstant.BLOCK_SIZE;
+			arc.vy = 0;
+		}
+		if (arc.ticks * this.dt >= MAX_ARC_SECONDS) {
+			arc.blocked = true;
+			return true;
+		}
+		return false;
+	}
+
+	// Does a body with the given top-left overlap solid cells or leave the grid?
+	boolean collides(double x, double y) {
+		int c0 = this.grid.cellOf(x + IConstant.COL_TOL);
+		int c1 = this.grid.cellOf(x + BODY_W * IConstant.BLOCK_SIZE - IConstant.COL_TOL);
+		int r0 = this.grid.cellOf(y + IConstant.COL_TOL);
+		int r1 = this.grid.cellOf(y + BODY_H * IConstant.BLOCK_SIZE - IConstant.COL_TOL);
+		if (c0 < 0 || r0 < 0 || c1 >= this.grid.cols || r1 >= this.grid.rows) {
+			return true;
+		}
+		for (int c = c0; c <= c1; c += 1) {
+			for (int r = r0; r <= r1; r += 1) {
+				if (this.grid.solid[c][r]) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	// Does a body fit with its top-left in the given cell?
+	boolean bodyFits(int col, int row) {
+		if (col < 0 || row < 0 || col + BODY_W > this.grid.cols || row + BODY_H > this.grid.rows) {
+			return false;
+		}
+		for (int c = col; c < col + BODY_W; c += 1) {
+			for (int r = row; r < row + BODY_H; r += 1) {
+				if (this.grid.solid[c][r]) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	// QUERIES
+
+	// The node at the given cell, or -1 if a body cannot stand there
+	int nodeAtCell(int col, int row) {
+		if (col < this.baseCol || row < 0 || col >= this.baseCol + this.spanCols || row >= this.spanRows) {
+			return -1;
+		}
+		return this.nodeAt[row * this.spanCols + col - this.baseCol];
+	}
+
+	// The node a body with the given top-left is standing at or will fall onto, or -1 if there is none
+	int nearestNode(Vector2D topLeft) {
+		return this.nearestNode(topLeft.x, topLeft.y);
+	}
+
+	// The node a body with its top-left at the given coordinates is standing at or will fall onto,
+	// or -1 if there is none
+	int nearestNode(double left, double top) {
+		this.refresh();
+		int col = (int) Math.round(left / IConstant.BLOCK_SIZE);
+		int row = Math.max(0, (int) Math.round(top / IConstant.BLOCK_SIZE));
+		for (int r = row; r < this.grid.rows; r += 1) {
+			for (int dc = 0; dc <= 1; dc += 1) {
+				int node = this.nodeAtCell(col - dc, r);
+				if (node >= 0) {
+					return node;
+				}
+			}
+		}
+		return -1;
+	}
+
+	// The edge to take from the given node to approach the target fastest, or -1 if it cannot be reached
+	// EFFECT: May compute and cache the paths toward the target
+	int nextEdge(int from, int target) {
+		this.refresh();
+		if (from < 0 || target < 0 || from == target) {
+			return -1;
+		}
+		int[] toward = this.paths.get(target);
+		if (toward == null) {
+			toward = this.pathsToward(target);
+			this.paths.put(target, toward);
+		}
+		return toward[from];
+	}
+
+	// Searches backward from the target to find, for every node, the first edge of its fastest path there
+	int[] pathsToward(int target) {
+		int n = this.nodeCount();
+		int[] dist = new int[n];
+		int[] next = new int[n];
+		Arrays.fill(dist, UNREACHABLE);
+		Arrays.fill(next, -1);
+		dist[target] = 0;
+		// Entries pack the distance in the high half and the node in the low half
+		PriorityQueue<Long> frontier = new PriorityQueue<>();
+		frontier.add((long) target);
+		while (!frontier.isEmpty()) {
+			long entry = frontier.poll();
+			int node = (int) entry;
+			if ((int) (entry >>> 32) > dist[node]) {
+				continue;
+			}
+			for (int i = this.inStart[node]; i < this.inStart[node + 1]; i += 1) {
+				int e = this.inEdge[i];
+				int from = this.edgeFrom[e];
+				int d = dist[node] + this.edgeTicks[e];
+				if (d < dist[from]) {
+					dist[from] = d;
+					next[from] = e;
+					frontier.add((long) d << 32 | from);
+				}
+			}
+		}
+		return next;
+	}
+
+	// The node an edge leads to
+	int edgeTarget(int edge) {
+		return this.edgeTo[edge];
+	}
+
+	// Is the given edge a walk between neighboring places rather than an arc?
+	boolean isWalk(int edge) {
+		return this.edgeKind[edge] == WALK;
+	}
+
+	// Number of steps it takes to follow the given edge
+	int edgeTicks(int edge) {
+		return this.edgeTicks[edge];
+	}
+
+	// Begins following the given edge from its start node
+	ArcState startEdge(int edge) {
+		Vector2D start = this.nodePosition(this.edgeFrom[edge]);
+		return new ArcState(start.x, start.y, this.edgeVx[edge], this.edgeVy[edge], this.edgeVy[edge] == 0);
+	}
+}
+
+// An enemy that hurts the player on touch and chases the nearest player along a navigation graph,
+// walking, dropping off ledges, and jumping as the player can
+class HunterEnemy extends AGameComponent implements IEnemy {
+	NavGraph nav;
+	Health health;
+	// The node this was last standing at, the edge it is following or -1, and its progress along it
+	int node;
+	int edge;
+	ArcState arc;
+	int navVersion;
+	// Top-left of the body this is chasing
+	final MutableVector2D target;
+	boolean facingRight;
+	ParticleSystem particles;
+
+	// Initializes this standing at the given block position of the given graph,
+	// emitting hit effects into the given particle system
+	HunterEnemy(Posn start, NavGraph nav, ParticleSystem particles) {
+		super(new Util().topLFromBlock(start), Player.DIM, CollisionLayers.ENEMY);
+		this.nav = nav;
+		this.particles = particles;
+		this.health = new Health(2);
+		this.node = nav.nearestNode(this.body.getPosition());
+		this.edge = -1;
+		this.arc = null;
+		this.navVersion = nav.version;
+		this.target = new MutableVector2D(this.body.left(), this.body.top());
+		this.facingRight = true;
+	}
+
+	// Renders this with the enemy image facing its direction of travel
+	WorldImage render() {
+		String fname = this.facingRight ? "enemy.png" : "enemy-l.png";
+		return this.body.render(fname);
+	}
+	
+	// Paints the same sprite straight onto the given graphics
+	public void paintOnto(Graphics2D g, SpriteCache sprites) {
+		this.body.paint(g, sprites, this.facingRight ? "enemy.png" : "enemy-l.png");
+	}
+
+	// This looks one way facing right and another facing left
+	public int look() {
+		return this.facingRight ? 1 : 0;
+	}
+
+	// Follows the current edge one step, or starts the next edge toward the target once at a node.
+	// Ticked once per physics step, whose length the graph's edges were laid out with.
+	// EFFECT: Modifies this' position and path progress
+	public void tick(double dt) {
+		if (this.navVersion != this.nav.version) {
+			this.navVersion = this.nav.version;
+			this.node = this.nav.nearestNode(this.body.getPosition());
+			this.edge = -1;
+		}
+		if (this.edge < 0) {
+			this.edge = this.nav.nextEdge(this.node, this.nav.nearestNode(this.target.x, this.target.y));
+			if (this.edge < 0) {
+				return;
+			}
+			this.arc = this.nav.startEdge(this.edge);
+			this.facingRight = this.arc.vx > 0;
+		}
+		if (this.nav.isWalk(this.edge)) {
+			this.arc.ticks += 1;
+			this.arc.x += this.arc.vx * this.nav.dt;
+		} else {
+			this.nav.advance(this.arc);
+		}
+		if (this.arc.ticks >= this.nav.edgeTicks(this.edge)) {
+			this.node = this.nav.edgeTarget(this.edge);
+			this.edge = -1;
+			this.body = this.body.setPosition(this.nav.nodePosition(this.node));
+		} else {
+			this.body.moveTo(this.arc.x, this.arc.y);
+		}
+	}
+
+	// Jumps along the path node by node for every edge the missed steps would have covered in full,
+	// as following an edge takes exactly its number of steps, and plays in turn only the steps
+	// partway into the last one. Once at the target or stuck, the rest change nothing. So waking
+	// costs about the length of the path rather than the time slept.
+	// EFFECT: Modifies this' position and path progress
+	public void catchUp(int steps, double step) {
+		int left = steps;
+		while (left > 0) {
+			if (this.edge < 0 && this.navVersion == this.nav.version) {
+				int next = this.nav.nextEdge(this.node, this.nav.nearestNode(this.target.x, this.target.y));
+				if (next < 0) {
+					return;
+				}
+				int ticks = this.nav.edgeTicks(next);
+				if (ticks <= left) {
+					this.facingRight = this.nav.startEdge(next).vx > 0;
+					this.node = this.nav.edgeTarget(next);
+					this.body = this.body.setPosition(this.nav.nodePosition(this.node));
+					left -= ticks;
+					continue;
+				}
+			}
+			this.tick(step);
+			left -= 1;
+		}
+	}
+
+	// Should remove this enemy if it is dead
+	public boolean shouldRemove() {
+		return this.health.dead();
+	}
+
+	// Lowers health of this by amount, throwing off sparks
+	// EFFECT: Modifies this' health and particle system
+	public void reduceHealth(int amt) {
+		this.health.adjust(- amt);
+		this.particles.burst(ParticleSystem.SPARK, this.body.center(), 10 * amt, 200, .3);
+	}
+
+	// Reduces player health by 1 if collision
+	// EFFECT: modifies player health
+	void interactPlayerOnCollision(Player pl) {
+		pl.onHit(1);
+	}
+
+	// Does not fire, but heads for the player it would fire at
+	// EFFECT: Modifies this' target
+	public void fireAt(Player target, ArrayList<IWeaponEffect> out) {
+		this.target.set(target.body.left(), target.body.top());
+	}
+
+	// Records position, path progress, and health
+	// EFFECT: Appends to the given history
+	public void saveState(RewindBuffer rb) {
+		super.saveState(rb);
+		rb.put(this.node);
+		rb.put(this.edge);
+		rb.put(this.edge < 0 ? 0 : this.arc.x);
+		rb.put(this.edge < 0 ? 0 : this.arc.y);
+		rb.put(this.edge < 0 ? 0 : this.arc.vy);
+		rb.put(this.edge < 0 ? 0 : this.arc.ticks);
+		rb.put(this.health.current);
+	}
+
+	// Restores position, path progress, and health
+	// EFFECT: Modifies this and advances the history's read cursor
+	public void restoreState(RewindBuffer rb) {
+		super.restoreState(rb);
+		this.node = rb.getInt();
+		this.edge = rb.getInt();
+		double x = rb.get();
+		double y = rb.get();
+		double vy = rb.get();
+		int ticks = rb.getInt();
+		if (this.edge >= 0) {
+			this.arc = this.nav.startEdge(this.edge);
+			this.arc.x = x;
+			this.arc.y = y;
+			this.arc.vy = vy;
+			this.arc.ticks = ticks;
+		}
+		this.health = new Health(rb.getInt(), this.health.max);
+	}
+}
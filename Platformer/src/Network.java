@@ -0,0 +1,849 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Random;
+
+// A collection of constants shared by the game server and its clients
+interface INetConstant {
+	byte INPUT = 1; // Client to server packet carrying one tick of input
+	byte STATE = 2; // Server to client packet carrying a delta-compressed snapshot
+	byte BYE = 3; // Client to server packet that leaves the game
+	int MAX_PACKET = 1400; // In bytes, kept under a typical MTU to avoid fragmentation
+	int MAX_ENTITY_BYTES = 32; // Upper bound on the encoded size of one entity record
+	int HISTORY = 64; // Number of snapshots remembered per client as delta baselines
+	int FIXED_POINT = 8; // Positions are sent in eighths of a pixel
+	double TIMEOUT_SECONDS = 5; // Silent clients are dropped after this long
+}
+
+// The quantized, network-visible state of a single game component
+class NetEntity {
+	// Bits of the change mask, one per field that differs from the baseline
+	static final int KIND = 1;
+	static final int X = 2;
+	static final int Y = 4;
+	static final int W = 8;
+	static final int H = 16;
+	static final int AUX = 32;
+
+	final int id;
+	final int kind;
+	final int x;
+	final int y;
+	final int w;
+	final int h;
+	// Kind-specific extra state such as health, facing, and active weapon
+	final int aux;
+
+	NetEntity(int id, int kind, int x, int y, int w, int h, int aux) {
+		this.id = id;
+		this.kind = kind;
+		this.x = x;
+		this.y = y;
+		this.w = w;
+		this.h = h;
+		this.aux = aux;
+	}
+
+	// Returns the mask of fields in which this differs from the given baseline, which may be null
+	int changesFrom(NetEntity base) {
+		if (base == null) {
+			return KIND | X | Y | W | H | AUX;
+		}
+		int mask = 0;
+		mask |= this.kind != base.kind ? KIND : 0;
+		mask |= this.x != base.x ? X : 0;
+		mask |= this.y != base.y ? Y : 0;
+		mask |= this.w != base.w ? W : 0;
+		mask |= this.h != base.h ? H : 0;
+		mask |= this.aux != base.aux ? AUX : 0;
+		return mask;
+	}
+
+	// Does the bounding box of this overlap the square of the given half-size around the center?
+	boolean within(int centerX, int centerY, int halfSize) {
+		return this.x <= centerX + halfSize && this.x + this.w >= centerX - halfSize
+				&& this.y <= centerY + halfSize && this.y + this.h >= centerY - halfSize;
+	}
+
+	// The top-left position of this in pixels
+	Vector2D position() {
+		return new Vector2D(this.x, this.y).scaleVector(1.0 / INetConstant.FIXED_POINT);
+	}
+}
+
+// Encoding and decoding of game state for the network
+class NetCodec {
+	// Kinds of game components distinguished on the wire
+	static final int PLAYER = 0;
+	static final int GROUND = 1;
+	static final int SPIKES = 2;
+	static final int MELEE = 3;
+	static final int TURRET = 4;
+	static final int ENEMY_BULLET = 5;
+	static final int PLAYER_BULLET = 6;
+	static final int KNIFE = 7;
+	static final int ITEM = 8;
+	static final int HUNTER = 9;
+	static final int AI = 10;
+	static final int GRENADE = 11;
+	static final int OTHER = 12;
+
+	// Returns the wire kind of the given game component
+	int kindOf(IGameComponent igc) {
+		if (igc instanceof Player) {
+			return PLAYER;
+		} else if (igc instanceof GroundBlock) {
+			return GROUND;
+		} else if (igc instanceof Spikes) {
+			return SPIKES;
+		} else if (igc instanceof MeleeEnemy) {
+			return MELEE;
+		} else if (igc instanceof SentryTurret) {
+			return TURRET;
+		} else if (igc instanceof PlayerBullet) {
+			return PLAYER_BULLET;
+		} else if (igc instanceof EnemyBullet) {
+			return ENEMY_BULLET;
+		} else if (igc instanceof KnifeEffect) {
+			return KNIFE;
+		} else if (igc instanceof AItem) {
+			return ITEM;
+		} else if (igc instanceof HunterEnemy) {
+			return HUNTER;
+		} else if (igc instanceof AIEnemy) {
+			return AI;
+		} else if (igc instanceof GrenadeShell) {
+			return GRENADE;
+		} else {
+			return OTHER;
+		}
+	}
+
+	// Returns the kind-specific extra state of the given game component
+	int auxOf(IGameComponent igc) {
+		if (igc instanceof Player) {
+			Player pl = (Player) igc;
+			return pl.health.current | (pl.facingRight ? 1 : 0) << 8 | pl.weapons.currWeapon << 9;
+		} else if (igc instanceof MeleeEnemy) {
+			return ((MeleeEnemy) igc).health.current;
+		} else if (igc instanceof SentryTurret) {
+			return ((SentryTurret) igc).health.current;
+		} else if (igc instanceof HunterEnemy) {
+			return ((HunterEnemy) igc).health.current;
+		} else if (igc instanceof AIEnemy) {
+			return ((AIEnemy) igc).health.current;
+		} else {
+			return 0;
+		}
+	}
+
+	// Returns the quantized state of the given game component under the given id
+	NetEntity capture(int id, IGameComponent igc) {
+		ICollisionBody body = igc.getCollisionBody();
+		Vector2D pos = body.getPosition();
+		Vector2D dim = body.getDimensions();
+		return new NetEntity(id, this.kindOf(igc), this.quantize(pos.x), this.quantize(pos.y),
+				this.quantize(dim.x), this.quantize(dim.y), this.auxOf(igc));
+	}
+
+	// Converts the given number of pixels to fixed point
+	int quantize(double pixels) {
+		return (int) Math.round(pixels * INetConstant.FIXED_POINT);
+	}
+
+	// Writes the fields of the entity selected by the mask as differences from the baseline
+	// EFFECT: Advances the buffer's position
+	void writeEntity(ByteBuffer buf, NetEntity cur, NetEntity base, int mask) {
+		NetEntity from = base == null ? new NetEntity(cur.id, 0, 0, 0, 0, 0, 0) : base;
+		this.writeVarInt(buf, cur.id);
+		buf.put((byte) mask);
+		if ((mask & NetEntity.KIND) != 0) {
+			buf.put((byte) cur.kind);
+		}
+		this.writeDelta(buf, mask, NetEntity.X, cur.x, from.x);
+		this.writeDelta(buf, mask, NetEntity.Y, cur.y, from.y);
+		this.writeDelta(buf, mask, NetEntity.W, cur.w, from.w);
+		this.writeDelta(buf, mask, NetEntity.H, cur.h, from.h);
+		this.writeDelta(buf, mask, NetEntity.AUX, cur.aux, from.aux);
+	}
+
+	// Reads one entity record as written by writeEntity, relative to the given baseline map
+	// EFFECT: Advances the buffer's position
+	NetEntity readEntity(ByteBuffer buf, HashMap<Integer, NetEntity> baseline) {
+		int id = this.readVarInt(buf);
+		int mask = buf.get();
+		NetEntity base = baseline.get(id);
+		NetEntity from = base == null ? new NetEntity(id, 0, 0, 0, 0, 0, 0) : base;
+		int kind = (mask & NetEntity.KIND) != 0 ? buf.get() : from.kind;
+		int x = this.readDelta(buf, mask, NetEntity.X, from.x);
+		int y = this.readDelta(buf, mask, NetEntity.Y, from.y);
+		int w = this.readDelta(buf, mask, NetEntity.W, from.w);
+		int h = this.readDelta(buf, mask, NetEntity.H, from.h);
+		int aux = this.readDelta(buf, mask, NetEntity.AUX, from.aux);
+		return new NetEntity(id, kind, x, y, w, h, aux);
+	}
+
+	// Writes the difference of the given values if the field is present in the mask
+	// EFFECT: Advances the buffer's position
+	void writeDelta(ByteBuffer buf, int mask, int field, int value, int base) {
+		if ((mask & field) != 0) {
+			this.writeVarInt(buf, (value - base) << 1 ^ (value - base) >> 31);
+		}
+	}
+
+	// Reads a difference from the given value if the field is present in the mask
+	// EFFECT: Advances the buffer's position
+	int readDelta(ByteBuffer buf, int mask, int field, int base) {
+		if ((mask & field) != 0) {
+			int zigzag = this.readVarInt(buf);
+			return base + (zigzag >>> 1 ^ -(zigzag & 1));
+		}
+		return base;
+	}
+
+	// Writes the given non-negative number using 7 bits per byte
+	// EFFECT: Advances the buffer's position
+	void writeVarInt(ByteBuffer buf, int value) {
+		while ((value & ~0x7F) != 0) {
+			buf.put((byte) (value & 0x7F | 0x80));
+			value >>>= 7;
+		}
+		buf.put((byte) value);
+	}
+
+	// Reads a number written by writeVarInt
+	// EFFECT: Advances the buffer's position
+	int readVarInt(ByteBuffer buf) {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = buf.get();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new RuntimeException("Malformed variable-length integer.");
+	}
+}
+
+// One tick of controls sent by a client for its player
+class InputFrame {
+	static final int LEFT = 1;
+	static final int RIGHT = 2;
+	static final int JUMP = 4;
+	static final int FIRE = 8;
+
+	final int buttons;
+	// Inventory position to switch to, or -1 to keep the current weapon
+	final int weapon;
+	// Position the player faces and fires toward, in pixels
+	final Vector2D aim;
+
+	InputFrame(int buttons, int weapon, Vector2D aim) {
+		this.buttons = buttons;
+		this.weapon = weapon;
+		this.aim = aim;
+	}
+
+	// Is the given button held in this frame?
+	boolean pressed(int button) {
+		return (this.buttons & button) != 0;
+	}
+
+	// Writes this as an input packet with the given sequence number and acknowledged snapshot tick
+	// EFFECT: Advances the buffer's position
+	void writeTo(ByteBuffer buf, int seq, int ackTick) {
+		buf.put(INetConstant.INPUT);
+		buf.putInt(seq);
+		buf.putInt(ackTick);
+		buf.put((byte) this.buttons);
+		buf.put((byte) this.weapon);
+		buf.putFloat((float) this.aim.x);
+		buf.putFloat((float) this.aim.y);
+	}
+
+	// Reads the frame of an input packet whose type, sequence number, and ack have already been read
+	// EFFECT: Advances the buffer's position
+	static InputFrame readFrom(ByteBuffer buf) {
+		int buttons = buf.get();
+		int weapon = buf.get();
+		return new InputFrame(buttons, weapon, new Vector2D(buf.getFloat(), buf.getFloat()));
+	}
+}
+
+// Controls of a networked player built up from input records, such as those taken from a
+// window's InputQueue, and sent to the server as one InputFrame per tick. Held buttons stay held
+// until released; a jump, shot, or weapon switch is sent once.
+class ClientControls implements IInputSink {
+	private int held;
+	private int once;
+	private int weapon;
+	private Vector2D aim;
+
+	ClientControls() {
+		this.held = 0;
+		this.once = 0;
+		this.weapon = -1;
+		this.aim = Vector2D.ZERO;
+	}
+
+	// Folds one input record into the controls to send. Rewinding is up to the server, so it is
+	// not sent.
+	// EFFECT: Modifies this' controls
+	public void onInput(int kind, int arg, int x, int y) {
+		switch (kind) {
+		case InputQueue.MOVE:
+			this.held = arg == 1 ? InputFrame.RIGHT : InputFrame.LEFT;
+			break;
+		case InputQueue.HALT:
+			this.held = 0;
+			break;
+		case InputQueue.JUMP:
+			this.once |= InputFrame.JUMP;
+			break;
+		case InputQueue.SWITCH:
+			this.weapon = arg;
+			break;
+		case InputQueue.FIRE:
+			this.once |= InputFrame.FIRE;
+			this.aim = new Vector2D(x, y);
+			break;
+		case InputQueue.FACE:
+			this.aim = new Vector2D(x, y);
+			break;
+		default:
+			break;
+		}
+	}
+
+	// Returns the controls for this tick, forgetting the ones sent only once
+	// EFFECT: Modifies this' controls
+	InputFrame frame() {
+		InputFrame frame = new InputFrame(this.held | this.once, this.weapon, this.aim);
+		this.once = 0;
+		this.weapon = -1;
+		return frame;
+	}
+}
+
+// The server's record of one connected client and the snapshots it has been sent
+class ClientSession {
+	final SocketAddress address;
+	final Player player;
+	int lastSeq;
+	int ackTick;
+	int lastHeard;
+	// Snapshots sent to this client, indexed by tick modulo history length
+	private final int[] sentTicks;
+	private final ArrayList<HashMap<Integer, NetEntity>> sent;
+
+	ClientSession(SocketAddress address, Player player, int tick) {
+		this.address = address;
+		this.player = player;
+		this.lastSeq = -1;
+		this.ackTick = -1;
+		this.lastHeard = tick;
+		this.sentTicks = new int[INetConstant.HISTORY];
+		Arrays.fill(this.sentTicks, -1);
+		this.sent = new ArrayList<>();
+		for (int i = 0; i < INetConstant.HISTORY; i += 1) {
+			this.sent.add(null);
+		}
+	}
+
+	// Returns the last snapshot this client acknowledged, or an empty one if it is no longer remembered
+	HashMap<Integer, NetEntity> baseline() {
+		int slot = Math.floorMod(this.ackTick, INetConstant.HISTORY);
+		if (this.ackTick >= 0 && this.sentTicks[slot] == this.ackTick) {
+			return this.sent.get(slot);
+		}
+		return new HashMap<>();
+	}
+
+	// Is the baseline this client acknowledged still remembered?
+	boolean hasBaseline() {
+		return this.ackTick >= 0 && this.sentTicks[Math.floorMod(this.ackTick, INetConstant.HISTORY)] == this.ackTick;
+	}
+
+	// Remembers the snapshot sent at the given tick
+	// EFFECT: Modifies this' history of sent snapshots
+	void recordSent(int tick, HashMap<Integer, NetEntity> snapshot) {
+		int slot = Math.floorMod(tick, INetConstant.HISTORY);
+		this.sentTicks[slot] = tick;
+		this.sent.set(slot, snapshot);
+	}
+}
+
+// Network ids for the components of a game, each kept for as long as its component stays in play,
+// so a component's id does not change when others leave the lists before it
+class EntityIds {
+	private IdentityHashMap<IGameComponent, Integer> ids;
+	private int nextId;
+
+	EntityIds() {
+		this.ids = new IdentityHashMap<>();
+		this.nextId = 0;
+	}
+
+	// Captures the state of every component in the given game under its id, giving new components
+	// fresh ids and forgetting those of components no longer in play
+	// EFFECT: Modifies this' ids
+	ArrayList<NetEntity> capture(PlatformGame game, NetCodec codec) {
+		IdentityHashMap<IGameComponent, Integer> live = new IdentityHashMap<>();
+		ArrayList<NetEntity> world = new ArrayList<>();
+		for (IGameComponent igc : game.gameComponents()) {
+			Integer id = this.ids.get(igc);
+			if (id == null) {
+				id = this.nextId;
+				this.nextId += 1;
+			}
+			live.put(igc, id);
+			world.add(codec.capture(id, igc));
+		}
+		this.ids = live;
+		return world;
+	}
+
+	// The id of the given component as of the last capture
+	int idOf(IGameComponent igc) {
+		Integer id = this.ids.get(igc);
+		if (id == null) {
+			throw new IllegalArgumentException("Component was not in play at the last capture.");
+		}
+		return id;
+	}
+}
+
+// An authoritative host of a PlatformGame that players join and control over UDP
+class GameServer {
+	final PlatformGame game;
+	final DatagramChannel channel;
+	// Half the side length in pixels of the square around each player that its client is told about
+	final int interestRadius;
+	final int maxPlayers;
+	final HashMap<SocketAddress, ClientSession> sessions;
+	int tick;
+	// Traffic counters for benchmarking
+	long bytesSent;
+	long packetsSent;
+	long packetsDropped;
+	long bytesReceived;
+	// Optional read-only viewers sent every tick of the whole game, or null
+	SpectatorServer spectators;
+
+	private final NetCodec codec;
+	private final ByteBuffer inBuf;
+	private final ByteBuffer outBuf;
+	private final EntityIds ids;
+
+	GameServer(PlatformGame game, InetSocketAddress bindTo, int maxPlayers, int interestRadius) throws IOException {
+		this.game = game;
+		this.channel = DatagramChannel.open();
+		this.channel.configureBlocking(false);
+		this.channel.bind(bindTo);
+		this.maxPlayers = maxPlayers;
+		this.interestRadius = interestRadius;
+		this.sessions = new HashMap<>();
+		this.tick = 0;
+		this.codec = new NetCodec();
+		this.inBuf = ByteBuffer.allocateDirect(INetConstant.MAX_PACKET);
+		this.outBuf = ByteBuffer.allocateDirect(INetConstant.MAX_PACKET);
+		this.ids = new EntityIds();
+		this.spectators = null;
+	}
+
+	// Convenience constructor hosts a fresh game with no local player on the given local port with a
+	// screen-sized interest area
+	GameServer(int port, int maxPlayers) throws IOException {
+		this(new PlatformGame().hosted(), new InetSocketAddress("127.0.0.1", port), maxPlayers, IConstant.WINDX / 2);
+	}
+
+	// The address clients should send input to
+	InetSocketAddress address() throws IOException {
+		return (InetSocketAddress) this.channel.getLocalAddress();
+	}
+
+	// Applies pending client input, advances the game, and sends each client its view of the result
+	// EFFECT: Modifies the game, client sessions, and traffic counters
+	void tick() throws IOException {
+		this.receiveInputs();
+		this.game.tick();
+		this.tick += 1;
+		this.dropSilentClients();
+		this.broadcast();
+	}
+
+	// Runs the server in real time at the game's tick rate for the given number of ticks
+	// EFFECT: Modifies the game, client sessions, and traffic counters
+	void runFor(int ticks) throws IOException, InterruptedException {
+		long period = this.game.timestep.nanos();
+		long next = System.nanoTime();
+		for (int i = 0; i < ticks; i += 1) {
+			this.tick();
+			next += period;
+			long wait = next - System.nanoTime();
+			if (wait > 0) {
+				Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+			}
+		}
+	}
+
+	// Streams every tick of this server's game to the spectators of the given endpoint
+	// EFFECT: Modifies this' spectators
+	void attachSpectators(SpectatorServer spectators) {
+		this.spectators = spectators;
+	}
+
+	// Leaves the network
+	// EFFECT: Closes this' channel and any spectator endpoint
+	void close() throws IOException {
+		this.channel.close();
+		if (this.spectators != null) {
+			this.spectators.close();
+		}
+	}
+
+	// Reads every datagram waiting on the channel without blocking
+	// EFFECT: Modifies client sessions and the players they control
+	void receiveInputs() throws IOException {
+		this.inBuf.clear();
+		SocketAddress from = this.channel.receive(this.inBuf);
+		while (from != null) {
+			this.inBuf.flip();
+			this.bytesReceived += this.inBuf.remaining();
+			this.handlePacket(from, this.inBuf);
+			this.inBuf.clear();
+			from = this.channel.receive(this.inBuf);
+		}
+	}
+
+	// Handles one packet from the given address, admitting new clients while there is room
+	// EFFECT: Modifies client sessions and the players they control
+	void handlePacket(SocketAddress from, ByteBuffer buf) {
+		if (buf.remaining() < 1) {
+			return;
+		}
+		byte type = buf.get();
+		ClientSession session = this.sessions.get(from);
+		if (type == INetConstant.BYE && session != null) {
+			this.game.removePlayer(session.player);
+			this.sessions.remove(from);
+		} else if (type == INetConstant.INPUT && buf.remaining() >= 18) {
+			if (session == null) {
+				if (this.sessions.size() >= this.maxPlayers) {
+					return;
+				}
+				session = new ClientSession(from, this.game.addPlayer(), this.tick);
+				this.sessions.put(from, session);
+			}
+			int seq = buf.getInt();
+			int ack = buf.getInt();
+			InputFrame frame = InputFrame.readFrom(buf);
+			session.lastHeard = this.tick;
+			session.ackTick = Math.max(session.ackTick, Math.min(ack, this.tick));
+			if (seq > session.lastSeq) {
+				session.lastSeq = seq;
+				this.applyInput(session.player, frame);
+			}
+		}
+	}
+
+	// Applies one frame of input to the given player
+	// EFFECT: Modifies the player and the game's weapon effects
+	void applyInput(Player pl, InputFrame frame) {
+		if (frame.weapon >= 0) {
+			this.game.playerSwitchWeapon(pl, frame.weapon);
+		}
+		pl.face(frame.aim);
+		if (frame.pressed(InputFrame.LEFT) != frame.pressed(InputFrame.RIGHT)) {
+			this.game.playerMoveX(pl, frame.pressed(InputFrame.RIGHT));
+		} else {
+			this.game.haltPlayerX(pl);
+		}
+		if (frame.pressed(InputFrame.JUMP)) {
+			this.game.playerJump(pl);
+		}
+		if (frame.pressed(InputFrame.FIRE)) {
+			this.game.playerFireAt(pl, frame.aim);
+		}
+	}
+
+	// Removes clients that have not sent anything for too long, along with their players
+	// EFFECT: Modifies client sessions and the game's players
+	void dropSilentClients() {
+		ArrayList<ClientSession> silent = new Util().filterOut(new ArrayList<>(this.sessions.values()),
+				(s) -> this.tick - s.lastHeard <= this.game.timestep.ticks(INetConstant.TIMEOUT_SECONDS));
+		for (ClientSession s : silent) {
+			this.game.removePlayer(s.player);
+			this.sessions.remove(s.address);
+		}
+	}
+
+	// Captures the state of every game component once, then sends each client the part near its player
+	// and any spectators all of it
+	// EFFECT: Modifies client sessions' histories and traffic counters
+	void broadcast() throws IOException {
+		ArrayList<NetEntity> world = this.ids.capture(this.game, this.codec);
+
+		if (this.spectators != null) {
+			this.spectators.publish(this.tick, world);
+		}
+		for (ClientSession session : this.sessions.values()) {
+			this.sendSnapshot(session, world);
+		}
+	}
+
+	// Sends the given client the entities near its player, delta-compressed against its acknowledged baseline
+	// EFFECT: Modifies the session's history and traffic counters
+	void sendSnapshot(ClientSession session, ArrayList<NetEntity> world) throws IOException {
+		int ownId = this.ids.idOf(session.player);
+		NetEntity own = this.codec.capture(ownId, session.player);
+		int cx = own.x + own.w / 2;
+		int cy = own.y + own.h / 2;
+		int half = this.codec.quantize(this.interestRadius);
+		HashMap<Integer, NetEntity> baseline = session.baseline();
+		HashMap<Integer, NetEntity> recorded = new HashMap<>();
+
+		ByteBuffer buf = this.outBuf;
+		buf.clear();
+		buf.put(INetConstant.STATE);
+		buf.putInt(this.tick);
+		buf.putInt(session.hasBaseline() ? session.ackTick : -1);
+		this.codec.writeVarInt(buf, ownId);
+		int countPos = buf.position();
+		buf.putShort((short) 0);
+		int changed = 0;
+		for (NetEntity cur : world) {
+			if (cur.id != ownId && !cur.within(cx, cy, half)) {
+				continue;
+			}
+			NetEntity base = baseline.get(cur.id);
+			int mask = cur.changesFrom(base);
+			if (mask == 0) {
+				recorded.put(cur.id, cur);
+			} else if (buf.remaining() >= INetConstant.MAX_ENTITY_BYTES + 2) {
+				this.codec.writeEntity(buf, cur, base, mask);
+				recorded.put(cur.id, cur);
+				changed += 1;
+			} else if (base != null) {
+				// Out of room, the client keeps its baseline copy until a later snapshot
+				recorded.put(cur.id, base);
+			}
+		}
+		buf.putShort(countPos, (short) changed);
+
+		int removedPos = buf.position();
+		buf.putShort((short) 0);
+		int removed = 0;
+		for (NetEntity base : baseline.values()) {
+			if (recorded.containsKey(base.id)) {
+				continue;
+			}
+			if (buf.remaining() >= 5) {
+				this.codec.writeVarInt(buf, base.id);
+				removed += 1;
+			} else {
+				recorded.put(base.id, base);
+			}
+		}
+		buf.putShort(removedPos, (short) removed);
+
+		session.recordSent(this.tick, recorded);
+		buf.flip();
+		int size = buf.remaining();
+		if (this.channel.send(buf, session.address) == 0) {
+			this.packetsDropped += 1;
+		} else {
+			this.bytesSent += size;
+			this.packetsSent += 1;
+		}
+	}
+}
+
+// A player's connection to a GameServer that sends input and reconstructs the nearby game state
+class GameClient {
+	final DatagramChannel channel;
+	// The entities this client currently knows about, by id
+	HashMap<Integer, NetEntity> world;
+	// The id of the entity that is this client's own player, or -1 before the first snapshot
+	int playerId;
+	int latestTick;
+	long bytesReceived;
+
+	private final NetCodec codec;
+	private final ByteBuffer inBuf;
+	private final ByteBuffer outBuf;
+	private int seq;
+	// Decoded snapshots, indexed by tick modulo history length, for use as delta baselines
+	private final int[] ticks;
+	private final ArrayList<HashMap<Integer, NetEntity>> history;
+
+	GameClient(InetSocketAddress server) throws IOException {
+		this.channel = DatagramChannel.open();
+		this.channel.configureBlocking(false);
+		this.channel.connect(server);
+		this.world = new HashMap<>();
+		this.playerId = -1;
+		this.latestTick = -1;
+		this.codec = new NetCodec();
+		this.inBuf = ByteBuffer.allocateDirect(INetConstant.MAX_PACKET);
+		this.outBuf = ByteBuffer.allocateDirect(64);
+		this.seq = 0;
+		this.ticks = new int[INetConstant.HISTORY];
+		Arrays.fill(this.ticks, -1);
+		this.history = new ArrayList<>();
+		for (int i = 0; i < INetConstant.HISTORY; i += 1) {
+			this.history.add(null);
+		}
+	}
+
+	// Sends one frame of input, acknowledging the latest snapshot received
+	// EFFECT: Advances this' input sequence number
+	void send(InputFrame frame) throws IOException {
+		this.outBuf.clear();
+		frame.writeTo(this.outBuf, this.seq, this.latestTick);
+		this.outBuf.flip();
+		this.channel.write(this.outBuf);
+		this.seq += 1;
+	}
+
+	// Reads every snapshot waiting on the channel without blocking, returning how many were applied
+	// EFFECT: Modifies this' view of the world
+	int poll() throws IOException {
+		int applied = 0;
+		this.inBuf.clear();
+		while (this.channel.read(this.inBuf) > 0) {
+			this.inBuf.flip();
+			this.bytesReceived += this.inBuf.remaining();
+			if (this.applySnapshot(this.inBuf)) {
+				applied += 1;
+			}
+			this.inBuf.clear();
+		}
+		return applied;
+	}
+
+	// Decodes one snapshot packet against its baseline, ignoring stale or undecodable ones
+	// EFFECT: Modifies this' view of the world and snapshot history
+	boolean applySnapshot(ByteBuffer buf) {
+		if (buf.get() != INetConstant.STATE) {
+			return false;
+		}
+		int tick = buf.getInt();
+		int baseTick = buf.getInt();
+		if (tick <= this.latestTick) {
+			return false;
+		}
+		HashMap<Integer, NetEntity> baseline;
+		if (baseTick < 0) {
+			baseline = new HashMap<>();
+		} else if (this.ticks[Math.floorMod(baseTick, INetConstant.HISTORY)] == baseTick) {
+			baseline = this.history.get(Math.floorMod(baseTick, INetConstant.HISTORY));
+		} else {
+			return false;
+		}
+		int ownId = this.codec.readVarInt(buf);
+		HashMap<Integer, NetEntity> next = new HashMap<>(baseline);
+		int changed = buf.getShort();
+		for (int i = 0; i < changed; i += 1) {
+			NetEntity ne = this.codec.readEntity(buf, baseline);
+			next.put(ne.id, ne);
+		}
+		int removed = buf.getShort();
+		for (int i = 0; i < removed; i += 1) {
+			next.remove(this.codec.readVarInt(buf));
+		}
+		int slot = Math.floorMod(tick, INetConstant.HISTORY);
+		this.ticks[slot] = tick;
+		this.history.set(slot, next);
+		this.world = next;
+		this.playerId = ownId;
+		this.latestTick = tick;
+		return true;
+	}
+
+	// Returns this client's own player as last reported by the server, or null before the first snapshot
+	NetEntity ownPlayer() {
+		return this.world.get(this.playerId);
+	}
+
+	// Leaves the game
+	// EFFECT: Closes this' channel
+	void disconnect() throws IOException {
+		this.outBuf.clear();
+		this.outBuf.put(INetConstant.BYE);
+		this.outBuf.flip();
+		this.channel.write(this.outBuf);
+		this.channel.close();
+	}
+}
+
+// Measures server tick time and bandwidth over localhost as the number of connected players grows
+class ServerBench {
+	static final int WARMUP_TICKS = 200;
+	static final int MEASURED_TICKS = 1000;
+
+	public static void main(String[] args) throws IOException {
+		System.out.println("players\tavg tick us\tp99 tick us\tbytes/tick\tbytes/client/tick");
+		for (int players = 1; players <= 64; players *= 2) {
+			new ServerBench().run(players);
+		}
+	}
+
+	// Runs one server with the given number of scripted loopback clients and prints a row of results
+	void run(int players) throws IOException {
+		GameServer server = new GameServer(0, players);
+		ArrayList<GameClient> clients = new ArrayList<>();
+		for (int i = 0; i < players; i += 1) {
+			clients.add(new GameClient(server.address()));
+		}
+		Random rand = new Random(players);
+		long[] times = new long[MEASURED_TICKS];
+		long bytesBefore = 0;
+		for (int t = 0; t < WARMUP_TICKS + MEASURED_TICKS; t += 1) {
+			if (t == WARMUP_TICKS) {
+				bytesBefore = server.bytesSent;
+			}
+			for (GameClient c : clients) {
+				c.send(this.randomInput(rand));
+			}
+			long start = System.nanoTime();
+			server.tick();
+			long elapsed = System.nanoTime() - start;
+			if (t >= WARMUP_TICKS) {
+				times[t - WARMUP_TICKS] = elapsed;
+			}
+			for (GameClient c : clients) {
+				c.poll();
+			}
+		}
+		for (GameClient c : clients) {
+			c.disconnect();
+		}
+		server.close();
+
+		Arrays.sort(times);
+		long total = 0;
+		for (long time : times) {
+			total += time;
+		}
+		double bytesPerTick = (server.bytesSent - bytesBefore) / (double) MEASURED_TICKS;
+		System.out.printf("%d\t%.1f\t%.1f\t%.0f\t%.1f%n", players, total / 1e3 / MEASURED_TICKS,
+				times[(int) (MEASURED_TICKS * .99)] / 1e3, bytesPerTick, bytesPerTick / players);
+	}
+
+	// Returns plausible input: running most of the time, occasionally jumping and firing
+	InputFrame randomInput(Random rand) {
+		int buttons = rand.nextInt(4) == 0 ? 0 : (rand.nextBoolean() ? InputFrame.LEFT : InputFrame.RIGHT);
+		buttons |= rand.nextInt(20) == 0 ? InputFrame.JUMP : 0;
+		buttons |= rand.nextInt(50) == 0 ? InputFrame.FIRE : 0;
+		Vector2D aim = new Vector2D(rand.nextInt(IConstant.WINDX), rand.nextInt(IConstant.WINDY));
+		return new InputFrame(buttons, rand.nextInt(50) == 0 ? Pistol.INV : -1, aim);
+	}
+}
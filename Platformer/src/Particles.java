@@ -0,0 +1,243 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+
+import javalib.impworld.WorldScene;
+import javalib.worldimages.OutlineMode;
+import javalib.worldimages.RectangleImage;
+import javalib.worldimages.WorldImage;
+
+// Short-lived visual particles for hits, muzzle flashes, and debris, kept as parallel primitive
+// arrays rather than objects. Live particles are packed at the front of the arrays, so updating
+// and drawing are each a single loop. At most capacity particles exist, and bursts are thinned
+// out as the system fills up rather than failing.
+class ParticleSystem implements IDrawable {
+	// Kinds of particle, each with its own color, size, and whether it falls
+	static final byte SPARK = 0;
+	static final byte BLOOD = 1;
+	static final byte DEBRIS = 2;
+	static final byte MUZZLE = 3;
+	static final byte PICKUP = 4;
+	static final Color[] COLORS = { Color.YELLOW, Color.RED, Color.DARK_GRAY, Color.ORANGE, Color.CYAN };
+	static final int[] SIZES = { 2, 3, 3, 2, 2 }; // In pixels
+	static final boolean[] FALLS = { false, true, true, false, false };
+	// Particles fade out in this many steps of transparency
+	static final int FADE_STEPS = 4;
+
+	final int capacity;
+	int count;
+	// Number of particles that could not be emitted because the system was too full
+	long shed;
+	private final float[] x;
+	private final float[] y;
+	private final float[] vx;
+	private final float[] vy;
+	// Seconds each particle has left, and had when emitted
+	private final float[] life;
+	private final float[] maxLife;
+	private final byte[] kind;
+	// One image and one color per kind and fade step, used for each particle
+	private WorldImage[][] sprites;
+	private Color[][] colors;
+	// State of the pseudo-random generator for directions and speeds
+	private int seed;
+
+	ParticleSystem(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Capacity cannot be negative.");
+		}
+		this.capacity = capacity;
+		this.count = 0;
+		this.shed = 0;
+		this.x = new float[capacity];
+		this.y = new float[capacity];
+		this.vx = new float[capacity];
+		this.vy = new float[capacity];
+		this.life = new float[capacity];
+		this.maxLife = new float[capacity];
+		this.kind = new byte[capacity];
+		this.sprites = null;
+		this.colors = null;
+		this.seed = 0x2545F491;
+	}
+
+	// EMITTING
+
+	// Emits a burst of particles of the given kind from the given position in random directions,
+	// with speeds up to the given speed in pixels per second, lasting the given number of seconds
+	// EFFECT: Modifies this' particles
+	void burst(byte kind, Vector2D pos, int requested, double speed, double seconds) {
+		this.emit(kind, pos.x, pos.y, requested, 0, 360, speed, seconds);
+	}
+
+	// Emits a spray of particles of the given kind from the given position within the given
+	// spread in degrees around the direction of the given vector
+	// EFFECT: Modifies this' particles
+	void spray(byte kind, Vector2D pos, Vector2D dir, int requested, double spread, double speed, double seconds) {
+		this.spray(kind, pos.x, pos.y, dir.x, dir.y, requested, spread, speed, seconds);
+	}
+
+	// Emits the same spray from the given coordinates around the direction of the given components,
+	// allocating nothing
+	// EFFECT: Modifies this' particles
+	void spray(byte kind, double x, double y, double dx, double dy, int requested, double spread, double speed,
+			double seconds) {
+		this.emit(kind, x, y, requested, Angle.toDegrees(Math.atan2(dy, dx)) - spread / 2, spread, speed, seconds);
+	}
+
+	// Emits particles with directions between the given angle and that angle plus the given range
+	// EFFECT: Modifies this' particles
+	void emit(byte kind, double x, double y, int requested, double fromAngle, double range, double speed,
+			double seconds) {
+		int n = this.allowance(requested);
+		this.shed += requested - n;
+		for (int i = 0; i < n; i += 1) {
+			double angle = Angle.toRadians(fromAngle + range * this.nextUnit());
+			double s = speed * (.25 + .75 * this.nextUnit());
+			int p = this.count;
+			this.x[p] = (float) x;
+			this.y[p] = (float) y;
+			this.vx[p] = (float) (s * Math.cos(angle));
+			this.vy[p] = (float) (s * Math.sin(angle));
+			this.maxLife[p] = (float) (seconds / 2 + seconds / 2 * this.nextUnit());
+			this.life[p] = this.maxLife[p];
+			this.kind[p] = kind;
+			this.count += 1;
+		}
+	}
+
+	// Returns how many of the requested particles may be emitted. Once half full, bursts shrink in
+	// proportion to the room left so effects thin out smoothly instead of stopping abruptly.
+	int allowance(int requested) {
+		int free = this.capacity - this.count;
+		int half = this.capacity / 2;
+		if (this.count > half && half > 0) {
+			requested = (int) Math.ceil(requested * (double) free / half);
+		}
+		return Math.max(0, Math.min(requested, free));
+	}
+
+	// Returns a pseudo-random number in [0, 1) without allocating
+	// EFFECT: Advances this' seed
+	double nextUnit() {
+		this.seed ^= this.seed << 13;
+		this.seed ^= this.seed >>> 17;
+		this.seed ^= this.seed << 5;
+		return (this.seed >>> 8) / (double) (1 << 24);
+	}
+
+	// UPDATING AND DRAWING
+
+	// Moves every particle over the given number of seconds, pulls falling ones down, and removes
+	// expired ones by moving the last live particle into their place
+	// EFFECT: Modifies this' particles
+	void tick(double dt) {
+		float step = (float) dt;
+		float gravity = (float) (IConstant.GRAVITY * dt);
+		int p = 0;
+		while (p < this.count) {
+			this.life[p] -= step;
+			if (this.life[p] <= 0) {
+				this.count -= 1;
+				this.moveParticle(this.count, p);
+				continue;
+			}
+			this.x[p] += this.vx[p] * step;
+			this.y[p] += this.vy[p] * step;
+			if (FALLS[this.kind[p]]) {
+				this.vy[p] += gravity;
+			}
+			p += 1;
+		}
+	}
+
+	// Copies the particle at one index over the particle at another
+	// EFFECT: Modifies this' particles
+	private void moveParticle(int from, int to) {
+		this.x[to] = this.x[from];
+		this.y[to] = this.y[from];
+		this.vx[to] = this.vx[from];
+		this.vy[to] = this.vy[from];
+		this.life[to] = this.life[from];
+		this.maxLife[to] = this.maxLife[from];
+		this.kind[to] = this.kind[from];
+	}
+
+	// Draws every live particle onto the background, fading as it expires
+	// EFFECT: Modifies the given scene
+	public void drawOnto(WorldScene background) {
+		if (this.sprites == null) {
+			this.sprites = this.makeSprites();
+		}
+		for (int p = 0; p < this.count; p += 1) {
+			background.placeImageXY(this.sprites[this.kind[p]][this.fadeStep(p)], (int) this.x[p], (int) this.y[p]);
+		}
+	}
+
+	// Paints every live particle straight onto the given graphics as a small square
+	// EFFECT: Modifies the given graphics
+	public void paintOnto(Graphics2D g, SpriteCache sprites) {
+		if (this.colors == null) {
+			this.colors = new Color[COLORS.length][FADE_STEPS];
+			for (int k = 0; k < COLORS.length; k += 1) {
+				for (int step = 0; step < FADE_STEPS; step += 1) {
+					this.colors[k][step] = this.fadedColor(k, step);
+				}
+			}
+		}
+		for (int p = 0; p < this.count; p += 1) {
+			int size = SIZES[this.kind[p]];
+			g.setColor(this.colors[this.kind[p]][this.fadeStep(p)]);
+			g.fillRect((int) this.x[p] - size / 2, (int) this.y[p] - size / 2, size, size);
+		}
+	}
+
+	// The fade step of the given particle, 0 being fully opaque
+	int fadeStep(int p) {
+		return Math.max(0, Math.min(FADE_STEPS - 1, (int) ((1 - this.life[p] / this.maxLife[p]) * FADE_STEPS)));
+	}
+
+	// Position of the given live particle in pixels
+	Vector2D position(int p) {
+		return new Vector2D(this.x[p], this.y[p]);
+	}
+
+	// Horizontal and vertical position of the given live particle's center in pixels, and its width
+	float xOf(int p) {
+		return this.x[p];
+	}
+	
+	float yOf(int p) {
+		return this.y[p];
+	}
+	
+	int sizeOf(int p) {
+		return SIZES[this.kind[p]];
+	}
+
+	// Kind of the given live particle
+	byte kindOf(int p) {
+		return this.kind[p];
+	}
+
+	// Color of the given live particle, with transparency for how far it has faded
+	Color colorOf(int p) {
+		return this.fadedColor(this.kind[p], this.fadeStep(p));
+	}
+
+	// Returns the color of the given kind at the given fade step
+	Color fadedColor(int kind, int step) {
+		Color c = COLORS[kind];
+		return new Color(c.getRed(), c.getGreen(), c.getBlue(), 255 - 200 * step / FADE_STEPS);
+	}
+
+	// Returns one small square image per kind and fade step
+	WorldImage[][] makeSprites() {
+		WorldImage[][] result = new WorldImage[COLORS.length][FADE_STEPS];
+		for (int k = 0; k < COLORS.length; k += 1) {
+			for (int step = 0; step < FADE_STEPS; step += 1) {
+				result[k][step] = new RectangleImage(SIZES[k], SIZES[k], OutlineMode.SOLID, this.fadedColor(k, step));
+			}
+		}
+		return result;
+	}
+}
@@ -110,16 +110,17 @@ class Vector2D {
 	// Returns the vector with magnitude 1 in the same direction as this
 	// If this is the zero vector, the default up vector (0, -1) is returned
 	Vector2D getUnitVector() {
-		if(this.magnitude() == 0) {
+		double mag = this.magnitude();
+		if(mag == 0) {
 			return UP;
 		} else {
-			return this.scaleVector(1 / this.magnitude());
+			return this.scaleVector(1 / mag);
 		}
 	}
 	
 	// Returns the pythagorean sum of the components of this vector
 	double magnitude() {
-		return Math.sqrt(Math.pow(this.x, 2) + Math.pow(this.y, 2));
+		return Math.sqrt(this.x * this.x + this.y * this.y);
 	}
 	
 	// Returns the angle that this vector makes with the positive 'x' axis measured clockwise in degrees
@@ -153,6 +154,81 @@ class Vector2D {
 	}
 }
 
+// A vector whose components change in place, for accumulating motion in code run every tick
+// without allocating. Vector2D remains the value passed around everywhere else.
+class MutableVector2D {
+	double x;
+	double y;
+	
+	MutableVector2D(double x, double y) {
+		this.x = x;
+		this.y = y;
+	}
+	
+	// Convenience constructor initializes this as the zero vector
+	MutableVector2D() {
+		this(0, 0);
+	}
+	
+	// Sets both components
+	// EFFECT: Modifies this
+	MutableVector2D set(double x, double y) {
+		this.x = x;
+		this.y = y;
+		return this;
+	}
+	
+	// Sets both components to those of the given vector
+	// EFFECT: Modifies this
+	MutableVector2D set(Vector2D other) {
+		return this.set(other.x, other.y);
+	}
+	
+	// Adds the given amounts to the components
+	// EFFECT: Modifies this
+	MutableVector2D add(double dx, double dy) {
+		this.x += dx;
+		this.y += dy;
+		return this;
+	}
+	
+	// Adds the given vector scaled by the given amount, as when accumulating a velocity over time
+	// EFFECT: Modifies this
+	MutableVector2D addScaled(Vector2D other, double scaling) {
+		return this.add(other.x * scaling, other.y * scaling);
+	}
+	
+	// Scales both components by the given amount
+	// EFFECT: Modifies this
+	MutableVector2D scale(double scaling) {
+		this.x *= scaling;
+		this.y *= scaling;
+		return this;
+	}
+	
+	// Scales this to have magnitude 1, or sets it to the default up vector if it is the zero vector
+	// EFFECT: Modifies this
+	MutableVector2D normalize() {
+		double mag = this.magnitude();
+		return mag == 0 ? this.set(Vector2D.UP) : this.scale(1 / mag);
+	}
+	
+	// Returns the pythagorean sum of the components of this vector
+	double magnitude() {
+		return Math.sqrt(this.x * this.x + this.y * this.y);
+	}
+	
+	// The current value of this as an immutable vector
+	Vector2D toVector2D() {
+		return new Vector2D(this.x, this.y);
+	}
+	
+	// A string summary of this vector that displays the two coordinates
+	public String toString() {
+		return "X: " + Double.toString(this.x) + ", Y: " + Double.toString(this.y);
+	}
+}
+
 //A class for static angle conversion formulae
 class Angle {
 	// Converts the given degree measure to radians
@@ -166,6 +242,67 @@ class Angle {
 	}
 }
 
+// How far a game advances each tick: the number of ticks it runs per second, and the number of
+// equal steps its physics is split into within each tick. One step is the default; a deployment
+// running at a low tick rate can opt into enough steps to keep fast motion from tunneling through
+// thin geometry. Speeds and timers are kept per second, so jumps reach the same height and weapons
+// fire at the same rate at any tick rate.
+class Timestep {
+	// Ticks per second unless a deployment chooses otherwise with -Dplatformer.hz
+	static final int STANDARD_HZ = (int) Math.round(1 / IConstant.TICK_RATE);
+
+	final int hz;
+	final int substeps;
+	// Seconds per tick, and per physics step within a tick
+	final double dt;
+	final double step;
+
+	Timestep(int hz, int substeps) {
+		if (hz <= 0 || substeps <= 0) {
+			throw new IllegalArgumentException("Tick rate and substeps must be positive.");
+		}
+		this.hz = hz;
+		this.substeps = substeps;
+		this.dt = 1.0 / hz;
+		this.step = this.dt / substeps;
+	}
+
+	// Convenience constructor takes one physics step per tick
+	Timestep(int hz) {
+		this(hz, 1);
+	}
+
+	// A timestep at the given rate taking the fewest physics steps per tick that keep each step no
+	// longer than a standard tick, which is as far as the level's thinnest walls can be trusted to
+	// stop a falling player
+	static Timestep safe(int hz) {
+		return new Timestep(hz, Timestep.safeSubsteps(hz));
+	}
+
+	// The timestep this deployment runs at, from the platformer.hz and platformer.substeps system
+	// properties if given. Substeps default to one; "safe" takes as many as safe would.
+	static Timestep configured() {
+		int hz = Integer.getInteger("platformer.hz", Timestep.STANDARD_HZ);
+		String substeps = System.getProperty("platformer.substeps", "1");
+		return substeps.equals("safe") ? Timestep.safe(hz) : new Timestep(hz, Integer.parseInt(substeps));
+	}
+
+	// The fewest physics steps per tick at the given rate that are each no longer than a standard tick
+	static int safeSubsteps(int hz) {
+		return Math.max(1, (Timestep.STANDARD_HZ + hz - 1) / hz);
+	}
+
+	// The whole number of ticks closest to the given number of seconds
+	int ticks(double seconds) {
+		return (int) Math.round(seconds * this.hz);
+	}
+
+	// Nanoseconds per tick, for pacing a game in real time
+	long nanos() {
+		return Math.round(1e9 / this.hz);
+	}
+}
+
 //A function object that determines if the player is colliding with a 
 //rectangular game component at centered at a particular position
 abstract class ARectCollisionFunc {
@@ -1,24 +1,132 @@
+import java.awt.Graphics2D;
 import java.util.ArrayList;
 
 import javalib.impworld.WorldScene;
 import javalib.worldimages.Posn;
 
-class PlatformGame {
+class PlatformGame implements IInputSink {
+	// Most visual particles alive at once
+	static final int MAX_PARTICLES = 4096;
+	// Top-left position in pixels where every player enters the game
+	static final Vector2D SPAWN = new Vector2D(5, 75).scaleByComponent(IConstant.BLOCK_DIM);
+	// How far back in time the game can be rewound
+	static final double REWIND_SECONDS = 10;
+
+	// The locally controlled player, also the first of all players in play
 	Player player;
+	ArrayList<Player> players;
 	ArrayList<IEnvironment> ground;
 	ArrayList<IWeaponEffect> weaponEffects;
 	ArrayList<IEnemy> enemies;
 	ArrayList<AItem> items;
+	// Ground that moves, kept apart from the static geometry and indexed by where it is
+	ArrayList<MovingPlatform> platforms;
+	AABBTree<MovingPlatform> platformIndex;
+	// The static geometry as cells, where enemies can walk and jump in it, and what can be seen through it
+	BlockGrid grid;
+	NavGraph nav;
+	LineOfSight sight;
+	ParticleSystem particles;
+	// The pairs of components touching, kept across ticks to report contacts beginning and ending
+	ContactSet contacts;
+	// How long each tick lasts and how many physics steps it is split into
+	final Timestep timestep;
+	// Number of ticks played so far
+	int tickCount;
+	// Lays out the level as it is played, or null if it is laid out in full beforehand
+	EndlessGenerator endless;
+	// Which enemies are near enough to a player to be played
+	ActivityManager activity;
+	// When enemies with behavior trees get to think
+	BehaviorScheduler ai;
+	// Regions of the level that report players and enemies entering and leaving them
+	TriggerSet triggers;
+	// The awake enemies indexed by where they are, rebuilt for each step's blasts
+	EnemyBuckets blastTargets;
+	// Recent snapshots for rewinding time, or null if history is not kept
+	RewindBuffer history;
+	// The ground list last recorded in history, shared by every snapshot until the ground changes,
+	// and the list and grid version it was copied from, so an unchanged level is not compared
+	private ArrayList<IEnvironment> groundKeyframe;
+	private ArrayList<IEnvironment> groundSource;
+	private int groundVersion;
+	// Scratch list for the results of platform index queries
+	private final ArrayList<MovingPlatform> nearby;
 	
-	PlatformGame() {
-		this.player = new Player(new Vector2D(5, 75).scaleByComponent(IConstant.BLOCK_DIM));
-		
-		EnvironmentGenerator gb = new EnvironmentGenerator();
-		
+	// Constructor initializes an empty level with only the player at the given top-left position,
+	// to be laid out by the caller, which then calls startLevel. At most the given number of
+	// particles are shown, and the given number of seconds kept for rewinding, or none if 0, and
+	// the game advances by the given timestep each tick.
+	PlatformGame(Vector2D spawn, int maxParticles, double rewindSeconds, Timestep timestep) {
+		this.timestep = timestep;
+		this.particles = new ParticleSystem(maxParticles);
+		this.player = new Player(spawn, this.particles);
+		this.players = new ArrayList<>();
+		this.players.add(this.player);
 		this.ground = new ArrayList<>();
 		this.weaponEffects = new ArrayList<>();
 		this.enemies = new ArrayList<>();
 		this.items = new ArrayList<>();
+		this.platforms = new ArrayList<>();
+		this.platformIndex = new AABBTree<>();
+		this.nearby = new ArrayList<>();
+		this.grid = new BlockGrid();
+		this.sight = new LineOfSight(this.grid);
+		this.nav = new NavGraph(this.grid, timestep.step);
+		this.contacts = new ContactSet();
+		this.tickCount = 0;
+		this.endless = null;
+		this.activity = new ActivityManager();
+		this.ai = new BehaviorScheduler();
+		this.triggers = new TriggerSet();
+		this.blastTargets = new EnemyBuckets();
+		this.history = rewindSeconds > 0 ? new RewindBuffer(timestep.ticks(rewindSeconds)) : null;
+	}
+	
+	// Convenience constructor for an empty level advancing at this deployment's timestep
+	PlatformGame(Vector2D spawn, int maxParticles, double rewindSeconds) {
+		this(spawn, maxParticles, rewindSeconds, Timestep.configured());
+	}
+	
+	// Convenience constructor for an empty level with every particle and the full rewind history
+	PlatformGame(Vector2D spawn) {
+		this(spawn, PlatformGame.MAX_PARTICLES, PlatformGame.REWIND_SECONDS);
+	}
+	
+	// Convenience constructor lays out the standard level with every particle and the full rewind history
+	PlatformGame() {
+		this(PlatformGame.MAX_PARTICLES, PlatformGame.REWIND_SECONDS);
+	}
+	
+	// Convenience constructor lays out the standard level advancing at this deployment's timestep
+	PlatformGame(int maxParticles, double rewindSeconds) {
+		this(maxParticles, rewindSeconds, Timestep.configured());
+	}
+	
+	// Constructor lays out the standard level, showing at most the given number of particles,
+	// keeping the given number of seconds for rewinding, or none if 0, and advancing by the given
+	// timestep each tick
+	PlatformGame(int maxParticles, double rewindSeconds, Timestep timestep) {
+		this(PlatformGame.SPAWN, maxParticles, rewindSeconds, timestep);
+		this.layOutStandard();
+		this.startLevel();
+	}
+	
+	// The standard level with a platform ferrying across the open space left of the box and a
+	// hunter waiting on the steps through it, to watch riders carried and enemies find their way
+	static PlatformGame demo() {
+		PlatformGame game = new PlatformGame(PlatformGame.SPAWN);
+		game.layOutStandard();
+		game.addPlatform(new MovingPlatform(new Posn(40, 55), new Posn(70, 55), 6, 8));
+		game.enemies.add(new HunterEnemy(new Posn(100, 50), game.nav, game.particles));
+		game.startLevel();
+		return game;
+	}
+	
+	// Adds the ground, enemies and items of the standard level
+	// EFFECT: Modifies this' components
+	void layOutStandard() {
+		EnvironmentGenerator gb = new EnvironmentGenerator();
 
 		// Box around edge
 		this.ground.add(gb.line(new Posn(0, 79), true, 120));
@@ -31,7 +139,7 @@ class PlatformGame {
 		this.ground.add(new Spikes(new Posn(20, 78), Direction.UP, 5));
 		this.ground.add(new Spikes(new Posn(35, 68), Direction.DOWN, 5));
 
-		this.enemies.add(new MeleeEnemy(new Posn(30, 76), new Posn(48, 76)));
+		this.enemies.add(new MeleeEnemy(new Posn(30, 76), new Posn(48, 76), this.particles));
 		
 		
 		// Thick rectangle with left and partial-top spikes
@@ -40,11 +148,11 @@ class PlatformGame {
 		this.ground.add(new Spikes(new Posn(60, 74), Direction.UP, 1));
 		
 		// Enemy after spike rectangle
-		this.enemies.add(new MeleeEnemy(new Posn(70, 76), new Posn(90, 76)));
+		this.enemies.add(new MeleeEnemy(new Posn(70, 76), new Posn(90, 76), this.particles));
 		
 		// Line for jump up to next section, sentry turret below line
 		this.ground.add(gb.line(new Posn(116, 74), true, 3));
-		this.enemies.add(new SentryTurret(new Posn(117, 75)));
+		this.enemies.add(new SentryTurret(new Posn(117, 75), this.sight, this.particles));
 
 		// Next section, small box with top-right opening
 		this.ground.add(gb.line(new Posn(90, 42), false, 25));
@@ -56,132 +164,668 @@ class PlatformGame {
 		this.ground.add(gb.line(new Posn(87, 42), true, 3));
 		this.ground.add(gb.line(new Posn(90, 46), true, 3));
 
-		this.enemies.add(new MeleeEnemy(new Posn(93, 64), new Posn(105, 64)));
+		this.enemies.add(new MeleeEnemy(new Posn(93, 64), new Posn(105, 64), this.particles));
 		
-		this.enemies.add(new SentryTurret(new Posn(110, 37)));
+		this.enemies.add(new SentryTurret(new Posn(110, 37), this.sight, this.particles));
 		
 		this.ground.add(gb.line(new Posn(110, 48), true, 6));
 		this.ground.add(new Spikes(new Posn(110, 47), Direction.UP, 1));
 
 		this.items.add(new PistolAmmo(new Posn(114, 47), 3));
-
-
 	}
 	
-	// Draws the current state of the game onto the background
+	// Prepares the geometry services for the laid out level and records it as the first tick of history
+	// EFFECT: Modifies this' grid and history
+	void startLevel() {
+		this.grid.refresh(this.ground);
+		this.recordHistory();
+	}
+	
+	// Left edge in pixels of the part of the level in view: 0 for a level that fits the window, or
+	// following the player through an endless one
+	int cameraX() {
+		return this.endless == null ? 0 : this.endless.cameraX();
+	}
+	
+	// Draws the current state of the game onto the background, as seen from the camera, with the
+	// HUD fixed to the window
 	// EFFECT: Modifies the given scene
 	void drawSceneOnto(WorldScene background) {
+		int camera = this.cameraX();
+		WorldScene view = camera == 0 ? background : new ShiftedScene(background, camera);
 		for(IGameComponent igc : this.gameComponents()) {
-			igc.drawOnto(background);
+			igc.drawOnto(view);
 		}
+		this.particles.drawOnto(view);
 		this.player.drawHUD(background);
 	}
 	
+	// Paints the current state of the game straight onto the given graphics, in the same order as
+	// drawSceneOnto but going through each list in place rather than gathering them
+	// EFFECT: Modifies the given graphics
+	void paintSceneOnto(Graphics2D g, SpriteCache sprites) {
+		this.paintRegionOnto(g, sprites, 0, 0, IConstant.WINDX, IConstant.WINDY);
+	}
+	
+	// Paints the components that overlap the given region of the window, as seen from the camera,
+	// and the HUD if it does, leaving the rest to the graphics' clip
+	// EFFECT: Modifies the given graphics
+	void paintRegionOnto(Graphics2D g, SpriteCache sprites, int x, int y, int width, int height) {
+		int camera = this.cameraX();
+		int left = x + camera;
+		g.translate(-camera, 0);
+		this.paintAll(this.players, g, sprites, left, y, width, height);
+		this.paintAll(this.ground, g, sprites, left, y, width, height);
+		this.paintAll(this.weaponEffects, g, sprites, left, y, width, height);
+		this.paintAll(this.activity.shown(this.enemies), g, sprites, left, y, width, height);
+		this.paintAll(this.items, g, sprites, left, y, width, height);
+		this.paintAll(this.platforms, g, sprites, left, y, width, height);
+		this.particles.paintOnto(g, sprites);
+		g.translate(camera, 0);
+		if (y < IncrementalRenderer.HUD_HEIGHT) {
+			this.player.paintHUD(g, sprites);
+		}
+	}
+	
+	// Paints every component in the given list that overlaps the given region
+	// EFFECT: Modifies the given graphics
+	void paintAll(ArrayList<? extends IGameComponent> list, Graphics2D g, SpriteCache sprites, int x, int y,
+			int width, int height) {
+		for (int i = 0; i < list.size(); i += 1) {
+			IGameComponent igc = list.get(i);
+			ICollisionBody body = igc.getCollisionBody();
+			Vector2D tl = body.getPosition();
+			Vector2D dim = body.getDimensions();
+			if (tl.x <= x + width && tl.x + dim.x >= x && tl.y <= y + height && tl.y + dim.y >= y) {
+				igc.paintOnto(g, sprites);
+			}
+		}
+	}
+	
 	// Returns a list of all game components in play
 	ArrayList<IGameComponent> gameComponents() {
+		ArrayList<IGameComponent> igc = this.unindexedComponents();
+		igc.addAll(this.platforms);
+		return igc;
+	}
+	
+	// Returns a list of the game components in play that are not found through a spatial index
+	ArrayList<IGameComponent> unindexedComponents() {
 		ArrayList<IGameComponent> igc = new ArrayList<>();
-		igc.add(this.player);
+		igc.addAll(this.players);
 		igc.addAll(this.ground);
 		igc.addAll(this.weaponEffects);
-		igc.addAll(this.enemies);
+		igc.addAll(this.activity.shown(this.enemies));
 		igc.addAll(this.items);
 		return igc;
 	}
 	
+	// Adds the given moving platform to play
+	// EFFECT: Modifies this' platforms and their index
+	void addPlatform(MovingPlatform mp) {
+		this.platforms.add(mp);
+		mp.proxy = this.platformIndex.insert(mp, mp.body);
+	}
+	
+	// Re-indexes every moving platform from scratch, for when the platforms in play are replaced
+	// EFFECT: Modifies this' platform index and the platforms' handles
+	void reindexPlatforms() {
+		this.platformIndex.clear();
+		for (MovingPlatform mp : this.platforms) {
+			mp.proxy = this.platformIndex.insert(mp, mp.body);
+		}
+	}
+	
+	// Returns the moving platform the given player is standing on, or null if there is none
+	MovingPlatform platformUnder(Player pl) {
+		this.nearby.clear();
+		this.platformIndex.query(pl.getCollisionBody(), this.nearby);
+		for (MovingPlatform mp : this.nearby) {
+			if (mp.playerOnTop(pl)) {
+				return mp;
+			}
+		}
+		return null;
+	}
+	
 	// PLAYER CONTROLS
 	
+	// Adds a new player at the spawn point, such as one joining over the network
+	// EFFECT: Modifies this' list of players
+	Player addPlayer() {
+		Player pl = new Player(PlatformGame.SPAWN, this.particles);
+		this.players.add(pl);
+		return pl;
+	}
+	
+	// Takes the local player out of play, for a game hosted only for players joining over the
+	// network, and returns this. The snapshots already taken are forgotten so rewinding never brings
+	// the local player back.
+	// EFFECT: Modifies this' list of players and history
+	PlatformGame hosted() {
+		this.players.remove(this.player);
+		if (this.history != null) {
+			this.history.truncateAfter(this.tickCount - 1);
+			this.recordHistory();
+		}
+		return this;
+	}
+	
+	// Removes the given player from play, the local player is never removed
+	// EFFECT: Modifies this' list of players
+	void removePlayer(Player pl) {
+		if (pl != this.player) {
+			this.players.remove(pl);
+		}
+	}
+	
+	// Returns the player in play whose center is closest to the given position
+	Player nearestPlayer(Vector2D pos) {
+		return this.nearestPlayer(pos.x, pos.y);
+	}
+	
+	// Returns the player in play whose center is closest to the given coordinates, the earliest
+	// in play on a tie, without allocating
+	Player nearestPlayer(double x, double y) {
+		Player nearest = null;
+		double best = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < this.players.size(); i += 1) {
+			Player pl = this.players.get(i);
+			double dx = pl.body.centerX() - x;
+			double dy = pl.body.centerY() - y;
+			double dist = dx * dx + dy * dy;
+			if (nearest == null || dist < best) {
+				nearest = pl;
+				best = dist;
+			}
+		}
+		return nearest;
+	}
+	
 	//Player controls
 	void haltPlayerX() {
-		this.player.haltX();
+		this.haltPlayerX(this.player);
+	}
+	
+	// Stops the given player moving horizontally
+	// EFFECT: Modifies velocity of the given player
+	void haltPlayerX(Player pl) {
+		pl.haltX();
 	}
 	
 	// Causes player to jump if player is standing on a solid surface
 	// EFFECT: Modifies velocity of player
 	void playerJump() {
-		for(IEnvironment ie : this.ground) {
-			if (ie.playerOnTop(this.player)){
-				this.player.jump();
-				return;
-			}
+		this.playerJump(this.player);
+	}
+	
+	// Causes the given player to jump if it came to rest on a solid surface last tick
+	// EFFECT: Modifies velocity of the given player
+	void playerJump(Player pl) {
+		if (pl.grounded) {
+			pl.jump();
 		}
 	}
 	
 	// Moves player in given direction horizontally
 	// EFFECT: Modifies player velocity in 'x' direction
 	void playerMoveX(boolean isRight) {
-		this.player.moveX(isRight);
+		this.playerMoveX(this.player, isRight);
+	}
+	
+	// Moves the given player in given direction horizontally
+	// EFFECT: Modifies the given player's velocity in 'x' direction
+	void playerMoveX(Player pl, boolean isRight) {
+		pl.moveX(isRight);
 	}
 	
 	// Causes the player to fire at the target
 	// EFFECT: Modifies this' list of WeaponEffects and weapon itself on firing
 	void playerFireAt(Vector2D target) {
-		this.weaponEffects.addAll(this.player.fireCurrentWeapon(target));
+		this.playerFireAt(this.player, target);
+	}
+	
+	// Causes the given player to fire at the target
+	// EFFECT: Modifies this' list of WeaponEffects and weapon itself on firing
+	void playerFireAt(Player pl, Vector2D target) {
+		this.playerFireAt(pl, target.x, target.y);
+	}
+	
+	// Causes the given player to fire at the given coordinates, allocating nothing unless an effect
+	// enters play
+	// EFFECT: Modifies this' list of WeaponEffects and weapon itself on firing
+	void playerFireAt(Player pl, double x, double y) {
+		pl.fireCurrentWeapon(x, y, this.weaponEffects);
 	}
 
 	// Causes the player to switch current weapon based on given key input
 	// EFFECT: Modifies active weapon in Player's Weaponry
 	void playerSwitchWeapon(int next) {
-		this.player.switchWeapon(next);
+		this.playerSwitchWeapon(this.player, next);
+	}
+	
+	// Causes the given player to switch current weapon to the given inventory position
+	// EFFECT: Modifies active weapon in the given Player's Weaponry
+	void playerSwitchWeapon(Player pl, int next) {
+		pl.switchWeapon(next);
 	}
 	
 	void playerFace(Posn pos) {
 		this.player.face(new Vector2D(pos));
 	}
 	
+	// Applies one input record, as taken from an InputQueue, to the locally controlled player
+	// EFFECT: Modifies the player, and the weapon effects or the whole game for some kinds of input
+	public void onInput(int kind, int arg, int x, int y) {
+		switch (kind) {
+		case InputQueue.TICK:
+			break;
+		case InputQueue.MOVE:
+			this.playerMoveX(arg == 1);
+			break;
+		case InputQueue.HALT:
+			this.haltPlayerX();
+			break;
+		case InputQueue.JUMP:
+			this.playerJump();
+			break;
+		case InputQueue.REWIND:
+			this.rewindSeconds(1);
+			break;
+		case InputQueue.SWITCH:
+			this.playerSwitchWeapon(arg);
+			break;
+		case InputQueue.FIRE:
+			this.playerFireAt(this.player, x + this.cameraX(), y);
+			break;
+		case InputQueue.FACE:
+			this.player.face(new Vector2D(x + this.cameraX(), y));
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown input kind " + kind);
+		}
+	}
+	
 	//TICKING AND INTERACTIONS
 	
-	// Moves player on tick and then handles interactions between other game components and the player
-	// EFFECT: Modifies the player
-	void tickPlayer() {
-		this.player.tick();
-		for(IGameComponent igc : this.gameComponents()) {
-			igc.interactPlayer(this.player);
+	// Advances every game component in play by one tick, letting the next enemies with behavior
+	// trees think and striking every hitscan shot fired since the last tick, then taking each of the
+	// timestep's physics steps in turn with the enemies near enough to a player, and then reporting
+	// what has entered and left trigger volumes
+	// EFFECT: Modifies the players, weapon effects, enemies, and items in play
+	void tick() {
+		if (this.endless != null) {
+			this.endless.step();
+		}
+		this.activity.update(this);
+		this.ai.update(this);
+		this.resolveShots();
+		for (int s = 0; s < this.timestep.substeps; s += 1) {
+			this.step(this.timestep.step);
+		}
+		this.triggers.update(this);
+		this.particles.tick(this.timestep.dt);
+		this.contacts.endTick();
+		this.tickCount += 1;
+		this.recordHistory();
+	}
+	
+	// Strikes each player's hitscan shots fired since the last tick against the static geometry and
+	// the enemies in play, in one batch per player, first waking any sleeping enemy in their reach
+	// EFFECT: Modifies the players' ray batches, the enemies struck, and the particle system
+	void resolveShots() {
+		for (int p = 0; p < this.players.size(); p += 1) {
+			RayBatch rays = this.players.get(p).weapons.rays;
+			if (rays.pending() > 0) {
+				this.activity.wakeWithin(this, rays.reachLeft, rays.reachTop, rays.reachRight, rays.reachBottom);
+				rays.resolve(this.sight, this.activity.awake, this.particles);
+			}
+		}
+	}
+	
+	// Resolves every blast set off during this step against the enemies and the players, first
+	// waking any sleeping enemy in reach, then indexing the enemies once for all of the blasts, and
+	// only when there are blasts to resolve
+	// EFFECT: Modifies the players' blast batches, the enemies and players caught, and the particle system
+	void resolveBlasts() {
+		boolean any = false;
+		for (int p = 0; p < this.players.size(); p += 1) {
+			BlastBatch blasts = this.players.get(p).weapons.blasts;
+			if (blasts.pending() > 0) {
+				this.activity.wakeWithin(this, blasts.reachLeft, blasts.reachTop, blasts.reachRight,
+						blasts.reachBottom);
+				any = true;
+			}
+		}
+		if (!any) {
+			return;
+		}
+		this.blastTargets.rebuild(this.activity.awake);
+		for (int p = 0; p < this.players.size(); p += 1) {
+			this.players.get(p).weapons.blasts.resolve(this.sight, this.blastTargets, this.players, this.particles);
+		}
+	}
+	
+	// Moves and interacts every component in play over the given number of seconds
+	// EFFECT: Modifies the players, weapon effects, enemies, and items in play
+	void step(double dt) {
+		this.tickPlatforms(dt);
+		this.tickPlayer(dt);
+		this.tickWeaponEffects(dt);
+		this.tickEnemies(dt);
+		this.weaponInteract();
+		this.resolveBlasts();
+		this.enemiesInteractPlayer();
+		this.removeComponents();
+	}
+	
+	// Moves platforms along their paths, carrying the players standing on them
+	// EFFECT: Modifies the moving platforms, their index, and the players riding them
+	void tickPlatforms(double dt) {
+		if (this.platforms.isEmpty()) {
+			return;
+		}
+		for (int i = 0; i < this.platforms.size(); i += 1) {
+			MovingPlatform mp = this.platforms.get(i);
+			mp.tick(dt);
+			this.platformIndex.move(mp.proxy, mp.body, mp.lastMove.x, mp.lastMove.y);
+		}
+		for (int i = 0; i < this.players.size(); i += 1) {
+			Player pl = this.players.get(i);
+			if (pl.support instanceof MovingPlatform) {
+				MutableVector2D carried = ((MovingPlatform) pl.support).lastMove;
+				pl.carry(carried.x, carried.y);
+			}
+		}
+	}
+	
+	// Moves players on tick, then handles interactions between other game components and each
+	// player, and pushes each out of every solid component it ran into at once. Only awake enemies
+	// are near enough to a player to touch it.
+	// EFFECT: Modifies the players
+	void tickPlayer(double dt) {
+		for (int p = 0; p < this.players.size(); p += 1) {
+			Player pl = this.players.get(p);
+			pl.tick(dt);
+			this.interactPlayerWith(pl, this.players);
+			this.interactPlayerWith(pl, this.ground);
+			this.interactPlayerWith(pl, this.weaponEffects);
+			this.interactPlayerWith(pl, this.activity.awake);
+			this.interactPlayerWith(pl, this.items);
+			this.nearby.clear();
+			this.platformIndex.query(pl.getCollisionBody(), this.nearby);
+			this.interactPlayerWith(pl, this.nearby);
+			pl.resolveCollisions();
+		}
+	}
+	
+	// Has each of the given components interact with the given player, recording the contacts
+	// EFFECT: Modifies the given player, the components it touches, and this' contacts
+	void interactPlayerWith(Player pl, ArrayList<? extends IGameComponent> components) {
+		for (int i = 0; i < components.size(); i += 1) {
+			IGameComponent igc = components.get(i);
+			if (CollisionLayers.interacts(igc, pl) && igc.interactPlayer(pl)) {
+				this.contacts.touch(pl, igc);
+			}
 		}
 	}
 	
 	// Causes weapon effects such as bullets, melee swings, etc to move/tick
 	// EFFECT: Removes weapon effects that are no longer in play and ticks those remaining
-	void tickWeaponEffects() {
-		for (IWeaponEffect iwe : this.weaponEffects) {
-			iwe.tick();
+	void tickWeaponEffects(double dt) {
+		for (int i = 0; i < this.weaponEffects.size(); i += 1) {
+			this.weaponEffects.get(i).tick(dt);
 		}
 	}
 	
 	// Have weapon effects interact with the enemies in play
 	// EFFECT: Modifies this' weapon effects and enemies on collision
 	void weaponInteract() {
-		for (IWeaponEffect iwe : this.weaponEffects) {
-			for(IEnemy ie : this.enemies) {
-				iwe.interactEnemy(ie);
+		for (int w = 0; w < this.weaponEffects.size(); w += 1) {
+			IWeaponEffect iwe = this.weaponEffects.get(w);
+			for (int i = 0; i < this.activity.awake.size(); i += 1) {
+				IEnemy ie = this.activity.awake.get(i);
+				if (CollisionLayers.interacts(iwe, ie) && iwe.interactEnemy(ie)) {
+					this.contacts.touch(iwe, ie);
+				}
+			}
+			for (int i = 0; i < this.ground.size(); i += 1) {
+				IEnvironment ie = this.ground.get(i);
+				if (CollisionLayers.interacts(iwe, ie)) {
+					iwe.interactEnvironment(ie);
+				}
 			}
-			for (IEnvironment ie : this.ground) {
-				iwe.interactEnvironment(ie);
+			this.nearby.clear();
+			this.platformIndex.query(iwe.getCollisionBody(), this.nearby);
+			for (int i = 0; i < this.nearby.size(); i += 1) {
+				MovingPlatform mp = this.nearby.get(i);
+				if (CollisionLayers.interacts(iwe, mp)) {
+					iwe.interactEnvironment(mp);
+				}
 			}
 		}
 	}
 	
-	// Have enemies interact with the player
-	// EFFECT: Modifies player according to being hit by enemy
+	// Have awake enemies interact with the players
+	// EFFECT: Modifies players according to being hit by enemy
 	void enemiesInteractPlayer() {
-		for(IEnemy ie : this.enemies) {
-			ie.interactPlayer(this.player);
+		for (int i = 0; i < this.activity.awake.size(); i += 1) {
+			IEnemy ie = this.activity.awake.get(i);
+			for (int p = 0; p < this.players.size(); p += 1) {
+				Player pl = this.players.get(p);
+				if (CollisionLayers.interacts(ie, pl) && ie.interactPlayer(pl)) {
+					this.contacts.touch(pl, ie);
+				}
+			}
 		}
 	}
 	
-	// Ticks enemies independent of other enemies and registers enemies' using weapons
+	// Ticks awake enemies independent of other enemies and registers enemies' using weapons at the
+	// nearest player
 	// EFFECT: Modifies the enemies in play and this' list of weapon effects
-	void tickEnemies() {
-		for (IEnemy ie : this.enemies) {
-			ie.tick();
-			this.weaponEffects.addAll(ie.fireAt(this.player.getCollisionBody().center()));
+	void tickEnemies(double dt) {
+		for (int i = 0; i < this.activity.awake.size(); i += 1) {
+			IEnemy ie = this.activity.awake.get(i);
+			ie.tick(dt);
+			ICollisionBody body = ie.getCollisionBody();
+			ie.fireAt(this.nearestPlayer((body.left() + body.right()) / 2, (body.top() + body.bottom()) / 2),
+					this.weaponEffects);
 		}
 	}
 	
-	// Removes components from play that are no longer necessary
-	// EFFECT: Modifies this' list of enemies and weapon effects
+	// Removes components from play that are no longer necessary, with debris where enemies die
+	// and projectiles strike, and a sparkle where items are picked up. Lists are only rebuilt when
+	// something has left them.
+	// EFFECT: Modifies this' list of enemies and weapon effects and this' particle system
 	void removeComponents() {
-		this.enemies = new Util().filterOut(this.enemies, (e) -> e.shouldRemove());
-		this.weaponEffects = new Util().filterOut(this.weaponEffects, (we) -> we.shouldRemove());
-		this.items = new Util().filterOut(this.items, (i) -> i.shouldRemove());
+		boolean anyDead = false;
+		for (int i = 0; i < this.activity.awake.size(); i += 1) {
+			IEnemy ie = this.activity.awake.get(i);
+			if (ie.shouldRemove()) {
+				this.particles.burst(ParticleSystem.DEBRIS, ie.getCollisionBody().center(), 40, 300, .8);
+				anyDead = true;
+			}
+		}
+		boolean anySpent = false;
+		for (int i = 0; i < this.weaponEffects.size(); i += 1) {
+			IWeaponEffect iwe = this.weaponEffects.get(i);
+			if (iwe.shouldRemove()) {
+				if (iwe instanceof AProjectile) {
+					this.particles.burst(ParticleSystem.DEBRIS, iwe.getCollisionBody().center(), 6, 150, .3);
+				}
+				anySpent = true;
+			}
+		}
+		boolean anyTaken = false;
+		for (int i = 0; i < this.items.size(); i += 1) {
+			AItem ai = this.items.get(i);
+			if (ai.shouldRemove()) {
+				this.particles.burst(ParticleSystem.PICKUP, ai.getCollisionBody().center(), 15, 100, .4);
+				anyTaken = true;
+			}
+		}
+		if (anyDead) {
+			this.enemies = new Util().filterOut(this.enemies, (e) -> e.shouldRemove());
+			this.activity.resync(this);
+		}
+		if (anySpent) {
+			this.weaponEffects = new Util().filterOut(this.weaponEffects, (we) -> we.shouldRemove());
+		}
+		if (anyTaken) {
+			this.items = new Util().filterOut(this.items, (i) -> i.shouldRemove());
+		}
+	}
+	
+	// REWINDING TIME
+	
+	// Records the mutable state of every component in play as a snapshot of the current tick, as
+	// sections the history leaves out when unchanged since the tick before. Ground is static
+	// geometry with no state of its own, so only which pieces are in play is recorded.
+	// EFFECT: Modifies this' history
+	void recordHistory() {
+		if (this.history == null) {
+			return;
+		}
+		if (this.ground != this.groundSource || this.ground.size() != this.groundKeyframe.size()
+				|| this.grid.version != this.groundVersion) {
+			this.groundKeyframe = new ArrayList<>(this.ground);
+			this.groundSource = this.ground;
+			this.groundVersion = this.grid.version;
+		}
+		do {
+			this.history.beginRecord(this.tickCount);
+			this.history.beginSection(this.grid);
+			this.history.putRef(this.groundKeyframe);
+			this.history.endSection();
+			this.recordList(Player.class, this.players);
+			this.recordList(IWeaponEffect.class, this.weaponEffects);
+			this.recordList(IEnemy.class, this.enemies);
+			this.recordList(AItem.class, this.items);
+			this.recordList(MovingPlatform.class, this.platforms);
+			this.history.beginSection(this.contacts);
+			this.contacts.saveState(this.history);
+			this.history.endSection();
+			this.history.beginSection(this.activity);
+			this.activity.saveState(this, this.history);
+			this.history.endSection();
+			this.history.beginSection(this.ai);
+			this.ai.saveState(this.history);
+			this.history.endSection();
+			this.history.beginSection(this.triggers);
+			this.triggers.saveState(this.history);
+			this.history.endSection();
+		} while (!this.history.endRecord());
+	}
+	
+	// Records which components are in the given list, keyed by the given kind of component, then
+	// each one's mutable state in a section of its own
+	// EFFECT: Modifies this' history
+	void recordList(Object kind, ArrayList<? extends IGameComponent> list) {
+		this.history.beginSection(kind);
+		this.history.put(list.size());
+		for (int i = 0; i < list.size(); i += 1) {
+			this.history.putRef(list.get(i));
+		}
+		this.history.endSection();
+		for (int i = 0; i < list.size(); i += 1) {
+			IGameComponent igc = list.get(i);
+			this.history.beginSection(igc);
+			igc.saveState(this.history);
+			this.history.endSection();
+		}
+	}
+	
+	// Restores every component to its state at the given tick, if it is still in history,
+	// and forgets everything after it. Replays the keyframe before the tick and each snapshot
+	// since, each restoring only what it recorded as changed.
+	// EFFECT: Modifies every list of components, the components themselves, and this' history
+	@SuppressWarnings("unchecked")
+	boolean rewindTo(int tick) {
+		if (this.history == null || !this.history.seek(tick)) {
+			return false;
+		}
+		do {
+			if (this.history.section()) {
+				this.groundKeyframe = (ArrayList<IEnvironment>) this.history.getRef();
+			}
+			this.players = this.restoreList(this.players);
+			this.weaponEffects = this.restoreList(this.weaponEffects);
+			this.enemies = this.restoreList(this.enemies);
+			this.items = this.restoreList(this.items);
+			this.platforms = this.restoreList(this.platforms);
+			if (this.history.section()) {
+				this.contacts.restoreState(this.history);
+			}
+			if (this.history.section()) {
+				this.activity.restoreState(this, this.history);
+			}
+			if (this.history.section()) {
+				this.ai.restoreState(this.history);
+			}
+			if (this.history.section()) {
+				this.triggers.restoreState(this.history);
+			}
+		} while (this.history.advance());
+		if (!this.sameGround(this.groundKeyframe)) {
+			this.ground = new ArrayList<>(this.groundKeyframe);
+			this.grid.refresh(this.ground);
+			this.nav.refresh();
+		}
+		this.groundSource = this.ground;
+		this.groundVersion = this.grid.version;
+		this.reindexPlatforms();
+		this.activity.resync(this);
+		this.history.truncateAfter(tick);
+		this.tickCount = tick;
+		return true;
+	}
+	
+	// Does the given list hold the same ground components, in the same order, as this' ground?
+	boolean sameGround(ArrayList<IEnvironment> other) {
+		if (other.size() != this.ground.size()) {
+			return false;
+		}
+		for (int i = 0; i < other.size(); i += 1) {
+			if (other.get(i) != this.ground.get(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	// Seconds of play history holds, which falls short of the configured length only when the
+	// level outgrew the history's budget and older snapshots were forgotten to make room
+	double historySeconds() {
+		return this.history == null ? 0 : this.history.size() * this.timestep.dt;
+	}
+	
+	// Rewinds as far as the given number of seconds, or as far as history allows
+	// EFFECT: Modifies every list of components, the components themselves, and this' history
+	void rewindSeconds(double seconds) {
+		if (this.history != null && this.history.size() > 0) {
+			int target = this.tickCount - this.timestep.ticks(seconds);
+			this.rewindTo(Math.max(target, this.history.earliestTick()));
+		}
+	}
+	
+	// Reads which components were in a list, or keeps the given list if that was unchanged, and
+	// restores the state of each one recorded as changed, in the order recordList wrote them
+	// EFFECT: Modifies the restored components and advances the history's read cursor
+	@SuppressWarnings("unchecked")
+	<T extends IGameComponent> ArrayList<T> restoreList(ArrayList<T> current) {
+		ArrayList<T> list = current;
+		if (this.history.section()) {
+			int size = this.history.getInt();
+			list = new ArrayList<>(size);
+			for (int i = 0; i < size; i += 1) {
+				list.add((T) this.history.getRef());
+			}
+		}
+		for (int i = 0; i < list.size(); i += 1) {
+			if (this.history.section()) {
+				list.get(i).restoreState(this.history);
+			}
+		}
+		return list;
 	}
-}
\ No newline at end of file
+}
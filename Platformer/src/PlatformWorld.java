@@ -2,16 +2,57 @@ import javalib.impworld.World;
 import javalib.impworld.WorldScene;
 import javalib.worldimages.Posn;
 
-// To handle player interactions with the game and provide visualization
-class PlatformWorld extends World {
+// To handle player interactions with the game and provide visualization. Input callbacks only
+// queue what the user did; the game applies it all at the start of the next tick.
+class PlatformWorld extends World implements IInputSink {
 	PlatformGame game;
-	
+	// Input waiting for the next tick
+	final InputQueue input;
+	// Also told of every input as it is applied, to record or forward it, or null
+	IInputSink tap;
+	// Number of ticks this world has been told to take, which unlike the game's count never rewinds
+	int ticks;
+	// Loads the images the game draws into the shared sprite cache while the game is built
+	final AssetPreloader preloader;
+
+	// Convenience constructor plays the standard level, built while its images load
 	PlatformWorld() {
-		this.game = new PlatformGame();
+		this(new AssetPreloader(SpriteCache.SHARED, AssetManifest.standard()).start(), new PlatformGame());
+	}
+
+	// Convenience constructor plays an endless level laid out from the given seed, built while its
+	// images load, with the window following the player
+	PlatformWorld(long seed) {
+		this(new AssetPreloader(SpriteCache.SHARED, AssetManifest.standard()).start(),
+				new EndlessGenerator(seed).start());
 	}
-	// Runs the game with constant window size and tick rate
+
+	// Plays the given game once the given preloader has loaded its images
+	PlatformWorld(AssetPreloader preloader, PlatformGame game) {
+		this.preloader = preloader;
+		this.game = game;
+		this.input = new InputQueue();
+		this.tap = null;
+		this.ticks = 0;
+	}
+
+	// Plays the standard level, the demo level if asked for, or an endless one laid out from the
+	// seed given
+	public static void main(String[] args) {
+		if (args.length > 0 && args[0].equals("demo")) {
+			new PlatformWorld(new AssetPreloader(SpriteCache.SHARED, AssetManifest.standard()).start(),
+					PlatformGame.demo()).run();
+		} else if (args.length > 0) {
+			new PlatformWorld(Long.parseLong(args[0])).run();
+		} else {
+			new PlatformWorld().run();
+		}
+	}
+
+	// Runs the game with constant window size at the game's tick rate, once its images are loaded
 	void run() {
-		this.bigBang(IConstant.WINDX, IConstant.WINDY, IConstant.TICK_RATE);
+		this.preloader.await();
+		this.bigBang(IConstant.WINDX, IConstant.WINDY, this.game.timestep.dt);
 	}
 	// Returns the visual depiction of the current state of the game
 	public WorldScene makeScene() {
@@ -19,48 +60,75 @@ class PlatformWorld extends World {
 		this.game.drawSceneOnto(background);
 		return background;
 	}
-	
+
 	// Responds to user key input to control the player
-	// EFFECT: Modifies the player in PlatformGame
+	// EFFECT: Queues input for the next tick
 	public void onKeyEvent(String key) {
 		if(key.equals("a") || key.equals("d")) {
-			this.game.playerMoveX(key.equals("d"));
+			this.input.offer(InputQueue.MOVE, key.equals("d") ? 1 : 0, 0, 0);
 		} else if(key.equals(" ")) {
-			this.game.playerJump();
-		} else if(key.matches("[0-9]+")) {
-			this.game.playerSwitchWeapon(Integer.parseInt(key));
+			this.input.offer(InputQueue.JUMP);
+		} else if(key.equals("r")) {
+			this.input.offer(InputQueue.REWIND);
+		} else if(this.isDigits(key)) {
+			this.input.offer(InputQueue.SWITCH, Integer.parseInt(key), 0, 0);
+		}
+	}
+
+	// Is the given key made up only of digits, and short enough to be an inventory position?
+	boolean isDigits(String key) {
+		if(key.isEmpty() || key.length() > 9) {
+			return false;
+		}
+		for(int i = 0; i < key.length(); i += 1) {
+			if(key.charAt(i) < '0' || key.charAt(i) > '9') {
+				return false;
+			}
 		}
+		return true;
 	}
-	
+
 	// Responds to user key input to control the player
-	// EFFECT: Modifies the player in PlatformGame
+	// EFFECT: Queues input for the next tick
 	public void onKeyReleased(String key) {
 		if(key.equals("a") || key.equals("d")) {
-			this.game.haltPlayerX();
+			this.input.offer(InputQueue.HALT);
 		}
 	}
-	
-	// Causes game components to advance one tick in the PlatformGame
+
+	// Applies the input queued since the last tick, then causes game components to advance one
+	// tick in the PlatformGame
 	// EFFECT: Modifies game components in PlatformGame
 	public void onTick() {
-		this.game.tickPlayer();
-		this.game.tickWeaponEffects();
-		this.game.tickEnemies();
-		this.game.weaponInteract();
-		this.game.enemiesInteractPlayer();
-		this.game.removeComponents();
+		if(this.tap != null) {
+			this.tap.onInput(InputQueue.TICK, this.ticks, 0, 0);
+		}
+		this.input.drain(this);
+		this.game.tick();
+		this.ticks += 1;
 	}
-	
-	// Causes the player to fire current weapon in click direction
-	// EFFECT: Modifies the WeaponEffects in PlatformGame
+
+	// Applies one queued input to the game, telling the tap first
+	// EFFECT: Modifies the game and whatever the tap does
+	public void onInput(int kind, int arg, int x, int y) {
+		if(this.tap != null) {
+			this.tap.onInput(kind, arg, x, y);
+		}
+		this.game.onInput(kind, arg, x, y);
+	}
+
+	// Causes the player to fire current weapon in click direction, clicked in the window; the game
+	// aims it in the level when the input is applied, as only the game's thread reads its camera
+	// EFFECT: Queues input for the next tick
 	public void onMousePressed(Posn pos, String buttonName) {
 		if(buttonName.equals("LeftButton")) {
-			this.game.playerFireAt(new Vector2D(pos));
+			this.input.offer(InputQueue.FIRE, 0, pos.x, pos.y);
 		}
 	}
-	
+
+	// EFFECT: Queues input for the next tick
 	public void onMouseMoved(Posn pos) {
-		this.game.playerFace(pos);
+		this.input.offer(InputQueue.FACE, 0, pos.x, pos.y);
 	}
 
 }
@@ -1,3 +1,4 @@
+import java.awt.Graphics2D;
 import java.util.ArrayList;
 
 import javalib.impworld.WorldScene;
@@ -9,29 +10,50 @@ class Player extends AGameComponent {
 	static final int WIDTH = 2; // In blocks
 	static final int HEIGHT = 3; // In blocks
 	static final Vector2D DIM = new Vector2D(Player.WIDTH * IConstant.BLOCK_SIZE, Player.HEIGHT * IConstant.BLOCK_SIZE);
-	static final double HORIZ_SPEED = 1.5 * IConstant.BLOCK_SIZE * IConstant.TICK_RATE; // In pixels per tick, number is
-																						// blocks per second
-	static final double JUMP_VELOC = -40 * IConstant.BLOCK_SIZE * IConstant.TICK_RATE; // In pixels per tick, number is
-																						// blocks per second
-	static final double TERMINAL_SPEED = 100 * IConstant.BLOCK_SIZE * IConstant.TICK_RATE; // In pixels per tick, number
-																							// is blocks per second
-	static final int HIT_IMMUNITY = (int) (1.5 / IConstant.TICK_RATE);
+	static final double HORIZ_SPEED = 15 * IConstant.BLOCK_SIZE; // In pixels per second, number is blocks per second
+	static final double JUMP_VELOC = -40 * IConstant.BLOCK_SIZE; // In pixels per second, number is blocks per second
+	static final double TERMINAL_SPEED = 100 * IConstant.BLOCK_SIZE; // In pixels per second, number is blocks per
+																		// second
+	static final double HIT_IMMUNITY = 1.5; // In seconds
+	// Number of values that together say what the HUD shows
+	static final int HUD_SIZE = Weaponry.HUD_SIZE + 2;
 
 	Health health;
-	Vector2D velocity; // Pixels per tick
+	final MutableVector2D velocity; // Pixels per second
 	Weaponry weapons;
 	TimeTemporary hitImmunity;
 	boolean facingRight;
+	// Whether this player came to rest on something during the last tick, and what
+	boolean grounded;
+	IGameComponent support;
+	// Where hit and muzzle effects are emitted
+	ParticleSystem particles;
+	// Solid components this player ran into during the current physics step, to be pushed out of
+	// all together, and how far it moved under its own velocity during that step
+	private final ArrayList<AGameComponent> blockers;
+	private double stepX;
+	private double stepY;
 
 	// Constructor initializes this with the given top-left, constant dimensions, 3
-	// health, and 0 velocity
-	Player(Vector2D topLeft) {
-		super(topLeft, Player.DIM);
+	// health, and 0 velocity, emitting effects into the given particle system
+	Player(Vector2D topLeft, ParticleSystem particles) {
+		super(topLeft, Player.DIM, CollisionLayers.PLAYER);
 		this.health = new Health(3);
-		this.velocity = Vector2D.ZERO;
+		this.velocity = new MutableVector2D();
 		this.weapons = new Weaponry();
 		this.hitImmunity = new TimeTemporary(Player.HIT_IMMUNITY);
 		this.facingRight = true;
+		this.grounded = false;
+		this.support = null;
+		this.particles = particles;
+		this.blockers = new ArrayList<>();
+		this.stepX = 0;
+		this.stepY = 0;
+	}
+
+	// Convenience constructor for a player whose effects are not shown
+	Player(Vector2D topLeft) {
+		this(topLeft, new ParticleSystem(0));
 	}
 
 	// VISUALIZATIONS
@@ -41,6 +63,16 @@ class Player extends AGameComponent {
 		String fname = this.facingRight ? "brash.jpg" : "brash-l.jpg";
 		return this.body.render(fname);
 	}
+	
+	// Paints the same sprite straight onto the given graphics
+	public void paintOnto(Graphics2D g, SpriteCache sprites) {
+		this.body.paint(g, sprites, this.facingRight ? "brash.jpg" : "brash-l.jpg");
+	}
+
+	// This looks one way facing right and another facing left
+	public int look() {
+		return this.facingRight ? 1 : 0;
+	}
 
 	// Draws non-game component aspects of this player such as health, inventory,
 	// and weapons
@@ -48,41 +80,66 @@ class Player extends AGameComponent {
 		this.weapons.drawOnto(background);
 		this.health.drawOnto(background);
 	}
+	
+	// Writes what the HUD shows into the given array: the inventory, then current and maximum
+	// health. Takes Player.HUD_SIZE places.
+	// EFFECT: Modifies the given array
+	void hudState(int[] out) {
+		this.weapons.hudState(out, 0);
+		out[Weaponry.HUD_SIZE] = this.health.current;
+		out[Weaponry.HUD_SIZE + 1] = this.health.max;
+	}
+	
+	// Paints the same HUD straight onto the given graphics
+	// EFFECT: Modifies the given graphics
+	void paintHUD(Graphics2D g, SpriteCache sprites) {
+		this.weapons.paintOnto(g, sprites);
+		this.health.paintOnto(g);
+	}
 
 	void face(Vector2D pos) {
-		this.facingRight = pos.x >= this.body.center().x;
+		this.facingRight = pos.x >= this.body.centerX();
 	}
 
 	// MOVEMENT
 
 	// Stops movement in the 'x' direction
 	void haltX() {
-		this.velocity = this.velocity.setX(0);
+		this.velocity.x = 0;
 	}
 
 	// Moves player in given x direction by constant speed
 	// EFFECT: Modifies this' collision body's 'x' position
 	void moveX(boolean isRight) {
 		if (isRight) {
-			this.velocity = this.velocity.setX(Player.HORIZ_SPEED * IConstant.BLOCK_SIZE);
+			this.velocity.x = Player.HORIZ_SPEED;
 		} else {
-			this.velocity = this.velocity.setX(-1 * Player.HORIZ_SPEED * IConstant.BLOCK_SIZE);
+			this.velocity.x = -1 * Player.HORIZ_SPEED;
 		}
 	}
 
-	// Moves this player on tick according to its velocity, and adjusts velocity
-	// based on gravity
+	// Moves this player over the given number of seconds according to its velocity, and adjusts
+	// velocity based on gravity. Moving by the average of the vertical velocities before and after is
+	// exact under constant gravity, so a jump peaks at the same height at any tick rate.
 	// EFFECT: Modifies this' collision body's position and this' velocity
-	private void moveOnTick() {
-		this.body = this.body.onMove(this.velocity);
-		double nextVY = this.velocity.y + IConstant.GRAVITY;
-		this.velocity = this.velocity.setY(Math.min(nextVY, Player.TERMINAL_SPEED));
+	private void moveOnTick(double dt) {
+		double nextVY = Math.min(this.velocity.y + IConstant.GRAVITY * dt, Player.TERMINAL_SPEED);
+		this.stepX = this.velocity.x * dt;
+		this.stepY = (this.velocity.y + nextVY) / 2 * dt;
+		this.body.moveBy(this.stepX, this.stepY);
+		this.velocity.y = nextVY;
 	}
 
 	// Gives this player an upwards y velocity to simulate jumping
 	// EFFECT: Modifies this' velocity
 	void jump() {
-		this.velocity = this.velocity.setY(JUMP_VELOC);
+		this.velocity.y = JUMP_VELOC;
+	}
+
+	// Moves this player along with whatever it is standing on by the given displacement
+	// EFFECT: Modifies this' collision body's position
+	void carry(double dx, double dy) {
+		this.body.moveBy(dx, dy);
 	}
 
 	// Is this player standing on top of the given rectangle?
@@ -90,21 +147,81 @@ class Player extends AGameComponent {
 		return (this.body.onTopOf(ground));
 	}
 
-	// Adjusts position and velocity of player to resolve a collision with the given
-	// rectangle
-	// EFFECT: Modifies this' body's position and velocity
-	void resolveCollision(Rectangle other) {
-		Vector2D resolution = other.resolveCollision(this.body);
-		this.body = this.body.onMove(resolution);
-		if (resolution.magnitude() > IConstant.COL_TOL) {
-			if (resolution.y == 0) {
-				this.haltX();
-			} else if (resolution.x == 0) {
-				this.velocity = this.velocity.setY(0);
+	// Records that this player ran into the given solid component, to be pushed out of it along
+	// with everything else it ran into this step once all have been found
+	// EFFECT: Modifies this' blockers
+	void blockedBy(AGameComponent surface) {
+		this.blockers.add(surface);
+	}
+
+	// Pushes this player out of everything it ran into this step in one pass per axis: the step's
+	// vertical motion is undone while it is pushed out horizontally, then redone while it is pushed
+	// out vertically. Along each axis every blocker is pushed out of against the way this player
+	// moved, or the shorter way if it did not move that way, and the largest such push clears them
+	// all, so the result does not depend on the order they were found in. Only a blocker overlapping
+	// by more than the tolerance across an axis pushes along it, so running over a floor of separate
+	// blocks never catches on the seams between them. The blocker stood on that lies most under this
+	// player becomes its support, the earliest found on a tie.
+	// EFFECT: Modifies this' position, velocity, grounding, support, and blockers
+	void resolveCollisions() {
+		if (this.blockers.isEmpty()) {
+			return;
+		}
+		this.body.moveBy(0, -this.stepY);
+		double pushX = this.sweep(true, this.stepX);
+		this.body.moveBy(pushX, this.stepY);
+		double pushY = this.sweep(false, this.stepY);
+		this.body.moveBy(0, pushY);
+		if (Math.abs(pushX) > IConstant.COL_TOL) {
+			this.haltX();
+		}
+		if (Math.abs(pushY) > IConstant.COL_TOL) {
+			this.velocity.y = 0;
+		}
+		double mostUnder = 0;
+		for (int i = 0; i < this.blockers.size(); i += 1) {
+			AGameComponent surface = this.blockers.get(i);
+			Rectangle other = surface.body;
+			double under = Math.min(this.body.right(), other.right()) - Math.max(this.body.left(), other.left());
+			if (this.body.onTopOf(other) && (this.support == null || under > mostUnder)) {
+				this.grounded = true;
+				this.support = surface;
+				mostUnder = under;
+			}
+		}
+		this.blockers.clear();
+		this.stepX = 0;
+		this.stepY = 0;
+	}
+
+	// How far this player must move along one axis to be clear of every blocker it overlaps by more
+	// than the tolerance across the other, given how far it moved along that axis this step
+	private double sweep(boolean horizontal, double moved) {
+		double back = 0;
+		double ahead = 0;
+		for (int i = 0; i < this.blockers.size(); i += 1) {
+			Rectangle other = this.blockers.get(i).body;
+			double across;
+			double toBack;
+			double toAhead;
+			if (horizontal) {
+				across = Math.min(this.body.bottom(), other.bottom()) - Math.max(this.body.top(), other.top());
+				toBack = this.body.right() - other.left();
+				toAhead = other.right() - this.body.left();
 			} else {
-				throw new RuntimeException("Collision resolution incorrectly calculated.");
+				across = Math.min(this.body.right(), other.right()) - Math.max(this.body.left(), other.left());
+				toBack = this.body.bottom() - other.top();
+				toAhead = other.bottom() - this.body.top();
+			}
+			if (across > IConstant.COL_TOL && toBack > 0 && toAhead > 0) {
+				if (moved > 0 || (moved == 0 && toBack <= toAhead)) {
+					back = Math.max(back, toBack);
+				} else {
+					ahead = Math.max(ahead, toAhead);
+				}
 			}
 		}
+		return back >= ahead ? -back : ahead;
 	}
 
 	// WEAPONS
@@ -114,10 +231,25 @@ class Player extends AGameComponent {
 		this.weapons.changeWeaponTo(next);
 	}
 
-	// Creates weapon effects due to firing weapon at the target
-	// EFFECT: Modifies the active weapon on firing
-	ArrayList<IWeaponEffect> fireCurrentWeapon(Vector2D target) {
-		return this.weapons.currentWeapon().fire(this.body.center(), this.body.center().displacementTo(target));
+	// Adds to out the weapon effects of firing the active weapon at the given target, with a muzzle
+	// flash for any projectile or hitscan shot, allocating nothing unless an effect enters play
+	// EFFECT: Modifies the given list, the active weapon on firing, and this' particle system
+	void fireCurrentWeapon(double targetX, double targetY, ArrayList<IWeaponEffect> out) {
+		double x = this.body.centerX();
+		double y = this.body.centerY();
+		double dx = targetX - x;
+		double dy = targetY - y;
+		int queued = this.weapons.rays.pending();
+		int fired = out.size();
+		this.weapons.currentWeapon().fire(x, y, dx, dy, out);
+		for (int i = fired; i < out.size(); i += 1) {
+			if (out.get(i) instanceof AProjectile) {
+				this.particles.spray(ParticleSystem.MUZZLE, x, y, dx, dy, 8, 30, 200, .1);
+			}
+		}
+		if (this.weapons.rays.pending() > queued) {
+			this.particles.spray(ParticleSystem.MUZZLE, x, y, dx, dy, 8, 30, 200, .1);
+		}
 	}
 
 	// Add the given ammo amount to the weapon at the corresponding inventory
@@ -136,16 +268,47 @@ class Player extends AGameComponent {
 
 	// Updates player motion according to velocity and gravity, ticks inventory
 	// weapons, and ticks
-	// hit immunity if active
-	// EFFECT: Modifies this' position, velocity, weaponry, and hitImmunity
-	public void tick() {
-		this.moveOnTick();
-		this.weapons.tickWeaponry();
+	// hit immunity if active. Blockers found after the last step's were resolved are forgotten.
+	// EFFECT: Modifies this' position, velocity, weaponry, hitImmunity, and blockers
+	public void tick(double dt) {
+		this.grounded = false;
+		this.support = null;
+		this.blockers.clear();
+		this.moveOnTick(dt);
+		this.weapons.tickWeaponry(dt);
 		if (!this.hitImmunity.finished()) {
-			this.hitImmunity = this.hitImmunity.onTick();
+			this.hitImmunity.countDown(dt);
 		}
 	}
 
+	// Records position, velocity, health, immunity, facing, grounding, and weapons
+	// EFFECT: Appends to the given history
+	public void saveState(RewindBuffer rb) {
+		super.saveState(rb);
+		rb.put(this.velocity.x);
+		rb.put(this.velocity.y);
+		rb.put(this.health.current);
+		rb.put(this.health.max);
+		rb.put(this.hitImmunity.secondsLeft());
+		rb.put(this.facingRight);
+		rb.put(this.grounded);
+		rb.putRef(this.support);
+		this.weapons.saveState(rb);
+	}
+
+	// Restores position, velocity, health, immunity, facing, grounding, and weapons
+	// EFFECT: Modifies this and advances the history's read cursor
+	public void restoreState(RewindBuffer rb) {
+		super.restoreState(rb);
+		this.velocity.set(rb.get(), rb.get());
+		this.health = new Health(rb.getInt(), rb.getInt());
+		this.hitImmunity = new TimeTemporary(rb.get());
+		this.facingRight = rb.getBoolean();
+		this.grounded = rb.getBoolean();
+		this.support = (IGameComponent) rb.getRef();
+		this.weapons.restoreState(rb);
+	}
+
 	// Adjusts health upon taking damage if not hitImmune, and activates hitImmunity
 	// once hit
 	// EFFECT: Modifies this' health and hitImmunity
@@ -154,8 +317,9 @@ class Player extends AGameComponent {
 			throw new IllegalArgumentException("Cannot take negative damage.");
 		}
 		if (this.hitImmunity.finished()) {
-			this.health = this.health.changeCurrent(-1 * damage);
-			this.hitImmunity = new TimeTemporary(Player.HIT_IMMUNITY);
+			this.health.adjust(-1 * damage);
+			this.hitImmunity.restart(Player.HIT_IMMUNITY);
+			this.particles.burst(ParticleSystem.BLOOD, this.body.center(), 12 * damage, 150, .5);
 		}
 	}
 
@@ -166,6 +330,6 @@ class Player extends AGameComponent {
 		if (amt < 0) {
 			throw new IllegalArgumentException("Cannot gain negative health.");
 		}
-		this.health = this.health.changeCurrent(amt);
+		this.health.adjust(amt);
 	}
 }
\ No newline at end of file
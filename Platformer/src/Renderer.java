@@ -0,0 +1,530 @@
+import java.awt.AWTException;
+import java.awt.BufferCapabilities;
+import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Frame;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.ImageCapabilities;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import javax.imageio.ImageIO;
+
+import javalib.impworld.WorldScene;
+import javalib.worldimages.ComputedPixelImage;
+import javalib.worldimages.Posn;
+import javalib.worldimages.WorldImage;
+
+// Image files decoded once and kept scaled to each size they are drawn at, so painting a sprite
+// is a single copy. File names are matched without regard to case, as the image files' own
+// names are not consistent about it.
+class SpriteCache {
+	// The cache game components draw their javalib images from, preloaded by PlatformWorld
+	static final SpriteCache SHARED = new SpriteCache();
+
+	// Directory image files are read from
+	final File dir;
+	// Decoded images by requested file name, and each one's scaled copies
+	private final HashMap<String, BufferedImage> originals;
+	private final HashMap<String, ArrayList<BufferedImage>> scaled;
+	// Scaled copies turned into javalib images, by file name, one for each size
+	private final HashMap<String, ArrayList<WorldImage>> images;
+	// Configuration scaled copies are made compatible with, or null for plain images
+	private GraphicsConfiguration config;
+
+	SpriteCache(File dir) {
+		this.dir = dir;
+		this.originals = new HashMap<>();
+		this.scaled = new HashMap<>();
+		this.images = new HashMap<>();
+		this.config = null;
+	}
+
+	// Convenience constructor reads image files from the working directory, as FromFileImage does
+	SpriteCache() {
+		this(new File("."));
+	}
+
+	// Makes sprites compatible with the given screen, so they can be drawn without conversion.
+	// Copies already scaled are converted rather than scaled again. Not to be called while an
+	// AssetPreloader is loading into this cache.
+	// EFFECT: Modifies this' configuration and scaled copies
+	void useConfiguration(GraphicsConfiguration config) {
+		if (config == this.config) {
+			return;
+		}
+		this.config = config;
+		for (ArrayList<BufferedImage> sizes : this.scaled.values()) {
+			for (int i = 0; i < sizes.size(); i += 1) {
+				BufferedImage img = sizes.get(i);
+				BufferedImage copy = this.blank(img.getWidth(), img.getHeight());
+				Graphics2D g = copy.createGraphics();
+				g.drawImage(img, 0, 0, null);
+				g.dispose();
+				sizes.set(i, copy);
+			}
+		}
+	}
+
+	// Is the image in the given file at the given size already in this cache?
+	boolean has(String fname, int width, int height) {
+		ArrayList<BufferedImage> sizes = this.scaled.get(fname);
+		if (sizes != null) {
+			for (int i = 0; i < sizes.size(); i += 1) {
+				if (sizes.get(i).getWidth() == width && sizes.get(i).getHeight() == height) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	// Adds an image decoded and scaled elsewhere, replacing any copy of the same size
+	// EFFECT: Modifies this' cache
+	void adopt(String fname, BufferedImage original, BufferedImage scaled) {
+		this.originals.put(fname, original);
+		ArrayList<BufferedImage> sizes = this.scaled.get(fname);
+		if (sizes == null) {
+			sizes = new ArrayList<>(2);
+			this.scaled.put(fname, sizes);
+		}
+		for (int i = 0; i < sizes.size(); i += 1) {
+			if (sizes.get(i).getWidth() == scaled.getWidth() && sizes.get(i).getHeight() == scaled.getHeight()) {
+				sizes.set(i, scaled);
+				return;
+			}
+		}
+		sizes.add(scaled);
+	}
+
+	// Returns the image in the given file scaled to the given size, scaling it only the first time
+	// EFFECT: Possibly reads the file and adds to this' cache
+	BufferedImage sprite(String fname, int width, int height) {
+		ArrayList<BufferedImage> sizes = this.scaled.get(fname);
+		if (sizes == null) {
+			sizes = new ArrayList<>(2);
+			this.scaled.put(fname, sizes);
+		}
+		for (int i = 0; i < sizes.size(); i += 1) {
+			BufferedImage img = sizes.get(i);
+			if (img.getWidth() == width && img.getHeight() == height) {
+				return img;
+			}
+		}
+		BufferedImage img = this.scale(this.original(fname), width, height);
+		sizes.add(img);
+		return img;
+	}
+
+	// Adds the javalib copy of an image scaled elsewhere, replacing any copy of the same size
+	// EFFECT: Modifies this' cache
+	void adoptImage(String fname, WorldImage image) {
+		ArrayList<WorldImage> sizes = this.images.get(fname);
+		if (sizes == null) {
+			sizes = new ArrayList<>(2);
+			this.images.put(fname, sizes);
+		}
+		for (int i = 0; i < sizes.size(); i += 1) {
+			if (sizes.get(i).getWidth() == image.getWidth() && sizes.get(i).getHeight() == image.getHeight()) {
+				sizes.set(i, image);
+				return;
+			}
+		}
+		sizes.add(image);
+	}
+
+	// Returns the image in the given file at the given size as a javalib image. Images in the
+	// manifest were copied when preloaded; any other is copied the first time it is drawn.
+	// EFFECT: Possibly reads the file and adds to this' cache
+	WorldImage image(String fname, int width, int height) {
+		ArrayList<WorldImage> sizes = this.images.get(fname);
+		if (sizes != null) {
+			for (int i = 0; i < sizes.size(); i += 1) {
+				WorldImage img = sizes.get(i);
+				if (img.getWidth() == width && img.getHeight() == height) {
+					return img;
+				}
+			}
+		}
+		WorldImage img = this.pixels(this.sprite(fname, width, height));
+		this.adoptImage(fname, img);
+		return img;
+	}
+
+	// Returns a javalib copy of the given image, pixel by pixel, without caching it, so it can be
+	// done on any thread. Runs of one color, such as transparent margins, share one Color.
+	WorldImage pixels(BufferedImage sprite) {
+		ComputedPixelImage copy = new ComputedPixelImage(sprite.getWidth(), sprite.getHeight());
+		int last = 0;
+		Color color = new Color(last, true);
+		for (int y = 0; y < sprite.getHeight(); y += 1) {
+			for (int x = 0; x < sprite.getWidth(); x += 1) {
+				int argb = sprite.getRGB(x, y);
+				if (argb != last) {
+					last = argb;
+					color = new Color(argb, true);
+				}
+				copy.setPixel(x, y, color);
+			}
+		}
+		return copy;
+	}
+
+	// Returns the decoded image in the given file
+	// EFFECT: Possibly reads the file and adds to this' cache
+	BufferedImage original(String fname) {
+		BufferedImage img = this.originals.get(fname);
+		if (img == null) {
+			img = this.decode(fname);
+			this.originals.put(fname, img);
+		}
+		return img;
+	}
+
+	// Reads and decodes the given file without caching it, so it can be done on any thread
+	BufferedImage decode(String fname) {
+		BufferedImage img;
+		try {
+			img = ImageIO.read(this.resolve(fname));
+		} catch (IOException e) {
+			throw new RuntimeException("Could not read image " + fname, e);
+		}
+		if (img == null) {
+			throw new RuntimeException("Not an image file: " + fname);
+		}
+		return img;
+	}
+
+	// Returns the file in this' directory with the given name, ignoring case if there is no exact match
+	File resolve(String fname) {
+		File exact = new File(this.dir, fname);
+		if (exact.isFile()) {
+			return exact;
+		}
+		File[] files = this.dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				if (f.getName().equalsIgnoreCase(fname)) {
+					return f;
+				}
+			}
+		}
+		throw new IllegalArgumentException("No image file " + fname + " in " + this.dir);
+	}
+
+	// Returns a copy of the given image smoothly scaled to the given size, without caching it, so it
+	// can be done on any thread
+	BufferedImage scale(BufferedImage src, int width, int height) {
+		BufferedImage dst = this.blank(width, height);
+		Graphics2D g = dst.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(src, 0, 0, width, height, null);
+		g.dispose();
+		return dst;
+	}
+
+	// Returns a transparent image of the given size suited to this' configuration
+	BufferedImage blank(int width, int height) {
+		return this.config == null ? new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB)
+				: this.config.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+	}
+}
+
+// A scene that passes every image placed on it on to another scene, shifted left by the given
+// number of pixels, so a game can place its components at their coordinates in the level while
+// the window shows only the part of it in view
+class ShiftedScene extends WorldScene {
+	final WorldScene target;
+	final int shift;
+
+	ShiftedScene(WorldScene target, int shift) {
+		super(IConstant.WINDX, IConstant.WINDY);
+		this.target = target;
+		this.shift = shift;
+	}
+
+	// Places the given image on the target scene, shifted into view
+	// EFFECT: Modifies the target scene
+	public void placeImageXY(WorldImage image, int x, int y) {
+		this.target.placeImageXY(image, x - this.shift, y);
+	}
+}
+
+// Paints a game straight onto Java2D graphics, as an alternative to building a WorldScene of
+// images each frame for javalib to walk. Components paint themselves with primitives and cached
+// sprites, so a frame allocates no images. The same frame can go to a window's buffer strategy
+// or, without any display, to an image.
+class Java2DRenderer {
+	final SpriteCache sprites;
+	// Font for the HUD's text, matching the size of its TextImages
+	private final Font font;
+	// Image frames are painted into when rendering without a display, kept between frames
+	private BufferedImage offscreen;
+	// Number of frames painted
+	long frames;
+
+	Java2DRenderer(SpriteCache sprites) {
+		this.sprites = sprites;
+		this.font = new Font(Font.SANS_SERIF, Font.PLAIN, 10);
+		this.offscreen = null;
+		this.frames = 0;
+	}
+
+	// Paints one frame of the given game onto the given graphics, clearing it first
+	// EFFECT: Modifies the given graphics and this' frame count
+	void render(PlatformGame game, Graphics2D g) {
+		this.paintRegion(game, g, 0, 0, IConstant.WINDX, IConstant.WINDY);
+		this.frames += 1;
+	}
+	
+	// Clears and paints only the given region of a frame of the given game, leaving the rest of the
+	// graphics as it was
+	// EFFECT: Modifies the given graphics
+	void paintRegion(PlatformGame game, Graphics2D g, int x, int y, int width, int height) {
+		g.setClip(x, y, width, height);
+		g.setColor(Color.WHITE);
+		g.fillRect(x, y, width, height);
+		g.setFont(this.font);
+		game.paintRegionOnto(g, this.sprites, x, y, width, height);
+		g.setClip(null);
+	}
+
+	// Paints one frame of the given game into an image without needing a display, returning the image.
+	// The same image is reused by every call.
+	// EFFECT: Modifies this' offscreen image and frame count
+	BufferedImage renderToImage(PlatformGame game) {
+		if (this.offscreen == null) {
+			this.offscreen = new BufferedImage(IConstant.WINDX, IConstant.WINDY, BufferedImage.TYPE_INT_RGB);
+		}
+		Graphics2D g = this.offscreen.createGraphics();
+		try {
+			this.render(game, g);
+		} finally {
+			g.dispose();
+		}
+		return this.offscreen;
+	}
+
+	// Paints one frame of the given game into the next buffer of the given strategy and shows it,
+	// painting again if the buffer's contents were lost along the way
+	// EFFECT: Modifies the strategy's buffers and this' frame count
+	void present(PlatformGame game, BufferStrategy strategy) {
+		do {
+			do {
+				Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
+				try {
+					this.render(game, g);
+				} finally {
+					g.dispose();
+				}
+			} while (strategy.contentsRestored());
+			strategy.show();
+		} while (strategy.contentsLost());
+	}
+}
+
+// Plays the game in a plain window painted by a Java2DRenderer through a buffer strategy that
+// copies its back buffer to the screen, repainting and copying only what changed each frame, and
+// handing input and ticks to a PlatformWorld just as bigBang would
+class DirectWindow {
+	// Most ticks taken before painting a frame; a loop further behind than this, say after the
+	// window was dragged or the machine stalled, drops the rest rather than racing to catch up
+	static final int MAX_TICKS_PER_FRAME = 5;
+
+	final PlatformWorld world;
+	final Java2DRenderer renderer;
+	final IncrementalRenderer incremental;
+	final Frame frame;
+	final Canvas canvas;
+	private volatile boolean running;
+	// Loading the game's images while the rest starts up, or null to load each on first use
+	private final AssetPreloader preloader;
+	// When startup began, and how long after it the first frame was shown, in nanoseconds
+	private final long startNanos;
+	long firstFrameNanos;
+	// Ticks skipped because the loop fell too far behind
+	long droppedTicks;
+
+	// Convenience constructor loads images on first use
+	DirectWindow(PlatformWorld world) {
+		this(world, new SpriteCache(), null, System.nanoTime());
+	}
+
+	// Constructor for a window painting with the given sprites, which the given preloader, if any,
+	// is loading, for a start up that began at the given time
+	DirectWindow(PlatformWorld world, SpriteCache sprites, AssetPreloader preloader, long startNanos) {
+		this.world = world;
+		this.renderer = new Java2DRenderer(sprites);
+		this.incremental = new IncrementalRenderer(this.renderer);
+		this.preloader = preloader;
+		this.startNanos = startNanos;
+		this.firstFrameNanos = 0;
+		this.droppedTicks = 0;
+		this.frame = new Frame("Platformer");
+		this.canvas = new Canvas();
+		this.canvas.setPreferredSize(new Dimension(IConstant.WINDX, IConstant.WINDY));
+		this.canvas.setIgnoreRepaint(true);
+		this.frame.add(this.canvas);
+		this.frame.setResizable(false);
+		this.frame.pack();
+		this.running = false;
+		this.listen();
+	}
+
+	// Starts loading images, builds the game while they load, and plays it
+	public static void main(String[] args) {
+		long start = System.nanoTime();
+		SpriteCache sprites = new SpriteCache();
+		AssetPreloader preloader = new AssetPreloader(sprites, AssetManifest.standard()).start();
+		new DirectWindow(new PlatformWorld(preloader, new PlatformGame()), sprites, preloader, start).run();
+	}
+
+	// Shows the window and ticks and paints the game until it is closed. Input arrives on the
+	// event thread and is only queued there, so this thread alone touches the game.
+	void run() {
+		this.frame.setVisible(true);
+		try {
+			this.canvas.createBufferStrategy(2, new BufferCapabilities(new ImageCapabilities(true),
+					new ImageCapabilities(true), null));
+		} catch (AWTException e) {
+			this.canvas.createBufferStrategy(2);
+		}
+		if (this.preloader != null) {
+			this.preloader.await();
+		}
+		this.renderer.sprites.useConfiguration(this.canvas.getGraphicsConfiguration());
+		BufferStrategy strategy = this.canvas.getBufferStrategy();
+		long tickNanos = this.world.game.timestep.nanos();
+		long next = System.nanoTime();
+		this.running = true;
+		while (this.running) {
+			int ticks = 0;
+			while (System.nanoTime() >= next && ticks < DirectWindow.MAX_TICKS_PER_FRAME) {
+				this.world.onTick();
+				next += tickNanos;
+				ticks += 1;
+			}
+			long now = System.nanoTime();
+			if (now >= next) {
+				this.droppedTicks += (now - next) / tickNanos + 1;
+				next = now + tickNanos;
+			}
+			this.incremental.present(this.world.game, strategy);
+			if (this.firstFrameNanos == 0) {
+				this.firstFrameNanos = System.nanoTime() - this.startNanos;
+				System.out.printf("First frame after %.1f ms%n", this.firstFrameNanos / 1e6);
+			}
+			long wait = next - System.nanoTime();
+			if (wait > 0) {
+				try {
+					Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+				} catch (InterruptedException e) {
+					this.running = false;
+				}
+			}
+		}
+		this.frame.dispose();
+	}
+
+	// Forwards key, mouse, and window events to the world in the form bigBang gives them, from the
+	// event thread
+	// EFFECT: Adds listeners to this' frame and canvas
+	private void listen() {
+		DirectWindow self = this;
+		this.canvas.addKeyListener(new KeyAdapter() {
+			public void keyPressed(KeyEvent e) {
+				self.world.onKeyEvent(String.valueOf(e.getKeyChar()));
+			}
+
+			public void keyReleased(KeyEvent e) {
+				self.world.onKeyReleased(String.valueOf(e.getKeyChar()));
+			}
+		});
+		MouseAdapter mouse = new MouseAdapter() {
+			public void mousePressed(MouseEvent e) {
+				if (e.getButton() == MouseEvent.BUTTON1) {
+					self.world.onMousePressed(new Posn(e.getX(), e.getY()), "LeftButton");
+				}
+			}
+
+			public void mouseMoved(MouseEvent e) {
+				self.world.onMouseMoved(new Posn(e.getX(), e.getY()));
+			}
+		};
+		this.canvas.addMouseListener(mouse);
+		this.canvas.addMouseMotionListener(mouse);
+		this.frame.addWindowListener(new WindowAdapter() {
+			public void windowClosing(WindowEvent e) {
+				self.running = false;
+			}
+		});
+	}
+}
+
+// Compares building the javalib scene of the standard level with painting it directly, in full and
+// only where it changed, without a display, printing time and allocation per frame for each
+class RenderBench {
+	static final int WARMUP_FRAMES = 200;
+	static final int MEASURED_FRAMES = 1000;
+
+	public static void main(String[] args) {
+		PlatformGame game = new PlatformGame();
+		Java2DRenderer renderer = new Java2DRenderer(new SpriteCache());
+		IncrementalRenderer incremental = new IncrementalRenderer(new Java2DRenderer(renderer.sprites));
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long sceneNanos = 0;
+		long sceneBytes = 0;
+		long paintNanos = 0;
+		long paintBytes = 0;
+		long incrementalNanos = 0;
+		long incrementalBytes = 0;
+		for (int f = 0; f < WARMUP_FRAMES + MEASURED_FRAMES; f += 1) {
+			game.tick();
+			long bytes = threads.getThreadAllocatedBytes(thread);
+			long start = System.nanoTime();
+			WorldScene scene = new WorldScene(IConstant.WINDX, IConstant.WINDY);
+			game.drawSceneOnto(scene);
+			long mid = System.nanoTime();
+			long midBytes = threads.getThreadAllocatedBytes(thread);
+			renderer.renderToImage(game);
+			long end = System.nanoTime();
+			long endBytes = threads.getThreadAllocatedBytes(thread);
+			incremental.renderToImage(game);
+			long incrementalEnd = System.nanoTime();
+			long incrementalEndBytes = threads.getThreadAllocatedBytes(thread);
+			if (f >= WARMUP_FRAMES) {
+				sceneNanos += mid - start;
+				sceneBytes += midBytes - bytes;
+				paintNanos += end - mid;
+				paintBytes += endBytes - midBytes;
+				incrementalNanos += incrementalEnd - end;
+				incrementalBytes += incrementalEndBytes - endBytes;
+			}
+		}
+		System.out.println("path\tus/frame\tbytes/frame");
+		System.out.printf("scene build\t%.1f\t%d%n", sceneNanos / 1e3 / MEASURED_FRAMES, sceneBytes / MEASURED_FRAMES);
+		System.out.printf("direct paint\t%.1f\t%d%n", paintNanos / 1e3 / MEASURED_FRAMES, paintBytes / MEASURED_FRAMES);
+		System.out.printf("dirty regions\t%.1f\t%d\t(%.0f%% of pixels, %d full repaints)%n",
+				incrementalNanos / 1e3 / MEASURED_FRAMES, incrementalBytes / MEASURED_FRAMES,
+				100. * incremental.pixelsPainted / incremental.frames / (IConstant.WINDX * IConstant.WINDY),
+				incremental.fullRepaints);
+	}
+}
@@ -0,0 +1,563 @@
+import java.util.Arrays;
+
+// A fixed-budget history of game-state snapshots, one per tick, for rewinding time.
+// Snapshots are written as runs of numbers and references into preallocated circular arenas, so
+// recording a tick allocates nothing once the arenas have grown to fit the level. A snapshot is
+// written as sections, typically one per component, each opened with a key naming what it
+// describes. Every KEYFRAME_INTERVAL ticks a keyframe keeps every section; the snapshots between
+// keep only the sections that differ from the last time they were recorded, along with runs of
+// counts saying which sections were kept. Restoring a tick replays its keyframe and then each
+// snapshot after it in turn, so a tick of a large level where little moves costs about as much as
+// what moved. The oldest snapshots are forgotten, a keyframe together with the snapshots that build
+// on it, when the slots run out or an arena has grown as far as it may and is still full.
+class RewindBuffer {
+	// Ticks between keyframes, which bounds how many snapshots restoring one tick replays
+	static final int KEYFRAME_INTERVAL = 25;
+	// How far, as a multiple of its starting capacity, an arena may grow to hold every slot
+	static final int MAX_GROWTH = 64;
+
+	private double[] values;
+	private Object[] refs;
+	// Alternating counts of sections kept and left out by each snapshot between keyframes
+	private int[] marks;
+	private final int maxValues;
+	private final int maxRefs;
+	private final int maxMarks;
+	// Per-slot tick, whether it is a keyframe, and the start and length of its runs in each arena
+	private final int[] ticks;
+	private final boolean[] keyframe;
+	private final int[] valueStart;
+	private final int[] valueLen;
+	private final int[] refStart;
+	private final int[] refLen;
+	private final int[] markStart;
+	private final int[] markLen;
+	// Index of the oldest complete slot, always a keyframe, and the number of complete slots
+	private int oldest;
+	private int count;
+	// Arena space held by complete slots
+	private int valuesUsed;
+	private int refsUsed;
+	private int marksUsed;
+	// Write position of the snapshot being recorded, or -1 if none is
+	private int writing;
+	private int valueHead;
+	private int refHead;
+	private int markHead;
+	// Snapshots recorded since the last keyframe, whether the next must be one, and whether the one
+	// being recorded lost the keyframe it builds on to make room
+	private int sinceKeyframe;
+	private boolean needKeyframe;
+	private boolean orphaned;
+	// Sections of the snapshot being recorded, where the open one starts within it, or -1 if none
+	// is open, and the run of sections kept or left out so far
+	private int sections;
+	private int sectionValues;
+	private int sectionRefs;
+	private boolean runKept;
+	private int runLength;
+	// What each section held when last recorded, keyed by its position in the snapshot
+	private double[][] shadowValues;
+	private Object[][] shadowRefs;
+	private int[] shadowValueLen;
+	private int[] shadowRefLen;
+	private int shadows;
+	// Read cursors for restoring, the snapshots being replayed, and the run of sections being read
+	private int valueRead;
+	private int refRead;
+	private int markRead;
+	private int readIndex;
+	private int readTarget;
+	private boolean readKeyframe;
+	private boolean readRunKept;
+	private int readRunLeft;
+	// Snapshots forgotten to make room rather than for age, and times an arena grew, for noticing
+	// when a level outgrows the budget
+	long evicted;
+	long grown;
+
+	RewindBuffer(int slots, int valueCapacity, int refCapacity) {
+		if (slots <= 0 || valueCapacity <= 0 || refCapacity <= 0) {
+			throw new IllegalArgumentException("Rewind history must have positive capacity.");
+		}
+		this.values = new double[valueCapacity];
+		this.refs = new Object[refCapacity];
+		this.marks = new int[Math.max(16, slots * 4)];
+		this.maxValues = valueCapacity * RewindBuffer.MAX_GROWTH;
+		this.maxRefs = refCapacity * RewindBuffer.MAX_GROWTH;
+		this.maxMarks = this.marks.length * RewindBuffer.MAX_GROWTH;
+		this.ticks = new int[slots];
+		this.keyframe = new boolean[slots];
+		this.valueStart = new int[slots];
+		this.valueLen = new int[slots];
+		this.refStart = new int[slots];
+		this.refLen = new int[slots];
+		this.markStart = new int[slots];
+		this.markLen = new int[slots];
+		this.oldest = 0;
+		this.count = 0;
+		this.valuesUsed = 0;
+		this.refsUsed = 0;
+		this.marksUsed = 0;
+		this.writing = -1;
+		this.valueHead = 0;
+		this.refHead = 0;
+		this.markHead = 0;
+		this.sinceKeyframe = 0;
+		this.needKeyframe = true;
+		this.orphaned = false;
+		this.sections = 0;
+		this.sectionValues = -1;
+		this.sectionRefs = -1;
+		this.shadowValues = new double[16][];
+		this.shadowRefs = new Object[16][];
+		this.shadowValueLen = new int[16];
+		this.shadowRefLen = new int[16];
+		this.shadows = 0;
+		this.evicted = 0;
+		this.grown = 0;
+	}
+
+	// Convenience constructor always holds at least the given number of ticks, starting with room
+	// for a small level and growing to fit a larger one
+	RewindBuffer(int ticks) {
+		this(ticks + RewindBuffer.KEYFRAME_INTERVAL, ticks * 32, ticks * 8);
+	}
+
+	// Number of ticks currently held
+	int size() {
+		return this.count;
+	}
+
+	// Numbers and references the arenas can hold at present
+	int valueCapacity() {
+		return this.values.length;
+	}
+
+	int refCapacity() {
+		return this.refs.length;
+	}
+
+	// The earliest tick that can be restored
+	int earliestTick() {
+		if (this.count == 0) {
+			throw new RuntimeException("No history recorded.");
+		}
+		return this.ticks[this.oldest];
+	}
+
+	// The latest tick that can be restored
+	int latestTick() {
+		if (this.count == 0) {
+			throw new RuntimeException("No history recorded.");
+		}
+		return this.ticks[this.slot(this.count - 1)];
+	}
+
+	// RECORDING
+
+	// Starts recording the snapshot of the given tick, forgetting the oldest if all slots are full
+	// EFFECT: Modifies this' slots
+	void beginRecord(int tick) {
+		if (this.writing >= 0) {
+			throw new RuntimeException("Already recording a snapshot.");
+		}
+		if (this.count == this.ticks.length) {
+			this.forgetOldest();
+		}
+		this.writing = this.slot(this.count);
+		this.ticks[this.writing] = tick;
+		this.keyframe[this.writing] = this.needKeyframe || this.count == 0
+				|| this.sinceKeyframe >= RewindBuffer.KEYFRAME_INTERVAL;
+		this.valueStart[this.writing] = this.valueHead;
+		this.valueLen[this.writing] = 0;
+		this.refStart[this.writing] = this.refHead;
+		this.refLen[this.writing] = 0;
+		this.markStart[this.writing] = this.markHead;
+		this.markLen[this.writing] = 0;
+		this.orphaned = false;
+		this.sections = 0;
+		this.runKept = true;
+		this.runLength = 0;
+	}
+
+	// Opens a section of the snapshot being recorded, describing what the given key names
+	// EFFECT: Modifies this' arenas
+	void beginSection(Object key) {
+		if (this.sectionValues >= 0) {
+			throw new RuntimeException("Already recording a section.");
+		}
+		this.sectionValues = this.valueLen[this.writing];
+		this.sectionRefs = this.refLen[this.writing];
+		this.putRef(key);
+	}
+
+	// Closes the open section, leaving it out of the snapshot if it holds just what it held when
+	// last recorded and this is not a keyframe
+	// EFFECT: Modifies this' arenas, record of each section, and runs of sections kept
+	void endSection() {
+		int s = this.sections;
+		int vl = this.valueLen[this.writing] - this.sectionValues;
+		int rl = this.refLen[this.writing] - this.sectionRefs;
+		int vs = (this.valueStart[this.writing] + this.sectionValues) % this.values.length;
+		int rs = (this.refStart[this.writing] + this.sectionRefs) % this.refs.length;
+		boolean kept = this.keyframe[this.writing] || !this.unchanged(s, vs, vl, rs, rl);
+		if (kept) {
+			this.remember(s, vs, vl, rs, rl);
+		} else {
+			this.valueLen[this.writing] -= vl;
+			this.valueHead = vs;
+			for (int i = 0; i < rl; i += 1) {
+				this.refs[(rs + i) % this.refs.length] = null;
+			}
+			this.refLen[this.writing] -= rl;
+			this.refHead = rs;
+		}
+		if (!this.keyframe[this.writing]) {
+			if (kept == this.runKept) {
+				this.runLength += 1;
+			} else {
+				this.putMark(this.runLength);
+				this.runKept = kept;
+				this.runLength = 1;
+			}
+		}
+		this.sections += 1;
+		this.sectionValues = -1;
+		this.sectionRefs = -1;
+	}
+
+	// Appends a number to the snapshot being recorded
+	// EFFECT: Modifies this' value arena, possibly growing it or forgetting old snapshots for room
+	void put(double value) {
+		while (this.valuesUsed + this.valueLen[this.writing] >= this.values.length) {
+			if (this.values.length < this.maxValues && this.count + 1 < this.ticks.length) {
+				this.growValues();
+			} else {
+				this.forgetOldestForRoom();
+			}
+		}
+		this.values[this.valueHead] = value;
+		this.valueHead = (this.valueHead + 1) % this.values.length;
+		this.valueLen[this.writing] += 1;
+	}
+
+	// Appends a flag to the snapshot being recorded
+	// EFFECT: Modifies this' value arena, possibly growing it or forgetting old snapshots for room
+	void put(boolean flag) {
+		this.put(flag ? 1.0 : 0.0);
+	}
+
+	// Appends a reference to the snapshot being recorded
+	// EFFECT: Modifies this' reference arena, possibly growing it or forgetting old snapshots for room
+	void putRef(Object ref) {
+		while (this.refsUsed + this.refLen[this.writing] >= this.refs.length) {
+			if (this.refs.length < this.maxRefs && this.count + 1 < this.ticks.length) {
+				this.growRefs();
+			} else {
+				this.forgetOldestForRoom();
+			}
+		}
+		this.refs[this.refHead] = ref;
+		this.refHead = (this.refHead + 1) % this.refs.length;
+		this.refLen[this.writing] += 1;
+	}
+
+	// Completes the snapshot being recorded and returns true, or forgets it and returns false if
+	// making room for it forgot the keyframe it builds on, in which case it must be recorded again
+	// and will then be a keyframe
+	// EFFECT: Modifies this' slots
+	boolean endRecord() {
+		if (!this.keyframe[this.writing]) {
+			this.putMark(this.runLength);
+		}
+		if (this.orphaned) {
+			this.clearRefs(this.writing);
+			this.valueHead = this.valueStart[this.writing];
+			this.refHead = this.refStart[this.writing];
+			this.markHead = this.markStart[this.writing];
+			this.writing = -1;
+			this.needKeyframe = true;
+			return false;
+		}
+		this.valuesUsed += this.valueLen[this.writing];
+		this.refsUsed += this.refLen[this.writing];
+		this.marksUsed += this.markLen[this.writing];
+		this.sinceKeyframe = this.keyframe[this.writing] ? 0 : this.sinceKeyframe + 1;
+		this.shadows = Math.max(this.shadows, this.sections);
+		this.needKeyframe = false;
+		this.count += 1;
+		this.writing = -1;
+		return true;
+	}
+
+	// RESTORING
+
+	// Positions the read cursors at the start of the keyframe the snapshot of the given tick builds
+	// on, if that tick is still held. Each snapshot up to the one asked for is then read in turn,
+	// moving on with advance.
+	// EFFECT: Modifies this' read cursors
+	boolean seek(int tick) {
+		for (int i = 0; i < this.count; i += 1) {
+			if (this.ticks[this.slot(i)] == tick) {
+				int first = i;
+				while (!this.keyframe[this.slot(first)]) {
+					first -= 1;
+				}
+				this.readIndex = first;
+				this.readTarget = i;
+				this.position(this.slot(first));
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Moves the read cursors on to the next snapshot toward the tick sought, or returns false if
+	// the one just read was that tick's
+	// EFFECT: Modifies this' read cursors
+	boolean advance() {
+		if (this.readIndex >= this.readTarget) {
+			return false;
+		}
+		this.readIndex += 1;
+		this.position(this.slot(this.readIndex));
+		return true;
+	}
+
+	// Opens the next section of the snapshot being read and returns whether it was kept, in which
+	// case its contents follow, or left out as unchanged since the snapshot before
+	// EFFECT: Advances this' read cursors
+	boolean section() {
+		boolean kept = true;
+		if (!this.readKeyframe) {
+			while (this.readRunLeft == 0) {
+				this.readRunKept = !this.readRunKept;
+				this.readRunLeft = this.marks[this.markRead];
+				this.markRead = (this.markRead + 1) % this.marks.length;
+			}
+			this.readRunLeft -= 1;
+			kept = this.readRunKept;
+		}
+		if (kept) {
+			this.getRef();
+		}
+		return kept;
+	}
+
+	// Reads the next number of the snapshot being restored
+	// EFFECT: Advances this' read cursor
+	double get() {
+		double value = this.values[this.valueRead];
+		this.valueRead = (this.valueRead + 1) % this.values.length;
+		return value;
+	}
+
+	// Reads the next flag of the snapshot being restored
+	// EFFECT: Advances this' read cursor
+	boolean getBoolean() {
+		return this.get() != 0;
+	}
+
+	// Reads the next number of the snapshot being restored as an integer
+	// EFFECT: Advances this' read cursor
+	int getInt() {
+		return (int) this.get();
+	}
+
+	// Reads the next reference of the snapshot being restored
+	// EFFECT: Advances this' read cursor
+	Object getRef() {
+		Object ref = this.refs[this.refRead];
+		this.refRead = (this.refRead + 1) % this.refs.length;
+		return ref;
+	}
+
+	// Forgets every snapshot recorded after the given tick, after which the next snapshot recorded
+	// is a keyframe, as what each section last held is no longer what was recorded last
+	// EFFECT: Modifies this' slots and arenas
+	void truncateAfter(int tick) {
+		while (this.count > 0 && this.ticks[this.slot(this.count - 1)] > tick) {
+			int s = this.slot(this.count - 1);
+			this.valuesUsed -= this.valueLen[s];
+			this.refsUsed -= this.refLen[s];
+			this.marksUsed -= this.markLen[s];
+			this.valueHead = this.valueStart[s];
+			this.refHead = this.refStart[s];
+			this.markHead = this.markStart[s];
+			this.clearRefs(s);
+			this.count -= 1;
+			this.needKeyframe = true;
+		}
+	}
+
+	// Returns the slot index of the i-th oldest snapshot
+	private int slot(int i) {
+		return (this.oldest + i) % this.ticks.length;
+	}
+
+	// Positions the read cursors at the start of the given slot
+	// EFFECT: Modifies this' read cursors
+	private void position(int s) {
+		this.valueRead = this.valueStart[s];
+		this.refRead = this.refStart[s];
+		this.markRead = this.markStart[s];
+		this.readKeyframe = this.keyframe[s];
+		this.readRunKept = false;
+		this.readRunLeft = 0;
+	}
+
+	// Does section s, written at the given positions and lengths, hold just what it last held?
+	private boolean unchanged(int s, int vs, int vl, int rs, int rl) {
+		if (s >= this.shadows || this.shadowValueLen[s] != vl || this.shadowRefLen[s] != rl) {
+			return false;
+		}
+		for (int i = 0; i < rl; i += 1) {
+			if (this.shadowRefs[s][i] != this.refs[(rs + i) % this.refs.length]) {
+				return false;
+			}
+		}
+		for (int i = 0; i < vl; i += 1) {
+			if (Double.doubleToRawLongBits(this.shadowValues[s][i]) != Double
+					.doubleToRawLongBits(this.values[(vs + i) % this.values.length])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Remembers what section s, written at the given positions and lengths, holds
+	// EFFECT: Modifies this' record of each section, growing it if needed
+	private void remember(int s, int vs, int vl, int rs, int rl) {
+		if (s >= this.shadowValues.length) {
+			int size = Math.max(s + 1, this.shadowValues.length * 2);
+			this.shadowValues = Arrays.copyOf(this.shadowValues, size);
+			this.shadowRefs = Arrays.copyOf(this.shadowRefs, size);
+			this.shadowValueLen = Arrays.copyOf(this.shadowValueLen, size);
+			this.shadowRefLen = Arrays.copyOf(this.shadowRefLen, size);
+		}
+		if (this.shadowValues[s] == null || this.shadowValues[s].length < vl) {
+			this.shadowValues[s] = new double[Math.max(4, vl * 2)];
+		}
+		if (this.shadowRefs[s] == null || this.shadowRefs[s].length < rl) {
+			this.shadowRefs[s] = new Object[Math.max(2, rl * 2)];
+		}
+		for (int i = 0; i < vl; i += 1) {
+			this.shadowValues[s][i] = this.values[(vs + i) % this.values.length];
+		}
+		for (int i = 0; i < rl; i += 1) {
+			this.shadowRefs[s][i] = this.refs[(rs + i) % this.refs.length];
+		}
+		this.shadowValueLen[s] = vl;
+		this.shadowRefLen[s] = rl;
+	}
+
+	// Appends a count of sections kept or left out to the snapshot being recorded
+	// EFFECT: Modifies this' mark arena, possibly growing it or forgetting old snapshots for room
+	private void putMark(int run) {
+		while (this.marksUsed + this.markLen[this.writing] >= this.marks.length) {
+			if (this.marks.length < this.maxMarks && this.count + 1 < this.ticks.length) {
+				this.growMarks();
+			} else {
+				this.forgetOldestForRoom();
+			}
+		}
+		this.marks[this.markHead] = run;
+		this.markHead = (this.markHead + 1) % this.marks.length;
+		this.markLen[this.writing] += 1;
+	}
+
+	// Doubles the value arena, up to its limit, keeping every snapshot held
+	// EFFECT: Modifies this' value arena and slots
+	private void growValues() {
+		int from = this.count > 0 ? this.valueStart[this.oldest] : this.valueStart[this.writing];
+		int used = this.valuesUsed + this.valueLen[this.writing];
+		double[] next = new double[Math.min(this.maxValues, this.values.length * 2)];
+		this.unwrap(this.values, this.values.length, from, used, next);
+		this.rebase(this.valueStart, from, this.values.length);
+		this.values = next;
+		this.valueHead = used;
+		this.grown += 1;
+	}
+
+	// Doubles the reference arena, up to its limit, keeping every snapshot held
+	// EFFECT: Modifies this' reference arena and slots
+	private void growRefs() {
+		int from = this.count > 0 ? this.refStart[this.oldest] : this.refStart[this.writing];
+		int used = this.refsUsed + this.refLen[this.writing];
+		Object[] next = new Object[Math.min(this.maxRefs, this.refs.length * 2)];
+		this.unwrap(this.refs, this.refs.length, from, used, next);
+		this.rebase(this.refStart, from, this.refs.length);
+		this.refs = next;
+		this.refHead = used;
+		this.grown += 1;
+	}
+
+	// Doubles the mark arena, up to its limit, keeping every snapshot held
+	// EFFECT: Modifies this' mark arena and slots
+	private void growMarks() {
+		int from = this.count > 0 ? this.markStart[this.oldest] : this.markStart[this.writing];
+		int used = this.marksUsed + this.markLen[this.writing];
+		int[] next = new int[Math.min(this.maxMarks, this.marks.length * 2)];
+		this.unwrap(this.marks, this.marks.length, from, used, next);
+		this.rebase(this.markStart, from, this.marks.length);
+		this.marks = next;
+		this.markHead = used;
+		this.grown += 1;
+	}
+
+	// Copies the given number of elements of the given circular arena, starting at the given
+	// position, to the start of the given array
+	// EFFECT: Modifies the given array
+	private void unwrap(Object arena, int length, int from, int used, Object into) {
+		int first = Math.min(used, length - from);
+		System.arraycopy(arena, from, into, 0, first);
+		System.arraycopy(arena, 0, into, first, used - first);
+	}
+
+	// Moves the given starts of every held slot, and the one being written, to where unwrapping an
+	// arena of the given length from the given position leaves them
+	// EFFECT: Modifies the given starts
+	private void rebase(int[] starts, int from, int length) {
+		for (int i = 0; i <= this.count; i += 1) {
+			int s = this.slot(i);
+			starts[s] = (starts[s] - from + length) % length;
+		}
+	}
+
+	// Forgets the oldest snapshot to make arena room for the one being recorded
+	// EFFECT: Modifies this' slots
+	private void forgetOldestForRoom() {
+		if (this.count == 0) {
+			throw new RuntimeException("A single snapshot exceeds the rewind budget.");
+		}
+		int before = this.count;
+		this.forgetOldest();
+		this.evicted += before - this.count;
+		if (this.count == 0 && !this.keyframe[this.writing]) {
+			this.orphaned = true;
+		}
+	}
+
+	// Forgets the oldest complete snapshot, and every snapshot after it up to the next keyframe as
+	// they cannot be restored without it
+	// EFFECT: Modifies this' slots and arenas
+	private void forgetOldest() {
+		do {
+			this.valuesUsed -= this.valueLen[this.oldest];
+			this.refsUsed -= this.refLen[this.oldest];
+			this.marksUsed -= this.markLen[this.oldest];
+			this.clearRefs(this.oldest);
+			this.oldest = (this.oldest + 1) % this.ticks.length;
+			this.count -= 1;
+		} while (this.count > 0 && !this.keyframe[this.oldest]);
+	}
+
+	// Drops the references held by the given slot so forgotten components can be collected
+	// EFFECT: Modifies this' reference arena
+	private void clearRefs(int s) {
+		for (int i = 0; i < this.refLen[s]; i += 1) {
+			this.refs[(this.refStart[s] + i) % this.refs.length] = null;
+		}
+	}
+}
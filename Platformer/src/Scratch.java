@@ -36,40 +36,3 @@ class TickedAttribute {
 		this.ticksSoFar = 0;
 	}
 }
-
-class Ray {
-	private final Vector2D position;
-	private final double rayDirection;
-	
-	Ray(Vector2D position, double rayDirection) {
-		this.position = position;
-		this.rayDirection = rayDirection;
-	}
-	
-	Ray(Vector2D position, Vector2D directionVector) {
-		this(position, directionVector.angle());
-	}
-	
-	boolean intersects(Vector2D point) {
-		return this.position.displacementTo(point).angle() == this.rayDirection;
-	}
-	
-	boolean intersects(Ray other) {
-		double angleFromOther = other.angleTo(this.position);
-		double angleFromThis = this.angleTo(other.getPosition());
-		return angleFromOther + angleFromThis < 180;
-	}
-	
-	double angleTo(Vector2D position) {
-		Vector2D displacement = this.position.displacementTo(position);
-		return displacement.angle() - this.rayDirection;
-	}
-	
-	Vector2D getPosition() {
-		return this.position;
-	}
-	
-	double getDirection() {
-		return this.rayDirection;
-	}
-}
\ No newline at end of file
@@ -0,0 +1,366 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+// One tick of encoded game state shared by every spectator it is sent to, recycled once all have sent it
+class SharedFrame {
+	private final ArrayDeque<SharedFrame> pool;
+	ByteBuffer data;
+	int tick;
+	private int refs;
+
+	SharedFrame(ArrayDeque<SharedFrame> pool, int capacity) {
+		this.pool = pool;
+		this.data = ByteBuffer.allocateDirect(capacity);
+		this.refs = 0;
+	}
+
+	// Claims one more reference to this frame
+	// EFFECT: Modifies this' reference count
+	void retain() {
+		this.refs += 1;
+	}
+
+	// Gives up one reference to this frame, returning it to its pool when none remain
+	// EFFECT: Modifies this' reference count and possibly the pool
+	void release() {
+		if (this.refs <= 0) {
+			throw new RuntimeException("Frame released more times than retained.");
+		}
+		this.refs -= 1;
+		if (this.refs == 0) {
+			this.pool.push(this);
+		}
+	}
+
+	// Ensures this frame can hold at least the given number of bytes, then empties it
+	// EFFECT: Modifies this' data buffer
+	void reset(int capacity) {
+		if (this.data.capacity() < capacity) {
+			this.data = ByteBuffer.allocateDirect(Math.max(capacity, this.data.capacity() * 2));
+		}
+		this.data.clear();
+	}
+}
+
+// A connected spectator and the frames queued for it, written with a single gathering write
+class SpectatorConnection {
+	final SocketChannel channel;
+	// Frames not yet fully written, oldest first, each with this connection's own read-only view
+	private final ArrayDeque<SharedFrame> frames;
+	private final ArrayDeque<ByteBuffer> views;
+	private final ByteBuffer[] gather;
+
+	SpectatorConnection(SocketChannel channel, int maxQueued) {
+		this.channel = channel;
+		this.frames = new ArrayDeque<>();
+		this.views = new ArrayDeque<>();
+		this.gather = new ByteBuffer[maxQueued];
+	}
+
+	// Number of frames waiting to be written
+	int queued() {
+		return this.frames.size();
+	}
+
+	// Queues the given frame for this spectator
+	// EFFECT: Retains the frame and modifies this' queue
+	void enqueue(SharedFrame frame) {
+		frame.retain();
+		this.frames.add(frame);
+		this.views.add(frame.data.asReadOnlyBuffer());
+	}
+
+	// Writes as much of the queued frames as the socket accepts without blocking
+	// EFFECT: Modifies this' queue and releases frames that have been fully written
+	void flush() throws IOException {
+		if (this.frames.isEmpty()) {
+			return;
+		}
+		int n = 0;
+		for (ByteBuffer view : this.views) {
+			this.gather[n] = view;
+			n += 1;
+		}
+		this.channel.write(this.gather, 0, n);
+		while (!this.views.isEmpty() && !this.views.peek().hasRemaining()) {
+			this.views.poll();
+			this.frames.poll().release();
+		}
+	}
+
+	// Gives up every queued frame and the socket
+	// EFFECT: Releases queued frames and closes this' channel
+	void close() throws IOException {
+		for (SharedFrame frame : this.frames) {
+			frame.release();
+		}
+		this.frames.clear();
+		this.views.clear();
+		this.channel.close();
+	}
+}
+
+// Streams every tick of a game to any number of read-only spectators over TCP.
+// Each tick is encoded exactly once, and spectators that fall too far behind are disconnected.
+class SpectatorServer {
+	static final int HEADER_BYTES = 10; // Length prefix, tick, and entity count
+	static final int BACKLOG = 1024; // Spectators that may wait to be accepted between ticks
+
+	final ServerSocketChannel server;
+	final Selector selector;
+	final ArrayList<SpectatorConnection> connections;
+	// Frames a spectator may have queued before it is considered too slow and dropped
+	final int maxQueued;
+	// Socket send buffer size for accepted spectators, or 0 for the system default
+	final int sendBuffer;
+	// Counters for benchmarking
+	long framesEncoded;
+	long encodeNanos;
+	long dropped;
+
+	private final NetCodec codec;
+	private final ArrayDeque<SharedFrame> pool;
+	// Ids of the components of games published directly, kept while each stays in play
+	private final EntityIds ids;
+
+	SpectatorServer(InetSocketAddress bindTo, int maxQueued, int sendBuffer) throws IOException {
+		this.server = ServerSocketChannel.open();
+		this.server.configureBlocking(false);
+		this.server.bind(bindTo, BACKLOG);
+		this.selector = Selector.open();
+		this.server.register(this.selector, SelectionKey.OP_ACCEPT);
+		this.connections = new ArrayList<>();
+		if (maxQueued <= 0) {
+			throw new IllegalArgumentException("Spectators must be able to queue at least one frame.");
+		}
+		this.maxQueued = maxQueued;
+		this.sendBuffer = sendBuffer;
+		this.codec = new NetCodec();
+		this.pool = new ArrayDeque<>();
+		this.ids = new EntityIds();
+	}
+
+	// Convenience constructor listens on the given local port allowing one second of backlog per spectator
+	SpectatorServer(int port) throws IOException {
+		this(new InetSocketAddress("127.0.0.1", port), Timestep.configured().ticks(1), 0);
+	}
+
+	// The address spectators should connect to
+	InetSocketAddress address() throws IOException {
+		return (InetSocketAddress) this.server.getLocalAddress();
+	}
+
+	// Number of spectators currently connected
+	int viewers() {
+		return this.connections.size();
+	}
+
+	// Captures every game component in the given game, each under the same id for as long as it
+	// stays in play, and publishes it as the given tick
+	// EFFECT: Modifies connections, their queues, the counters, and this' ids
+	void publish(int tick, PlatformGame game) throws IOException {
+		this.publish(tick, this.ids.capture(game, this.codec));
+	}
+
+	// Accepts waiting spectators, encodes the given entities once, and queues that frame for every spectator
+	// EFFECT: Modifies connections, their queues, and the counters
+	void publish(int tick, ArrayList<NetEntity> world) throws IOException {
+		this.acceptWaiting();
+		long start = System.nanoTime();
+		SharedFrame frame = this.encode(tick, world);
+		this.encodeNanos += System.nanoTime() - start;
+		this.framesEncoded += 1;
+
+		Iterator<SpectatorConnection> it = this.connections.iterator();
+		while (it.hasNext()) {
+			SpectatorConnection sc = it.next();
+			try {
+				if (sc.queued() >= this.maxQueued) {
+					throw new IOException("Spectator fell too far behind.");
+				}
+				sc.enqueue(frame);
+				sc.flush();
+			} catch (IOException e) {
+				sc.close();
+				it.remove();
+				this.dropped += 1;
+			}
+		}
+		frame.release();
+	}
+
+	// Encodes the given entities as one length-prefixed frame in a recycled buffer
+	SharedFrame encode(int tick, ArrayList<NetEntity> world) {
+		SharedFrame frame = this.pool.isEmpty() ? new SharedFrame(this.pool, INetConstant.MAX_PACKET) : this.pool.pop();
+		frame.reset(HEADER_BYTES + world.size() * INetConstant.MAX_ENTITY_BYTES);
+		frame.retain();
+		frame.tick = tick;
+		ByteBuffer buf = frame.data;
+		buf.putInt(0);
+		buf.putInt(tick);
+		buf.putShort((short) world.size());
+		for (NetEntity ne : world) {
+			this.codec.writeEntity(buf, ne, null, ne.changesFrom(null));
+		}
+		buf.putInt(0, buf.position() - 4);
+		buf.flip();
+		return frame;
+	}
+
+	// Accepts every spectator waiting to connect without blocking
+	// EFFECT: Modifies this' connections
+	void acceptWaiting() throws IOException {
+		if (this.selector.selectNow() == 0) {
+			return;
+		}
+		this.selector.selectedKeys().clear();
+		SocketChannel sc = this.server.accept();
+		while (sc != null) {
+			sc.configureBlocking(false);
+			sc.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			if (this.sendBuffer > 0) {
+				sc.setOption(StandardSocketOptions.SO_SNDBUF, this.sendBuffer);
+			}
+			this.connections.add(new SpectatorConnection(sc, this.maxQueued));
+			sc = this.server.accept();
+		}
+	}
+
+	// Disconnects every spectator and stops listening
+	// EFFECT: Closes all channels
+	void close() throws IOException {
+		for (SpectatorConnection sc : this.connections) {
+			sc.close();
+		}
+		this.connections.clear();
+		this.selector.close();
+		this.server.close();
+	}
+}
+
+// A read-only viewer of a SpectatorServer that decodes the full game state sent each tick
+class SpectatorClient {
+	final SocketChannel channel;
+	ArrayList<NetEntity> world;
+	int latestTick;
+	int framesReceived;
+
+	private final NetCodec codec;
+	private ByteBuffer inBuf;
+
+	SpectatorClient(InetSocketAddress server, int receiveBuffer) throws IOException {
+		this.channel = SocketChannel.open();
+		if (receiveBuffer > 0) {
+			this.channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBuffer);
+		}
+		this.channel.connect(server);
+		this.channel.configureBlocking(false);
+		this.world = new ArrayList<>();
+		this.latestTick = -1;
+		this.framesReceived = 0;
+		this.codec = new NetCodec();
+		this.inBuf = ByteBuffer.allocate(INetConstant.MAX_PACKET);
+	}
+
+	// Convenience constructor uses the system default receive buffer
+	SpectatorClient(InetSocketAddress server) throws IOException {
+		this(server, 0);
+	}
+
+	// Reads and decodes every complete frame available without blocking, returning how many were decoded
+	// EFFECT: Modifies this' view of the world
+	int poll() throws IOException {
+		int decoded = 0;
+		while (this.channel.read(this.inBuf) > 0) {
+			this.inBuf.flip();
+			while (this.frameReady()) {
+				this.decodeFrame(this.inBuf);
+				decoded += 1;
+			}
+			int needed = this.inBuf.remaining() >= 4 ? 4 + this.inBuf.getInt(this.inBuf.position()) : 0;
+			if (needed > this.inBuf.capacity()) {
+				ByteBuffer bigger = ByteBuffer.allocate(needed);
+				bigger.put(this.inBuf);
+				this.inBuf = bigger;
+			} else {
+				this.inBuf.compact();
+			}
+		}
+		this.framesReceived += decoded;
+		return decoded;
+	}
+
+	// Does the buffer, ready for reading, start with a complete frame?
+	boolean frameReady() {
+		return this.inBuf.remaining() >= 4 && this.inBuf.remaining() >= 4 + this.inBuf.getInt(this.inBuf.position());
+	}
+
+	// Decodes one frame at the buffer's position
+	// EFFECT: Advances the buffer's position and modifies this' view of the world
+	void decodeFrame(ByteBuffer buf) {
+		buf.getInt();
+		this.latestTick = buf.getInt();
+		int count = buf.getShort() & 0xFFFF;
+		ArrayList<NetEntity> next = new ArrayList<>();
+		HashMap<Integer, NetEntity> none = new HashMap<>();
+		for (int i = 0; i < count; i += 1) {
+			next.add(this.codec.readEntity(buf, none));
+		}
+		this.world = next;
+	}
+
+	// Stops watching
+	// EFFECT: Closes this' channel
+	void close() throws IOException {
+		this.channel.close();
+	}
+}
+
+// Measures the cost of publishing a game to a growing number of loopback spectators
+class SpectatorBench {
+	static final int TICKS = 500;
+
+	public static void main(String[] args) throws IOException {
+		System.out.println("viewers\tencode us/tick\tpublish us/tick\tdropped");
+		for (int viewers = 1; viewers <= 512; viewers *= 4) {
+			new SpectatorBench().run(viewers);
+		}
+	}
+
+	// Runs a game watched by the given number of spectators that keep up, and prints a row of results
+	void run(int viewers) throws IOException {
+		PlatformGame game = new PlatformGame();
+		SpectatorServer server = new SpectatorServer(0);
+		ArrayList<SpectatorClient> clients = new ArrayList<>();
+		for (int i = 0; i < viewers; i += 1) {
+			clients.add(new SpectatorClient(server.address()));
+			server.acceptWaiting();
+		}
+		long publishNanos = 0;
+		for (int t = 0; t < TICKS; t += 1) {
+			game.tick();
+			long start = System.nanoTime();
+			server.publish(t, game);
+			publishNanos += System.nanoTime() - start;
+			for (SpectatorClient c : clients) {
+				c.poll();
+			}
+		}
+		System.out.printf("%d\t%.2f\t%.1f\t%d%n", viewers, server.encodeNanos / 1e3 / TICKS,
+				publishNanos / 1e3 / TICKS, server.dropped);
+		for (SpectatorClient c : clients) {
+			c.close();
+		}
+		server.close();
+	}
+}
@@ -0,0 +1,393 @@
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import javalib.worldimages.Posn;
+
+// Something told when a component enters or leaves a trigger volume
+interface ITriggerListener {
+	// The given component has just come into the given volume
+	void onEnter(TriggerVolume volume, IGameComponent who);
+
+	// The given component has just left the given volume, or left play while in it
+	void onExit(TriggerVolume volume, IGameComponent who);
+
+	// Records whatever state of this entering and leaving change
+	// EFFECT: Modifies the given history
+	void saveState(RewindBuffer rb);
+
+	// Restores the state saveState recorded
+	// EFFECT: Modifies this and advances the history's read cursor
+	void restoreState(RewindBuffer rb);
+}
+
+// A region of the level, in whole blocks, that tells its listener when components in the given
+// collision layers enter and leave it, such as a checkpoint, a door, an enemy spawn zone, or a ladder
+class TriggerVolume {
+	// The blocks covered, inclusive
+	final int col0;
+	final int row0;
+	final int col1;
+	final int row1;
+	// The collision layers whose components this reports, as bits
+	final int layers;
+	final ITriggerListener listener;
+
+	// Initializes this covering the given number of blocks across and down from the given block
+	TriggerVolume(Posn topLeft, int width, int height, int layers, ITriggerListener listener) {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Trigger volume must cover at least one block.");
+		}
+		this.col0 = topLeft.x;
+		this.row0 = topLeft.y;
+		this.col1 = topLeft.x + width - 1;
+		this.row1 = topLeft.y + height - 1;
+		this.layers = layers;
+		this.listener = listener;
+	}
+
+	// Convenience constructor reports players only
+	TriggerVolume(Posn topLeft, int width, int height, ITriggerListener listener) {
+		this(topLeft, width, height, CollisionLayers.PLAYER, listener);
+	}
+
+	// Does this report the given component, and does it cover any of the given blocks?
+	boolean covers(IGameComponent who, int c0, int r0, int c1, int r1) {
+		return (this.layers & who.collisionLayer()) != 0 && c0 <= this.col1 && c1 >= this.col0 && r0 <= this.row1
+				&& r1 >= this.row0;
+	}
+}
+
+// What a trigger set remembers about a component it tracks: the blocks it covered when last looked
+// at, the last update it was seen in, and the volumes it is in
+class TriggerOccupant {
+	int col0;
+	int row0;
+	int col1;
+	int row1;
+	int seen;
+	final ArrayList<TriggerVolume> inside;
+
+	TriggerOccupant() {
+		this.col0 = Integer.MIN_VALUE;
+		this.row0 = Integer.MIN_VALUE;
+		this.col1 = Integer.MIN_VALUE;
+		this.row1 = Integer.MIN_VALUE;
+		this.seen = 0;
+		this.inside = new ArrayList<>();
+	}
+}
+
+// The trigger volumes of a level, indexed in square buckets of blocks, and which volumes each
+// player and awake enemy is in. Volumes cover whole blocks, so what a component is in can only
+// change when the blocks it covers do: each tick a component costs a few comparisons, and only one
+// that has crossed a block boundary looks up the volumes in the buckets it now covers. A level with
+// thousands of volumes costs the same per tick as one with ten. Which volumes components are in is
+// not kept in history; after a rewind, entering and leaving are reported as components next move.
+// What the listeners did on entering and leaving is kept, once per listener however many volumes
+// share it.
+class TriggerSet {
+	// Blocks along each side of a bucket of the index
+	static final int BUCKET = 8;
+
+	private final ArrayList<TriggerVolume> volumes;
+	// Each listener of a volume once, in the order first added
+	private final ArrayList<ITriggerListener> listeners;
+	private final IdentityHashMap<ITriggerListener, Boolean> listening;
+	// Buckets by column then row, starting from the bucket at the given coordinates, each null or
+	// the volumes overlapping it
+	private ArrayList<TriggerVolume>[][] buckets;
+	private int bucketCol0;
+	private int bucketRow0;
+	private boolean stale;
+	private final IdentityHashMap<IGameComponent, TriggerOccupant> occupants;
+	// Scratch list of the volumes a component is found in
+	private final ArrayList<TriggerVolume> found;
+	// Updates made, and components tracked in the last one
+	int updates;
+	private int tracked;
+	// Times a component crossed a block boundary and was looked up, and volumes entered and left,
+	// for measuring
+	long lookups;
+	long entered;
+	long exited;
+
+	TriggerSet() {
+		this.volumes = new ArrayList<>();
+		this.listeners = new ArrayList<>();
+		this.listening = new IdentityHashMap<>();
+		this.buckets = this.emptyBuckets(0, 0);
+		this.bucketCol0 = 0;
+		this.bucketRow0 = 0;
+		this.stale = false;
+		this.occupants = new IdentityHashMap<>();
+		this.found = new ArrayList<>();
+		this.updates = 0;
+		this.tracked = 0;
+		this.lookups = 0;
+		this.entered = 0;
+		this.exited = 0;
+	}
+
+	// Number of volumes
+	int size() {
+		return this.volumes.size();
+	}
+
+	// Adds the given volume, which is first reported on at the next update
+	// EFFECT: Modifies this' volumes
+	void add(TriggerVolume volume) {
+		this.volumes.add(volume);
+		if (this.listening.put(volume.listener, true) == null) {
+			this.listeners.add(volume.listener);
+		}
+		this.stale = true;
+	}
+
+	// Records the state of every listener
+	// EFFECT: Modifies the given history
+	void saveState(RewindBuffer rb) {
+		rb.put(this.listeners.size());
+		for (int i = 0; i < this.listeners.size(); i += 1) {
+			this.listeners.get(i).saveState(rb);
+		}
+	}
+
+	// Restores the state of every listener that was recorded, leaving those added since as they are
+	// EFFECT: Modifies the listeners and advances the history's read cursor
+	void restoreState(RewindBuffer rb) {
+		int n = rb.getInt();
+		for (int i = 0; i < n; i += 1) {
+			this.listeners.get(i).restoreState(rb);
+		}
+	}
+
+	// Is the given component in the given volume, as of the last update?
+	boolean inside(IGameComponent who, TriggerVolume volume) {
+		TriggerOccupant o = this.occupants.get(who);
+		return o != null && o.inside.contains(volume);
+	}
+
+	// Reports to their volumes every player and awake enemy that has entered or left one since the
+	// last update, and those that have left play or fallen asleep while in one. Called at the end
+	// of each tick.
+	// EFFECT: Modifies this and whatever the volumes' listeners modify
+	void update(PlatformGame game) {
+		if (this.volumes.isEmpty() && this.occupants.isEmpty()) {
+			return;
+		}
+		if (this.stale) {
+			this.rebuild();
+		}
+		this.updates += 1;
+		this.tracked = 0;
+		for (int i = 0; i < game.players.size(); i += 1) {
+			this.track(game.players.get(i));
+		}
+		for (int i = 0; i < game.activity.awake.size(); i += 1) {
+			this.track(game.activity.awake.get(i));
+		}
+		if (this.occupants.size() > this.tracked) {
+			this.forgetUnseen();
+		}
+	}
+
+	// Looks the given component up again if it has crossed a block boundary since last looked at
+	// EFFECT: Modifies this' record of the component, and whatever the volumes' listeners modify
+	void track(IGameComponent who) {
+		ICollisionBody body = who.getCollisionBody();
+		int c0 = this.cellOf(body.left() + IConstant.COL_TOL);
+		int r0 = this.cellOf(body.top() + IConstant.COL_TOL);
+		int c1 = this.cellOf(body.right() - IConstant.COL_TOL);
+		int r1 = this.cellOf(body.bottom() - IConstant.COL_TOL);
+		TriggerOccupant o = this.occupants.get(who);
+		if (o == null) {
+			o = new TriggerOccupant();
+			this.occupants.put(who, o);
+		}
+		if (o.seen != this.updates) {
+			o.seen = this.updates;
+			this.tracked += 1;
+		}
+		if (c0 == o.col0 && r0 == o.row0 && c1 == o.col1 && r1 == o.row1) {
+			return;
+		}
+		o.col0 = c0;
+		o.row0 = r0;
+		o.col1 = c1;
+		o.row1 = r1;
+		this.lookups += 1;
+		this.found.clear();
+		int b0 = Math.max(0, Math.floorDiv(c0, BUCKET) - this.bucketCol0);
+		int b1 = Math.min(this.buckets.length - 1, Math.floorDiv(c1, BUCKET) - this.bucketCol0);
+		for (int bc = b0; bc <= b1; bc += 1) {
+			int d0 = Math.max(0, Math.floorDiv(r0, BUCKET) - this.bucketRow0);
+			int d1 = Math.min(this.buckets[bc].length - 1, Math.floorDiv(r1, BUCKET) - this.bucketRow0);
+			for (int br = d0; br <= d1; br += 1) {
+				ArrayList<TriggerVolume> bucket = this.buckets[bc][br];
+				for (int i = 0; bucket != null && i < bucket.size(); i += 1) {
+					TriggerVolume v = bucket.get(i);
+					if (v.covers(who, c0, r0, c1, r1) && !this.found.contains(v)) {
+						this.found.add(v);
+					}
+				}
+			}
+		}
+		this.report(who, o);
+	}
+
+	// Tells the volumes the given component has left and those it has entered, in that order, and
+	// remembers the volumes it was found in
+	// EFFECT: Modifies the given record, and whatever the volumes' listeners modify
+	void report(IGameComponent who, TriggerOccupant o) {
+		for (int i = 0; i < o.inside.size(); i += 1) {
+			TriggerVolume v = o.inside.get(i);
+			if (!this.found.contains(v)) {
+				this.exited += 1;
+				v.listener.onExit(v, who);
+			}
+		}
+		for (int i = 0; i < this.found.size(); i += 1) {
+			TriggerVolume v = this.found.get(i);
+			if (!o.inside.contains(v)) {
+				this.entered += 1;
+				v.listener.onEnter(v, who);
+			}
+		}
+		o.inside.clear();
+		for (int i = 0; i < this.found.size(); i += 1) {
+			o.inside.add(this.found.get(i));
+		}
+	}
+
+	// Stops tracking components not seen in this update, telling the volumes they were in that
+	// they have left
+	// EFFECT: Modifies this' records, and whatever the volumes' listeners modify
+	void forgetUnseen() {
+		ArrayList<IGameComponent> gone = new ArrayList<>();
+		for (IGameComponent who : this.occupants.keySet()) {
+			if (this.occupants.get(who).seen != this.updates) {
+				gone.add(who);
+			}
+		}
+		for (IGameComponent who : gone) {
+			TriggerOccupant o = this.occupants.remove(who);
+			for (TriggerVolume v : o.inside) {
+				this.exited += 1;
+				v.listener.onExit(v, who);
+			}
+		}
+	}
+
+	// The block containing the given coordinate in pixels
+	int cellOf(double pixels) {
+		return (int) Math.floor(pixels / IConstant.BLOCK_SIZE);
+	}
+
+	// Indexes every volume in each bucket it overlaps, over just the buckets the volumes span
+	// EFFECT: Modifies this' buckets
+	void rebuild() {
+		int minC = Integer.MAX_VALUE;
+		int minR = Integer.MAX_VALUE;
+		int maxC = Integer.MIN_VALUE;
+		int maxR = Integer.MIN_VALUE;
+		for (TriggerVolume v : this.volumes) {
+			minC = Math.min(minC, Math.floorDiv(v.col0, BUCKET));
+			minR = Math.min(minR, Math.floorDiv(v.row0, BUCKET));
+			maxC = Math.max(maxC, Math.floorDiv(v.col1, BUCKET));
+			maxR = Math.max(maxR, Math.floorDiv(v.row1, BUCKET));
+		}
+		this.bucketCol0 = minC;
+		this.bucketRow0 = minR;
+		this.buckets = this.emptyBuckets(maxC - minC + 1, maxR - minR + 1);
+		for (TriggerVolume v : this.volumes) {
+			for (int bc = Math.floorDiv(v.col0, BUCKET); bc <= Math.floorDiv(v.col1, BUCKET); bc += 1) {
+				for (int br = Math.floorDiv(v.row0, BUCKET); br <= Math.floorDiv(v.row1, BUCKET); br += 1) {
+					if (this.buckets[bc - minC][br - minR] == null) {
+						this.buckets[bc - minC][br - minR] = new ArrayList<>();
+					}
+					this.buckets[bc - minC][br - minR].add(v);
+				}
+			}
+		}
+		this.stale = false;
+		// Components are looked up again against the new index wherever they are
+		for (TriggerOccupant o : this.occupants.values()) {
+			o.col0 = Integer.MIN_VALUE;
+		}
+	}
+
+	// A grid of the given numbers of empty buckets
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	ArrayList<TriggerVolume>[][] emptyBuckets(int cols, int rows) {
+		return (ArrayList<TriggerVolume>[][]) new ArrayList[cols][rows];
+	}
+}
+
+// Brings the given enemies into play the first time a player enters its volume
+class SpawnZone implements ITriggerListener {
+	final PlatformGame game;
+	final ArrayList<IEnemy> spawns;
+	boolean spawned;
+
+	SpawnZone(PlatformGame game, ArrayList<IEnemy> spawns) {
+		this.game = game;
+		this.spawns = spawns;
+		this.spawned = false;
+	}
+
+	// Adds the enemies to the game on the first entry
+	// EFFECT: Modifies the game's enemies and this
+	public void onEnter(TriggerVolume volume, IGameComponent who) {
+		if (!this.spawned) {
+			this.spawned = true;
+			this.game.enemies.addAll(this.spawns);
+		}
+	}
+
+	// Leaving the zone changes nothing
+	public void onExit(TriggerVolume volume, IGameComponent who) {}
+
+	// Records whether the enemies have been brought in
+	// EFFECT: Modifies the given history
+	public void saveState(RewindBuffer rb) {
+		rb.put(this.spawned);
+	}
+
+	// Restores whether the enemies have been brought in, so rewinding to before the first entry
+	// lets the next one bring them in again
+	// EFFECT: Modifies this and advances the history's read cursor
+	public void restoreState(RewindBuffer rb) {
+		this.spawned = rb.getBoolean();
+	}
+}
+
+// Measures the average tick of a player running along a floor scattered with ever more trigger
+// volumes, printing one row per number of volumes
+class TriggerBench {
+	static final int[] VOLUMES = { 10, 1000, 100000 };
+	static final int TICKS = 2000;
+
+	public static void main(String[] args) {
+		System.out.println("volumes\tus/tick\tlookups\tentered");
+		for (int i = 0; i < VOLUMES.length; i += 1) {
+			PlatformGame game = new PlatformGame(new Util().topLFromBlock(new Posn(5, 10)), 0, 0);
+			game.ground.add(new EnvironmentGenerator().line(new Posn(0, 13), true, 2000));
+			ITriggerListener quiet = new SpawnZone(game, new ArrayList<>());
+			for (int v = 0; v < VOLUMES[i]; v += 1) {
+				game.triggers.add(new TriggerVolume(new Posn(v * 7 % 2000, 5 + v % 7), 2, 2, quiet));
+			}
+			game.startLevel();
+			for (int t = 0; t < TICKS / 4; t += 1) {
+				game.playerMoveX(true);
+				game.tick();
+			}
+			long start = System.nanoTime();
+			for (int t = 0; t < TICKS; t += 1) {
+				game.playerMoveX(true);
+				game.tick();
+			}
+			System.out.printf("%d\t%.1f\t%d\t%d%n", VOLUMES[i], (System.nanoTime() - start) / 1e3 / TICKS,
+					game.triggers.lookups, game.triggers.entered);
+		}
+	}
+}
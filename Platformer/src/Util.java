@@ -1,4 +1,5 @@
 import java.awt.Color;
+import java.awt.Graphics2D;
 import java.util.ArrayList;
 
 import javalib.worldimages.OutlineMode;
@@ -17,6 +18,37 @@ interface IFunc<A, R> {
 
 interface IPred<T> extends IFunc<T, Boolean>{}
 
+// Utility methods for painting the same pictures ImgUtil makes straight onto Java2D graphics
+class PaintUtil {
+	// Paints an inventory box with its top-left at the given position, holding a block of the
+	// given color, its inventory position, and its ammo if that is not negative
+	// EFFECT: Modifies the given graphics
+	void paintInventoryBox(Graphics2D g, int x, int y, int inventoryPos, int ammo, Color icon) {
+		int size = IConstant.BLOCK_SIZE * 3;
+		g.setColor(Color.BLACK);
+		g.fillRect(x, y, size, size);
+		g.setColor(Color.WHITE);
+		g.fillRect(x + 1, y + 1, size - 3, size - 3);
+		g.setColor(icon);
+		g.fillRect(x + IConstant.BLOCK_SIZE, y + IConstant.BLOCK_SIZE, IConstant.BLOCK_SIZE, IConstant.BLOCK_SIZE);
+		g.setColor(Color.BLACK);
+		g.drawString(Integer.toString(inventoryPos), x + 2, y + size - 3);
+		if(ammo >= 0) {
+			g.drawString(Integer.toString(ammo), x + size - IConstant.BLOCK_SIZE - 2, y + size - 3);
+		}
+	}
+	
+	// Paints a health box with its top-left at the given position, red if it holds health
+	// EFFECT: Modifies the given graphics
+	void paintHealthBox(Graphics2D g, int x, int y, boolean hasHealth) {
+		int size = IConstant.BLOCK_SIZE * 2;
+		g.setColor(Color.BLACK);
+		g.fillRect(x, y, size, size);
+		g.setColor(hasHealth ? Color.RED : Color.WHITE);
+		g.fillRect(x + 1, y + 1, size - 2, size - 2);
+	}
+}
+
 // Utility methods for images
 class ImgUtil {
 	// Moves pinhole to top left corner of the given image
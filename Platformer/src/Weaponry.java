@@ -1,4 +1,5 @@
 import java.awt.Color;
+import java.awt.Graphics2D;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -14,16 +15,26 @@ import javalib.worldimages.BesideImage;
 // To represent an inventory of unique weapons
 class Weaponry implements IDrawable {
 	static final int MAX_WEAPONS = 10;
+	// Number of values that together say what the inventory shows
+	static final int HUD_SIZE = Weaponry.MAX_WEAPONS + 1;
 	// To convert from inventory positions to the particular weapon held in the inventory
 	private final HashMap<Integer, IWeapon> weapons;
 	// Initially no weapon
 	int currWeapon = 0;
+	// Shots fired by hitscan weapons this tick, struck all at once when the game resolves them
+	final RayBatch rays;
+	// Blasts set off by thrown explosives this physics step, likewise resolved all at once
+	final BlastBatch blasts;
 	
 	Weaponry() {
 		this.weapons = new HashMap<>();
+		this.rays = new RayBatch(CollisionLayers.PLAYER_PROJECTILE);
+		this.blasts = new BlastBatch();
 		this.weapons.put(0, new NoWeapon());
 		this.weapons.put(1, new Knife());
 		this.weapons.put(2,  new Pistol());
+		this.weapons.put(3, new Rifle(this.rays));
+		this.weapons.put(4, new Grenade(this.blasts));
 	}
 	
 	// Adds the given weapon only if that weapon has not been picked up before
@@ -59,9 +70,12 @@ class Weaponry implements IDrawable {
 	
 	// Ticks every weapon in this inventory for reload/refresh purposes
 	// EFFECT: Modifies weapons in this' collection of weapons
-	void tickWeaponry() {
-		for(IWeapon iw : this.weapons.values()) {
-			iw.tickWeapon();
+	void tickWeaponry(double dt) {
+		for(int inv = 0; inv < Weaponry.MAX_WEAPONS; inv += 1) {
+			IWeapon w = this.weapons.get(inv);
+			if(w != null) {
+				w.tickWeapon(dt);
+			}
 		}
 	}
 
@@ -82,6 +96,60 @@ class Weaponry implements IDrawable {
 				IConstant.BLOCK_SIZE, IConstant.BLOCK_SIZE);
 	}
 	
+	// Paints the same inventory straight onto the given graphics
+	// EFFECT: Modifies the given graphics
+	public void paintOnto(Graphics2D g, SpriteCache sprites) {
+		int box = IConstant.BLOCK_SIZE * 3;
+		int x = IConstant.BLOCK_SIZE;
+		for(int inv = 1; inv < Weaponry.MAX_WEAPONS; inv += 1) {
+			IWeapon w = this.weapons.get(inv);
+			if(w != null) {
+				if(inv == this.currWeapon) {
+					g.setColor(Color.ORANGE);
+					g.fillRect(x - 1, IConstant.BLOCK_SIZE - 1, box + 2, box + 2);
+				}
+				w.paintInventory(g, x, IConstant.BLOCK_SIZE);
+				x += box + (inv == this.currWeapon ? 2 : 0);
+			}
+		}
+	}
+	
+	// Writes what the inventory shows into the given array, starting at the given index: the active
+	// weapon, then the ammunition of each weapon in inventory order, or -2 where none is held. Takes
+	// Weaponry.HUD_SIZE places.
+	// EFFECT: Modifies the given array
+	void hudState(int[] out, int at) {
+		out[at] = this.currWeapon;
+		for(int inv = 0; inv < Weaponry.MAX_WEAPONS; inv += 1) {
+			IWeapon w = this.weapons.get(inv);
+			out[at + 1 + inv] = w == null ? -2 : w.ammoShown();
+		}
+	}
+	
+	// Records the active weapon and the state of each weapon held, in inventory order
+	// EFFECT: Appends to the given history
+	void saveState(RewindBuffer rb) {
+		rb.put(this.currWeapon);
+		for(int inv = 0; inv < Weaponry.MAX_WEAPONS; inv += 1) {
+			IWeapon w = this.weapons.get(inv);
+			if(w != null) {
+				w.saveState(rb);
+			}
+		}
+	}
+	
+	// Restores the active weapon and the state of each weapon held, in inventory order
+	// EFFECT: Modifies this and its weapons, and advances the history's read cursor
+	void restoreState(RewindBuffer rb) {
+		this.currWeapon = rb.getInt();
+		for(int inv = 0; inv < Weaponry.MAX_WEAPONS; inv += 1) {
+			IWeapon w = this.weapons.get(inv);
+			if(w != null) {
+				w.restoreState(rb);
+			}
+		}
+	}
+	
 	// Returns a list of the weapons in order by their position
 	ArrayList<IWeapon> weaponsInOrder() {
 		ArrayList<IWeapon> result = new ArrayList<>();
@@ -100,18 +168,32 @@ interface IWeapon {
 	// The unique position this type of weapon occupies in the inventory
 	int inventoryPos();
 	
-	// Causes this weapon to produce effects based on the position the player fires from and vector to
-	// the target
-	ArrayList<IWeaponEffect> fire(Vector2D from, Vector2D disp);
+	// Adds to out the effects of firing this weapon from the given position toward a target the given
+	// displacement away, allocating nothing unless an effect enters play
+	// EFFECT: Modifies the given list and possibly this' reload and ammunition
+	void fire(double fromX, double fromY, double dx, double dy, ArrayList<IWeaponEffect> out);
 	
-	// Modifies this weapon on a tick for reload/refresh purposes
-	void tickWeapon();
+	// Modifies this weapon on a tick lasting the given number of seconds for reload/refresh purposes
+	void tickWeapon(double dt);
 	
 	// Draws an icon of this weapon for HUD including information like ammo remaining
 	WorldImage drawInventory();
 	
+	// Paints the same inventory box straight onto the given graphics with its top-left at the given position
+	// EFFECT: Modifies the given graphics
+	void paintInventory(Graphics2D g, int x, int y);
+	
+	// The ammunition shown on this weapon's inventory box, or -1 if none is shown
+	int ammoShown();
+	
 	// Add the given amount of ammunition to this weapon if applicable
 	void addAmmo(int amt);
+	
+	// Records this weapon's reload and ammunition into the rewind history
+	void saveState(RewindBuffer rb);
+	
+	// Restores this weapon's reload and ammunition from the rewind history
+	void restoreState(RewindBuffer rb);
 }
 
 // A short-range, early game melee weapon
@@ -129,20 +211,18 @@ class Knife implements IWeapon {
 		return Knife.INV;
 	}
 
-	// Returns a list with one knife-effect if the knife is ready to be swung
-	public ArrayList<IWeaponEffect> fire(Vector2D from, Vector2D disp) {
-		ArrayList<IWeaponEffect> effect = new ArrayList<>();
+	// Adds one knife-effect if the knife is ready to be swung
+	public void fire(double fromX, double fromY, double dx, double dy, ArrayList<IWeaponEffect> out) {
 		if(this.reload.finished()) {
-			this.reload = new TimeTemporary((int) (.5 / IConstant.TICK_RATE));
-			effect.add(new KnifeEffect(from, disp.x >= 0));
+			this.reload = new TimeTemporary(.5);
+			out.add(new KnifeEffect(new Vector2D(fromX, fromY), dx >= 0));
 		}
-		return effect;
 	}
 	
-	// Refreshes the swing of knife by 1 tick, unless it is ready to swing again
-	public void tickWeapon() {
+	// Refreshes the swing of knife by the tick's length, unless it is ready to swing again
+	public void tickWeapon(double dt) {
 		if(! this.reload.finished()) {
-			this.reload = this.reload.onTick();
+			this.reload.countDown(dt);
 		}
 	}
 
@@ -153,10 +233,27 @@ class Knife implements IWeapon {
 		
 		return icon;
 	}
+	
+	public void paintInventory(Graphics2D g, int x, int y) {
+		new PaintUtil().paintInventoryBox(g, x, y, this.inventoryPos(), -1, Color.GRAY);
+	}
+	
+	// A knife needs no ammunition
+	public int ammoShown() {
+		return -1;
+	}
 
 	public void addAmmo(int amt) {
 		throw new RuntimeException("Knife has no ammo.");
 	}
+	
+	public void saveState(RewindBuffer rb) {
+		rb.put(this.reload.secondsLeft());
+	}
+	
+	public void restoreState(RewindBuffer rb) {
+		this.reload = new TimeTemporary(rb.get());
+	}
 }
 
 //A short-range, early game melee weapon
@@ -177,21 +274,19 @@ class Pistol implements IWeapon {
 		return Pistol.INV;
 	}
 
-	// Returns a list with one knife-effect if the knife is ready to be swung
-	public ArrayList<IWeaponEffect> fire(Vector2D from, Vector2D disp) {
-		ArrayList<IWeaponEffect> toReturn = new ArrayList<>();
+	// Adds one bullet toward the target if the pistol is ready to fire
+	public void fire(double fromX, double fromY, double dx, double dy, ArrayList<IWeaponEffect> out) {
 		if(this.reload.finished() && this.ammo > 0) {
-			toReturn.add(new PlayerBullet(from, disp.getUnitVector()));
-			this.reload = new TimeTemporary((int) (1 / IConstant.TICK_RATE));
+			out.add(new PlayerBullet(new Vector2D(fromX, fromY), new Vector2D(dx, dy).getUnitVector()));
+			this.reload = new TimeTemporary(1);
 			this.ammo -= 1;
 		}
-		return toReturn;
 	}
 	
-	// Refreshes the swing of knife by 1 tick, unless it is ready to swing again
-	public void tickWeapon() {
+	// Refreshes the swing of knife by the tick's length, unless it is ready to swing again
+	public void tickWeapon(double dt) {
 		if(! this.reload.finished()) {
-			this.reload = this.reload.onTick();
+			this.reload.countDown(dt);
 		}
 	}
 
@@ -201,12 +296,183 @@ class Pistol implements IWeapon {
 				new ImgUtil().drawInventoryBox(this.inventoryPos(), this.ammo));
 		return icon;
 	}
+	
+	public void paintInventory(Graphics2D g, int x, int y) {
+		new PaintUtil().paintInventoryBox(g, x, y, this.inventoryPos(), this.ammo, Color.BLACK);
+	}
+	
+	public int ammoShown() {
+		return this.ammo;
+	}
 
 	// Adds given ammunition to this' ammo count
 	// EFFECT: Modifies this' ammo
 	public void addAmmo(int amt) {
 		this.ammo += amt;
 	}
+	
+	public void saveState(RewindBuffer rb) {
+		rb.put(this.reload.secondsLeft());
+		rb.put(this.ammo);
+	}
+	
+	public void restoreState(RewindBuffer rb) {
+		this.reload = new TimeTemporary(rb.get());
+		this.ammo = rb.getInt();
+	}
+}
+
+// A long-range weapon firing a tight fan of rounds that strike the instant they are fired, queued
+// as rays for the game to resolve together rather than flown as bullets
+class Rifle implements IWeapon {
+	static final int INV = 3;
+	static final int ROUNDS = 3; // Per shot
+	static final double SPREAD = 2; // In degrees between rounds
+	static final double RELOAD = 0.1; // In seconds
+	static final double RANGE = 60 * IConstant.BLOCK_SIZE; // In pixels, number is blocks
+	static final int DAMAGE = 1; // Per round
+	// The amount of time that must pass between shots
+	TimeTemporary reload;
+	int ammo;
+	// Where this rifle's rounds are queued
+	final RayBatch rays;
+	
+	// A rifle is initially ready to fire, queuing its rounds in the given batch
+	Rifle(RayBatch rays) {
+		this.reload = new TimeTemporary(0);
+		this.ammo = 20;
+		this.rays = rays;
+	}
+	
+	public int inventoryPos() {
+		return Rifle.INV;
+	}
+
+	// Queues a fan of rounds centered on the target if reloaded, adding no effects in play, so
+	// firing allocates nothing
+	// EFFECT: Modifies this' reload and ammo, and its ray batch
+	public void fire(double fromX, double fromY, double dx, double dy, ArrayList<IWeaponEffect> out) {
+		if(this.reload.finished() && this.ammo > 0) {
+			double aim = Angle.toDegrees(Math.atan2(dy, dx));
+			for(int r = 0; r < Rifle.ROUNDS; r += 1) {
+				this.rays.add(fromX, fromY, aim + (r - (Rifle.ROUNDS - 1) / 2.0) * Rifle.SPREAD, 
+						Rifle.RANGE, Rifle.DAMAGE);
+			}
+			this.reload.restart(Rifle.RELOAD);
+			this.ammo -= 1;
+		}
+	}
+	
+	// Counts down the reload by the tick's length, unless it is ready to fire again
+	public void tickWeapon(double dt) {
+		if(! this.reload.finished()) {
+			this.reload.countDown(dt);
+		}
+	}
+
+	// Draws this as a dark grey square in the inventory
+	public WorldImage drawInventory() {
+		return new OverlayImage(new ImgUtil().drawBlock(Color.DARK_GRAY), 
+				new ImgUtil().drawInventoryBox(this.inventoryPos(), this.ammo));
+	}
+	
+	public void paintInventory(Graphics2D g, int x, int y) {
+		new PaintUtil().paintInventoryBox(g, x, y, this.inventoryPos(), this.ammo, Color.DARK_GRAY);
+	}
+	
+	public int ammoShown() {
+		return this.ammo;
+	}
+
+	// Adds given ammunition to this' ammo count
+	// EFFECT: Modifies this' ammo
+	public void addAmmo(int amt) {
+		this.ammo += amt;
+	}
+	
+	public void saveState(RewindBuffer rb) {
+		rb.put(this.reload.secondsLeft());
+		rb.put(this.ammo);
+	}
+	
+	public void restoreState(RewindBuffer rb) {
+		this.reload = new TimeTemporary(rb.get());
+		this.ammo = rb.getInt();
+	}
+}
+
+// A thrown explosive that arcs under gravity and bursts on striking anything, hurting everything
+// near enough that no wall shields it, including whoever threw it
+class Grenade implements IWeapon {
+	static final int INV = 4;
+	static final double RELOAD = 1; // In seconds
+	static final double THROW_SPEED = 35 * IConstant.BLOCK_SIZE; // In pixels per second, number is blocks per second
+	static final double RADIUS = 5 * IConstant.BLOCK_SIZE; // In pixels, number is blocks
+	static final int DAMAGE = 3; // At the center of the blast
+	// The amount of time that must pass between throws
+	TimeTemporary reload;
+	int ammo;
+	// Where the blasts of this weapon's grenades are set off
+	final BlastBatch blasts;
+	
+	// Grenades are initially ready to throw, bursting into the given batch
+	Grenade(BlastBatch blasts) {
+		this.reload = new TimeTemporary(0);
+		this.ammo = 5;
+		this.blasts = blasts;
+	}
+	
+	public int inventoryPos() {
+		return Grenade.INV;
+	}
+
+	// Adds one grenade thrown toward the target if ready to throw
+	// EFFECT: Modifies the given list and this' reload and ammo
+	public void fire(double fromX, double fromY, double dx, double dy, ArrayList<IWeaponEffect> out) {
+		if(this.reload.finished() && this.ammo > 0) {
+			out.add(new GrenadeShell(new Vector2D(fromX, fromY), new Vector2D(dx, dy).scaleTo(Grenade.THROW_SPEED),
+					this.blasts));
+			this.reload = new TimeTemporary(Grenade.RELOAD);
+			this.ammo -= 1;
+		}
+	}
+	
+	// Counts down the reload by the tick's length, unless it is ready to throw again
+	public void tickWeapon(double dt) {
+		if(! this.reload.finished()) {
+			this.reload.countDown(dt);
+		}
+	}
+
+	// Draws this as a grey square in the inventory
+	public WorldImage drawInventory() {
+		return new OverlayImage(new ImgUtil().drawBlock(Color.GRAY), 
+				new ImgUtil().drawInventoryBox(this.inventoryPos(), this.ammo));
+	}
+	
+	public void paintInventory(Graphics2D g, int x, int y) {
+		new PaintUtil().paintInventoryBox(g, x, y, this.inventoryPos(), this.ammo, Color.GRAY);
+	}
+	
+	public int ammoShown() {
+		return this.ammo;
+	}
+
+	// Adds given ammunition to this' ammo count
+	// EFFECT: Modifies this' ammo
+	public void addAmmo(int amt) {
+		this.ammo += amt;
+	}
+	
+	public void saveState(RewindBuffer rb) {
+		rb.put(this.reload.secondsLeft());
+		rb.put(this.ammo);
+	}
+	
+	public void restoreState(RewindBuffer rb) {
+		this.reload = new TimeTemporary(rb.get());
+		this.ammo = rb.getInt();
+	}
 }
 
 // The absence of any weapon equipped (default state)
@@ -217,12 +483,10 @@ class NoWeapon implements IWeapon {
 	}
 
 	// has no effect on firing
-	public ArrayList<IWeaponEffect> fire(Vector2D from, Vector2D disp) {
-		return new ArrayList<IWeaponEffect>();
-	}
+	public void fire(double fromX, double fromY, double dx, double dy, ArrayList<IWeaponEffect> out) {}
 
 	// Has no effect on tick
-	public void tickWeapon() {
+	public void tickWeapon(double dt) {
 		return;
 	}
 	
@@ -230,16 +494,28 @@ class NoWeapon implements IWeapon {
 	public WorldImage drawInventory() {
 		return new EmptyImage();
 	}
+	
+	// Nothing to show
+	public void paintInventory(Graphics2D g, int x, int y) {}
+	
+	public int ammoShown() {
+		return -1;
+	}
 
 	public void addAmmo(int amt) {
 		throw new RuntimeException("No-weapon has no ammo.");
 	}
+	
+	// Has no state
+	public void saveState(RewindBuffer rb) {}
+	
+	public void restoreState(RewindBuffer rb) {}
 }
 
 // To represent the physical effect of a weapon being activated
 interface IWeaponEffect extends IGameComponent {
-	// Interact with the given enemy likely if there is a collision
-	void interactEnemy(IEnemy ie);
+	// Interact with the given enemy likely if there is a collision, returning whether the two are in contact
+	boolean interactEnemy(IEnemy ie);
 	
 	// Interact with the given environment component likely if there is a collision
 	void interactEnvironment(IEnvironment ie); //TODO: abstract collision detection
@@ -247,17 +523,33 @@ interface IWeaponEffect extends IGameComponent {
 
 // To represent some projectile weapon effect flying through the air
 abstract class AProjectile extends AGameComponent implements IWeaponEffect {
-	Vector2D velocity;
+	// In pixels per second, changed in place so projectiles that accelerate allocate nothing
+	final MutableVector2D velocity;
 	
-	AProjectile(Rectangle body, Vector2D velocity) {
-		super(body);
-		this.velocity = velocity;
+	AProjectile(Rectangle body, Vector2D velocity, int layer) {
+		super(body, layer);
+		this.velocity = new MutableVector2D(velocity.x, velocity.y);
 	}
 	
-	// Moves this projectile by its velocity
+	// Moves this projectile by its velocity over the given number of seconds
 	// EFFECT: Modifies this' position
-	void move() {
-		this.body = this.body.onMove(this.velocity);
+	void move(double dt) {
+		this.body.moveBy(this.velocity.x * dt, this.velocity.y * dt);
+	}
+	
+	// Records position and velocity
+	// EFFECT: Appends to the given history
+	public void saveState(RewindBuffer rb) {
+		super.saveState(rb);
+		rb.put(this.velocity.x);
+		rb.put(this.velocity.y);
+	}
+	
+	// Restores position and velocity
+	// EFFECT: Modifies this and advances the history's read cursor
+	public void restoreState(RewindBuffer rb) {
+		super.restoreState(rb);
+		this.velocity.set(rb.get(), rb.get());
 	}
 }
 
@@ -265,12 +557,17 @@ abstract class AProjectile extends AGameComponent implements IWeaponEffect {
 class EnemyBullet extends AProjectile {
 	static final int SIZE = 5;
 	static final Vector2D DIM = new Vector2D(SIZE, SIZE);
-	static final double SPEED = 20 * IConstant.BLOCK_SIZE * IConstant.TICK_RATE;
+	static final double SPEED = 20 * IConstant.BLOCK_SIZE; // In pixels per second
 	
 	boolean hit;
 	
+	// Constructor initializes this as a bullet in the given collision layer
+	EnemyBullet(Vector2D start, Vector2D dir, int layer) {
+		super(new Rectangle(start.addVectors(DIM.scaleVector(.5)), DIM), dir.scaleTo(SPEED), layer);
+	}
+	
 	EnemyBullet(Vector2D start, Vector2D dir) {
-		super(new Rectangle(start.addVectors(DIM.scaleVector(.5)), DIM), dir.scaleTo(SPEED));
+		this(start, dir, CollisionLayers.ENEMY_PROJECTILE);
 	}
 
 	// REnders as small orange square
@@ -278,6 +575,11 @@ class EnemyBullet extends AProjectile {
 		return this.body.render(Color.ORANGE);
 	}
 	
+	// Paints this as a small orange square straight onto the given graphics
+	public void paintOnto(Graphics2D g, SpriteCache sprites) {
+		this.body.paint(g, Color.ORANGE);
+	}
+	
 	// Remove this bullet if it has hit something (environment, player)
 	public boolean shouldRemove() {
 		return this.hit;
@@ -285,12 +587,14 @@ class EnemyBullet extends AProjectile {
 
 	// Moves this bullet on a tick
 	// EFFECT: Modifies this' position
-	public void tick() {
-		this.move();
+	public void tick(double dt) {
+		this.move(dt);
 	}
 
 	// No interaction with other enemies
-	public void interactEnemy(IEnemy ie) {}
+	public boolean interactEnemy(IEnemy ie) {
+		return false;
+	}
 
 	// Flags 'hit' if collision with environment (to be removed)
 	// EFFECT: Modifies this' hit flag
@@ -306,48 +610,162 @@ class EnemyBullet extends AProjectile {
 		this.hit = true;
 		pl.onHit(1);
 	}
+	
+	public void saveState(RewindBuffer rb) {
+		super.saveState(rb);
+		rb.put(this.hit);
+	}
+	
+	public void restoreState(RewindBuffer rb) {
+		super.restoreState(rb);
+		this.hit = rb.getBoolean();
+	}
 }
 
 // A bullet fired by the player that hurts enemies and cannot hurt player
 class PlayerBullet extends EnemyBullet {
 	PlayerBullet(Vector2D start, Vector2D dir) {
-		super(start, dir);
+		super(start, dir, CollisionLayers.PLAYER_PROJECTILE);
 	}
 	
 	// No player interaction
-	public void interactPlayer(Player pl) {}
+	public boolean interactPlayer(Player pl) {
+		return false;
+	}
 	
 	// Flags 'hit' and reduces enemy health
 	// EFFECT: Modifies this' hit and enemy's health
-	public void interactEnemy(IEnemy ie) {
+	public boolean interactEnemy(IEnemy ie) {
 		if(this.body.collidingWith(ie.getCollisionBody())) {
 			this.hit = true;
 			ie.reduceHealth(1);
+			return true;
 		}
+		return false;
 	}
 	
 	// Renders as a small green square
 	public WorldImage render() {
 		return this.body.render(Color.GREEN);
 	}
+	
+	// Paints this as a small green square straight onto the given graphics
+	public void paintOnto(Graphics2D g, SpriteCache sprites) {
+		this.body.paint(g, Color.GREEN);
+	}
+}
+
+// A thrown grenade falling under gravity until it strikes an enemy or the environment, where it
+// sets off a blast from where it was just before striking, clear of whatever it struck
+class GrenadeShell extends AProjectile {
+	static final int SIZE = 6;
+	static final Vector2D DIM = new Vector2D(SIZE, SIZE);
+	
+	// Where this shell's blast is set off
+	final BlastBatch blasts;
+	boolean detonated;
+	// Where this shell's center was before its last move
+	private double lastX;
+	private double lastY;
+	
+	// Constructor initializes this centered on the given position, thrown with the given velocity
+	// in pixels per second and bursting into the given batch
+	GrenadeShell(Vector2D start, Vector2D velocity, BlastBatch blasts) {
+		super(new Rectangle(start.addVectors(DIM.scaleVector(-.5)), DIM), velocity, CollisionLayers.PLAYER_PROJECTILE);
+		this.blasts = blasts;
+		this.detonated = false;
+		this.lastX = start.x;
+		this.lastY = start.y;
+	}
+
+	// Renders as a small grey square
+	public WorldImage render() {
+		return this.body.render(Color.GRAY);
+	}
+	
+	// Paints this as a small grey square straight onto the given graphics
+	public void paintOnto(Graphics2D g, SpriteCache sprites) {
+		this.body.paint(g, Color.GRAY);
+	}
+	
+	// Remove this shell once it has burst
+	public boolean shouldRemove() {
+		return this.detonated;
+	}
+
+	// Moves this shell over the given number of seconds and lets it fall, by the average of its
+	// vertical velocities before and after so the arc is the same at any tick rate
+	// EFFECT: Modifies this' position and velocity
+	public void tick(double dt) {
+		this.lastX = this.body.centerX();
+		this.lastY = this.body.centerY();
+		double nextVY = this.velocity.y + IConstant.GRAVITY * dt;
+		this.body.moveBy(this.velocity.x * dt, (this.velocity.y + nextVY) / 2 * dt);
+		this.velocity.y = nextVY;
+	}
+	
+	// Sets off this shell's blast if it has not already burst
+	// EFFECT: Modifies this' detonated flag and its batch of blasts
+	void detonate() {
+		if(! this.detonated) {
+			this.detonated = true;
+			this.blasts.add(this.lastX, this.lastY, Grenade.RADIUS, Grenade.DAMAGE);
+		}
+	}
+
+	// Bursts on striking the given enemy, which the blast then damages
+	// EFFECT: Modifies this' detonated flag and its batch of blasts
+	public boolean interactEnemy(IEnemy ie) {
+		if(this.body.collidingWith(ie.getCollisionBody())) {
+			this.detonate();
+			return true;
+		}
+		return false;
+	}
+
+	// Bursts on striking the environment
+	// EFFECT: Modifies this' detonated flag and its batch of blasts
+	public void interactEnvironment(IEnvironment ie) {
+		if(this.body.collidingWith(ie.getCollisionBody())) {
+			this.detonate();
+		}
+	}
+	
+	// Records position, velocity, whether burst, and where it was before its last move
+	// EFFECT: Appends to the given history
+	public void saveState(RewindBuffer rb) {
+		super.saveState(rb);
+		rb.put(this.detonated);
+		rb.put(this.lastX);
+		rb.put(this.lastY);
+	}
+	
+	// Restores position, velocity, whether burst, and where it was before its last move
+	// EFFECT: Modifies this and advances the history's read cursor
+	public void restoreState(RewindBuffer rb) {
+		super.restoreState(rb);
+		this.detonated = rb.getBoolean();
+		this.lastX = rb.get();
+		this.lastY = rb.get();
+	}
 }
 
 // To represent the swing of a knife
-class KnifeEffect extends AGameComponent implements IWeaponEffect {
+class KnifeEffect extends AGameComponent implements IWeaponEffect, IContactListener {
 	// The amount of time a knife-swing exists
 	TimeTemporary tt;
-	
-	boolean hit;
+	// The one enemy this swing has cut, or null if none yet
+	IEnemy cut;
 	
 	// Constructor creates a Rectangle body just outside the player depending on which direction was swung at
-	// And lasts for 1/20th of a second
+	// And lasts for 1/20th of a second. A swing cuts only enemies, passing through the ground.
 	KnifeEffect(Vector2D fromCenter, boolean facingRight) {
-		super(fromCenter.addVectors(
+		super(new Rectangle(fromCenter.addVectors(
 				new Vector2D(facingRight ? IConstant.BLOCK_SIZE : -2 * IConstant.BLOCK_SIZE, 
 				-IConstant.BLOCK_SIZE / 2)), 
-				IConstant.BLOCK_DIM);
-		this.tt = new TimeTemporary((int) (.05 / IConstant.TICK_RATE));
-		this.hit = false;
+				IConstant.BLOCK_DIM), CollisionLayers.PLAYER_PROJECTILE, CollisionLayers.ENEMY);
+		this.tt = new TimeTemporary(.05);
+		this.cut = null;
 	}
 
 	// The knife-effect lasts as long as the given effect
@@ -359,24 +777,51 @@ class KnifeEffect extends AGameComponent implements IWeaponEffect {
 	WorldImage render() {
 		return this.body.render(Color.GRAY);
 	}
+	
+	// Paints this as a grey square straight onto the given graphics
+	public void paintOnto(Graphics2D g, SpriteCache sprites) {
+		this.body.paint(g, Color.GRAY);
+	}
 
-	// Ticks this time-temporary  so that it lasts for one less tick
+	// Ticks this time-temporary so that it lasts for one tick's length less
 	// EFFECT: Effectively decrements this' TimeTemporary
-	public void tick() {
-		this.tt = this.tt.onTick();
+	public void tick(double dt) {
+		this.tt.countDown(dt);
 	}
 	
-	// Reduces health of enemy by 1 if hit
-	// EFFECT: Modifies enemy according to health loss method
-	public void interactEnemy(IEnemy ie) {
-		if(!this.hit && this.body.collidingWith(ie.getCollisionBody())) {
-			ie.reduceHealth(1);
-			this.hit = true;
+	// Damage is dealt when contact with an enemy begins, to the first enemy reached only
+	public boolean interactEnemy(IEnemy ie) {
+		return this.body.collidingWith(ie.getCollisionBody());
+	}
+	
+	// Reduces health of an enemy by 1 as the swing first reaches it, if the swing has not cut one
+	// yet, so a swing cuts a single enemy once however often contact with it begins
+	// EFFECT: Modifies enemy according to health loss method, and this
+	public void onContactEnter(IGameComponent other) {
+		if (this.cut == null && other instanceof IEnemy) {
+			this.cut = (IEnemy) other;
+			this.cut.reduceHealth(1);
 		}
 	}
+	
+	public void onContactStay(IGameComponent other) {}
+	
+	public void onContactExit(IGameComponent other) {}
 
 	// No environment interaction
 	public void interactEnvironment(IEnvironment ie) {}
+	
+	// Records time remaining and the enemy cut, as a swing never moves
+	// EFFECT: Appends to the given history
+	public void saveState(RewindBuffer rb) {
+		rb.put(this.tt.secondsLeft());
+		rb.putRef(this.cut);
+	}
+	
+	public void restoreState(RewindBuffer rb) {
+		this.tt = new TimeTemporary(rb.get());
+		this.cut = (IEnemy) rb.getRef();
+	}
 }
 
 // Some cache of ammunition that can be picked up by the player
@@ -384,11 +829,11 @@ abstract class AItem extends AGameComponent {
 	boolean taken;
 	
 	AItem(Posn blockPos) {
-		super(new Util().topLFromBlock(blockPos), IConstant.BLOCK_DIM);
+		super(new Util().topLFromBlock(blockPos), IConstant.BLOCK_DIM, CollisionLayers.PICKUP);
 		this.taken = false;
 	}
 	
-	public void tick() {}
+	public void tick(double dt) {}
 	
 	// Remove this if it has been picked up by player
 	public boolean shouldRemove() {
@@ -407,6 +852,16 @@ abstract class AItem extends AGameComponent {
 	}
 	
 	abstract void onPickup(Player pl);
+	
+	// Records whether this has been picked up, an item never moves
+	// EFFECT: Appends to the given history
+	public void saveState(RewindBuffer rb) {
+		rb.put(this.taken);
+	}
+	
+	public void restoreState(RewindBuffer rb) {
+		this.taken = rb.getBoolean();
+	}
 }
 
 
@@ -423,6 +878,11 @@ class InstantHealth extends AItem {
 		return this.body.render(Color.RED);
 	}	
 	
+	// Paints this as a red square straight onto the given graphics
+	public void paintOnto(Graphics2D g, SpriteCache sprites) {
+		this.body.paint(g, Color.RED);
+	}
+	
 }
 
 // A cache of pistol ammunition
@@ -438,6 +898,11 @@ class PistolAmmo extends AItem {
 		//return this.body.render(Color.GRAY);
 		return this.body.render("p-ammo.png");
 	}
+	
+	// Paints the same sprite straight onto the given graphics
+	public void paintOnto(Graphics2D g, SpriteCache sprites) {
+		this.body.paint(g, sprites, "p-ammo.png");
+	}
 
 	void onPickup(Player pl) {
 		pl.addAmmo(Pistol.INV, this.amount);